@@ -14,6 +14,8 @@
 package io.opentracing;
 
 import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.ValueSupplier;
 import java.util.Map;
 
 /**
@@ -34,6 +36,24 @@ public interface Span {
      */
     SpanContext context();
 
+    /**
+     * Whether the data set on this Span (tags, logs, operation name, etc) is being recorded.
+     *
+     * <p>Instrumentation may check this before building expensive tag or log values, as a Span that is not recording
+     * (e.g., a sampled-out Span, or the Span of a no-op Tracer) discards them. The value may change from true to
+     * false during the lifetime of a Span, e.g. once it has been finished.
+     *
+     * <pre><code>
+     if (span.isRecording()) {
+         Tags.DB_STATEMENT.set(span, normalize(sql));
+     }
+     </code></pre>
+     *
+     * @return true if the data set on this Span is recorded, false if it is discarded
+     * @see SpanContext#isSampled()
+     */
+    boolean isRecording();
+
     /**
      * Set a key:value tag on the Span.
      */
@@ -45,9 +65,39 @@ public interface Span {
     /** Same as {@link #setTag(String, String)}, but for numeric values. */
     Span setTag(String key, Number value);
 
+    /** Same as {@link #setTag(String, Number)}, but for int values, avoiding boxing. */
+    Span setTag(String key, int value);
+
+    /** Same as {@link #setTag(String, Number)}, but for long values, avoiding boxing. */
+    Span setTag(String key, long value);
+
+    /** Same as {@link #setTag(String, Number)}, but for double values, avoiding boxing. */
+    Span setTag(String key, double value);
+
     /** Same as {@link #setTag(String, String)}, but with using Tag<T>. */
     <T> Span setTag(Tag<T> tag, T value);
 
+    /**
+     * Set a key:value tag whose value is computed by the given supplier only if and when the Span records it, e.g.
+     * when it is finished or exported. A Span that is not recording (see {@link #isRecording()}) never invokes the
+     * supplier.
+     *
+     * @param supplier computes a String, numeric or boolean value
+     * @return this Span instance, for chaining
+     */
+    Span setTag(String key, ValueSupplier<?> supplier);
+
+    /** Same as {@link #setTag(String, ValueSupplier)}, but with using Tag&lt;T&gt;. */
+    <T> Span setTag(Tag<T> tag, ValueSupplier<? extends T> supplier);
+
+    /**
+     * Set every tag of the given set on this Span, as if by calling setTag for each of them in order. Implementations
+     * may apply the whole set at once, e.g. under a single lock.
+     *
+     * @see TagSet
+     */
+    Span setTags(TagSet tags);
+
     /**
      * Log key:value pairs to the Span with the current walltime timestamp.
      *
@@ -116,6 +166,26 @@ public interface Span {
      */
     Span log(long timestampMicroseconds, String event);
 
+    /**
+     * Start a structured log record, to be completed with {@link LogBuilder#emit()}. Unlike {@link #log(Map)}, this
+     * does not require the caller to allocate a map, and primitive field values need not be boxed:
+     *
+     * <pre><code>
+     span.logBuilder()
+     .field(Fields.EVENT, "soft error")
+     .field("type", "cache timeout")
+     .field("waited.millis", 1500L)
+     .emit();
+     </code></pre>
+     *
+     * <p>Implementations may hand out the same builder instance for every call made on a given thread, so the
+     * returned builder must be used by the calling thread only, and must not be used after {@link LogBuilder#emit()}.
+     *
+     * @return a builder for a single log record on this Span
+     * @see Span#log(Map)
+     */
+    LogBuilder logBuilder();
+
     /**
      * Sets a baggage item in the Span (and its SpanContext) as a key/value pair.
      *
@@ -165,4 +235,42 @@ public interface Span {
      * @see Span#context()
      */
     void finish(long finishMicros);
+
+    /**
+     * Builds a single log record of key:value fields, as returned by {@link Span#logBuilder()}.
+     *
+     * <p>Adding a field with a key that was already added replaces its value.
+     */
+    interface LogBuilder {
+        LogBuilder field(String key, String value);
+
+        LogBuilder field(String key, boolean value);
+
+        LogBuilder field(String key, int value);
+
+        LogBuilder field(String key, long value);
+
+        LogBuilder field(String key, double value);
+
+        /**
+         * Adds a field of any other type, e.g. a {@link Number} or the {@link io.opentracing.log.Fields#ERROR_OBJECT}
+         * Throwable. Tracer implementations may not support arbitrary Objects.
+         */
+        LogBuilder field(String key, Object value);
+
+        /**
+         * Specifies the timestamp of the log record. If not called, the current walltime is used.
+         *
+         * @param timestampMicroseconds The explicit timestamp for the log record. Must be greater than or equal to the
+         *                              Span's start timestamp.
+         */
+        LogBuilder withTimestamp(long timestampMicroseconds);
+
+        /**
+         * Records the log record on the Span. The builder must not be used afterwards.
+         *
+         * @return the Span, for chaining
+         */
+        Span emit();
+    }
 }
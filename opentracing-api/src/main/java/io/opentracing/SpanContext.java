@@ -34,10 +34,34 @@ public interface SpanContext {
      * An empty String will be returned if the tracer does not support this functionality
      * (this is the case for no-op tracers, for example). null is an invalid return value.
      *
+     * Implementations are encouraged to build the String once and return the same instance afterwards, as this is
+     * called frequently, e.g. for log correlation.
+     *
      * @return the trace ID for this context.
      */
     String toTraceId();
 
+    /**
+     * Write the characters of {@link #toTraceId()} into the given array, without allocating.
+     *
+     * @param dest the array to write into
+     * @param offset the index in dest to start writing at
+     * @return the number of characters written, 0 if the tracer does not support this functionality, or -1 if they
+     * do not fit in dest from offset, in which case nothing is written
+     */
+    int toTraceId(char[] dest, int offset);
+
+    /**
+     * Write the trace ID in its binary form (e.g. the 8 or 16 big-endian bytes of a numeric ID) into the given array,
+     * without allocating.
+     *
+     * @param dest the array to write into
+     * @param offset the index in dest to start writing at
+     * @return the number of bytes written, 0 if the tracer does not support this functionality, or -1 if they do not
+     * fit in dest from offset, in which case nothing is written
+     */
+    int toTraceIdBytes(byte[] dest, int offset);
+
     /**
      * Return the ID of the associated Span.
      *
@@ -46,10 +70,34 @@ public interface SpanContext {
      * An empty String will be returned if the tracer does not support this functionality
      * (this is the case for no-op tracers, for example). null is an invalid return value.
      *
+     * Implementations are encouraged to build the String once and return the same instance afterwards, as this is
+     * called frequently, e.g. for log correlation.
+     *
      * @return the Span ID for this context.
      */
     String toSpanId();
 
+    /**
+     * Same as {@link #toTraceId(char[], int)}, but for the characters of {@link #toSpanId()}.
+     */
+    int toSpanId(char[] dest, int offset);
+
+    /**
+     * Same as {@link #toTraceIdBytes(byte[], int)}, but for the Span ID.
+     */
+    int toSpanIdBytes(byte[] dest, int offset);
+
+    /**
+     * Return whether the trace this SpanContext belongs to has been sampled, i.e. whether its Spans are recorded.
+     *
+     * false will be returned if the tracer does not record Spans (this is the case for no-op tracers, for example).
+     *
+     * @return true if the trace is sampled, false otherwise.
+     *
+     * @see Span#isRecording()
+     */
+    boolean isSampled();
+
     /**
      * @return all zero or more baggage items propagating along with the associated Span
      *
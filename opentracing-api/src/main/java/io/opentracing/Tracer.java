@@ -17,6 +17,8 @@ import java.io.Closeable;
 
 import io.opentracing.propagation.Format;
 import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.ValueSupplier;
 
 /**
  * Tracer is a simple, thin interface for Span creation and propagation across arbitrary transports.
@@ -189,9 +191,27 @@ public interface Tracer extends Closeable {
         /** Same as {@link Span#setTag(String, Number)}, but for the span being built. */
         SpanBuilder withTag(String key, Number value);
 
+        /** Same as {@link Span#setTag(String, int)}, but for the span being built. */
+        SpanBuilder withTag(String key, int value);
+
+        /** Same as {@link Span#setTag(String, long)}, but for the span being built. */
+        SpanBuilder withTag(String key, long value);
+
+        /** Same as {@link Span#setTag(String, double)}, but for the span being built. */
+        SpanBuilder withTag(String key, double value);
+
         /** Same as {@link AbstractTag#set(Span, T)}, but for the span being built. */
         <T> SpanBuilder withTag(Tag<T> tag, T value);
 
+        /** Same as {@link Span#setTag(String, ValueSupplier)}, but for the span being built. */
+        SpanBuilder withTag(String key, ValueSupplier<?> supplier);
+
+        /** Same as {@link Span#setTag(Tag, ValueSupplier)}, but for the span being built. */
+        <T> SpanBuilder withTag(Tag<T> tag, ValueSupplier<? extends T> supplier);
+
+        /** Same as {@link Span#setTags(TagSet)}, but for the span being built. */
+        SpanBuilder withTags(TagSet tags);
+
         /** Specify a timestamp of when the Span was started, represented in microseconds since epoch. */
         SpanBuilder withStartTimestamp(long microseconds);
 
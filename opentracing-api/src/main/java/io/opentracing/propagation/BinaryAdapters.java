@@ -50,6 +50,26 @@ public final class BinaryAdapters {
         return new BinaryInjectAdapter(buffer);
     }
 
+    /**
+     * Creates an outbound {@link BinaryStreamInject} instance used for injection with the
+     * specified ByteBuffer as output, so that Tracers can write into it without knowing
+     * the serialized length up front. Once injected, the data spans from the initial
+     * position of the ByteBuffer to its current position; its limit is left unchanged.
+     * AssertionError will be thrown if the ByteBuffer runs out of room.
+     *
+     * @param buffer The ByteBuffer used as output.
+     *
+     * @return The new Binary carrier used for injection.
+     * @see ChainedBinaryInjectAdapter
+     */
+    public static BinaryStreamInject streamInjectionCarrier(ByteBuffer buffer) {
+        if (buffer == null) {
+            throw new NullPointerException();
+        }
+
+        return new BinaryStreamInjectAdapter(buffer);
+    }
+
     static class BinaryExtractAdapter implements BinaryExtract {
         ByteBuffer buffer;
 
@@ -83,4 +103,22 @@ public final class BinaryAdapters {
             return buffer;
         }
     }
+
+    static class BinaryStreamInjectAdapter extends BinaryInjectAdapter implements BinaryStreamInject {
+        public BinaryStreamInjectAdapter(ByteBuffer buffer) {
+            super(buffer);
+        }
+
+        @Override
+        public ByteBuffer nextInjectionBuffer(int minRemaining) {
+            if (minRemaining < 1) {
+                throw new IllegalArgumentException("minRemaining needs to be larger than 0");
+            }
+            if (minRemaining > buffer.remaining()) {
+                throw new AssertionError("minRemaining is larger than the backing ByteBuffer remaining length");
+            }
+
+            return buffer;
+        }
+    }
 }
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link BinaryStreamInject} is a {@link BinaryInject} carrier that Tracers can write to without knowing the
+ * serialized length up front, e.g. straight into pooled network buffers.
+ *
+ * When called with {@link Tracer#inject}, Tracers supporting this interface call {@link #nextInjectionBuffer} whenever
+ * they need room to write, and write from the position of the returned buffer onwards, leaving its position after the
+ * last byte written. After {@link Tracer#inject} returns, the injected data is the content between the initial and
+ * current positions of the returned buffers, in order. Other Tracers call {@link #injectionBuffer} as usual.
+ *
+ * @see Format.Builtin#BINARY_INJECT
+ * @see io.opentracing.Tracer#inject(SpanContext, Format, Object)
+ */
+public interface BinaryStreamInject extends BinaryInject {
+    /**
+     * Gets a buffer with at least the given number of bytes remaining, to continue {@link SpanContext} injection.
+     *
+     * The returned buffer may be the one returned by the previous call, if it has enough room left.
+     *
+     * @param minRemaining The number of bytes the Tracer needs to write next. It needs to be larger than zero.
+     *
+     * @return The buffer to continue {@link SpanContext} injection with.
+     */
+    ByteBuffer nextInjectionBuffer(int minRemaining);
+}
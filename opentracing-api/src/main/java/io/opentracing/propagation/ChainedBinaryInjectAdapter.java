@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@link BinaryStreamInject} carrier that writes into a chain of buffers, allocating a new one whenever the current
+ * one is full, so injection never needs to know the serialized length up front. Subclasses can override
+ * {@link #allocate(int)} to take buffers from a pool.
+ *
+ * After injection, {@link #buffers()} gives the injected data, e.g. for a gathering write to a channel.
+ */
+public class ChainedBinaryInjectAdapter implements BinaryStreamInject {
+    private final int chunkSize;
+    private final boolean direct;
+    private final List<ByteBuffer> buffers = new ArrayList<ByteBuffer>();
+    private final List<Integer> startPositions = new ArrayList<Integer>();
+
+    /**
+     * @param chunkSize the capacity of the buffers to allocate, unless more is requested at once
+     * @param direct whether to allocate direct buffers
+     */
+    public ChainedBinaryInjectAdapter(int chunkSize, boolean direct) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("chunkSize needs to be larger than 0");
+        }
+        this.chunkSize = chunkSize;
+        this.direct = direct;
+    }
+
+    @Override
+    public ByteBuffer nextInjectionBuffer(int minRemaining) {
+        if (minRemaining < 1) {
+            throw new IllegalArgumentException("minRemaining needs to be larger than 0");
+        }
+        if (!buffers.isEmpty()) {
+            ByteBuffer current = buffers.get(buffers.size() - 1);
+            if (current.remaining() >= minRemaining) {
+                return current;
+            }
+        }
+        ByteBuffer buffer = allocate(Math.max(chunkSize, minRemaining));
+        buffers.add(buffer);
+        startPositions.add(buffer.position());
+        return buffer;
+    }
+
+    @Override
+    public ByteBuffer injectionBuffer(int length) {
+        ByteBuffer buffer = nextInjectionBuffer(length);
+        buffer.limit(buffer.position() + length);
+        return buffer;
+    }
+
+    /**
+     * Allocates a buffer with at least the given capacity remaining, from its position.
+     */
+    protected ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    /**
+     * @return read-only views of the injected data, one per buffer in the chain, each ready to be read from its
+     * position to its limit
+     */
+    public ByteBuffer[] buffers() {
+        ByteBuffer[] result = new ByteBuffer[buffers.size()];
+        for (int i = 0; i < result.length; i++) {
+            ByteBuffer view = buffers.get(i).asReadOnlyBuffer();
+            view.limit(view.position());
+            view.position(startPositions.get(i));
+            result[i] = view;
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of bytes injected
+     */
+    public int length() {
+        int length = 0;
+        for (int i = 0; i < buffers.size(); i++) {
+            length += buffers.get(i).position() - startPositions.get(i);
+        }
+        return length;
+    }
+}
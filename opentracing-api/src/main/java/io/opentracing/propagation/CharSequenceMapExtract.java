@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import io.opentracing.Tracer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * {@link CharSequenceMapExtract} is a built-in carrier for {@link Tracer#extract} only, like {@link TextMapExtract},
+ * but for backing stores that hold keys and values as {@link CharSequence}s rather than Strings (e.g. the headers of
+ * some HTTP libraries).
+ *
+ * <p>Tracers should compare keys by content and only convert to String the entries they actually use, so that
+ * unrelated entries are never copied.
+ *
+ * @see io.opentracing.Tracer#extract(Format, Object)
+ * @see Format.Builtin#CHAR_SEQUENCE_MAP_EXTRACT
+ */
+public interface CharSequenceMapExtract extends Iterable<Map.Entry<CharSequence, CharSequence>> {
+    /**
+     * Gets an iterator over arbitrary key:value pairs from the backing store.
+     *
+     * @return entries in the backing store; note that the iterator may include entries that were never injected by a
+     * Tracer implementation (e.g., unrelated HTTP headers)
+     *
+     * @see io.opentracing.Tracer#extract(Format, Object)
+     */
+    Iterator<Map.Entry<CharSequence, CharSequence>> iterator();
+}
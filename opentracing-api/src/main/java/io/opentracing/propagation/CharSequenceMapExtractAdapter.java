@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import io.opentracing.Tracer;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A {@link CharSequenceMapExtract} carrier for use with Tracer.extract() ONLY, over a Map.
+ *
+ * @see Tracer#extract(Format, Object)
+ */
+public class CharSequenceMapExtractAdapter implements CharSequenceMapExtract {
+    protected final Map<? extends CharSequence, ? extends CharSequence> map;
+
+    public CharSequenceMapExtractAdapter(final Map<? extends CharSequence, ? extends CharSequence> map) {
+        this.map = map;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<Map.Entry<CharSequence, CharSequence>> iterator() {
+        // Safe, as the entries are only read.
+        return (Iterator<Map.Entry<CharSequence, CharSequence>>) (Iterator<?>) map.entrySet().iterator();
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+
+/**
+ * {@link CharSequenceMapInject} is a built-in carrier for {@link Tracer#inject} only, like {@link TextMapInject}, but
+ * for backing stores that hold keys and values as {@link CharSequence}s rather than Strings (e.g. the headers of
+ * some HTTP libraries).
+ *
+ * @see io.opentracing.Tracer#inject(SpanContext, Format, Object)
+ * @see Format.Builtin#CHAR_SEQUENCE_MAP_INJECT
+ */
+public interface CharSequenceMapInject {
+
+    /**
+     * Puts a key:value pair into the backing store.
+     *
+     * @param key a CharSequence, possibly with constraints dictated by the particular Format this carrier is paired with
+     * @param value a CharSequence, possibly with constraints dictated by the particular Format this carrier is paired
+     *              with
+     *
+     * @see io.opentracing.Tracer#inject(io.opentracing.SpanContext, Format, Object)
+     */
+    void put(CharSequence key, CharSequence value);
+}
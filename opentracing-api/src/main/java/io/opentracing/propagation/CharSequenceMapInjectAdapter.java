@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import java.util.Map;
+
+/**
+ * A {@link CharSequenceMapInject} carrier for use with Tracer.inject() ONLY, over a Map.
+ *
+ * @see Tracer#inject(SpanContext, Format, Object)
+ */
+public class CharSequenceMapInjectAdapter implements CharSequenceMapInject {
+    protected final Map<? super CharSequence, ? super CharSequence> map;
+
+    public CharSequenceMapInjectAdapter(final Map<? super CharSequence, ? super CharSequence> map) {
+        this.map = map;
+    }
+
+    @Override
+    public void put(CharSequence key, CharSequence value) {
+        this.map.put(key, value);
+    }
+}
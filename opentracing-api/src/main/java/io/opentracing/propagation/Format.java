@@ -68,6 +68,26 @@ public interface Format<C> {
          */
         public final static Format<TextMapExtract> TEXT_MAP_EXTRACT = new Builtin<TextMapExtract>("TEXT_MAP_EXTRACT");
 
+        /**
+         * Like {@link Builtin#TEXT_MAP_INJECT}, but for carriers holding CharSequence keys and values, so that
+         * Tracers need not convert them to Strings.
+         *
+         * @see io.opentracing.Tracer#inject(SpanContext, Format, Object)
+         * @see Format
+         */
+        public final static Format<CharSequenceMapInject> CHAR_SEQUENCE_MAP_INJECT =
+                new Builtin<CharSequenceMapInject>("CHAR_SEQUENCE_MAP_INJECT");
+
+        /**
+         * Like {@link Builtin#TEXT_MAP_EXTRACT}, but for carriers holding CharSequence keys and values, so that
+         * Tracers need not convert them to Strings.
+         *
+         * @see io.opentracing.Tracer#extract(Format, Object)
+         * @see Format
+         */
+        public final static Format<CharSequenceMapExtract> CHAR_SEQUENCE_MAP_EXTRACT =
+                new Builtin<CharSequenceMapExtract>("CHAR_SEQUENCE_MAP_EXTRACT");
+
         /**
          * The HTTP_HEADERS format allows for HTTP-header-compatible String-&gt;String map encoding of SpanContext state
          * for Tracer.inject and Tracer.extract.
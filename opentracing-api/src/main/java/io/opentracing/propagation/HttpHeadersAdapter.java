@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import io.opentracing.Tracer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link TextMap} carrier for use with {@link Format.Builtin#HTTP_HEADERS}, over a map of HTTP headers, which looks
+ * up header names case-insensitively on {@link Tracer#extract}.
+ *
+ * <p>Exact and lower-case names are looked up directly; only if both miss is an index of lower-cased names built, once
+ * per adapter. The map must not be modified other than through {@link #put(String, String)} while the adapter is in use.
+ *
+ * @see TextMapLookup
+ */
+public class HttpHeadersAdapter extends TextMapAdapter {
+    private Map<String, String> lowerCaseHeaders;
+
+    public HttpHeadersAdapter(final Map<String, String> headers) {
+        super(headers);
+    }
+
+    @Override
+    public void put(String key, String value) {
+        super.put(key, value);
+        lowerCaseHeaders = null;
+    }
+
+    @Override
+    public String get(String key) {
+        String value = map.get(key);
+        if (value != null || isCaseInsensitive(map)) {
+            return value;
+        }
+        String lowerCaseKey = key.toLowerCase(Locale.ROOT);
+        if (!lowerCaseKey.equals(key)) {
+            value = map.get(lowerCaseKey);
+            if (value != null) {
+                return value;
+            }
+        }
+        if (lowerCaseHeaders == null) {
+            lowerCaseHeaders = new HashMap<String, String>(map.size() * 2);
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                lowerCaseHeaders.put(entry.getKey().toLowerCase(Locale.ROOT), entry.getValue());
+            }
+        }
+        return lowerCaseHeaders.get(lowerCaseKey);
+    }
+
+    private static boolean isCaseInsensitive(Map<String, String> map) {
+        return map instanceof TreeMap && ((TreeMap<String, String>) map).comparator() == String.CASE_INSENSITIVE_ORDER;
+    }
+}
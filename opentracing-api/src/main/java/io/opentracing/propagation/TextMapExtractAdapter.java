@@ -26,7 +26,7 @@ import java.util.Map;
  *
  * @see Tracer#extract(Format, Object)
  */
-public class TextMapExtractAdapter implements TextMapExtract {
+public class TextMapExtractAdapter implements TextMapLookup {
     protected final Map<String,String> map;
 
     public TextMapExtractAdapter(final Map<String,String> map) {
@@ -37,4 +37,14 @@ public class TextMapExtractAdapter implements TextMapExtract {
     public Iterator<Map.Entry<String, String>> iterator() {
         return map.entrySet().iterator();
     }
+
+    /**
+     * Looks up the given key in the map, exactly.
+     *
+     * @see HttpHeadersAdapter
+     */
+    @Override
+    public String get(String key) {
+        return map.get(key);
+    }
 }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import io.opentracing.Tracer;
+
+/**
+ * A {@link TextMapExtract} carrier that can also look up values by key, so that Tracers can extract the few keys they
+ * need without iterating over every entry of the carrier (e.g. every header of an HTTP request).
+ *
+ * <p>Implementing this interface is optional; Tracers should check for it and fall back to {@link #iterator()}.
+ * Carriers used with {@link Format.Builtin#HTTP_HEADERS} must look up keys case-insensitively, as HTTP header names are
+ * case-insensitive; carriers used with other formats look up keys exactly.
+ *
+ * @see Tracer#extract(Format, Object)
+ * @see TextMapExtractAdapter
+ * @see HttpHeadersAdapter
+ */
+public interface TextMapLookup extends TextMapExtract {
+    /**
+     * @param key the key to look up
+     * @return the value of the given key, or null if the carrier does not contain it
+     */
+    String get(String key);
+}
@@ -16,7 +16,11 @@ package io.opentracing.tag;
 import io.opentracing.Span;
 
 public abstract class AbstractTag<T> implements Tag<T> {
+    private static final int UNRESOLVED = -2;
+
     protected final String key;
+    // Resolved lazily, so that the Tags constants can be created while TagKeys registers them.
+    private int index = UNRESOLVED;
 
     public AbstractTag(String tagKey) {
         this.key = tagKey;
@@ -27,6 +31,29 @@ public abstract class AbstractTag<T> implements Tag<T> {
         return key;
     }
 
+    /**
+     * @return the index of this tag's key in {@link TagKeys}, or {@link TagKeys#UNREGISTERED}. Keys registered after
+     * the first call are not picked up.
+     */
+    public int getIndex() {
+        int index = this.index;
+        if (index == UNRESOLVED) {
+            index = TagKeys.indexOf(key);
+            this.index = index;
+        }
+        return index;
+    }
+
     @Override
     public abstract void set(Span span, T tagValue);
+
+    /**
+     * Same as {@link #set(Span, Object)}, but the value is only computed if and when the span records it: the
+     * supplier is set under this tag's key with {@link Span#setTag(String, ValueSupplier)}.
+     *
+     * @see Span#setTag(Tag, ValueSupplier)
+     */
+    public void set(Span span, ValueSupplier<? extends T> supplier) {
+        span.setTag(key, supplier);
+    }
 }
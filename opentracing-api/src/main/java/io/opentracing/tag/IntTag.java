@@ -24,4 +24,11 @@ public class IntTag extends AbstractTag<Integer> {
     public void set(Span span, Integer tagValue) {
         span.setTag(super.key, tagValue);
     }
+
+    /**
+     * Same as {@link #set(Span, Integer)}, but for primitive values, avoiding boxing.
+     */
+    public void set(Span span, int tagValue) {
+        span.setTag(super.key, tagValue);
+    }
 }
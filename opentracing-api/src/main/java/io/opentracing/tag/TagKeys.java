@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.tag;
+
+import io.opentracing.log.Fields;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A registry assigning dense integer indices, starting at 0, to well-known tag and log field keys.
+ *
+ * <p>All the keys of {@link Tags} and {@link Fields} are registered when this class is initialized. Tracer
+ * implementations can use the indices to store the values of well-known keys in fixed array slots, without hashing,
+ * and fall back to a map for any other key. {@link AbstractTag#getIndex()} gives the index of a tag without any lookup.
+ *
+ * <p>Keys can be added with {@link #register(String)}, but never removed, so the registry is meant for a bounded set
+ * of keys known up front; not for arbitrary keys seen at runtime.
+ */
+public final class TagKeys {
+    /**
+     * The index of keys that are not registered.
+     */
+    public static final int UNREGISTERED = -1;
+
+    // Copy-on-write, so lookups need no locking.
+    private static volatile String[] keys = new String[0];
+    private static volatile Map<String, Integer> indices = new HashMap<String, Integer>();
+
+    static {
+        register(Tags.HTTP_URL.getKey());
+        register(Tags.HTTP_STATUS.getKey());
+        register(Tags.HTTP_METHOD.getKey());
+        register(Tags.PEER_ADDRESS.getKey());
+        register(Tags.PEER_HOST_IPV4.getKey());
+        register(Tags.PEER_HOST_IPV6.getKey());
+        register(Tags.PEER_SERVICE.getKey());
+        register(Tags.PEER_HOSTNAME.getKey());
+        register(Tags.PEER_PORT.getKey());
+        register(Tags.SAMPLING_PRIORITY.getKey());
+        register(Tags.SPAN_KIND.getKey());
+        register(Tags.COMPONENT.getKey());
+        register(Tags.ERROR.getKey());
+        register(Tags.DB_TYPE.getKey());
+        register(Tags.DB_INSTANCE.getKey());
+        register(Tags.DB_USER.getKey());
+        register(Tags.DB_STATEMENT.getKey());
+        register(Tags.MESSAGE_BUS_DESTINATION.getKey());
+        register(Fields.ERROR_KIND);
+        register(Fields.ERROR_OBJECT);
+        register(Fields.EVENT);
+        register(Fields.MESSAGE);
+        register(Fields.STACK);
+    }
+
+    private TagKeys() {
+    }
+
+    /**
+     * Registers the given key, if it is not registered yet.
+     *
+     * @return the index of the key
+     */
+    public static synchronized int register(String key) {
+        if (key == null) {
+            throw new NullPointerException("key");
+        }
+        Integer index = indices.get(key);
+        if (index != null) {
+            return index;
+        }
+        int newIndex = keys.length;
+        String[] newKeys = Arrays.copyOf(keys, newIndex + 1);
+        newKeys[newIndex] = key;
+        Map<String, Integer> newIndices = new HashMap<String, Integer>(indices);
+        newIndices.put(key, newIndex);
+        keys = newKeys;
+        indices = newIndices;
+        return newIndex;
+    }
+
+    /**
+     * @return the index of the given key, or {@link #UNREGISTERED}
+     */
+    public static int indexOf(String key) {
+        Integer index = indices.get(key);
+        return index == null ? UNREGISTERED : index;
+    }
+
+    /**
+     * @return the key registered with the given index
+     * @throws IndexOutOfBoundsException if the index is not in [0, {@link #size()})
+     */
+    public static String keyAt(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return the number of registered keys; registered indices range from 0 to size() - 1
+     */
+    public static int size() {
+        return keys.length;
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.tag;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+import java.util.Arrays;
+
+/**
+ * An immutable, ordered set of tags that can be applied to a {@link Span} or {@link Tracer.SpanBuilder} in one call.
+ *
+ * <p>Tags that repeat on every span created by a component can be computed once and reused:
+ * <pre><code>
+ private static final TagSet CLIENT_TAGS = TagSet.EMPTY
+     .with(Tags.COMPONENT, "jdbc")
+     .with(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+     .with(Tags.DB_TYPE, "sql");
+
+ tracer.buildSpan("query").withTags(CLIENT_TAGS).start();
+ </code></pre>
+ *
+ * Adding a tag whose key is already present replaces its value and keeps its position.
+ *
+ * @see Span#setTags(TagSet)
+ * @see Tracer.SpanBuilder#withTags(TagSet)
+ */
+public final class TagSet {
+    public static final TagSet EMPTY = new TagSet(new String[0], new Object[0], new Tag<?>[0]);
+
+    private final String[] keys;
+    private final Object[] values;
+    // The Tag each value was added with, or null if it was added with a plain key.
+    private final Tag<?>[] tags;
+
+    private TagSet(String[] keys, Object[] values, Tag<?>[] tags) {
+        this.keys = keys;
+        this.values = values;
+        this.tags = tags;
+    }
+
+    public TagSet with(String key, String value) {
+        return with(key, value, null);
+    }
+
+    public TagSet with(String key, boolean value) {
+        return with(key, value, null);
+    }
+
+    public TagSet with(String key, Number value) {
+        return with(key, value, null);
+    }
+
+    public <T> TagSet with(Tag<T> tag, T value) {
+        return with(tag.getKey(), value, tag);
+    }
+
+    private TagSet with(String key, Object value, Tag<?> tag) {
+        int index = indexOf(key);
+        String[] newKeys = keys;
+        Object[] newValues;
+        Tag<?>[] newTags;
+        if (index < 0) {
+            index = keys.length;
+            newKeys = Arrays.copyOf(keys, index + 1);
+            newKeys[index] = key;
+            newValues = Arrays.copyOf(values, index + 1);
+            newTags = Arrays.copyOf(tags, index + 1);
+        } else {
+            newValues = values.clone();
+            newTags = tags.clone();
+        }
+        newValues[index] = value;
+        newTags[index] = tag;
+        return new TagSet(newKeys, newValues, newTags);
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null ? key == null : keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the number of tags in this set
+     */
+    public int size() {
+        return keys.length;
+    }
+
+    /**
+     * @return the key of the tag at the given position, from 0 to {@link #size()} - 1
+     */
+    public String getKey(int index) {
+        return keys[index];
+    }
+
+    /**
+     * @return the value of the tag at the given position, from 0 to {@link #size()} - 1
+     */
+    public Object getValue(int index) {
+        return values[index];
+    }
+
+    /**
+     * @return the {@link Tag} the value at the given position was added with, or null if it was added with a plain
+     * key. Implementations applying a set without {@link #applyTo(Span)} must still set such values through their
+     * {@link Tag}, as {@link Span#setTag(Tag, Object)} would.
+     */
+    public Tag<?> getTag(int index) {
+        return tags[index];
+    }
+
+    /**
+     * Sets every tag of this set on the given span, one at a time. Meant for {@link Span} implementations that have
+     * no cheaper way of applying a batch of tags.
+     */
+    @SuppressWarnings("unchecked")
+    public void applyTo(Span span) {
+        for (int i = 0; i < keys.length; i++) {
+            Object value = values[i];
+            if (tags[i] != null) {
+                span.setTag((Tag<Object>) tags[i], value);
+            } else if (value instanceof Number) {
+                span.setTag(keys[i], (Number) value);
+            } else if (value instanceof Boolean) {
+                span.setTag(keys[i], (Boolean) value);
+            } else {
+                span.setTag(keys[i], (String) value);
+            }
+        }
+    }
+
+    /**
+     * Adds every tag of this set to the given builder, one at a time. Meant for {@link Tracer.SpanBuilder}
+     * implementations that have no cheaper way of applying a batch of tags.
+     */
+    @SuppressWarnings("unchecked")
+    public void applyTo(Tracer.SpanBuilder spanBuilder) {
+        for (int i = 0; i < keys.length; i++) {
+            Object value = values[i];
+            if (tags[i] != null) {
+                spanBuilder.withTag((Tag<Object>) tags[i], value);
+            } else if (value instanceof Number) {
+                spanBuilder.withTag(keys[i], (Number) value);
+            } else if (value instanceof Boolean) {
+                spanBuilder.withTag(keys[i], (Boolean) value);
+            } else {
+                spanBuilder.withTag(keys[i], (String) value);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(keys[i]).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
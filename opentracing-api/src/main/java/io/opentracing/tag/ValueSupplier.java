@@ -0,0 +1,29 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.tag;
+
+/**
+ * Computes a tag value on demand, so that expensive values (e.g. a normalized SQL statement) are only computed for
+ * spans that are actually recorded.
+ *
+ * @see io.opentracing.Span#setTag(String, ValueSupplier)
+ * @see AbstractTag#set(io.opentracing.Span, ValueSupplier)
+ */
+public interface ValueSupplier<T> {
+    /**
+     * @return the tag value. May be invoked on a different thread than the one that set the tag, and at most once
+     * per span.
+     */
+    T get();
+}
@@ -53,4 +53,32 @@ public class BinaryAdaptersTest {
         BinaryInject binary = BinaryAdapters.injectionCarrier(ByteBuffer.allocate(1));
         binary.injectionBuffer(2);
     }
+
+    @Test
+    public void testStreamInjectBinary() {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        BinaryStreamInject binary = BinaryAdapters.streamInjectionCarrier(buffer);
+        assertEquals(buffer, binary.nextInjectionBuffer(2));
+        buffer.put((byte) 1).put((byte) 2);
+        assertEquals(buffer, binary.nextInjectionBuffer(2));
+        assertEquals(2, buffer.position());
+        assertEquals(4, buffer.limit());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testStreamInjectBinaryNull() {
+        BinaryAdapters.streamInjectionCarrier(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testStreamInjectBinaryInvalidLength() {
+        BinaryStreamInject binary = BinaryAdapters.streamInjectionCarrier(ByteBuffer.allocate(1));
+        binary.nextInjectionBuffer(0);
+    }
+
+    @Test(expected = AssertionError.class)
+    public void testStreamInjectBinaryLargerLength() {
+        BinaryStreamInject binary = BinaryAdapters.streamInjectionCarrier(ByteBuffer.allocate(1));
+        binary.nextInjectionBuffer(2);
+    }
 }
@@ -31,6 +31,12 @@ public class BuiltinFormatTest {
         assertEquals("Builtin.TEXT_MAP_EXTRACT", Format.Builtin.TEXT_MAP_EXTRACT.toString());
     }
 
+    @Test
+    public void test_CHAR_SEQUENCE_MAP_toString() {
+        assertEquals("Builtin.CHAR_SEQUENCE_MAP_INJECT", Format.Builtin.CHAR_SEQUENCE_MAP_INJECT.toString());
+        assertEquals("Builtin.CHAR_SEQUENCE_MAP_EXTRACT", Format.Builtin.CHAR_SEQUENCE_MAP_EXTRACT.toString());
+    }
+
     @Test
     public void test_BINARY_toString() {
         assertEquals("Builtin.BINARY", Format.Builtin.BINARY.toString());
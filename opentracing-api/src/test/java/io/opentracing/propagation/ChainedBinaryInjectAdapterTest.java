@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ChainedBinaryInjectAdapterTest {
+
+    @Test
+    public void testChain() {
+        ChainedBinaryInjectAdapter binary = new ChainedBinaryInjectAdapter(4, false);
+        ByteBuffer first = binary.nextInjectionBuffer(3);
+        first.put(new byte[] {1, 2, 3});
+        assertSame(first, binary.nextInjectionBuffer(1));
+        first.put((byte) 4);
+        ByteBuffer second = binary.nextInjectionBuffer(6);
+        assertTrue(second.capacity() >= 6);
+        second.put(new byte[] {5, 6, 7, 8, 9, 10});
+
+        ByteBuffer[] buffers = binary.buffers();
+        assertEquals(2, buffers.length);
+        assertEquals(4, buffers[0].remaining());
+        assertEquals(6, buffers[1].remaining());
+        assertEquals(1, buffers[0].get());
+        assertEquals(5, buffers[1].get());
+        assertEquals(10, binary.length());
+    }
+
+    @Test
+    public void testInjectionBuffer() {
+        ChainedBinaryInjectAdapter binary = new ChainedBinaryInjectAdapter(16, true);
+        ByteBuffer buffer = binary.injectionBuffer(3);
+        assertTrue(buffer.isDirect());
+        assertEquals(3, buffer.remaining());
+    }
+
+    @Test
+    public void testAllocateFromPool() {
+        final ByteBuffer pooled = ByteBuffer.allocate(8);
+        pooled.position(2);
+        ChainedBinaryInjectAdapter binary = new ChainedBinaryInjectAdapter(4, false) {
+            @Override
+            protected ByteBuffer allocate(int capacity) {
+                return pooled;
+            }
+        };
+        binary.nextInjectionBuffer(4).put(new byte[] {1, 2});
+
+        ByteBuffer[] buffers = binary.buffers();
+        assertEquals(1, buffers.length);
+        assertEquals(2, buffers[0].position());
+        assertEquals(4, buffers[0].limit());
+        assertEquals(2, binary.length());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLength() {
+        new ChainedBinaryInjectAdapter(4, false).nextInjectionBuffer(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidChunkSize() {
+        new ChainedBinaryInjectAdapter(0, false);
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import org.junit.Test;
+
+public class CharSequenceMapExtractAdapterTest {
+
+    @Test
+    public void testIterator() {
+        Map<StringBuilder, StringBuilder> headers = new LinkedHashMap<StringBuilder, StringBuilder>();
+        headers.put(new StringBuilder("foo"), new StringBuilder("bar"));
+        CharSequenceMapExtractAdapter extractAdapter = new CharSequenceMapExtractAdapter(headers);
+
+        Iterator<Entry<CharSequence, CharSequence>> iterator = extractAdapter.iterator();
+        assertTrue(iterator.hasNext());
+        assertEquals("bar", iterator.next().getValue().toString());
+        assertFalse(iterator.hasNext());
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.propagation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Test;
+
+public class HttpHeadersAdapterTest {
+
+    @Test
+    public void testGetIgnoresCase() {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("X-Trace-Id", "1");
+        headers.put("x-span-id", "2");
+        HttpHeadersAdapter extractAdapter = new HttpHeadersAdapter(headers);
+
+        assertEquals("1", extractAdapter.get("X-Trace-Id"));
+        assertEquals("1", extractAdapter.get("x-trace-id"));
+        assertEquals("1", extractAdapter.get("X-TRACE-ID"));
+        assertEquals("2", extractAdapter.get("x-span-id"));
+        assertEquals("2", extractAdapter.get("X-Span-Id"));
+        assertNull(extractAdapter.get("x-parent-id"));
+    }
+
+    @Test
+    public void testGetAfterPut() {
+        HttpHeadersAdapter adapter = new HttpHeadersAdapter(new LinkedHashMap<String, String>());
+        assertNull(adapter.get("X-Trace-Id"));
+
+        adapter.put("X-Trace-Id", "1");
+        assertEquals("1", adapter.get("X-TRACE-ID"));
+    }
+
+    @Test
+    public void testGetFromCaseInsensitiveMap() {
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        headers.put("X-Trace-Id", "1");
+        HttpHeadersAdapter extractAdapter = new HttpHeadersAdapter(headers);
+
+        assertEquals("1", extractAdapter.get("x-TRACE-id"));
+        assertNull(extractAdapter.get("x-span-id"));
+    }
+}
@@ -15,6 +15,7 @@ package io.opentracing.propagation;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Iterator;
@@ -39,4 +40,15 @@ public class TextMapExtractAdapterTest {
         assertEquals("bar", iterator.next().getValue());
         assertFalse(iterator.hasNext());
     }
+
+    @Test
+    public void testGet() {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        headers.put("foo", "bar");
+        TextMapExtractAdapter extractAdapter = new TextMapExtractAdapter(headers);
+
+        assertEquals("bar", extractAdapter.get("foo"));
+        assertNull(extractAdapter.get("FOO"));
+        assertNull(extractAdapter.get("baz"));
+    }
 }
@@ -43,4 +43,20 @@ public class AbstractTagTest {
 
         verify(activeSpan).setTag(key, value);
     }
+
+    @Test
+    public void testSetLazyTagOnSpan() {
+        ValueSupplier<String> supplier = new ValueSupplier<String>() {
+            @Override
+            public String get() {
+                throw new AssertionError("The tag should not compute the value");
+            }
+        };
+
+        Span activeSpan = mock(Span.class);
+        StringTag tag = new StringTag("bar");
+        tag.set(activeSpan, supplier);
+
+        verify(activeSpan).setTag("bar", supplier);
+    }
 }
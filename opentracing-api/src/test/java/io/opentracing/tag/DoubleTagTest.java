@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.tag;
+
+import io.opentracing.Span;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DoubleTagTest {
+    @Test
+    public void testSetDouble() {
+        Double value = 7.5;
+        String key = "expected.key";
+        Span span = mock(Span.class);
+
+        DoubleTag tag = new DoubleTag(key);
+        tag.set(span, value);
+
+        verify(span).setTag(key, value);
+    }
+
+    @Test
+    public void testSetPrimitiveDouble() {
+        double value = 7.5;
+        String key = "expected.key";
+        Span span = mock(Span.class);
+
+        DoubleTag tag = new DoubleTag(key);
+        tag.set(span, value);
+
+        verify(span).setTag(key, value);
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.tag;
+
+import io.opentracing.log.Fields;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TagKeysTest {
+    @Test
+    public void testWellKnownKeysAreRegistered() {
+        assertTrue(TagKeys.indexOf(Tags.HTTP_URL.getKey()) >= 0);
+        assertTrue(TagKeys.indexOf(Tags.MESSAGE_BUS_DESTINATION.getKey()) >= 0);
+        assertTrue(TagKeys.indexOf(Fields.EVENT) >= 0);
+        assertTrue(TagKeys.indexOf(Fields.STACK) >= 0);
+        assertEquals(Tags.ERROR.getKey(), TagKeys.keyAt(TagKeys.indexOf(Tags.ERROR.getKey())));
+    }
+
+    @Test
+    public void testIndicesAreDense() {
+        for (int i = 0; i < TagKeys.size(); i++) {
+            assertEquals(i, TagKeys.indexOf(TagKeys.keyAt(i)));
+        }
+    }
+
+    @Test
+    public void testRegister() {
+        String key = "tag.keys.test";
+        assertEquals(TagKeys.UNREGISTERED, TagKeys.indexOf(key));
+
+        int index = TagKeys.register(key);
+        assertEquals(TagKeys.size() - 1, index);
+        assertEquals(index, TagKeys.indexOf(key));
+        assertEquals(key, TagKeys.keyAt(index));
+        assertEquals(index, TagKeys.register(key));
+    }
+
+    @Test
+    public void testTagIndex() {
+        assertEquals(TagKeys.indexOf(Tags.DB_STATEMENT.getKey()), Tags.DB_STATEMENT.getIndex());
+        assertEquals(TagKeys.UNREGISTERED, new StringTag("tag.keys.unregistered").getIndex());
+    }
+}
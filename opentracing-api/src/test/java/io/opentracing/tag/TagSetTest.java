@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.tag;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class TagSetTest {
+    @Test
+    public void testWith() {
+        TagSet empty = TagSet.EMPTY;
+        TagSet tags = empty
+                .with(Tags.COMPONENT, "jdbc")
+                .with("retries", 3)
+                .with("cached", false);
+
+        assertEquals(0, empty.size());
+        assertEquals(3, tags.size());
+        assertEquals(Tags.COMPONENT.getKey(), tags.getKey(0));
+        assertEquals("jdbc", tags.getValue(0));
+        assertEquals("retries", tags.getKey(1));
+        assertEquals(3, tags.getValue(1));
+        assertEquals("cached", tags.getKey(2));
+        assertEquals(false, tags.getValue(2));
+    }
+
+    @Test
+    public void testWithReplacesExistingKey() {
+        TagSet tags = TagSet.EMPTY.with("foo", "bar").with("baz", 1);
+        TagSet replaced = tags.with("foo", "qux");
+
+        assertEquals(2, replaced.size());
+        assertEquals("foo", replaced.getKey(0));
+        assertEquals("qux", replaced.getValue(0));
+        assertEquals("bar", tags.getValue(0));
+    }
+
+    @Test
+    public void testApplyToSpan() {
+        TagSet tags = TagSet.EMPTY
+                .with(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+                .with("string", "value")
+                .with("number", 7)
+                .with("boolean", true);
+        Span span = mock(Span.class);
+
+        tags.applyTo(span);
+
+        verify(span).setTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT);
+        verify(span).setTag("string", "value");
+        verify(span).setTag("number", (Number) 7);
+        verify(span).setTag("boolean", true);
+    }
+
+    @Test
+    public void testApplyToSpanBuilder() {
+        TagSet tags = TagSet.EMPTY
+                .with(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+                .with("string", "value")
+                .with("number", 7)
+                .with("boolean", true);
+        Tracer.SpanBuilder spanBuilder = mock(Tracer.SpanBuilder.class);
+
+        tags.applyTo(spanBuilder);
+
+        verify(spanBuilder).withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT);
+        verify(spanBuilder).withTag("string", "value");
+        verify(spanBuilder).withTag("number", (Number) 7);
+        verify(spanBuilder).withTag("boolean", true);
+    }
+
+    @Test
+    public void testToString() {
+        assertEquals("{}", TagSet.EMPTY.toString());
+        assertEquals("{foo=bar, baz=1}", TagSet.EMPTY.with("foo", "bar").with("baz", 1).toString());
+    }
+}
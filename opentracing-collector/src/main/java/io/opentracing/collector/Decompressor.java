@@ -0,0 +1,142 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.collector;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses request bodies by their HTTP {@code Content-Encoding}, reusing its {@link Inflater}s and its output
+ * buffer from one request to the next. Not thread-safe.
+ */
+final class Decompressor {
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final int maxSize;
+    private final Inflater zlibInflater = new Inflater();
+    private final Inflater rawInflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private byte[] output = new byte[64 * 1024];
+
+    /**
+     * @param maxSize the maximum size of a decompressed body
+     */
+    Decompressor(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @return whether the content encoding is supported, null meaning none
+     */
+    static boolean supports(String contentEncoding) {
+        return contentEncoding == null || "identity".equals(contentEncoding) || "gzip".equals(contentEncoding)
+                || "deflate".equals(contentEncoding);
+    }
+
+    /**
+     * @param body a body backed by an array
+     * @return the decompressed body, only valid until the next call, or the body itself if it is not compressed
+     * @throws IllegalArgumentException if the body is malformed, or too large once decompressed
+     */
+    ByteBuffer decompress(ByteBuffer body, String contentEncoding) {
+        if (contentEncoding == null || "identity".equals(contentEncoding)) {
+            return body;
+        }
+        byte[] input = body.array();
+        int offset = body.arrayOffset() + body.position();
+        int end = offset + body.remaining();
+        if ("deflate".equals(contentEncoding)) {
+            return ByteBuffer.wrap(output, 0, inflate(zlibInflater, input, offset, end));
+        }
+
+        // gzip: a header, raw deflate data, and a trailer with the CRC-32 and the size of the data.
+        if (end - offset < 18 || input[offset] != 0x1f || input[offset + 1] != (byte) 0x8b || input[offset + 2] != 8) {
+            throw new IllegalArgumentException("Not in gzip format");
+        }
+        int flags = input[offset + 3];
+        int position = offset + 10;
+        if ((flags & FEXTRA) != 0) {
+            position += 2 + ((input[position] & 0xFF) | (input[position + 1] & 0xFF) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            position = skipZeroTerminated(input, position, end);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            position = skipZeroTerminated(input, position, end);
+        }
+        if ((flags & FHCRC) != 0) {
+            position += 2;
+        }
+        if (position > end - 8) {
+            throw new IllegalArgumentException("Truncated gzip header");
+        }
+        int size = inflate(rawInflater, input, position, end - 8);
+        crc.reset();
+        crc.update(output, 0, size);
+        if (readIntLittleEndian(input, end - 8) != (int) crc.getValue() || readIntLittleEndian(input, end - 4) != size) {
+            throw new IllegalArgumentException("Corrupt gzip trailer");
+        }
+        return ByteBuffer.wrap(output, 0, size);
+    }
+
+    private int inflate(Inflater inflater, byte[] input, int offset, int end) {
+        inflater.reset();
+        inflater.setInput(input, offset, end - offset);
+        int size = 0;
+        try {
+            while (!inflater.finished()) {
+                if (size == output.length) {
+                    if (output.length >= maxSize) {
+                        throw new IllegalArgumentException("Decompressed body larger than " + maxSize + " bytes");
+                    }
+                    output = Arrays.copyOf(output, Math.min(output.length * 2, maxSize));
+                }
+                int inflated = inflater.inflate(output, size, output.length - size);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed body");
+                }
+                size += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed body", e);
+        }
+        return size;
+    }
+
+    private static int skipZeroTerminated(byte[] input, int position, int end) {
+        while (position < end && input[position] != 0) {
+            position++;
+        }
+        return position + 1;
+    }
+
+    private static int readIntLittleEndian(byte[] input, int offset) {
+        return (input[offset] & 0xFF) | (input[offset + 1] & 0xFF) << 8 | (input[offset + 2] & 0xFF) << 16
+                | (input[offset + 3] & 0xFF) << 24;
+    }
+
+    /**
+     * Frees the native memory of the inflaters.
+     */
+    void end() {
+        zlibInflater.end();
+        rawInflater.end();
+    }
+}
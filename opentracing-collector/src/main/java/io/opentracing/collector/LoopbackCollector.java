@@ -0,0 +1,616 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.collector;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-process stand-in for a trace collector, receiving OTLP span batches on localhost, to test and benchmark span
+ * exporters end to end without outside services.
+ *
+ * <p>A single thread serves both transports with NIO:
+ * <ul>
+ *     <li>HTTP/1.1: {@code POST /v1/traces} requests with an {@code application/x-protobuf} body and a
+ *     {@code Content-Length}, on persistent connections. The response is {@code 200} once the batch is accepted,
+ *     {@code 400} if it is malformed, or {@code 429} if the collector is full.</li>
+ *     <li>UDP: one request per datagram, without response.</li>
+ * </ul>
+ *
+ * <p>Received spans are decoded into {@link SpanRecord}s, retained up to a capacity until {@link #takeSpans()}. A batch
+ * which does not fit is dropped whole, and counted in {@link #droppedSpans()}; with a capacity of 0, spans are only
+ * counted. {@link #pause()} stops reading from all connections, so that exporters experience backpressure from full
+ * socket buffers, until {@link #resume()}.
+ *
+ * <p>The ingest latency of a span is the time between its finish timestamp and its receipt, on a wall clock read
+ * like {@code ReferenceTracer} does, so it is only meaningful for spans of the same process.
+ */
+public final class LoopbackCollector implements Closeable {
+    public static final String TRACES_PATH = "/v1/traces";
+    public static final int DEFAULT_CAPACITY = 100_000;
+    static final int MAX_HEADER_SIZE = 16 * 1024;
+    static final int MAX_BODY_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_DATAGRAM_SIZE = 65_536;
+
+    private final int capacity;
+    private final BlockingQueue<SpanRecord> spans;
+    private final Selector selector;
+    private final ServerSocketChannel httpChannel;
+    private final DatagramChannel udpChannel;
+    private final Thread thread;
+    private final Decompressor decompressor = new Decompressor(MAX_BODY_SIZE);
+    private final long anchorMicros;
+    private final long anchorNanos;
+    private volatile boolean paused;
+    private volatile boolean closed;
+
+    private final LongAdder receivedBatches = new LongAdder();
+    private final LongAdder receivedBytes = new LongAdder();
+    private final LongAdder malformedBatches = new LongAdder();
+    private final LongAdder receivedSpans = new LongAdder();
+    private final LongAdder droppedSpans = new LongAdder();
+    private final LongAdder ingestLatencyMicros = new LongAdder();
+    private final AtomicLong maxIngestLatencyMicros = new AtomicLong();
+    private final Object receivedMonitor = new Object();
+
+    public LoopbackCollector() throws IOException {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Binds ephemeral HTTP and UDP ports on the loopback address, and starts serving them.
+     *
+     * @param capacity the number of spans retained until {@link #takeSpans()}, 0 to only count them
+     */
+    public LoopbackCollector(int capacity) throws IOException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("The capacity must not be negative: " + capacity);
+        }
+        this.capacity = capacity;
+        this.spans = capacity == 0 ? null : new ArrayBlockingQueue<SpanRecord>(capacity);
+        this.anchorMicros = System.currentTimeMillis() * 1000;
+        this.anchorNanos = System.nanoTime();
+
+        InetAddress loopback = InetAddress.getLoopbackAddress();
+        this.selector = Selector.open();
+        this.httpChannel = ServerSocketChannel.open();
+        this.udpChannel = DatagramChannel.open();
+        try {
+            httpChannel.bind(new InetSocketAddress(loopback, 0));
+            httpChannel.configureBlocking(false);
+            httpChannel.register(selector, SelectionKey.OP_ACCEPT);
+            udpChannel.bind(new InetSocketAddress(loopback, 0));
+            udpChannel.configureBlocking(false);
+            udpChannel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            closeQuietly();
+            throw e;
+        }
+
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "opentracing-loopback-collector");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * @return the address to send HTTP requests to, at {@link #TRACES_PATH}
+     */
+    public InetSocketAddress httpAddress() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), httpChannel.socket().getLocalPort());
+    }
+
+    /**
+     * @return the address to send UDP datagrams to
+     */
+    public InetSocketAddress udpAddress() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), udpChannel.socket().getLocalPort());
+    }
+
+    long nowMicros() {
+        return anchorMicros + (System.nanoTime() - anchorNanos) / 1000;
+    }
+
+    private void serve() {
+        boolean wasPaused = false;
+        ByteBuffer datagram = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+        try {
+            while (!closed) {
+                boolean paused = this.paused;
+                if (paused != wasPaused) {
+                    for (SelectionKey key : selector.keys()) {
+                        if (key.channel() != httpChannel) {
+                            updateInterest(key, paused);
+                        }
+                    }
+                    wasPaused = paused;
+                }
+                selector.select();
+                for (SelectionKey key : selector.selectedKeys()) {
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept(paused);
+                        } else if (key.channel() == udpChannel) {
+                            receiveDatagrams(datagram);
+                        } else {
+                            HttpConnection connection = (HttpConnection) key.attachment();
+                            if (key.isWritable()) {
+                                connection.flush();
+                            }
+                            if (key.isValid() && key.isReadable()) {
+                                connection.read();
+                            }
+                            if (key.isValid()) {
+                                updateInterest(key, this.paused);
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (key.channel() != httpChannel && key.channel() != udpChannel) {
+                            key.cancel();
+                            key.channel().close();
+                        }
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        } catch (IOException e) {
+            // The selector failed; stop serving.
+        } finally {
+            closeQuietly();
+        }
+    }
+
+    private void updateInterest(SelectionKey key, boolean paused) {
+        int ops = 0;
+        if (key.attachment() instanceof HttpConnection) {
+            HttpConnection connection = (HttpConnection) key.attachment();
+            if (connection.hasPendingResponse()) {
+                ops = SelectionKey.OP_WRITE;
+            } else if (!paused) {
+                ops = SelectionKey.OP_READ;
+            }
+        } else if (!paused) {
+            ops = SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+    }
+
+    private void accept(boolean paused) throws IOException {
+        SocketChannel channel;
+        while ((channel = httpChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, paused ? 0 : SelectionKey.OP_READ);
+            key.attach(new HttpConnection(channel));
+        }
+    }
+
+    private void receiveDatagrams(ByteBuffer datagram) throws IOException {
+        while (!paused) {
+            datagram.clear();
+            if (udpChannel.receive(datagram) == null) {
+                return;
+            }
+            datagram.flip();
+            try {
+                receive(datagram);
+            } catch (IllegalArgumentException e) {
+                // Counted as malformed; there is no one to answer, so carry on with the next datagram.
+            }
+        }
+    }
+
+    /**
+     * Decodes and records a batch.
+     *
+     * @return whether the batch was accepted, false if it was dropped
+     * @throws IllegalArgumentException if the batch is malformed
+     */
+    boolean receive(ByteBuffer batch) {
+        return receive(batch, null);
+    }
+
+    /**
+     * Decompresses, decodes and records a batch. Only called by the serving thread when compressed, as it reuses the
+     * {@link Decompressor}.
+     *
+     * @param contentEncoding a content encoding {@link Decompressor#supports(String) supported}, or null
+     */
+    private boolean receive(ByteBuffer batch, String contentEncoding) {
+        long now = nowMicros();
+        receivedBatches.increment();
+        receivedBytes.add(batch.remaining());
+        List<SpanRecord> records;
+        try {
+            records = OtlpDecoder.decode(decompressor.decompress(batch, contentEncoding), now);
+        } catch (IllegalArgumentException e) {
+            malformedBatches.increment();
+            throw e;
+        }
+        boolean accepted = spans == null || spans.remainingCapacity() >= records.size();
+        if (accepted) {
+            for (SpanRecord record : records) {
+                long latency = now - record.finishMicros();
+                ingestLatencyMicros.add(latency);
+                if (latency > maxIngestLatencyMicros.get()) {
+                    maxIngestLatencyMicros.set(latency);
+                }
+                if (spans != null) {
+                    spans.add(record);
+                }
+            }
+        } else {
+            droppedSpans.add(records.size());
+        }
+        synchronized (receivedMonitor) {
+            receivedSpans.add(records.size());
+            receivedMonitor.notifyAll();
+        }
+        return accepted;
+    }
+
+    /**
+     * Stops reading from connections and datagrams, so that senders block or drop once socket buffers are full.
+     */
+    public void pause() {
+        paused = true;
+        selector.wakeup();
+    }
+
+    public void resume() {
+        paused = false;
+        selector.wakeup();
+    }
+
+    /**
+     * Waits until at least the given number of spans were received, whether they were dropped or not.
+     *
+     * @return whether the spans were received within the timeout
+     */
+    public boolean awaitReceivedSpans(long count, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (receivedMonitor) {
+            while (receivedSpans.sum() < count) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(receivedMonitor, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the retained spans, in the order they were received, which are no longer retained
+     */
+    public List<SpanRecord> takeSpans() {
+        List<SpanRecord> taken = new ArrayList<>();
+        if (spans != null) {
+            spans.drainTo(taken);
+        }
+        return taken;
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of batches received, including malformed ones
+     */
+    public long receivedBatches() {
+        return receivedBatches.sum();
+    }
+
+    /**
+     * @return the number of bytes of the batches received, as sent
+     */
+    public long receivedBytes() {
+        return receivedBytes.sum();
+    }
+
+    public long malformedBatches() {
+        return malformedBatches.sum();
+    }
+
+    /**
+     * @return the number of spans received, including dropped ones
+     */
+    public long receivedSpans() {
+        return receivedSpans.sum();
+    }
+
+    /**
+     * @return the number of spans dropped because the collector was full
+     */
+    public long droppedSpans() {
+        return droppedSpans.sum();
+    }
+
+    /**
+     * @return the mean ingest latency of the spans accepted, or 0 if there are none
+     */
+    public long meanIngestLatencyMicros() {
+        long accepted = receivedSpans.sum() - droppedSpans.sum();
+        return accepted == 0 ? 0 : ingestLatencyMicros.sum() / accepted;
+    }
+
+    public long maxIngestLatencyMicros() {
+        return maxIngestLatencyMicros.get();
+    }
+
+    /**
+     * Stops serving, and closes the connections.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        selector.wakeup();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void closeQuietly() {
+        if (selector.isOpen()) {
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    // Ignore, as there is nothing left to do with the channel.
+                }
+            }
+        }
+        try {
+            httpChannel.close();
+            udpChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            // Ignore, as above.
+        }
+        decompressor.end();
+    }
+
+    /**
+     * The state of an HTTP connection, parsing requests as their bytes arrive.
+     */
+    private final class HttpConnection {
+        private final SocketChannel channel;
+        private ByteBuffer input = ByteBuffer.allocate(8192);
+        private ByteBuffer response;
+        private boolean closeAfterResponse;
+
+        HttpConnection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        boolean hasPendingResponse() {
+            return response != null;
+        }
+
+        void read() throws IOException {
+            if (channel.read(input) < 0) {
+                channel.close();
+                return;
+            }
+            handleRequests();
+        }
+
+        void flush() throws IOException {
+            if (writeResponse() && channel.isOpen()) {
+                // Pipelined requests may be buffered already.
+                handleRequests();
+            }
+        }
+
+        /**
+         * @return whether the response was written entirely
+         */
+        private boolean writeResponse() throws IOException {
+            channel.write(response);
+            if (response.hasRemaining()) {
+                return false;
+            }
+            response = null;
+            if (closeAfterResponse) {
+                channel.close();
+            }
+            return true;
+        }
+
+        private void handleRequests() throws IOException {
+            while (response == null && channel.isOpen()) {
+                int headerEnd = indexOfHeaderEnd();
+                if (headerEnd < 0) {
+                    if (input.position() >= MAX_HEADER_SIZE) {
+                        respond(431, "Request Header Fields Too Large", true);
+                    } else if (!input.hasRemaining()) {
+                        grow(input.capacity() * 2);
+                    }
+                    return;
+                }
+                Request request = Request.parse(
+                        new String(input.array(), 0, headerEnd, StandardCharsets.ISO_8859_1));
+                if (request == null) {
+                    respond(400, "Bad Request", true);
+                    return;
+                }
+                if (request.chunked || request.contentLength < 0) {
+                    respond(411, "Length Required", true);
+                    return;
+                }
+                if (request.contentLength > MAX_BODY_SIZE) {
+                    respond(413, "Payload Too Large", true);
+                    return;
+                }
+                int requestEnd = headerEnd + 4 + request.contentLength;
+                if (input.position() < requestEnd) {
+                    if (input.capacity() < requestEnd) {
+                        grow(requestEnd);
+                    }
+                    return;
+                }
+
+                ByteBuffer body = ByteBuffer.wrap(input.array(), headerEnd + 4, request.contentLength);
+                handle(request, body);
+
+                // Keep the bytes of the next requests.
+                input.flip();
+                input.position(requestEnd);
+                input.compact();
+            }
+        }
+
+        private void handle(Request request, ByteBuffer body) throws IOException {
+            if (!TRACES_PATH.equals(request.path)) {
+                respond(404, "Not Found", !request.keepAlive);
+            } else if (!"POST".equals(request.method)) {
+                respond(405, "Method Not Allowed", !request.keepAlive);
+            } else if (!Decompressor.supports(request.contentEncoding)) {
+                respond(415, "Unsupported Media Type", !request.keepAlive);
+            } else {
+                try {
+                    if (receive(body, request.contentEncoding)) {
+                        respond(200, "OK", !request.keepAlive);
+                    } else {
+                        respond(429, "Too Many Requests", !request.keepAlive);
+                    }
+                } catch (IllegalArgumentException e) {
+                    respond(400, "Bad Request", !request.keepAlive);
+                }
+            }
+        }
+
+        private int indexOfHeaderEnd() {
+            byte[] bytes = input.array();
+            for (int i = 3; i < input.position(); i++) {
+                if (bytes[i] == '\n' && bytes[i - 1] == '\r' && bytes[i - 2] == '\n' && bytes[i - 3] == '\r') {
+                    return i - 3;
+                }
+            }
+            return -1;
+        }
+
+        private void grow(int capacity) {
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            input.flip();
+            grown.put(input);
+            input = grown;
+        }
+
+        private void respond(int status, String reason, boolean close) throws IOException {
+            String head = "HTTP/1.1 " + status + " " + reason + "\r\nContent-Length: 0\r\n"
+                    + (close ? "Connection: close\r\n" : "") + "\r\n";
+            response = ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1));
+            closeAfterResponse = close;
+            writeResponse();
+        }
+    }
+
+    /**
+     * The request line and the relevant headers of an HTTP request.
+     */
+    private static final class Request {
+        String method;
+        String path;
+        boolean keepAlive;
+        int contentLength = -1;
+        boolean chunked;
+        String contentEncoding;
+
+        /**
+         * @return the request, or null if it is malformed
+         */
+        static Request parse(String head) {
+            String[] lines = head.split("\r\n");
+            String[] requestLine = lines[0].split(" ");
+            if (requestLine.length != 3) {
+                return null;
+            }
+            Request request = new Request();
+            request.method = requestLine[0];
+            request.path = requestLine[1];
+            request.keepAlive = "HTTP/1.1".equals(requestLine[2]);
+            for (int i = 1; i < lines.length; i++) {
+                int colon = lines[i].indexOf(':');
+                if (colon <= 0) {
+                    return null;
+                }
+                String name = lines[i].substring(0, colon).trim().toLowerCase(Locale.ROOT);
+                String value = lines[i].substring(colon + 1).trim();
+                switch (name) {
+                    case "content-length":
+                        try {
+                            request.contentLength = Integer.parseInt(value);
+                        } catch (NumberFormatException e) {
+                            return null;
+                        }
+                        break;
+                    case "transfer-encoding":
+                        request.chunked = !"identity".equalsIgnoreCase(value);
+                        break;
+                    case "content-encoding":
+                        request.contentEncoding = value.toLowerCase(Locale.ROOT);
+                        break;
+                    case "connection":
+                        if ("close".equalsIgnoreCase(value)) {
+                            request.keepAlive = false;
+                        } else if ("keep-alive".equalsIgnoreCase(value)) {
+                            request.keepAlive = true;
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            if (!"POST".equals(request.method) && request.contentLength < 0) {
+                request.contentLength = 0;
+            }
+            return request;
+        }
+    }
+}
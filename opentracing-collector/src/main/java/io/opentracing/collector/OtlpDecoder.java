@@ -0,0 +1,394 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.collector;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes OTLP {@code ExportTraceServiceRequest} messages in the Protocol Buffers wire format into
+ * {@link SpanRecord}s. Fields that have no counterpart in a record are skipped.
+ */
+final class OtlpDecoder {
+    static final String REFERENCE_TYPE_KEY = "opentracing.ref_type";
+
+    private final ByteBuffer buffer;
+    private final long receivedMicros;
+
+    private OtlpDecoder(ByteBuffer buffer, long receivedMicros) {
+        this.buffer = buffer.slice().order(ByteOrder.LITTLE_ENDIAN);
+        this.receivedMicros = receivedMicros;
+    }
+
+    /**
+     * Decodes the request between the position and the limit of the buffer, leaving it unchanged.
+     *
+     * @throws IllegalArgumentException if the request is malformed
+     */
+    static List<SpanRecord> decode(ByteBuffer request, long receivedMicros) {
+        OtlpDecoder decoder = new OtlpDecoder(request, receivedMicros);
+        List<SpanRecord> spans = new ArrayList<>();
+        try {
+            decoder.readRequest(spans);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated message", e);
+        }
+        return spans;
+    }
+
+    private void readRequest(List<SpanRecord> spans) {
+        while (buffer.hasRemaining()) {
+            int tag = readTag();
+            if (tag == tag(1, 2)) {
+                int limit = pushLimit();
+                readResourceSpans(spans);
+                popLimit(limit);
+            } else {
+                skip(tag);
+            }
+        }
+    }
+
+    private void readResourceSpans(List<SpanRecord> spans) {
+        while (buffer.hasRemaining()) {
+            int tag = readTag();
+            if (tag == tag(2, 2)) {
+                int limit = pushLimit();
+                readScopeSpans(spans);
+                popLimit(limit);
+            } else {
+                skip(tag);
+            }
+        }
+    }
+
+    private void readScopeSpans(List<SpanRecord> spans) {
+        while (buffer.hasRemaining()) {
+            int tag = readTag();
+            if (tag == tag(2, 2)) {
+                int limit = pushLimit();
+                spans.add(readSpan());
+                popLimit(limit);
+            } else {
+                skip(tag);
+            }
+        }
+    }
+
+    private SpanRecord readSpan() {
+        long traceId = 0;
+        long spanId = 0;
+        long parentId = 0;
+        String name = null;
+        int kind = 0;
+        long startNanos = 0;
+        long endNanos = 0;
+        Map<String, Object> tags = new LinkedHashMap<>();
+        List<SpanRecord.LogEntry> logEntries = new ArrayList<>();
+        List<SpanRecord.Reference> references = new ArrayList<>();
+        boolean error = false;
+        while (buffer.hasRemaining()) {
+            int tag = readTag();
+            int limit;
+            switch (tag) {
+                case 1 << 3 | 2:
+                    traceId = readId();
+                    break;
+                case 2 << 3 | 2:
+                    spanId = readId();
+                    break;
+                case 4 << 3 | 2:
+                    parentId = readId();
+                    break;
+                case 5 << 3 | 2:
+                    name = readString();
+                    break;
+                case 6 << 3:
+                    kind = (int) readVarint();
+                    break;
+                case 7 << 3 | 1:
+                    startNanos = buffer.getLong();
+                    break;
+                case 8 << 3 | 1:
+                    endNanos = buffer.getLong();
+                    break;
+                case 9 << 3 | 2:
+                    readKeyValue(tags);
+                    break;
+                case 11 << 3 | 2:
+                    limit = pushLimit();
+                    logEntries.add(readEvent());
+                    popLimit(limit);
+                    break;
+                case 13 << 3 | 2:
+                    limit = pushLimit();
+                    references.add(readLink());
+                    popLimit(limit);
+                    break;
+                case 15 << 3 | 2:
+                    limit = pushLimit();
+                    error = readStatusCode() == 2;
+                    popLimit(limit);
+                    break;
+                default:
+                    skip(tag);
+                    break;
+            }
+        }
+        return new SpanRecord(traceId, spanId, parentId, name, kind, startNanos / 1000, endNanos / 1000, tags,
+                logEntries, references, error, receivedMicros);
+    }
+
+    private SpanRecord.LogEntry readEvent() {
+        long timeNanos = 0;
+        String name = null;
+        Map<String, Object> fields = new LinkedHashMap<>();
+        while (buffer.hasRemaining()) {
+            int tag = readTag();
+            if (tag == tag(1, 1)) {
+                timeNanos = buffer.getLong();
+            } else if (tag == tag(2, 2)) {
+                name = readString();
+            } else if (tag == tag(3, 2)) {
+                readKeyValue(fields);
+            } else {
+                skip(tag);
+            }
+        }
+        // Events encoded from OpenTracing logs keep their event field; others are named only.
+        if (name != null && !name.isEmpty() && !"log".equals(name) && !fields.containsKey("event")) {
+            fields.put("event", name);
+        }
+        return new SpanRecord.LogEntry(timeNanos / 1000, fields);
+    }
+
+    private SpanRecord.Reference readLink() {
+        long traceId = 0;
+        long spanId = 0;
+        Map<String, Object> attributes = new HashMap<>();
+        while (buffer.hasRemaining()) {
+            int tag = readTag();
+            if (tag == tag(1, 2)) {
+                traceId = readId();
+            } else if (tag == tag(2, 2)) {
+                spanId = readId();
+            } else if (tag == tag(4, 2)) {
+                readKeyValue(attributes);
+            } else {
+                skip(tag);
+            }
+        }
+        Object referenceType = attributes.get(REFERENCE_TYPE_KEY);
+        return new SpanRecord.Reference(referenceType instanceof String ? (String) referenceType : null, traceId,
+                spanId);
+    }
+
+    private int readStatusCode() {
+        int code = 0;
+        while (buffer.hasRemaining()) {
+            int tag = readTag();
+            if (tag == tag(3, 0)) {
+                code = (int) readVarint();
+            } else {
+                skip(tag);
+            }
+        }
+        return code;
+    }
+
+    private void readKeyValue(Map<String, Object> map) {
+        int limit = pushLimit();
+        String key = null;
+        Object value = null;
+        while (buffer.hasRemaining()) {
+            int tag = readTag();
+            if (tag == tag(1, 2)) {
+                key = readString();
+            } else if (tag == tag(2, 2)) {
+                int valueLimit = pushLimit();
+                value = readAnyValue();
+                popLimit(valueLimit);
+            } else {
+                skip(tag);
+            }
+        }
+        popLimit(limit);
+        if (key != null) {
+            map.put(key, value);
+        }
+    }
+
+    private Object readAnyValue() {
+        Object value = null;
+        while (buffer.hasRemaining()) {
+            int tag = readTag();
+            int limit;
+            switch (tag) {
+                case 1 << 3 | 2:
+                    value = readString();
+                    break;
+                case 2 << 3:
+                    value = readVarint() != 0;
+                    break;
+                case 3 << 3:
+                    value = readVarint();
+                    break;
+                case 4 << 3 | 1:
+                    value = Double.longBitsToDouble(buffer.getLong());
+                    break;
+                case 5 << 3 | 2:
+                    limit = pushLimit();
+                    List<Object> values = new ArrayList<>();
+                    while (buffer.hasRemaining()) {
+                        int valueTag = readTag();
+                        if (valueTag == tag(1, 2)) {
+                            int valueLimit = pushLimit();
+                            values.add(readAnyValue());
+                            popLimit(valueLimit);
+                        } else {
+                            skip(valueTag);
+                        }
+                    }
+                    popLimit(limit);
+                    value = Collections.unmodifiableList(values);
+                    break;
+                case 6 << 3 | 2:
+                    limit = pushLimit();
+                    Map<String, Object> entries = new LinkedHashMap<>();
+                    while (buffer.hasRemaining()) {
+                        int entryTag = readTag();
+                        if (entryTag == tag(1, 2)) {
+                            readKeyValue(entries);
+                        } else {
+                            skip(entryTag);
+                        }
+                    }
+                    popLimit(limit);
+                    value = Collections.unmodifiableMap(entries);
+                    break;
+                case 7 << 3 | 2:
+                    byte[] bytes = new byte[readLength()];
+                    buffer.get(bytes);
+                    value = bytes;
+                    break;
+                default:
+                    skip(tag);
+                    break;
+            }
+        }
+        return value;
+    }
+
+    private static int tag(int fieldNumber, int wireType) {
+        return fieldNumber << 3 | wireType;
+    }
+
+    private int readTag() {
+        long tag = readVarint();
+        if (tag >>> 3 == 0 || tag > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid tag: " + tag);
+        }
+        return (int) tag;
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private int readLength() {
+        long length = readVarint();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid length: " + length);
+        }
+        return (int) length;
+    }
+
+    /**
+     * Reads the length of a message, and limits the buffer to it.
+     *
+     * @return the limit to restore once the message is read
+     */
+    private int pushLimit() {
+        int length = readLength();
+        int limit = buffer.limit();
+        buffer.limit(buffer.position() + length);
+        return limit;
+    }
+
+    private void popLimit(int limit) {
+        buffer.limit(limit);
+    }
+
+    private String readString() {
+        int length = readLength();
+        String s;
+        if (buffer.hasArray()) {
+            s = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return s;
+    }
+
+    /**
+     * Reads an 8 or 16-byte ID, keeping its low 64 bits.
+     */
+    private long readId() {
+        int length = readLength();
+        if (length != 8 && length != 16) {
+            throw new IllegalArgumentException("Invalid ID length: " + length);
+        }
+        buffer.position(buffer.position() + length - 8);
+        return Long.reverseBytes(buffer.getLong());
+    }
+
+    private void skip(int tag) {
+        switch (tag & 7) {
+            case 0:
+                readVarint();
+                break;
+            case 1:
+                buffer.position(buffer.position() + 8);
+                break;
+            case 2:
+                int length = readLength();
+                buffer.position(buffer.position() + length);
+                break;
+            case 5:
+                buffer.position(buffer.position() + 4);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported wire type in tag " + tag);
+        }
+    }
+}
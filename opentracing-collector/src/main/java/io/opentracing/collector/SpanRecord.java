@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.collector;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A span received by a {@link LoopbackCollector}, decoded back into the shape of a {@code MockSpan}.
+ */
+public final class SpanRecord {
+    private final long traceId;
+    private final long spanId;
+    private final long parentId;
+    private final String operationName;
+    private final int kind;
+    private final long startMicros;
+    private final long finishMicros;
+    private final Map<String, Object> tags;
+    private final List<LogEntry> logEntries;
+    private final List<Reference> references;
+    private final boolean error;
+    private final long receivedMicros;
+
+    SpanRecord(long traceId, long spanId, long parentId, String operationName, int kind, long startMicros,
+            long finishMicros, Map<String, Object> tags, List<LogEntry> logEntries, List<Reference> references,
+            boolean error, long receivedMicros) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentId = parentId;
+        this.operationName = operationName;
+        this.kind = kind;
+        this.startMicros = startMicros;
+        this.finishMicros = finishMicros;
+        this.tags = tags;
+        this.logEntries = logEntries;
+        this.references = references;
+        this.error = error;
+        this.receivedMicros = receivedMicros;
+    }
+
+    /**
+     * @return the low 64 bits of the trace ID
+     */
+    public long traceId() {
+        return traceId;
+    }
+
+    public long spanId() {
+        return spanId;
+    }
+
+    /**
+     * @return the ID of the parent span, or 0 if the span has no parent
+     */
+    public long parentId() {
+        return parentId;
+    }
+
+    public String operationName() {
+        return operationName;
+    }
+
+    /**
+     * @return the OTLP {@code SpanKind} of the span, 0 if unspecified
+     */
+    public int kind() {
+        return kind;
+    }
+
+    public long startMicros() {
+        return startMicros;
+    }
+
+    public long finishMicros() {
+        return finishMicros;
+    }
+
+    /**
+     * @return the attributes of the span, with integers as Longs
+     */
+    public Map<String, Object> tags() {
+        return tags;
+    }
+
+    public List<LogEntry> logEntries() {
+        return logEntries;
+    }
+
+    /**
+     * @return the links of the span
+     */
+    public List<Reference> references() {
+        return references;
+    }
+
+    /**
+     * @return whether the status of the span is an error
+     */
+    public boolean isError() {
+        return error;
+    }
+
+    /**
+     * @return when the collector received the span, on the same clock as {@link #finishMicros()}
+     */
+    public long receivedMicros() {
+        return receivedMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "SpanRecord{traceId=" + Long.toHexString(traceId) + ", spanId=" + Long.toHexString(spanId)
+                + ", parentId=" + Long.toHexString(parentId) + ", operationName=" + operationName + ", tags=" + tags
+                + "}";
+    }
+
+    public static final class LogEntry {
+        private final long timestampMicros;
+        private final Map<String, ?> fields;
+
+        LogEntry(long timestampMicros, Map<String, ?> fields) {
+            this.timestampMicros = timestampMicros;
+            this.fields = fields;
+        }
+
+        public long timestampMicros() {
+            return timestampMicros;
+        }
+
+        public Map<String, ?> fields() {
+            return fields;
+        }
+    }
+
+    public static final class Reference {
+        private final String referenceType;
+        private final long traceId;
+        private final long spanId;
+
+        Reference(String referenceType, long traceId, long spanId) {
+            this.referenceType = referenceType;
+            this.traceId = traceId;
+            this.spanId = spanId;
+        }
+
+        /**
+         * @return the {@code opentracing.ref_type} attribute of the link, or null
+         */
+        public String getReferenceType() {
+            return referenceType;
+        }
+
+        public long traceId() {
+            return traceId;
+        }
+
+        public long spanId() {
+            return spanId;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.collector;
+
+import io.opentracing.Span;
+import io.opentracing.reference.InMemoryReporter;
+import io.opentracing.reference.OtlpEncoder;
+import io.opentracing.reference.ReferenceTracer;
+import io.opentracing.reference.SpanData;
+import io.opentracing.tag.Tags;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of encoding batches of 64 spans and sending them to a {@link LoopbackCollector}, over HTTP with
+ * persistent connections, waiting for each response, or over UDP.
+ *
+ * <p>The {@code spans} counter gives the spans exported per second.
+ *
+ * <p>
+ * Run with: {@code java -cp <test classpath> org.openjdk.jmh.Main LoopbackCollectorBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class LoopbackCollectorBenchmark {
+    private static final int BATCH_SIZE = 64;
+
+    private LoopbackCollector collector;
+    private SpanData[] batch;
+    private URL url;
+    private InetSocketAddress udpAddress;
+
+    @State(Scope.Thread)
+    public static class Exporter {
+        final OtlpEncoder encoder = new OtlpEncoder("benchmark");
+        DatagramChannel channel;
+
+        @Setup
+        public void setup() throws IOException {
+            channel = DatagramChannel.open();
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            channel.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long spans;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        collector = new LoopbackCollector(0);
+        udpAddress = collector.udpAddress();
+        url = new URL("http", "127.0.0.1", collector.httpAddress().getPort(), LoopbackCollector.TRACES_PATH);
+        InMemoryReporter reporter = new InMemoryReporter();
+        ReferenceTracer tracer = new ReferenceTracer(reporter);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Span span = tracer.buildSpan("GET /api/orders/{id}")
+                    .withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+                    .start();
+            span.setTag(Tags.HTTP_URL, "https://orders.example.com/api/orders/" + i);
+            span.setTag(Tags.HTTP_STATUS, 200);
+            span.finish();
+        }
+        batch = reporter.spans().toArray(new SpanData[0]);
+    }
+
+    @TearDown
+    public void tearDown() {
+        collector.close();
+    }
+
+    @Benchmark
+    public int http(Exporter exporter, Counters counters) throws IOException {
+        ByteBuffer encoded = exporter.encoder.encode(batch, BATCH_SIZE);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/x-protobuf");
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(encoded.remaining());
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(encoded.array(), encoded.arrayOffset() + encoded.position(), encoded.remaining());
+        }
+        int status = connection.getResponseCode();
+        // Reading the response to its end lets the connection be reused.
+        try (InputStream in = connection.getInputStream()) {
+            while (in.read() >= 0) {
+                // Discard.
+            }
+        }
+        counters.spans += BATCH_SIZE;
+        return status;
+    }
+
+    @Benchmark
+    public int udp(Exporter exporter, Counters counters) throws IOException {
+        ByteBuffer encoded = exporter.encoder.encode(batch, BATCH_SIZE);
+        counters.spans += BATCH_SIZE;
+        return exporter.channel.send(encoded, udpAddress);
+    }
+}
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.collector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.opentracing.References;
+import io.opentracing.reference.Compression;
+import io.opentracing.reference.HttpTransport;
+import io.opentracing.reference.InMemoryReporter;
+import io.opentracing.reference.OtlpEncoder;
+import io.opentracing.reference.OtlpExporter;
+import io.opentracing.reference.ReferenceSpan;
+import io.opentracing.reference.ReferenceTracer;
+import io.opentracing.reference.SpanData;
+import io.opentracing.tag.Tags;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.After;
+import org.junit.Test;
+
+public class LoopbackCollectorTest {
+    private final InMemoryReporter reporter = new InMemoryReporter();
+    private final ReferenceTracer tracer = new ReferenceTracer(reporter);
+    private final OtlpEncoder encoder = new OtlpEncoder("test");
+    private LoopbackCollector collector;
+
+    @After
+    public void tearDown() {
+        if (collector != null) {
+            collector.close();
+        }
+    }
+
+    private byte[] encode(int spanCount) {
+        for (int i = 0; i < spanCount; i++) {
+            tracer.buildSpan("op" + i).start().finish();
+        }
+        SpanData[] spans = reporter.spans().toArray(new SpanData[0]);
+        ByteBuffer encoded = encoder.encode(spans, spans.length);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        reporter.clear();
+        return bytes;
+    }
+
+    private URL url() throws IOException {
+        return new URL("http", "127.0.0.1", collector.httpAddress().getPort(), LoopbackCollector.TRACES_PATH);
+    }
+
+    private int post(String method, byte[] body) throws IOException {
+        return post(method, body, null);
+    }
+
+    private int post(String method, byte[] body, String contentEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url().openConnection();
+        connection.setRequestMethod(method);
+        connection.setRequestProperty("Content-Type", "application/x-protobuf");
+        if (contentEncoding != null) {
+            connection.setRequestProperty("Content-Encoding", contentEncoding);
+        }
+        if (body != null) {
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(body);
+            }
+        }
+        int status = connection.getResponseCode();
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            in.close();
+        }
+        return status;
+    }
+
+    @Test
+    public void testHttp() throws Exception {
+        collector = new LoopbackCollector();
+        ReferenceSpan parent = tracer.buildSpan("parent").start();
+        ReferenceSpan other = tracer.buildSpan("other").start();
+        ReferenceSpan span = tracer.buildSpan("child")
+                .asChildOf(parent)
+                .addReference(References.FOLLOWS_FROM, other.context())
+                .withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_SERVER)
+                .withStartTimestamp(1_000_000)
+                .start();
+        span.setTag("int", 42);
+        span.setTag("double", 0.5);
+        span.setTag(Tags.ERROR, true);
+        span.log(1_000_100, "hello");
+        span.finish(1_000_300);
+        ByteBuffer encoded = encoder.encode(reporter.spans().toArray(new SpanData[0]), 1);
+        byte[] body = new byte[encoded.remaining()];
+        encoded.get(body);
+
+        assertEquals(200, post("POST", body));
+        assertTrue(collector.awaitReceivedSpans(1, 10, TimeUnit.SECONDS));
+        List<SpanRecord> spans = collector.takeSpans();
+        assertEquals(1, spans.size());
+        SpanRecord record = spans.get(0);
+        assertEquals(span.context().traceId(), record.traceId());
+        assertEquals(span.context().spanId(), record.spanId());
+        assertEquals(parent.context().spanId(), record.parentId());
+        assertEquals("child", record.operationName());
+        assertEquals(2, record.kind());
+        assertEquals(1_000_000, record.startMicros());
+        assertEquals(1_000_300, record.finishMicros());
+        assertEquals(42L, record.tags().get("int"));
+        assertEquals(0.5, record.tags().get("double"));
+        assertEquals(true, record.tags().get(Tags.ERROR.getKey()));
+        assertTrue(record.isError());
+        assertEquals(1, record.logEntries().size());
+        assertEquals(1_000_100, record.logEntries().get(0).timestampMicros());
+        assertEquals("hello", record.logEntries().get(0).fields().get("event"));
+        assertEquals(1, record.references().size());
+        assertEquals(References.FOLLOWS_FROM, record.references().get(0).getReferenceType());
+        assertEquals(other.context().spanId(), record.references().get(0).spanId());
+
+        assertEquals(1, collector.receivedBatches());
+        assertEquals(body.length, collector.receivedBytes());
+        assertTrue(collector.takeSpans().isEmpty());
+    }
+
+    @Test
+    public void testUdp() throws Exception {
+        collector = new LoopbackCollector();
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.send(ByteBuffer.wrap(encode(3)), collector.udpAddress());
+            channel.send(ByteBuffer.wrap(encode(2)), collector.udpAddress());
+        }
+        assertTrue(collector.awaitReceivedSpans(5, 10, TimeUnit.SECONDS));
+        assertEquals(5, collector.takeSpans().size());
+        assertEquals(2, collector.receivedBatches());
+        assertTrue(collector.maxIngestLatencyMicros() >= collector.meanIngestLatencyMicros());
+        assertTrue(collector.meanIngestLatencyMicros() >= 0);
+    }
+
+    @Test
+    public void testMalformedDatagram() throws Exception {
+        collector = new LoopbackCollector();
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.send(ByteBuffer.wrap(new byte[] {0x0A, 0x05, 0x01}), collector.udpAddress());
+            channel.send(ByteBuffer.wrap(encode(2)), collector.udpAddress());
+        }
+        assertTrue(collector.awaitReceivedSpans(2, 10, TimeUnit.SECONDS));
+        assertEquals(2, collector.takeSpans().size());
+        assertEquals(2, collector.receivedBatches());
+        assertEquals(1, collector.malformedBatches());
+    }
+
+    @Test
+    public void testPersistentPipelinedConnection() throws Exception {
+        collector = new LoopbackCollector();
+        byte[] first = encode(1);
+        byte[] second = encode(2);
+        try (Socket socket = new Socket(collector.httpAddress().getAddress(), collector.httpAddress().getPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(head(first.length));
+            out.write(first);
+            out.write(head(second.length));
+            out.write(second);
+            out.flush();
+
+            InputStream in = socket.getInputStream();
+            assertTrue(readResponse(in).startsWith("HTTP/1.1 200"));
+            assertTrue(readResponse(in).startsWith("HTTP/1.1 200"));
+        }
+        assertEquals(3, collector.takeSpans().size());
+    }
+
+    private static byte[] head(int contentLength) {
+        return ("POST /v1/traces HTTP/1.1\r\nHost: localhost\r\nContent-Type: application/x-protobuf\r\n"
+                + "Content-Length: " + contentLength + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String readResponse(InputStream in) throws IOException {
+        StringBuilder response = new StringBuilder();
+        while (response.indexOf("\r\n\r\n") < 0) {
+            int b = in.read();
+            if (b < 0) {
+                break;
+            }
+            response.append((char) b);
+        }
+        return response.toString();
+    }
+
+    @Test
+    public void testDropsBatchesWhenFull() throws Exception {
+        collector = new LoopbackCollector(2);
+        assertEquals(200, post("POST", encode(2)));
+        assertEquals(429, post("POST", encode(1)));
+        assertEquals(3, collector.receivedSpans());
+        assertEquals(1, collector.droppedSpans());
+        assertEquals(2, collector.takeSpans().size());
+        assertEquals(200, post("POST", encode(1)));
+    }
+
+    @Test
+    public void testCountsOnly() throws Exception {
+        collector = new LoopbackCollector(0);
+        assertEquals(200, post("POST", encode(10)));
+        assertEquals(10, collector.receivedSpans());
+        assertEquals(0, collector.droppedSpans());
+        assertTrue(collector.takeSpans().isEmpty());
+    }
+
+    @Test
+    public void testInvalidRequests() throws Exception {
+        collector = new LoopbackCollector();
+        assertEquals(400, post("POST", new byte[] {0x0A, 0x05, 0x01}));
+        assertEquals(1, collector.malformedBatches());
+        assertEquals(405, post("PUT", encode(1)));
+        assertEquals(405, post("GET", null));
+        assertEquals(0, collector.receivedSpans());
+    }
+
+    @Test
+    public void testCompressedExport() throws Exception {
+        collector = new LoopbackCollector();
+        for (Compression compression : Compression.values()) {
+            OtlpExporter exporter = new OtlpExporter(new HttpTransport(url()), "test", compression,
+                    Deflater.DEFAULT_COMPRESSION, 1024);
+            for (int i = 0; i < 500; i++) {
+                tracer.buildSpan("op").withTag("i", i).start().finish();
+            }
+            SpanData[] spans = reporter.spans().toArray(new SpanData[0]);
+            exporter.export(spans, spans.length);
+            exporter.export(spans, spans.length);
+            reporter.clear();
+            exporter.close();
+
+            assertEquals(1000, exporter.sentSpans());
+            assertEquals(0, exporter.failedSpans());
+            assertTrue(exporter.sentRequests() > 2);
+            List<SpanRecord> records = collector.takeSpans();
+            assertEquals(1000, records.size());
+            assertEquals(499L, records.get(999).tags().get("i"));
+        }
+        assertEquals(0, collector.malformedBatches());
+    }
+
+    @Test
+    public void testCompressedBodies() throws Exception {
+        collector = new LoopbackCollector();
+        byte[] body = encode(3);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(gzip)) {
+            out.write(body);
+        }
+        ByteArrayOutputStream deflate = new ByteArrayOutputStream();
+        try (OutputStream out = new DeflaterOutputStream(deflate)) {
+            out.write(body);
+        }
+        assertEquals(200, post("POST", gzip.toByteArray(), "gzip"));
+        assertEquals(200, post("POST", deflate.toByteArray(), "deflate"));
+        assertEquals(6, collector.takeSpans().size());
+        assertEquals(gzip.size() + deflate.size(), collector.receivedBytes());
+
+        byte[] corrupt = gzip.toByteArray();
+        corrupt[corrupt.length - 5]++;
+        assertEquals(400, post("POST", corrupt, "gzip"));
+        assertEquals(400, post("POST", body, "deflate"));
+        assertEquals(415, post("POST", body, "br"));
+        assertEquals(2, collector.malformedBatches());
+    }
+
+    @Test
+    public void testPause() throws Exception {
+        collector = new LoopbackCollector();
+        collector.pause();
+        try (DatagramChannel channel = DatagramChannel.open()) {
+            channel.send(ByteBuffer.wrap(encode(1)), collector.udpAddress());
+        }
+        assertFalse(collector.awaitReceivedSpans(1, 200, TimeUnit.MILLISECONDS));
+        collector.resume();
+        assertTrue(collector.awaitReceivedSpans(1, 10, TimeUnit.SECONDS));
+    }
+}
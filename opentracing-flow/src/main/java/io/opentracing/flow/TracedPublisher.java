@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.flow;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Flow.Publisher} decorator that propagates the {@link Span} active at subscription time to
+ * all the signals received by the subscriber.
+ *
+ * <p>
+ * Each call to {@link #subscribe(Flow.Subscriber)} captures {@link Tracer#activeSpan()} and wraps the subscriber
+ * in a {@link TracedSubscriber}. If no {@link Span} is active, the subscriber is passed through untouched.
+ *
+ * <p>
+ * Usage:
+ * <pre><code>
+ *     try (Scope scope = tracer.activateSpan(span)) {
+ *         new TracedPublisher&lt;&gt;(publisher, tracer).subscribe(subscriber);
+ *     }
+ * </code></pre>
+ *
+ * @see TracedSubscriber
+ */
+public class TracedPublisher<T> implements Flow.Publisher<T> {
+    private final Flow.Publisher<T> delegate;
+    private final Tracer tracer;
+
+    public TracedPublisher(Flow.Publisher<T> delegate, Tracer tracer) {
+        if (delegate == null || tracer == null) {
+            throw new NullPointerException();
+        }
+        this.delegate = delegate;
+        this.tracer = tracer;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super T> subscriber) {
+        Span span = tracer.activeSpan();
+        if (span == null) {
+            delegate.subscribe(subscriber);
+        } else {
+            delegate.subscribe(new TracedSubscriber<T>(subscriber, tracer.scopeManager(), span));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return TracedPublisher.class.getSimpleName() + '{' + delegate + '}';
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.flow;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A {@link Flow.Subscriber} decorator that makes a {@link Span} active while its delegate processes signals.
+ *
+ * <p>
+ * The {@link Span} is activated once per batch of signals rather than once per element: the subscriber's
+ * {@link Flow.Subscription#request(long)} calls are made with the {@link Span} active, so the elements a publisher
+ * emits synchronously from within {@code request()} are delivered without further activations. Signals delivered
+ * on a thread where the {@link Span} is not already active (e.g. by an asynchronous publisher) activate it for the
+ * duration of the signal: asynchronous publishers thus pay one activation per element, as the end of their delivery
+ * loop cannot be observed, and the {@link Span} must not stay active on their threads past a signal.
+ *
+ * <p>
+ * Requests and cancellations are passed through untouched, and no signal is buffered, so backpressure semantics
+ * are preserved.
+ *
+ * @see TracedPublisher
+ */
+public class TracedSubscriber<T> implements Flow.Subscriber<T> {
+    private final Flow.Subscriber<? super T> delegate;
+    private final ScopeManager scopeManager;
+    private final Span span;
+
+    /**
+     * Create a {@link TracedSubscriber} propagating the currently active {@link Span}, if any.
+     */
+    public TracedSubscriber(Flow.Subscriber<? super T> delegate, Tracer tracer) {
+        this(delegate, tracer.scopeManager(), tracer.activeSpan());
+    }
+
+    /**
+     * @param delegate the {@link Flow.Subscriber} receiving the signals
+     * @param scopeManager the {@link ScopeManager} used to activate the {@link Span}
+     * @param span the {@link Span} to propagate, or null to propagate nothing
+     */
+    public TracedSubscriber(Flow.Subscriber<? super T> delegate, ScopeManager scopeManager, Span span) {
+        if (delegate == null || scopeManager == null) {
+            throw new NullPointerException();
+        }
+        this.delegate = delegate;
+        this.scopeManager = scopeManager;
+        this.span = span;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Scope scope = activate();
+        try {
+            delegate.onSubscribe(span == null ? subscription : new TracedSubscription(subscription));
+        } finally {
+            deactivate(scope);
+        }
+    }
+
+    @Override
+    public void onNext(T item) {
+        Scope scope = activate();
+        try {
+            delegate.onNext(item);
+        } finally {
+            deactivate(scope);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        Scope scope = activate();
+        try {
+            delegate.onError(throwable);
+        } finally {
+            deactivate(scope);
+        }
+    }
+
+    @Override
+    public void onComplete() {
+        Scope scope = activate();
+        try {
+            delegate.onComplete();
+        } finally {
+            deactivate(scope);
+        }
+    }
+
+    /**
+     * @return a new {@link Scope}, or null if there is no {@link Span} or it is already active.
+     */
+    private Scope activate() {
+        if (span == null || scopeManager.activeSpan() == span) {
+            return null;
+        }
+        return scopeManager.activate(span);
+    }
+
+    private static void deactivate(Scope scope) {
+        if (scope != null) {
+            scope.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return TracedSubscriber.class.getSimpleName() + '{' + delegate + '}';
+    }
+
+    /**
+     * Requests with the {@link Span} active, so that synchronous emissions are delivered within a single activation.
+     */
+    private final class TracedSubscription implements Flow.Subscription {
+        private final Flow.Subscription delegate;
+
+        TracedSubscription(Flow.Subscription delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void request(long n) {
+            Scope scope = activate();
+            try {
+                delegate.request(n);
+            } finally {
+                deactivate(scope);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            delegate.cancel();
+        }
+    }
+}
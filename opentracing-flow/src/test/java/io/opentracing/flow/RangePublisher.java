@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.flow;
+
+import java.util.concurrent.Flow;
+
+/**
+ * A synchronous {@link Flow.Publisher} emitting the integers in [0, count) from within
+ * {@link Flow.Subscription#request(long)}, honouring the requested demand.
+ */
+class RangePublisher implements Flow.Publisher<Integer> {
+    private final int count;
+
+    RangePublisher(int count) {
+        this.count = count;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Integer> subscriber) {
+        subscriber.onSubscribe(new RangeSubscription(subscriber));
+    }
+
+    private final class RangeSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super Integer> subscriber;
+        private long demand;
+        private int next;
+        private boolean emitting;
+        private boolean cancelled;
+
+        RangeSubscription(Flow.Subscriber<? super Integer> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancelled = true;
+                subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+                return;
+            }
+            demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+            if (emitting) {
+                // Reentrant request from onNext(), the outer loop takes care of the new demand.
+                return;
+            }
+
+            emitting = true;
+            while (demand > 0 && next < count && !cancelled) {
+                demand--;
+                subscriber.onNext(next++);
+            }
+            emitting = false;
+
+            if (next == count && !cancelled) {
+                cancelled = true;
+                subscriber.onComplete();
+            }
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.flow;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.mock.MockTracer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of signals delivered through a synchronous publisher, with and without {@link TracedPublisher}, and
+ * through an asynchronous {@link SubmissionPublisher}, which delivers on its own thread and so activates the
+ * {@link Span} once per signal.
+ *
+ * <p>
+ * Run with: {@code java -cp <test classpath> org.openjdk.jmh.Main TracedPublisherBenchmark}
+ */
+@State(org.openjdk.jmh.annotations.Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class TracedPublisherBenchmark {
+    private static final int SIGNALS = 1024;
+
+    @Param({"1", "32", "1024"})
+    public int batchSize;
+
+    private MockTracer tracer;
+    private Span span;
+    private Flow.Publisher<Integer> publisher;
+    private Flow.Publisher<Integer> tracedPublisher;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() {
+        tracer = new MockTracer();
+        span = tracer.buildSpan("benchmark").start();
+        publisher = new RangePublisher(SIGNALS);
+        tracedPublisher = new TracedPublisher<>(publisher, tracer);
+        executor = Executors.newSingleThreadExecutor();
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public int plain(Blackhole blackhole) {
+        return drain(publisher, blackhole);
+    }
+
+    @Benchmark
+    public int traced(Blackhole blackhole) {
+        return drain(tracedPublisher, blackhole);
+    }
+
+    @Benchmark
+    public int plainAsync(Blackhole blackhole) throws InterruptedException {
+        return drainAsync(false, blackhole);
+    }
+
+    @Benchmark
+    public int tracedAsync(Blackhole blackhole) throws InterruptedException {
+        return drainAsync(true, blackhole);
+    }
+
+    private int drainAsync(boolean traced, Blackhole blackhole) throws InterruptedException {
+        AsyncSubscriber subscriber = new AsyncSubscriber(blackhole, batchSize);
+        try (SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>(executor, SIGNALS)) {
+            try (Scope scope = tracer.activateSpan(span)) {
+                publisher.subscribe(traced ? new TracedSubscriber<>(subscriber, tracer) : subscriber);
+            }
+            for (int i = 0; i < SIGNALS; i++) {
+                publisher.submit(i);
+            }
+        }
+        subscriber.completed.await();
+        return subscriber.received;
+    }
+
+    private int drain(Flow.Publisher<Integer> publisher, Blackhole blackhole) {
+        BatchSubscriber subscriber = new BatchSubscriber(blackhole);
+        try (Scope scope = tracer.activateSpan(span)) {
+            publisher.subscribe(subscriber);
+        }
+
+        // Request outside of the subscription-time scope, as a downstream consumer on another thread would.
+        while (!subscriber.completed) {
+            subscriber.subscription.request(batchSize);
+        }
+        return subscriber.received;
+    }
+
+    private static final class BatchSubscriber implements Flow.Subscriber<Integer> {
+        private final Blackhole blackhole;
+        Flow.Subscription subscription;
+        int received;
+        boolean completed;
+
+        BatchSubscriber(Blackhole blackhole) {
+            this.blackhole = blackhole;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            received++;
+            blackhole.consume(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed = true;
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    /**
+     * Requests {@code batchSize} signals at a time, from the publisher's delivery thread.
+     */
+    private static final class AsyncSubscriber implements Flow.Subscriber<Integer> {
+        private final Blackhole blackhole;
+        private final int batchSize;
+        final CountDownLatch completed = new CountDownLatch(1);
+        private Flow.Subscription subscription;
+        volatile int received;
+
+        AsyncSubscriber(Blackhole blackhole, int batchSize) {
+            this.blackhole = blackhole;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(batchSize);
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            blackhole.consume(item);
+            if (++received % batchSize == 0) {
+                subscription.request(batchSize);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
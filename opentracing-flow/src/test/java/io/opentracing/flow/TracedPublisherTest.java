@@ -0,0 +1,194 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.flow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class TracedPublisherTest {
+    private final CountingScopeManager scopeManager = new CountingScopeManager();
+    private final MockTracer tracer = new MockTracer(scopeManager);
+
+    @Test
+    public void propagateSubscriptionSpan() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        Span span = tracer.buildSpan("subscribe").start();
+        try (Scope scope = tracer.activateSpan(span)) {
+            new TracedPublisher<>(new RangePublisher(10), tracer).subscribe(subscriber);
+        }
+
+        assertEquals(10, subscriber.activeSpans.size());
+        for (Span activeSpan : subscriber.activeSpans) {
+            assertSame(span, activeSpan);
+        }
+        assertSame(span, subscriber.completeSpan);
+        assertNull(tracer.activeSpan());
+    }
+
+    @Test
+    public void activateOncePerBatch() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber(5);
+        Span span = tracer.buildSpan("subscribe").start();
+        int activations;
+        try (Scope scope = tracer.activateSpan(span)) {
+            activations = scopeManager.activations.get();
+            new TracedPublisher<>(new RangePublisher(100), tracer).subscribe(subscriber);
+        }
+
+        assertEquals(100, subscriber.activeSpans.size());
+        // The span was already active upon subscription, so no activation was needed.
+        assertEquals(activations, scopeManager.activations.get());
+
+        // Request again from another thread: one activation for the whole batch.
+        final RecordingSubscriber other = new RecordingSubscriber(0);
+        try (Scope scope = tracer.activateSpan(span)) {
+            new TracedPublisher<>(new RangePublisher(100), tracer).subscribe(other);
+        }
+        activations = scopeManager.activations.get();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                other.subscription.request(50);
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertEquals(50, other.activeSpans.size());
+        assertEquals(activations + 1, scopeManager.activations.get());
+        for (Span activeSpan : other.activeSpans) {
+            assertSame(span, activeSpan);
+        }
+    }
+
+    @Test
+    public void preserveBackpressure() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        Span span = tracer.buildSpan("subscribe").start();
+        try (Scope scope = tracer.activateSpan(span)) {
+            new TracedPublisher<>(new RangePublisher(10), tracer).subscribe(subscriber);
+        }
+
+        subscriber.subscription.request(3);
+        assertEquals(3, subscriber.activeSpans.size());
+        subscriber.subscription.cancel();
+        subscriber.subscription.request(3);
+        assertEquals(3, subscriber.activeSpans.size());
+        assertNull(subscriber.completeSpan);
+    }
+
+    @Test
+    public void asynchronousPublisher() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        Span span = tracer.buildSpan("subscribe").start();
+        try (SubmissionPublisher<Integer> publisher = new SubmissionPublisher<>()) {
+            try (Scope scope = tracer.activateSpan(span)) {
+                new TracedPublisher<>(publisher, tracer).subscribe(subscriber);
+            }
+            for (int i = 0; i < 10; i++) {
+                publisher.submit(i);
+            }
+        }
+
+        assertTrue(subscriber.completed.await(10, TimeUnit.SECONDS));
+        assertEquals(10, subscriber.activeSpans.size());
+        for (Span activeSpan : subscriber.activeSpans) {
+            assertSame(span, activeSpan);
+        }
+        assertSame(span, subscriber.completeSpan);
+    }
+
+    @Test
+    public void noActiveSpan() throws Exception {
+        RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+        new TracedPublisher<>(new RangePublisher(10), tracer).subscribe(subscriber);
+
+        assertEquals(10, subscriber.activeSpans.size());
+        for (Span activeSpan : subscriber.activeSpans) {
+            assertNull(activeSpan);
+        }
+        assertEquals(0, scopeManager.activations.get());
+    }
+
+    class RecordingSubscriber implements Flow.Subscriber<Integer> {
+        final List<Span> activeSpans = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        final long initialRequest;
+        volatile Flow.Subscription subscription;
+        volatile Span completeSpan;
+
+        RecordingSubscriber(long initialRequest) {
+            this.initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            if (initialRequest > 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onNext(Integer item) {
+            activeSpans.add(tracer.activeSpan());
+            if (initialRequest != Long.MAX_VALUE && initialRequest > 0 && (item + 1) % initialRequest == 0) {
+                subscription.request(initialRequest);
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completeSpan = tracer.activeSpan();
+            completed.countDown();
+        }
+    }
+
+    static class CountingScopeManager implements ScopeManager {
+        final ScopeManager delegate = new ThreadLocalScopeManager();
+        final AtomicInteger activations = new AtomicInteger();
+
+        @Override
+        public Scope activate(Span span) {
+            activations.incrementAndGet();
+            return delegate.activate(span);
+        }
+
+        @Override
+        public Span activeSpan() {
+            return delegate.activeSpan();
+        }
+    }
+}
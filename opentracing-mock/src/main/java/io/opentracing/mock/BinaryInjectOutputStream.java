@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.mock;
+
+import io.opentracing.propagation.BinaryStreamInject;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An OutputStream writing straight into the buffers of a {@link BinaryStreamInject} carrier.
+ */
+final class BinaryInjectOutputStream extends OutputStream {
+    private final BinaryStreamInject carrier;
+    private ByteBuffer buffer;
+
+    BinaryInjectOutputStream(BinaryStreamInject carrier) {
+        this.carrier = carrier;
+    }
+
+    @Override
+    public void write(int b) {
+        if (buffer == null || !buffer.hasRemaining()) {
+            buffer = carrier.nextInjectionBuffer(1);
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (buffer == null || !buffer.hasRemaining()) {
+                buffer = carrier.nextInjectionBuffer(1);
+            }
+            int chunk = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.mock;
+
+/**
+ * Helpers to read {@link CharSequence} carrier entries without converting them to Strings.
+ */
+final class CharSequences {
+    private CharSequences() {
+    }
+
+    static boolean contentEquals(CharSequence sequence, String string) {
+        return sequence.length() == string.length() && regionMatches(sequence, 0, string);
+    }
+
+    static boolean startsWith(CharSequence sequence, String prefix) {
+        return sequence.length() >= prefix.length() && regionMatches(sequence, 0, prefix);
+    }
+
+    private static boolean regionMatches(CharSequence sequence, int offset, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (sequence.charAt(offset + i) != string.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link Long#parseLong(String)}, for decimal values, without creating a String.
+     */
+    static long parseLong(CharSequence sequence) {
+        int length = sequence.length();
+        if (length == 0) {
+            throw new NumberFormatException("Empty id");
+        }
+        boolean negative = sequence.charAt(0) == '-';
+        int start = negative || sequence.charAt(0) == '+' ? 1 : 0;
+        if (start == length) {
+            throw new NumberFormatException("For input string: \"" + sequence + "\"");
+        }
+        // Accumulate negatively, as Long.MIN_VALUE has no positive counterpart.
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long result = 0;
+        for (int i = start; i < length; i++) {
+            int digit = Character.digit(sequence.charAt(i), 10);
+            if (digit < 0 || result < limit / 10) {
+                throw new NumberFormatException("For input string: \"" + sequence + "\"");
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw new NumberFormatException("For input string: \"" + sequence + "\"");
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+}
@@ -17,9 +17,13 @@ import io.opentracing.References;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagKeys;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.ValueSupplier;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -34,6 +38,15 @@ import java.util.concurrent.atomic.AtomicLong;
 public final class MockSpan implements Span {
     // A simple-as-possible (consecutive for repeatability) id generator.
     private static AtomicLong nextId = new AtomicLong(0);
+    // Stands for a null tag value in slots, where null means no value.
+    private static final Object NULL_VALUE = new Object();
+    // One reusable log builder per thread, handed to whichever span the thread is logging to.
+    private static final ThreadLocal<MockLogBuilder> logBuilders = new ThreadLocal<MockLogBuilder>() {
+        @Override
+        protected MockLogBuilder initialValue() {
+            return new MockLogBuilder();
+        }
+    };
 
     private final MockTracer mockTracer;
     private MockContext context;
@@ -41,7 +54,11 @@ public final class MockSpan implements Span {
     private final long startMicros;
     private boolean finished;
     private long finishMicros;
+    // Tags with a key registered in TagKeys are stored by index in slots, all others in the tags map.
+    private Object[] slots;
     private final Map<String, Object> tags;
+    private final PrimitiveTags primitiveTags;
+    private boolean hasLazyTags;
     private final List<LogEntry> logEntries = new ArrayList<>();
     private String operationName;
     private final List<Reference> references;
@@ -82,8 +99,18 @@ public final class MockSpan implements Span {
     /**
      * @return a copy of all tags set on this Span.
      */
-    public Map<String, Object> tags() {
-        return new HashMap<>(this.tags);
+    public synchronized Map<String, Object> tags() {
+        resolveLazyTags();
+        Map<String, Object> tags = new HashMap<>(this.tags);
+        if (slots != null) {
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] != null) {
+                    tags.put(TagKeys.keyAt(i), slots[i] == NULL_VALUE ? null : slots[i]);
+                }
+            }
+        }
+        primitiveTags.copyTo(tags);
+        return tags;
     }
     /**
      * @return a copy of all log entries added to this Span.
@@ -108,6 +135,14 @@ public final class MockSpan implements Span {
         return this.context;
     }
 
+    /**
+     * @return true until the Span is finished, as a MockSpan records all the data set on it.
+     */
+    @Override
+    public synchronized boolean isRecording() {
+        return !finished;
+    }
+
     @Override
     public void finish() {
         this.finish(nowMicros());
@@ -116,6 +151,7 @@ public final class MockSpan implements Span {
     @Override
     public synchronized void finish(long finishMicros) {
         finishedCheck("Finishing already finished span");
+        resolveLazyTags();
         this.finishMicros = finishMicros;
         this.mockTracer.appendFinishedSpan(this);
         this.finished = true;
@@ -136,18 +172,145 @@ public final class MockSpan implements Span {
         return setObjectTag(key, value);
     }
 
+    @Override
+    public synchronized MockSpan setTag(String key, int value) {
+        if (finished) {
+            finishedCheck("Adding tag {%s:%s} to already finished span", key, value);
+        }
+        removeObjectTag(key);
+        primitiveTags.putInt(key, value);
+        return this;
+    }
+
+    @Override
+    public synchronized MockSpan setTag(String key, long value) {
+        if (finished) {
+            finishedCheck("Adding tag {%s:%s} to already finished span", key, value);
+        }
+        removeObjectTag(key);
+        primitiveTags.putLong(key, value);
+        return this;
+    }
+
+    @Override
+    public synchronized MockSpan setTag(String key, double value) {
+        if (finished) {
+            finishedCheck("Adding tag {%s:%s} to already finished span", key, value);
+        }
+        removeObjectTag(key);
+        primitiveTags.putDouble(key, value);
+        return this;
+    }
+
     @Override
     public <T> MockSpan setTag(Tag<T> tag, T value) {
         tag.set(this, value);
         return this;
     }
 
+    @Override
+    public MockSpan setTag(String key, ValueSupplier<?> supplier) {
+        return setLazyTag(key, supplier);
+    }
+
+    @Override
+    public <T> MockSpan setTag(Tag<T> tag, ValueSupplier<? extends T> supplier) {
+        return setLazyTag(tag.getKey(), supplier);
+    }
+
+    private synchronized MockSpan setLazyTag(String key, ValueSupplier<?> supplier) {
+        finishedCheck("Adding lazy tag {%s} to already finished span", key);
+        putObjectTag(key, TagKeys.indexOf(key), new LazyValue(supplier));
+        hasLazyTags = true;
+        return this;
+    }
+
+    /**
+     * Replaces the tags set with a {@link ValueSupplier} by their value. Called when the tags are read, at the
+     * latest when the span is finished. A supplier that throws leaves its tag unset, and the exception is added to
+     * the {@link #generatedErrors()}.
+     */
+    private void resolveLazyTags() {
+        if (!hasLazyTags) {
+            return;
+        }
+        for (Iterator<Map.Entry<String, Object>> it = tags.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Object> entry = it.next();
+            if (entry.getValue() instanceof LazyValue) {
+                try {
+                    entry.setValue(((LazyValue) entry.getValue()).supplier.get());
+                } catch (RuntimeException ex) {
+                    lazyTagFailed(entry.getKey(), ex);
+                    it.remove();
+                }
+            }
+        }
+        if (slots != null) {
+            for (int i = 0; i < slots.length; i++) {
+                if (slots[i] instanceof LazyValue) {
+                    try {
+                        Object value = ((LazyValue) slots[i]).supplier.get();
+                        slots[i] = value == null ? NULL_VALUE : value;
+                    } catch (RuntimeException ex) {
+                        lazyTagFailed(TagKeys.keyAt(i), ex);
+                        slots[i] = null;
+                    }
+                }
+            }
+        }
+        hasLazyTags = false;
+    }
+
+    private void lazyTagFailed(String key, RuntimeException cause) {
+        errors.add(new IllegalStateException(String.format("Computing tag {%s} failed", key), cause));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public synchronized MockSpan setTags(TagSet tags) {
+        finishedCheck("Adding tags %s to already finished span", tags);
+        for (int i = 0; i < tags.size(); i++) {
+            Tag<?> tag = tags.getTag(i);
+            if (tag != null) {
+                ((Tag<Object>) tag).set(this, tags.getValue(i));
+            } else {
+                putObjectTag(tags.getKey(i), TagKeys.indexOf(tags.getKey(i)), tags.getValue(i));
+            }
+        }
+        return this;
+    }
+
     private synchronized MockSpan setObjectTag(String key, Object value) {
         finishedCheck("Adding tag {%s:%s} to already finished span", key, value);
-        tags.put(key, value);
+        putObjectTag(key, TagKeys.indexOf(key), value);
         return this;
     }
 
+    private void putObjectTag(String key, int index, Object value) {
+        primitiveTags.remove(key);
+        if (index == TagKeys.UNREGISTERED) {
+            tags.put(key, value);
+            return;
+        }
+        if (slots == null || index >= slots.length) {
+            Object[] newSlots = new Object[Math.max(TagKeys.size(), index + 1)];
+            if (slots != null) {
+                System.arraycopy(slots, 0, newSlots, 0, slots.length);
+            }
+            slots = newSlots;
+        }
+        slots[index] = value == null ? NULL_VALUE : value;
+    }
+
+    private void removeObjectTag(String key) {
+        int index = TagKeys.indexOf(key);
+        if (index == TagKeys.UNREGISTERED) {
+            tags.remove(key);
+        } else if (slots != null && index < slots.length) {
+            slots[index] = null;
+        }
+    }
+
     @Override
     public final Span log(Map<String, ?> fields) {
         return log(nowMicros(), fields);
@@ -170,6 +333,11 @@ public final class MockSpan implements Span {
         return this.log(timestampMicroseconds, Collections.singletonMap("event", event));
     }
 
+    @Override
+    public MockLogBuilder logBuilder() {
+        return logBuilders.get().reset(this);
+    }
+
     @Override
     public synchronized Span setBaggageItem(String key, String value) {
         finishedCheck("Adding baggage {%s:%s} to already finished span", key, value);
@@ -192,6 +360,8 @@ public final class MockSpan implements Span {
         private final long traceId;
         private final Map<String, String> baggage;
         private final long spanId;
+        private String traceIdString;
+        private String spanIdString;
 
         /**
          * A package-protected constructor to create a new MockContext. This should only be called by MockSpan and/or
@@ -208,8 +378,31 @@ public final class MockSpan implements Span {
         }
 
         public String getBaggageItem(String key) { return this.baggage.get(key); }
-        public String toTraceId() { return String.valueOf(traceId); }
-        public String toSpanId() { return String.valueOf(spanId); }
+
+        public String toTraceId() {
+            // Racy but idempotent caching, as for String.hashCode().
+            String traceIdString = this.traceIdString;
+            if (traceIdString == null) {
+                traceIdString = String.valueOf(traceId);
+                this.traceIdString = traceIdString;
+            }
+            return traceIdString;
+        }
+
+        public String toSpanId() {
+            String spanIdString = this.spanIdString;
+            if (spanIdString == null) {
+                spanIdString = String.valueOf(spanId);
+                this.spanIdString = spanIdString;
+            }
+            return spanIdString;
+        }
+
+        public int toTraceId(char[] dest, int offset) { return getChars(toTraceId(), dest, offset); }
+        public int toSpanId(char[] dest, int offset) { return getChars(toSpanId(), dest, offset); }
+        public int toTraceIdBytes(byte[] dest, int offset) { return getBytes(traceId, dest, offset); }
+        public int toSpanIdBytes(byte[] dest, int offset) { return getBytes(spanId, dest, offset); }
+        public boolean isSampled() { return true; }
         public long traceId() { return traceId; }
         public long spanId() { return spanId; }
 
@@ -226,6 +419,109 @@ public final class MockSpan implements Span {
         public Iterable<Map.Entry<String, String>> baggageItems() {
             return baggage.entrySet();
         }
+
+        private static int getChars(String id, char[] dest, int offset) {
+            if (dest.length - offset < id.length()) {
+                return -1;
+            }
+            id.getChars(0, id.length(), dest, offset);
+            return id.length();
+        }
+
+        private static int getBytes(long id, byte[] dest, int offset) {
+            if (dest.length - offset < 8) {
+                return -1;
+            }
+            for (int i = 7; i >= 0; i--) {
+                dest[offset + i] = (byte) id;
+                id >>>= 8;
+            }
+            return 8;
+        }
+    }
+
+    /**
+     * The log builder returned by {@link MockSpan#logBuilder()}. A single instance is reused by each thread; the
+     * fields of every emitted record end up in a new {@link LogEntry}.
+     */
+    public static final class MockLogBuilder implements LogBuilder {
+        private MockSpan span;
+        private long timestampMicros;
+        private Map<String, Object> fields;
+
+        MockLogBuilder reset(MockSpan span) {
+            this.span = span;
+            this.timestampMicros = 0;
+            this.fields = null;
+            return this;
+        }
+
+        @Override
+        public MockLogBuilder field(String key, String value) {
+            return addField(key, value);
+        }
+
+        @Override
+        public MockLogBuilder field(String key, boolean value) {
+            return addField(key, value);
+        }
+
+        @Override
+        public MockLogBuilder field(String key, int value) {
+            return addField(key, value);
+        }
+
+        @Override
+        public MockLogBuilder field(String key, long value) {
+            return addField(key, value);
+        }
+
+        @Override
+        public MockLogBuilder field(String key, double value) {
+            return addField(key, value);
+        }
+
+        @Override
+        public MockLogBuilder field(String key, Object value) {
+            return addField(key, value);
+        }
+
+        private MockLogBuilder addField(String key, Object value) {
+            if (fields == null) {
+                fields = new HashMap<>();
+            }
+            fields.put(key, value);
+            return this;
+        }
+
+        @Override
+        public MockLogBuilder withTimestamp(long timestampMicros) {
+            this.timestampMicros = timestampMicros;
+            return this;
+        }
+
+        @Override
+        public MockSpan emit() {
+            if (span == null) {
+                throw new IllegalStateException("Log record already emitted");
+            }
+            MockSpan span = this.span;
+            long timestampMicros = this.timestampMicros == 0 ? nowMicros() : this.timestampMicros;
+            Map<String, Object> fields = this.fields == null ? new HashMap<String, Object>() : this.fields;
+            reset(null);
+            return span.log(timestampMicros, fields);
+        }
+    }
+
+    /**
+     * A tag value that is yet to be computed.
+     */
+    static final class LazyValue {
+        final ValueSupplier<?> supplier;
+
+        LazyValue(ValueSupplier<?> supplier) {
+            this.supplier = supplier;
+        }
     }
 
     public static final class LogEntry {
@@ -279,13 +575,24 @@ public final class MockSpan implements Span {
     }
 
     MockSpan(MockTracer tracer, String operationName, long startMicros, Map<String, Object> initialTags, List<Reference> refs) {
+        this(tracer, operationName, startMicros, initialTags, null, refs);
+    }
+
+    MockSpan(MockTracer tracer, String operationName, long startMicros, Map<String, Object> initialTags,
+             PrimitiveTags initialPrimitiveTags, List<Reference> refs) {
         this.mockTracer = tracer;
         this.operationName = operationName;
         this.startMicros = startMicros;
-        if (initialTags == null) {
-            this.tags = new HashMap<>();
-        } else {
-            this.tags = new HashMap<>(initialTags);
+        this.tags = new HashMap<>();
+        this.primitiveTags = new PrimitiveTags();
+        if (initialTags != null) {
+            for (Map.Entry<String, Object> entry : initialTags.entrySet()) {
+                putObjectTag(entry.getKey(), TagKeys.indexOf(entry.getKey()), entry.getValue());
+            }
+            this.hasLazyTags = !initialTags.isEmpty();
+        }
+        if (initialPrimitiveTags != null) {
+            this.primitiveTags.putAll(initialPrimitiveTags);
         }
         if(refs == null) {
             this.references = Collections.emptyList();
@@ -15,8 +15,12 @@ package io.opentracing.mock;
 
 import io.opentracing.propagation.BinaryExtract;
 import io.opentracing.propagation.BinaryInject;
+import io.opentracing.propagation.BinaryStreamInject;
+import io.opentracing.propagation.CharSequenceMapExtract;
+import io.opentracing.propagation.CharSequenceMapInject;
 import io.opentracing.propagation.TextMapExtract;
 import io.opentracing.propagation.TextMapInject;
+import io.opentracing.propagation.TextMapLookup;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.ObjectInputStream;
@@ -40,6 +44,8 @@ import io.opentracing.propagation.Binary;
 import io.opentracing.propagation.Format;
 import io.opentracing.propagation.TextMap;
 import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.ValueSupplier;
 import io.opentracing.util.ThreadLocalScopeManager;
 
 /**
@@ -158,10 +164,16 @@ public class MockTracer implements Tracer {
                 }
 
                 BinaryInject binary = (BinaryInject) carrier;
-                ByteArrayOutputStream stream = new ByteArrayOutputStream();
+                // Stream carriers are written to directly; others need the length up front, so serialize to a copy.
+                ByteArrayOutputStream stream = null;
                 ObjectOutputStream objStream = null;
                 try {
-                    objStream = new ObjectOutputStream(stream);
+                    if (binary instanceof BinaryStreamInject) {
+                        objStream = new ObjectOutputStream(new BinaryInjectOutputStream((BinaryStreamInject) binary));
+                    } else {
+                        stream = new ByteArrayOutputStream();
+                        objStream = new ObjectOutputStream(stream);
+                    }
                     objStream.writeLong(ctx.spanId());
                     objStream.writeLong(ctx.traceId());
 
@@ -171,8 +183,10 @@ public class MockTracer implements Tracer {
                     }
                     objStream.flush(); // *need* to flush ObjectOutputStream.
 
-                    byte[] buff = stream.toByteArray();
-                    binary.injectionBuffer(buff.length).put(buff);
+                    if (stream != null) {
+                        byte[] buff = stream.toByteArray();
+                        binary.injectionBuffer(buff.length).put(buff);
+                    }
 
                 } catch (IOException e) {
                     throw new RuntimeException("Corrupted state", e);
@@ -228,14 +242,32 @@ public class MockTracer implements Tracer {
             public static final String SPAN_ID_KEY = "spanid";
             public static final String TRACE_ID_KEY = "traceid";
             public static final String BAGGAGE_KEY_PREFIX = "baggage-";
+            // The keys of the baggage items, separated by commas, so that TextMapLookup carriers can get them by key.
+            public static final String BAGGAGE_KEYS_KEY = "baggagekeys";
+            // Listed instead of the keys when one of them cannot be listed, so that extraction iterates.
+            public static final String UNLISTED_BAGGAGE_KEYS = ",";
 
             @Override
             public <C> void inject(MockSpan.MockContext ctx, Format<C> format, C carrier) {
+                String baggageKeys = baggageKeys(ctx);
                 if (carrier instanceof TextMapInject) {
                     TextMapInject textMap = (TextMapInject) carrier;
                     for (Map.Entry<String, String> entry : ctx.baggageItems()) {
                         textMap.put(BAGGAGE_KEY_PREFIX + entry.getKey(), entry.getValue());
                     }
+                    if (baggageKeys != null) {
+                        textMap.put(BAGGAGE_KEYS_KEY, baggageKeys);
+                    }
+                    textMap.put(SPAN_ID_KEY, String.valueOf(ctx.spanId()));
+                    textMap.put(TRACE_ID_KEY, String.valueOf(ctx.traceId()));
+                } else if (carrier instanceof CharSequenceMapInject) {
+                    CharSequenceMapInject textMap = (CharSequenceMapInject) carrier;
+                    for (Map.Entry<String, String> entry : ctx.baggageItems()) {
+                        textMap.put(BAGGAGE_KEY_PREFIX + entry.getKey(), entry.getValue());
+                    }
+                    if (baggageKeys != null) {
+                        textMap.put(BAGGAGE_KEYS_KEY, baggageKeys);
+                    }
                     textMap.put(SPAN_ID_KEY, String.valueOf(ctx.spanId()));
                     textMap.put(TRACE_ID_KEY, String.valueOf(ctx.traceId()));
                 } else {
@@ -249,7 +281,33 @@ public class MockTracer implements Tracer {
                 Long spanId = null;
                 Map<String, String> baggage = new HashMap<>();
 
-                if (carrier instanceof TextMapExtract) {
+                if (carrier instanceof TextMapLookup) {
+                    TextMapLookup textMap = (TextMapLookup) carrier;
+                    String traceIdValue = textMap.get(TRACE_ID_KEY);
+                    String spanIdValue = textMap.get(SPAN_ID_KEY);
+                    if (traceIdValue == null || spanIdValue == null) {
+                        return null;
+                    }
+                    traceId = Long.valueOf(traceIdValue);
+                    spanId = Long.valueOf(spanIdValue);
+                    String baggageKeys = textMap.get(BAGGAGE_KEYS_KEY);
+                    // Carriers not injected by this propagator list no keys, and are iterated as before.
+                    if (baggageKeys == null || UNLISTED_BAGGAGE_KEYS.equals(baggageKeys)) {
+                        for (Map.Entry<String, String> entry : textMap) {
+                            if (entry.getKey().startsWith(BAGGAGE_KEY_PREFIX)) {
+                                String key = entry.getKey().substring((BAGGAGE_KEY_PREFIX.length()));
+                                baggage.put(key, entry.getValue());
+                            }
+                        }
+                    } else {
+                        for (String key : baggageKeys.split(",")) {
+                            String value = textMap.get(BAGGAGE_KEY_PREFIX + key);
+                            if (value != null) {
+                                baggage.put(key, value);
+                            }
+                        }
+                    }
+                } else if (carrier instanceof TextMapExtract) {
                     TextMapExtract textMap = (TextMapExtract) carrier;
                     for (Map.Entry<String, String> entry : textMap) {
                         if (TRACE_ID_KEY.equals(entry.getKey())) {
@@ -261,6 +319,19 @@ public class MockTracer implements Tracer {
                             baggage.put(key, entry.getValue());
                         }
                     }
+                } else if (carrier instanceof CharSequenceMapExtract) {
+                    // Only the entries that are used get converted to Strings.
+                    for (Map.Entry<CharSequence, CharSequence> entry : (CharSequenceMapExtract) carrier) {
+                        CharSequence key = entry.getKey();
+                        if (CharSequences.contentEquals(key, TRACE_ID_KEY)) {
+                            traceId = CharSequences.parseLong(entry.getValue());
+                        } else if (CharSequences.contentEquals(key, SPAN_ID_KEY)) {
+                            spanId = CharSequences.parseLong(entry.getValue());
+                        } else if (CharSequences.startsWith(key, BAGGAGE_KEY_PREFIX)) {
+                            String baggageKey = key.subSequence(BAGGAGE_KEY_PREFIX.length(), key.length()).toString();
+                            baggage.put(baggageKey, entry.getValue().toString());
+                        }
+                    }
                 } else {
                     throw new IllegalArgumentException("Unknown carrier");
                 }
@@ -271,6 +342,22 @@ public class MockTracer implements Tracer {
 
                 return null;
             }
+
+            /**
+             * @return the keys of the baggage items separated by commas, {@link #UNLISTED_BAGGAGE_KEYS} if a key is
+             * empty or contains a comma, or null if there are no baggage items
+             */
+            private String baggageKeys(MockSpan.MockContext ctx) {
+                StringBuilder keys = null;
+                for (Map.Entry<String, String> entry : ctx.baggageItems()) {
+                    String key = entry.getKey();
+                    if (key.isEmpty() || key.indexOf(',') >= 0) {
+                        return UNLISTED_BAGGAGE_KEYS;
+                    }
+                    keys = keys == null ? new StringBuilder(key) : keys.append(',').append(key);
+                }
+                return keys == null ? null : keys.toString();
+            }
         };
     }
 
@@ -333,6 +420,7 @@ public class MockTracer implements Tracer {
         private List<MockSpan.Reference> references = new ArrayList<>();
         private boolean ignoringActiveSpan;
         private Map<String, Object> initialTags = new HashMap<>();
+        private PrimitiveTags initialPrimitiveTags;
 
         SpanBuilder(String operationName) {
             this.operationName = operationName;
@@ -367,28 +455,87 @@ public class MockTracer implements Tracer {
 
         @Override
         public SpanBuilder withTag(String key, String value) {
+            removePrimitiveTag(key);
             this.initialTags.put(key, value);
             return this;
         }
 
         @Override
         public SpanBuilder withTag(String key, boolean value) {
+            removePrimitiveTag(key);
             this.initialTags.put(key, value);
             return this;
         }
 
         @Override
         public SpanBuilder withTag(String key, Number value) {
+            removePrimitiveTag(key);
             this.initialTags.put(key, value);
             return this;
         }
 
+        @Override
+        public SpanBuilder withTag(String key, int value) {
+            this.initialTags.remove(key);
+            primitiveTags().putInt(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, long value) {
+            this.initialTags.remove(key);
+            primitiveTags().putLong(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, double value) {
+            this.initialTags.remove(key);
+            primitiveTags().putDouble(key, value);
+            return this;
+        }
+
         @Override
         public <T> Tracer.SpanBuilder withTag(Tag<T> tag, T value) {
+            removePrimitiveTag(tag.getKey());
             this.initialTags.put(tag.getKey(), value);
             return this;
         }
 
+        @Override
+        public SpanBuilder withTag(String key, ValueSupplier<?> supplier) {
+            removePrimitiveTag(key);
+            this.initialTags.put(key, new MockSpan.LazyValue(supplier));
+            return this;
+        }
+
+        @Override
+        public <T> SpanBuilder withTag(Tag<T> tag, ValueSupplier<? extends T> supplier) {
+            return withTag(tag.getKey(), supplier);
+        }
+
+        @Override
+        public SpanBuilder withTags(TagSet tags) {
+            for (int i = 0; i < tags.size(); i++) {
+                removePrimitiveTag(tags.getKey(i));
+                this.initialTags.put(tags.getKey(i), tags.getValue(i));
+            }
+            return this;
+        }
+
+        private PrimitiveTags primitiveTags() {
+            if (initialPrimitiveTags == null) {
+                initialPrimitiveTags = new PrimitiveTags();
+            }
+            return initialPrimitiveTags;
+        }
+
+        private void removePrimitiveTag(String key) {
+            if (initialPrimitiveTags != null) {
+                initialPrimitiveTags.remove(key);
+            }
+        }
+
         @Override
         public SpanBuilder withStartTimestamp(long microseconds) {
             this.startMicros = microseconds;
@@ -404,7 +551,7 @@ public class MockTracer implements Tracer {
             if(references.isEmpty() && !ignoringActiveSpan && activeSpanContext != null) {
                 references.add(new MockSpan.Reference((MockSpan.MockContext) activeSpanContext, References.CHILD_OF));
             }
-            return new MockSpan(MockTracer.this, operationName, startMicros, initialTags, references);
+            return new MockSpan(MockTracer.this, operationName, startMicros, initialTags, initialPrimitiveTags, references);
         }
     }
 }
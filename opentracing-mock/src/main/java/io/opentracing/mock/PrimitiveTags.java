@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.mock;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Stores int, long and double tags without boxing them, as parallel arrays of keys, raw values and types.
+ * Values are boxed only when read through {@link #copyTo(Map)}.
+ *
+ * Not thread-safe.
+ */
+final class PrimitiveTags {
+    static final byte INT = 0;
+    static final byte LONG = 1;
+    static final byte DOUBLE = 2;
+
+    private static final int INITIAL_CAPACITY = 4;
+
+    private String[] keys;
+    private long[] values;
+    private byte[] types;
+    private int size;
+
+    void putInt(String key, int value) {
+        put(key, INT, value);
+    }
+
+    void putLong(String key, long value) {
+        put(key, LONG, value);
+    }
+
+    void putDouble(String key, double value) {
+        put(key, DOUBLE, Double.doubleToRawLongBits(value));
+    }
+
+    private void put(String key, byte type, long bits) {
+        int index = indexOf(key);
+        if (index < 0) {
+            if (keys == null) {
+                keys = new String[INITIAL_CAPACITY];
+                values = new long[INITIAL_CAPACITY];
+                types = new byte[INITIAL_CAPACITY];
+            } else if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+                types = Arrays.copyOf(types, size * 2);
+            }
+            index = size++;
+            keys[index] = key;
+        }
+        values[index] = bits;
+        types[index] = type;
+    }
+
+    void remove(String key) {
+        int index = indexOf(key);
+        if (index >= 0) {
+            size--;
+            keys[index] = keys[size];
+            values[index] = values[size];
+            types[index] = types[size];
+            keys[size] = null;
+        }
+    }
+
+    void putAll(PrimitiveTags other) {
+        for (int i = 0; i < other.size; i++) {
+            put(other.keys[i], other.types[i], other.values[i]);
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Puts all the tags, boxed, into the given map.
+     */
+    void copyTo(Map<String, Object> map) {
+        for (int i = 0; i < size; i++) {
+            map.put(keys[i], box(types[i], values[i]));
+        }
+    }
+
+    static Object box(byte type, long bits) {
+        switch (type) {
+            case INT:
+                return (int) bits;
+            case LONG:
+                return bits;
+            default:
+                return Double.longBitsToDouble(bits);
+        }
+    }
+
+    private int indexOf(String key) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.mock;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CharSequencesTest {
+
+    @Test
+    public void testContentEquals() {
+        Assert.assertTrue(CharSequences.contentEquals(new StringBuilder("spanid"), "spanid"));
+        Assert.assertFalse(CharSequences.contentEquals(new StringBuilder("spanid2"), "spanid"));
+        Assert.assertFalse(CharSequences.contentEquals(new StringBuilder("spanId"), "spanid"));
+    }
+
+    @Test
+    public void testStartsWith() {
+        Assert.assertTrue(CharSequences.startsWith(new StringBuilder("baggage-foo"), "baggage-"));
+        Assert.assertFalse(CharSequences.startsWith(new StringBuilder("baggage"), "baggage-"));
+    }
+
+    @Test
+    public void testParseLong() {
+        Assert.assertEquals(0, CharSequences.parseLong(new StringBuilder("0")));
+        Assert.assertEquals(42, CharSequences.parseLong(new StringBuilder("+42")));
+        Assert.assertEquals(-42, CharSequences.parseLong(new StringBuilder("-42")));
+        Assert.assertEquals(Long.MAX_VALUE, CharSequences.parseLong(new StringBuilder(String.valueOf(Long.MAX_VALUE))));
+        Assert.assertEquals(Long.MIN_VALUE, CharSequences.parseLong(new StringBuilder(String.valueOf(Long.MIN_VALUE))));
+    }
+
+    @Test
+    public void testParseLongInvalid() {
+        String[] invalid = {"", "-", "12a", "9223372036854775808", "-9223372036854775809", "99999999999999999999"};
+        for (String value : invalid) {
+            try {
+                CharSequences.parseLong(new StringBuilder(value));
+                Assert.fail(value);
+            } catch (NumberFormatException expected) {
+            }
+        }
+    }
+}
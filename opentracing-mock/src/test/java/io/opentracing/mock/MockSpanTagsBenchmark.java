@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.mock;
+
+import io.opentracing.tag.IntTag;
+import io.opentracing.tag.StringTag;
+import io.opentracing.tag.Tags;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of setting the typical tags of an HTTP client span on a {@link MockSpan}, with keys registered in
+ * {@link io.opentracing.tag.TagKeys} (stored in array slots) versus the same number of unregistered keys (stored in a
+ * map).
+ *
+ * <p>
+ * Run with: {@code java -cp <test classpath> org.openjdk.jmh.Main MockSpanTagsBenchmark}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MockSpanTagsBenchmark {
+    private static final StringTag URL = new StringTag("benchmark.url");
+    private static final StringTag METHOD = new StringTag("benchmark.method");
+    private static final StringTag HOSTNAME = new StringTag("benchmark.hostname");
+    private static final StringTag KIND = new StringTag("benchmark.kind");
+    private static final StringTag COMPONENT = new StringTag("benchmark.component");
+    private static final IntTag STATUS = new IntTag("benchmark.status");
+
+    private MockSpan span;
+
+    @Setup
+    public void setup() {
+        // The same span is reused: the tags overwrite each other, so the benchmark measures setting, not growing.
+        span = new MockTracer().buildSpan("benchmark").start();
+    }
+
+    @Benchmark
+    public MockSpan registeredTags() {
+        return span.setTag(Tags.HTTP_URL, "http://localhost:8080/")
+                .setTag(Tags.HTTP_METHOD, "GET")
+                .setTag(Tags.PEER_HOSTNAME, "localhost")
+                .setTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+                .setTag(Tags.COMPONENT, "benchmark")
+                .setTag(Tags.HTTP_STATUS, 200);
+    }
+
+    @Benchmark
+    public MockSpan unregisteredTags() {
+        return span.setTag(URL, "http://localhost:8080/")
+                .setTag(METHOD, "GET")
+                .setTag(HOSTNAME, "localhost")
+                .setTag(KIND, Tags.SPAN_KIND_CLIENT)
+                .setTag(COMPONENT, "benchmark")
+                .setTag(STATUS, 200);
+    }
+
+    @Benchmark
+    public MockSpan registeredKeys() {
+        return span.setTag(Tags.HTTP_URL.getKey(), "http://localhost:8080/")
+                .setTag(Tags.HTTP_METHOD.getKey(), "GET")
+                .setTag(Tags.PEER_HOSTNAME.getKey(), "localhost")
+                .setTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+                .setTag(Tags.COMPONENT.getKey(), "benchmark")
+                .setTag(Tags.HTTP_STATUS.getKey(), (Number) 200);
+    }
+
+    @Benchmark
+    public MockSpan unregisteredKeys() {
+        return span.setTag(URL.getKey(), "http://localhost:8080/")
+                .setTag(METHOD.getKey(), "GET")
+                .setTag(HOSTNAME.getKey(), "localhost")
+                .setTag(KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+                .setTag(COMPONENT.getKey(), "benchmark")
+                .setTag(STATUS.getKey(), (Number) 200);
+    }
+}
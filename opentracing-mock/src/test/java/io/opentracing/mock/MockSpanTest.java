@@ -13,16 +13,62 @@
  */
 package io.opentracing.mock;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Assert;
 import org.junit.Test;
 
 import io.opentracing.Span;
+import io.opentracing.log.Fields;
+import io.opentracing.tag.StringTag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.Tags;
+import io.opentracing.tag.ValueSupplier;
 
 /**
  * @author Pavol Loffay
  */
 public class MockSpanTest {
 
+    @Test
+    public void testIsRecording() {
+        MockTracer tracer = new MockTracer();
+        Span span = tracer.buildSpan("foo").start();
+        Assert.assertTrue(span.isRecording());
+        Assert.assertTrue(span.context().isSampled());
+
+        span.finish();
+        Assert.assertFalse(span.isRecording());
+        Assert.assertTrue(span.context().isSampled());
+    }
+
+    @Test
+    public void testIdAccessors() {
+        MockSpan.MockContext context = new MockSpan.MockContext(1234, 0x0102030405060708L,
+                Collections.<String, String>emptyMap());
+
+        Assert.assertEquals("1234", context.toTraceId());
+        Assert.assertSame(context.toTraceId(), context.toTraceId());
+        Assert.assertSame(context.toSpanId(), context.toSpanId());
+
+        char[] chars = new char[8];
+        Assert.assertEquals(4, context.toTraceId(chars, 2));
+        Assert.assertEquals("1234", new String(chars, 2, 4));
+        Assert.assertEquals(-1, context.toTraceId(chars, 5));
+        Assert.assertEquals(-1, context.toSpanId(chars, 0));
+
+        byte[] bytes = new byte[10];
+        Assert.assertEquals(8, context.toSpanIdBytes(bytes, 1));
+        Assert.assertArrayEquals(new byte[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 0}, bytes);
+        Assert.assertEquals(8, context.toTraceIdBytes(bytes, 2));
+        Assert.assertEquals(4, bytes[8]);
+        Assert.assertEquals((byte) 0xd2, bytes[9]);
+        Assert.assertEquals(-1, context.toTraceIdBytes(bytes, 3));
+    }
+
     @Test
     public void testSetOperationNameAfterFinish() {
         MockTracer tracer = new MockTracer();
@@ -51,6 +97,43 @@ public class MockSpanTest {
         Assert.assertEquals(1, tracer.finishedSpans().get(0).generatedErrors().size());
     }
 
+    @Test
+    public void testSetPrimitiveTagAfterFinish() {
+        MockTracer tracer = new MockTracer();
+        Span span = tracer.buildSpan("foo").start();
+        span.finish();
+
+        try {
+            span.setTag("bar", 1L);
+            Assert.fail();
+        } catch (RuntimeException ex) {
+        }
+        Assert.assertEquals(1, tracer.finishedSpans().get(0).generatedErrors().size());
+    }
+
+    @Test
+    public void testPrimitiveTags() {
+        MockTracer tracer = new MockTracer();
+        Span span = tracer.buildSpan("foo")
+                .withTag("int", 1)
+                .withTag("long", 2L)
+                .withTag("overridden", 3L)
+                .withTag("overridden", "builder")
+                .start();
+        span.setTag("double", 4.5);
+        span.setTag("replaced", "string");
+        span.setTag("replaced", 5L);
+        span.finish();
+
+        Map<String, Object> tags = tracer.finishedSpans().get(0).tags();
+        Assert.assertEquals(5, tags.size());
+        Assert.assertEquals(1, tags.get("int"));
+        Assert.assertEquals(2L, tags.get("long"));
+        Assert.assertEquals("builder", tags.get("overridden"));
+        Assert.assertEquals(4.5, tags.get("double"));
+        Assert.assertEquals(5L, tags.get("replaced"));
+    }
+
     @Test
     public void testAddLogAfterFinish() {
         MockTracer tracer = new MockTracer();
@@ -65,6 +148,221 @@ public class MockSpanTest {
         Assert.assertEquals(1, tracer.finishedSpans().get(0).generatedErrors().size());
     }
 
+    @Test
+    public void testRegisteredTagKeys() {
+        MockTracer tracer = new MockTracer();
+        Span span = tracer.buildSpan("foo")
+                .withTag(Tags.COMPONENT, "builder")
+                .withTag(Tags.SPAN_KIND.getKey(), Tags.SPAN_KIND_CLIENT)
+                .withTag("custom", "builder")
+                .start();
+        span.setTag(Tags.COMPONENT, "span");
+        span.setTag(Tags.HTTP_STATUS.getKey(), 200);
+        span.setTag(Tags.HTTP_STATUS, 404);
+        span.setTag(Tags.PEER_PORT, 80);
+        span.setTag(Tags.PEER_PORT.getKey(), 8080);
+        span.setTag(Tags.DB_USER.getKey(), (String) null);
+        span.finish();
+
+        Map<String, Object> tags = tracer.finishedSpans().get(0).tags();
+        Assert.assertEquals(6, tags.size());
+        Assert.assertEquals("span", tags.get(Tags.COMPONENT.getKey()));
+        Assert.assertEquals(Tags.SPAN_KIND_CLIENT, tags.get(Tags.SPAN_KIND.getKey()));
+        Assert.assertEquals("builder", tags.get("custom"));
+        Assert.assertEquals(404, tags.get(Tags.HTTP_STATUS.getKey()));
+        Assert.assertEquals(8080, tags.get(Tags.PEER_PORT.getKey()));
+        Assert.assertTrue(tags.containsKey(Tags.DB_USER.getKey()));
+        Assert.assertNull(tags.get(Tags.DB_USER.getKey()));
+    }
+
+    @Test
+    public void testSetTags() {
+        TagSet tags = TagSet.EMPTY
+                .with(Tags.COMPONENT, "jdbc")
+                .with("replaced", true);
+        MockTracer tracer = new MockTracer();
+        Span span = tracer.buildSpan("foo")
+                .withTag("replaced", 1L)
+                .withTags(tags)
+                .start();
+        span.setTag("primitive", 2L);
+        span.setTags(TagSet.EMPTY.with("primitive", "string").with("other", 3));
+        span.finish();
+
+        Map<String, Object> spanTags = tracer.finishedSpans().get(0).tags();
+        Assert.assertEquals(4, spanTags.size());
+        Assert.assertEquals("jdbc", spanTags.get(Tags.COMPONENT.getKey()));
+        Assert.assertEquals(true, spanTags.get("replaced"));
+        Assert.assertEquals("string", spanTags.get("primitive"));
+        Assert.assertEquals(3, spanTags.get("other"));
+    }
+
+    @Test
+    public void testSetTagCallsTag() {
+        StringTag upperCase = new StringTag(Tags.COMPONENT.getKey()) {
+            @Override
+            public void set(Span span, String tagValue) {
+                span.setTag(key, tagValue.toUpperCase());
+            }
+        };
+        MockTracer tracer = new MockTracer();
+        MockSpan span = tracer.buildSpan("foo").start();
+        span.setTag(upperCase, "jdbc");
+        span.setTag(Tags.HTTP_STATUS, 200);
+        span.finish();
+
+        Assert.assertEquals("JDBC", span.tags().get(Tags.COMPONENT.getKey()));
+        Assert.assertEquals(200, span.tags().get(Tags.HTTP_STATUS.getKey()));
+    }
+
+    @Test
+    public void testSetTagsAppliesTypedTags() {
+        StringTag upperCase = new StringTag("upper") {
+            @Override
+            public void set(Span span, String tagValue) {
+                span.setTag(key, tagValue.toUpperCase());
+            }
+        };
+        MockTracer tracer = new MockTracer();
+        tracer.buildSpan("foo").start().setTags(TagSet.EMPTY.with(upperCase, "value").with("raw", "value")).finish();
+
+        Map<String, Object> spanTags = tracer.finishedSpans().get(0).tags();
+        Assert.assertEquals("VALUE", spanTags.get("upper"));
+        Assert.assertEquals("value", spanTags.get("raw"));
+    }
+
+    @Test
+    public void testLazyTags() {
+        final AtomicInteger calls = new AtomicInteger();
+        ValueSupplier<String> statement = new ValueSupplier<String>() {
+            @Override
+            public String get() {
+                calls.incrementAndGet();
+                return "SELECT ?";
+            }
+        };
+        ValueSupplier<Integer> port = new ValueSupplier<Integer>() {
+            @Override
+            public Integer get() {
+                calls.incrementAndGet();
+                return 5432;
+            }
+        };
+        MockTracer tracer = new MockTracer();
+        Span span = tracer.buildSpan("foo")
+                .withTag(Tags.DB_STATEMENT, statement)
+                .start();
+        span.setTag("peer.port", port);
+        span.setTag("replaced", port);
+        span.setTag("replaced", "eager");
+        Assert.assertEquals(0, calls.get());
+
+        span.finish();
+        Assert.assertEquals(2, calls.get());
+
+        Map<String, Object> tags = tracer.finishedSpans().get(0).tags();
+        Assert.assertEquals("SELECT ?", tags.get(Tags.DB_STATEMENT.getKey()));
+        Assert.assertEquals(5432, tags.get("peer.port"));
+        Assert.assertEquals("eager", tags.get("replaced"));
+        Assert.assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testThrowingLazyTag() {
+        ValueSupplier<String> failing = new ValueSupplier<String>() {
+            @Override
+            public String get() {
+                throw new UnsupportedOperationException("boom");
+            }
+        };
+        MockTracer tracer = new MockTracer();
+        MockSpan span = tracer.buildSpan("foo").withTag(Tags.DB_STATEMENT, failing).start();
+        span.setTag("unregistered", failing);
+        span.setTag("eager", "value");
+        span.finish();
+
+        Assert.assertEquals(1, tracer.finishedSpans().size());
+        Map<String, Object> tags = span.tags();
+        Assert.assertEquals(Collections.singletonMap("eager", (Object) "value"), tags);
+        List<RuntimeException> errors = span.generatedErrors();
+        Assert.assertEquals(2, errors.size());
+        Assert.assertTrue(errors.get(0).getCause() instanceof UnsupportedOperationException);
+    }
+
+    @Test
+    public void testSetTagsAfterFinish() {
+        MockTracer tracer = new MockTracer();
+        Span span = tracer.buildSpan("foo").start();
+        span.finish();
+
+        try {
+            span.setTags(TagSet.EMPTY.with("bar", "foo"));
+            Assert.fail();
+        } catch (RuntimeException ex) {
+        }
+        Assert.assertEquals(1, tracer.finishedSpans().get(0).generatedErrors().size());
+    }
+
+    @Test
+    public void testLogBuilder() {
+        MockTracer tracer = new MockTracer();
+        Span span = tracer.buildSpan("foo").start();
+        RuntimeException error = new RuntimeException();
+        span.logBuilder()
+                .field(Fields.EVENT, "error")
+                .field(Fields.ERROR_OBJECT, error)
+                .field("retry", true)
+                .field("attempts", 3)
+                .field("waited.millis", 1500L)
+                .field("ratio", 0.5)
+                .emit();
+        span.logBuilder().withTimestamp(1002).field(Fields.EVENT, "retry").emit();
+        span.finish();
+
+        List<MockSpan.LogEntry> logs = tracer.finishedSpans().get(0).logEntries();
+        Assert.assertEquals(2, logs.size());
+        Map<String, ?> fields = logs.get(0).fields();
+        Assert.assertEquals(6, fields.size());
+        Assert.assertEquals("error", fields.get(Fields.EVENT));
+        Assert.assertSame(error, fields.get(Fields.ERROR_OBJECT));
+        Assert.assertEquals(true, fields.get("retry"));
+        Assert.assertEquals(3, fields.get("attempts"));
+        Assert.assertEquals(1500L, fields.get("waited.millis"));
+        Assert.assertEquals(0.5, fields.get("ratio"));
+        Assert.assertEquals(1002, logs.get(1).timestampMicros());
+        Assert.assertEquals(Collections.singletonMap(Fields.EVENT, "retry"), logs.get(1).fields());
+    }
+
+    @Test
+    public void testLogBuilderIsReusedPerThread() {
+        MockTracer tracer = new MockTracer();
+        MockSpan first = tracer.buildSpan("first").start();
+        MockSpan second = tracer.buildSpan("second").start();
+
+        Span.LogBuilder builder = first.logBuilder();
+        Assert.assertSame(first, builder.field(Fields.EVENT, "foo").emit());
+        Assert.assertSame(builder, second.logBuilder());
+        Assert.assertSame(second, second.logBuilder().emit());
+
+        Assert.assertEquals(1, first.logEntries().size());
+        Assert.assertEquals(1, second.logEntries().size());
+        Assert.assertTrue(second.logEntries().get(0).fields().isEmpty());
+    }
+
+    @Test
+    public void testLogBuilderAfterFinish() {
+        MockTracer tracer = new MockTracer();
+        Span span = tracer.buildSpan("foo").start();
+        span.finish();
+
+        try {
+            span.logBuilder().field(Fields.EVENT, "bar").emit();
+            Assert.fail();
+        } catch (RuntimeException ex) {
+        }
+        Assert.assertEquals(1, tracer.finishedSpans().get(0).generatedErrors().size());
+    }
+
     @Test
     public void testAddBaggageAfterFinish() {
         MockTracer tracer = new MockTracer();
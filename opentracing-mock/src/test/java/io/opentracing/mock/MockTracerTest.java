@@ -19,9 +19,14 @@ import static org.junit.Assert.assertNotEquals;
 
 import io.opentracing.propagation.BinaryExtract;
 import io.opentracing.propagation.BinaryInject;
+import io.opentracing.propagation.ChainedBinaryInjectAdapter;
+import io.opentracing.propagation.CharSequenceMapExtractAdapter;
+import io.opentracing.propagation.CharSequenceMapInjectAdapter;
+import io.opentracing.propagation.HttpHeadersAdapter;
 import io.opentracing.propagation.TextMapAdapter;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +44,7 @@ import io.opentracing.propagation.BinaryAdapters;
 import io.opentracing.propagation.Format;
 import io.opentracing.propagation.TextMapExtractAdapter;
 import io.opentracing.propagation.TextMapInjectAdapter;
+import io.opentracing.propagation.TextMapLookup;
 
 public class MockTracerTest {
     @Test
@@ -233,6 +239,111 @@ public class MockTracerTest {
         Assert.assertEquals(finishedSpans.get(0).context().spanId(), finishedSpans.get(1).parentId());
     }
 
+    @Test
+    public void testTextMapPropagatorCaseInsensitiveHttpHeaders() {
+        MockTracer tracer = new MockTracer(MockTracer.Propagator.TEXT_MAP);
+        MockSpan parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("bag", "item");
+
+        Map<String, String> headers = new HashMap<>();
+        tracer.inject(parentSpan.context(), Format.Builtin.HTTP_HEADERS, new TextMapAdapter(headers));
+        Map<String, String> upperCaseHeaders = new HashMap<>();
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (entry.getKey().startsWith("baggage-")) {
+                upperCaseHeaders.put(entry.getKey(), entry.getValue());
+            } else {
+                upperCaseHeaders.put(entry.getKey().toUpperCase(), entry.getValue());
+            }
+        }
+
+        MockSpan.MockContext extract = (MockSpan.MockContext) tracer.extract(Format.Builtin.HTTP_HEADERS,
+                new HttpHeadersAdapter(upperCaseHeaders));
+
+        Assert.assertEquals(parentSpan.context().traceId(), extract.traceId());
+        Assert.assertEquals(parentSpan.context().spanId(), extract.spanId());
+        Assert.assertEquals("item", extract.getBaggageItem("bag"));
+    }
+
+    @Test
+    public void testTextMapPropagatorLookupWithoutContext() {
+        MockTracer tracer = new MockTracer(MockTracer.Propagator.TEXT_MAP);
+        TextMapLookup carrier = new TextMapLookup() {
+            @Override
+            public String get(String key) {
+                return null;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                throw new AssertionError("Keys should be looked up, not iterated over");
+            }
+        };
+
+        Assert.assertNull(tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, carrier));
+    }
+
+    @Test
+    public void testTextMapPropagatorLookupBaggage() {
+        MockTracer tracer = new MockTracer(MockTracer.Propagator.TEXT_MAP);
+        MockSpan parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("bag", "item");
+        parentSpan.setBaggageItem("other", "value");
+        final Map<String, String> injectMap = new HashMap<>();
+        tracer.inject(parentSpan.context(), Format.Builtin.TEXT_MAP_INJECT, new TextMapAdapter(injectMap));
+        TextMapLookup carrier = new TextMapLookup() {
+            @Override
+            public String get(String key) {
+                return injectMap.get(key);
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                throw new AssertionError("Keys should be looked up, not iterated over");
+            }
+        };
+
+        MockSpan.MockContext extract = (MockSpan.MockContext) tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, carrier);
+        Assert.assertEquals("item", extract.getBaggageItem("bag"));
+        Assert.assertEquals("value", extract.getBaggageItem("other"));
+    }
+
+    @Test
+    public void testTextMapPropagatorLookupBaggageWithoutKeyList() {
+        MockTracer tracer = new MockTracer(MockTracer.Propagator.TEXT_MAP);
+        Map<String, String> map = new HashMap<>();
+        map.put("traceid", "1");
+        map.put("spanid", "2");
+        map.put("baggage-bag", "item");
+        MockSpan.MockContext extract = (MockSpan.MockContext) tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT,
+                new TextMapAdapter(map));
+        Assert.assertEquals(2, extract.spanId());
+        Assert.assertEquals("item", extract.getBaggageItem("bag"));
+    }
+
+    @Test
+    public void testTextMapPropagatorCharSequenceMap() {
+        MockTracer tracer = new MockTracer(MockTracer.Propagator.TEXT_MAP);
+        MockSpan parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("bag", "item");
+
+        Map<CharSequence, CharSequence> injectMap = new HashMap<>();
+        tracer.inject(parentSpan.context(), Format.Builtin.CHAR_SEQUENCE_MAP_INJECT,
+                new CharSequenceMapInjectAdapter(injectMap));
+
+        // Non-String keys and values, as held by some HTTP libraries.
+        Map<StringBuilder, StringBuilder> headers = new HashMap<>();
+        for (Map.Entry<CharSequence, CharSequence> entry : injectMap.entrySet()) {
+            headers.put(new StringBuilder(entry.getKey()), new StringBuilder(entry.getValue()));
+        }
+        headers.put(new StringBuilder("unrelated"), new StringBuilder("header"));
+        MockSpan.MockContext extract = (MockSpan.MockContext) tracer.extract(Format.Builtin.CHAR_SEQUENCE_MAP_EXTRACT,
+                new CharSequenceMapExtractAdapter(headers));
+
+        Assert.assertEquals(parentSpan.context().traceId(), extract.traceId());
+        Assert.assertEquals(parentSpan.context().spanId(), extract.spanId());
+        Assert.assertEquals("item", extract.getBaggageItem("bag"));
+    }
+
     @Test
     public void testBinaryPropagator() {
         MockTracer tracer = new MockTracer(MockTracer.Propagator.BINARY);
@@ -266,6 +377,46 @@ public class MockTracerTest {
         Assert.assertEquals("baritem", finishedSpans.get(1).getBaggageItem("barbag"));
     }
 
+    @Test
+    public void testBinaryPropagatorStreamInject() {
+        MockTracer tracer = new MockTracer(MockTracer.Propagator.BINARY);
+        MockSpan parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("foobag", "fooitem");
+
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        tracer.inject(parentSpan.context(), Format.Builtin.BINARY_INJECT, BinaryAdapters.streamInjectionCarrier(buffer));
+        buffer.flip();
+        MockSpan.MockContext extract = (MockSpan.MockContext) tracer.extract(Format.Builtin.BINARY_EXTRACT,
+                BinaryAdapters.extractionCarrier(buffer));
+
+        Assert.assertEquals(parentSpan.context().traceId(), extract.traceId());
+        Assert.assertEquals(parentSpan.context().spanId(), extract.spanId());
+        Assert.assertEquals("fooitem", extract.getBaggageItem("foobag"));
+    }
+
+    @Test
+    public void testBinaryPropagatorChainedInject() {
+        MockTracer tracer = new MockTracer(MockTracer.Propagator.BINARY);
+        MockSpan parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("foobag", "fooitem");
+
+        ChainedBinaryInjectAdapter binary = new ChainedBinaryInjectAdapter(8, true);
+        tracer.inject(parentSpan.context(), Format.Builtin.BINARY_INJECT, binary);
+        Assert.assertTrue(binary.buffers().length > 1);
+
+        ByteBuffer buffer = ByteBuffer.allocate(binary.length());
+        for (ByteBuffer chunk : binary.buffers()) {
+            buffer.put(chunk);
+        }
+        buffer.flip();
+        MockSpan.MockContext extract = (MockSpan.MockContext) tracer.extract(Format.Builtin.BINARY_EXTRACT,
+                BinaryAdapters.extractionCarrier(buffer));
+
+        Assert.assertEquals(parentSpan.context().traceId(), extract.traceId());
+        Assert.assertEquals(parentSpan.context().spanId(), extract.spanId());
+        Assert.assertEquals("fooitem", extract.getBaggageItem("foobag"));
+    }
+
     @Test(expected = RuntimeException.class)
     public void testBinaryPropagatorExtractError() {
         MockTracer tracer = new MockTracer(MockTracer.Propagator.BINARY);
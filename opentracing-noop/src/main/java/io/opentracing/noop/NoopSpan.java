@@ -16,11 +16,17 @@ package io.opentracing.noop;
 import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.ValueSupplier;
 
 import java.util.Map;
 
 public interface NoopSpan extends Span {
     static final NoopSpan INSTANCE = new NoopSpanImpl();
+
+    interface NoopLogBuilder extends Span.LogBuilder {
+        NoopLogBuilder INSTANCE = new NoopSpanImpl.NoopLogBuilderImpl();
+    }
 }
 
 final class NoopSpanImpl implements NoopSpan {
@@ -28,6 +34,9 @@ final class NoopSpanImpl implements NoopSpan {
     @Override
     public SpanContext context() { return NoopSpanContextImpl.INSTANCE; }
 
+    @Override
+    public boolean isRecording() { return false; }
+
     @Override
     public void finish() {}
 
@@ -43,9 +52,27 @@ final class NoopSpanImpl implements NoopSpan {
     @Override
     public NoopSpan setTag(String key, Number value) { return this; }
 
+    @Override
+    public NoopSpan setTag(String key, int value) { return this; }
+
+    @Override
+    public NoopSpan setTag(String key, long value) { return this; }
+
+    @Override
+    public NoopSpan setTag(String key, double value) { return this; }
+
     @Override
     public <T> NoopSpan setTag(Tag<T> tag, T value) { return this; }
 
+    @Override
+    public NoopSpan setTag(String key, ValueSupplier<?> supplier) { return this; }
+
+    @Override
+    public <T> NoopSpan setTag(Tag<T> tag, ValueSupplier<? extends T> supplier) { return this; }
+
+    @Override
+    public NoopSpan setTags(TagSet tags) { return this; }
+
     @Override
     public NoopSpan log(Map<String, ?> fields) { return this; }
 
@@ -58,6 +85,9 @@ final class NoopSpanImpl implements NoopSpan {
     @Override
     public NoopSpan log(long timestampMicroseconds, String event) { return this; }
 
+    @Override
+    public NoopLogBuilder logBuilder() { return NoopLogBuilder.INSTANCE; }
+
     @Override
     public NoopSpan setBaggageItem(String key, String value) { return this; }
 
@@ -69,5 +99,31 @@ final class NoopSpanImpl implements NoopSpan {
 
     @Override
     public String toString() { return NoopSpan.class.getSimpleName(); }
+
+    static final class NoopLogBuilderImpl implements NoopLogBuilder {
+        @Override
+        public NoopLogBuilder field(String key, String value) { return this; }
+
+        @Override
+        public NoopLogBuilder field(String key, boolean value) { return this; }
+
+        @Override
+        public NoopLogBuilder field(String key, int value) { return this; }
+
+        @Override
+        public NoopLogBuilder field(String key, long value) { return this; }
+
+        @Override
+        public NoopLogBuilder field(String key, double value) { return this; }
+
+        @Override
+        public NoopLogBuilder field(String key, Object value) { return this; }
+
+        @Override
+        public NoopLogBuilder withTimestamp(long timestampMicroseconds) { return this; }
+
+        @Override
+        public NoopSpan emit() { return NoopSpan.INSTANCE; }
+    }
 }
 
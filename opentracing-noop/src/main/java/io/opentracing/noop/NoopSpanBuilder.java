@@ -18,6 +18,8 @@ import io.opentracing.Span;
 import io.opentracing.SpanContext;
 import io.opentracing.Tracer;
 import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.ValueSupplier;
 
 public interface NoopSpanBuilder extends Tracer.SpanBuilder {
     NoopSpanBuilder INSTANCE = new NoopSpanBuilderImpl();
@@ -58,11 +60,41 @@ final class NoopSpanBuilderImpl implements NoopSpanBuilder {
         return this;
     }
 
+    @Override
+    public Tracer.SpanBuilder withTag(String key, int value) {
+        return this;
+    }
+
+    @Override
+    public Tracer.SpanBuilder withTag(String key, long value) {
+        return this;
+    }
+
+    @Override
+    public Tracer.SpanBuilder withTag(String key, double value) {
+        return this;
+    }
+
     @Override
     public <T> Tracer.SpanBuilder withTag(Tag<T> key, T value) {
         return this;
     }
 
+    @Override
+    public Tracer.SpanBuilder withTag(String key, ValueSupplier<?> supplier) {
+        return this;
+    }
+
+    @Override
+    public <T> Tracer.SpanBuilder withTag(Tag<T> tag, ValueSupplier<? extends T> supplier) {
+        return this;
+    }
+
+    @Override
+    public Tracer.SpanBuilder withTags(TagSet tags) {
+        return this;
+    }
+
     @Override
     public Tracer.SpanBuilder withStartTimestamp(long microseconds) {
         return this;
@@ -30,11 +30,36 @@ final class NoopSpanContextImpl implements NoopSpanContext {
         return "";
     }
 
+    @Override
+    public int toTraceId(char[] dest, int offset) {
+        return 0;
+    }
+
+    @Override
+    public int toTraceIdBytes(byte[] dest, int offset) {
+        return 0;
+    }
+
     @Override
     public String toSpanId() {
         return "";
     }
 
+    @Override
+    public int toSpanId(char[] dest, int offset) {
+        return 0;
+    }
+
+    @Override
+    public int toSpanIdBytes(byte[] dest, int offset) {
+        return 0;
+    }
+
+    @Override
+    public boolean isSampled() {
+        return false;
+    }
+
     @Override
     public Iterable<Map.Entry<String, String>> baggageItems() {
         return Collections.emptyList();
@@ -32,4 +32,19 @@ public class NoopSpanContextTest {
         SpanContext ctx = NoopSpanContextImpl.INSTANCE;
         assertEquals("", ctx.toSpanId());
     }
+
+    @Test
+    public void identifierBuffersTest() {
+        SpanContext ctx = NoopSpanContextImpl.INSTANCE;
+        assertEquals(0, ctx.toTraceId(new char[0], 0));
+        assertEquals(0, ctx.toSpanId(new char[0], 0));
+        assertEquals(0, ctx.toTraceIdBytes(new byte[0], 0));
+        assertEquals(0, ctx.toSpanIdBytes(new byte[0], 0));
+    }
+
+    @Test
+    public void sampledTest() {
+        SpanContext ctx = NoopSpanContextImpl.INSTANCE;
+        assertFalse(ctx.isSampled());
+    }
 }
@@ -19,6 +19,7 @@ import org.junit.Test;
 
 import io.opentracing.Span;
 import io.opentracing.tag.Tags;
+import io.opentracing.tag.ValueSupplier;
 
 public class NoopTracerTest {
 
@@ -32,4 +33,36 @@ public class NoopTracerTest {
             fail("NoopTracer.activeSpan() should return a usable span");
         }
     }
+
+    @Test
+    public void spanIsNotRecordingTest() {
+        assertFalse(NoopTracerImpl.INSTANCE.buildSpan("foo").start().isRecording());
+        assertFalse(NoopTracerImpl.INSTANCE.activeSpan().isRecording());
+    }
+
+    @Test
+    public void logBuilderIsSharedTest() {
+        Span span = NoopTracerImpl.INSTANCE.buildSpan("foo").start();
+        Span.LogBuilder builder = span.logBuilder();
+        assertSame(NoopSpan.NoopLogBuilder.INSTANCE, builder);
+        assertSame(span, builder.field("event", "bar").field("waited.millis", 1500L).emit());
+        assertSame(builder, NoopTracerImpl.INSTANCE.activeSpan().logBuilder());
+    }
+
+    @Test
+    public void lazyTagIsNeverComputedTest() {
+        ValueSupplier<String> supplier = new ValueSupplier<String>() {
+            @Override
+            public String get() {
+                throw new AssertionError("A noop span should not compute tag values");
+            }
+        };
+        Span span = NoopTracerImpl.INSTANCE.buildSpan("foo")
+                .withTag("foo", supplier)
+                .withTag(Tags.DB_STATEMENT, supplier)
+                .start();
+        span.setTag("bar", supplier);
+        Tags.DB_STATEMENT.set(span, supplier);
+        span.finish();
+    }
 }
@@ -0,0 +1,344 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.tag.ValueSupplier;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Compact, fixed-capacity storage for key:value attributes of a span: its tags, or the fields of its logs.
+ *
+ * <p>Primitive values are stored unboxed. Writers reserve slots with a CAS, so concurrent writers never block each
+ * other; attributes that do not fit are dropped and counted in {@link #dropped()}. A key may occur more than once, in
+ * which case its last occurrence wins.
+ *
+ * <p>Reporters read attributes once the span is finished. A slot whose key is null was reserved but never written and
+ * must be skipped.
+ */
+public final class Attributes {
+    /**
+     * The type of an attribute value, telling which accessor to read it with.
+     */
+    public enum Type {
+        /** Read with {@link #objectValue(int)}. */
+        STRING,
+        /** Read with {@link #booleanValue(int)}. */
+        BOOLEAN,
+        /** Read with {@link #longValue(int)}. */
+        INT,
+        /** Read with {@link #longValue(int)}. */
+        LONG,
+        /** Read with {@link #doubleValue(int)}. */
+        DOUBLE,
+        /** Any other value, including numbers of other types; read with {@link #objectValue(int)}. */
+        OBJECT
+    }
+
+    private static final Type[] TYPES = Type.values();
+    // Not a Type, as values of this kind are resolved before the span is reported.
+    private static final byte LAZY = -1;
+
+    private static final AtomicIntegerFieldUpdater<Attributes> SIZE =
+            AtomicIntegerFieldUpdater.newUpdater(Attributes.class, "size");
+    private static final AtomicIntegerFieldUpdater<Attributes> DROPPED =
+            AtomicIntegerFieldUpdater.newUpdater(Attributes.class, "dropped");
+
+    private final String[] keys;
+    private final byte[] types;
+    private final long[] bits;
+    private final Object[] objects;
+    private volatile int size;
+    private volatile int dropped;
+    private volatile boolean hasLazyValues;
+
+    Attributes(int capacity) {
+        this.keys = new String[capacity];
+        this.types = new byte[capacity];
+        this.bits = new long[capacity];
+        this.objects = new Object[capacity];
+    }
+
+    /**
+     * Reserves the given number of consecutive slots.
+     *
+     * @return the index of the first slot, or -1 if there is not enough room left, in which case the attributes are
+     * counted as dropped
+     */
+    int reserve(int count) {
+        for (;;) {
+            int current = size;
+            if (count > keys.length - current) {
+                DROPPED.addAndGet(this, count);
+                return -1;
+            }
+            if (SIZE.compareAndSet(this, current, current + count)) {
+                return current;
+            }
+        }
+    }
+
+    void set(int index, String key, String value) {
+        set(index, key, Type.STRING.ordinal(), 0, value);
+    }
+
+    void set(int index, String key, boolean value) {
+        set(index, key, Type.BOOLEAN.ordinal(), value ? 1 : 0, null);
+    }
+
+    void set(int index, String key, int value) {
+        set(index, key, Type.INT.ordinal(), value, null);
+    }
+
+    void set(int index, String key, long value) {
+        set(index, key, Type.LONG.ordinal(), value, null);
+    }
+
+    void set(int index, String key, double value) {
+        set(index, key, Type.DOUBLE.ordinal(), Double.doubleToRawLongBits(value), null);
+    }
+
+    /**
+     * Stores the value with its most specific type.
+     */
+    void set(int index, String key, Object value) {
+        if (value instanceof String) {
+            set(index, key, (String) value);
+        } else if (value instanceof Boolean) {
+            set(index, key, ((Boolean) value).booleanValue());
+        } else if (value instanceof Integer) {
+            set(index, key, ((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            set(index, key, ((Long) value).longValue());
+        } else if (value instanceof Double) {
+            set(index, key, ((Double) value).doubleValue());
+        } else {
+            set(index, key, Type.OBJECT.ordinal(), 0, value);
+        }
+    }
+
+    /**
+     * Stores a value to be computed by {@link #resolveLazyValues()}.
+     */
+    void setLazy(int index, String key, ValueSupplier<?> supplier) {
+        set(index, key, LAZY, 0, supplier);
+        hasLazyValues = true;
+    }
+
+    private void set(int index, String key, int type, long bits, Object object) {
+        this.types[index] = (byte) type;
+        this.bits[index] = bits;
+        this.objects[index] = object;
+        this.keys[index] = key;
+    }
+
+    /**
+     * Copies the attribute at the given index into a slot of another instance, skipping it if it was never written.
+     */
+    void copy(int index, Attributes dest, int destIndex) {
+        if (keys[index] != null) {
+            dest.set(destIndex, keys[index], types[index], bits[index], objects[index]);
+        }
+    }
+
+    void add(String key, String value) {
+        int index = reserve(1);
+        if (index >= 0) {
+            set(index, key, value);
+        }
+    }
+
+    void add(String key, boolean value) {
+        int index = reserve(1);
+        if (index >= 0) {
+            set(index, key, value);
+        }
+    }
+
+    void add(String key, int value) {
+        int index = reserve(1);
+        if (index >= 0) {
+            set(index, key, value);
+        }
+    }
+
+    void add(String key, long value) {
+        int index = reserve(1);
+        if (index >= 0) {
+            set(index, key, value);
+        }
+    }
+
+    void add(String key, double value) {
+        int index = reserve(1);
+        if (index >= 0) {
+            set(index, key, value);
+        }
+    }
+
+    void add(String key, Object value) {
+        int index = reserve(1);
+        if (index >= 0) {
+            set(index, key, value);
+        }
+    }
+
+    /**
+     * Appends all the attributes of another instance, counting those that do not fit, and those the other instance
+     * dropped, as dropped.
+     */
+    void addAll(Attributes source) {
+        int count = source.size();
+        if (source.dropped > 0) {
+            DROPPED.addAndGet(this, source.dropped);
+        }
+        int start = count == 0 ? -1 : reserve(count);
+        if (start < 0) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            source.copy(i, this, start + i);
+        }
+        if (source.hasLazyValues) {
+            hasLazyValues = true;
+        }
+    }
+
+    void addLazy(String key, ValueSupplier<?> supplier) {
+        int index = reserve(1);
+        if (index >= 0) {
+            setLazy(index, key, supplier);
+        }
+    }
+
+    /**
+     * Invokes the suppliers of lazy values and stores their results.
+     */
+    void resolveLazyValues() {
+        if (!hasLazyValues) {
+            return;
+        }
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            if (types[i] == LAZY && keys[i] != null) {
+                set(i, keys[i], ((ValueSupplier<?>) objects[i]).get());
+            }
+        }
+        hasLazyValues = false;
+    }
+
+    /**
+     * Clears all attributes, so that this instance can be reused.
+     */
+    void clear() {
+        int size = size();
+        for (int i = 0; i < size; i++) {
+            keys[i] = null;
+            objects[i] = null;
+        }
+        this.size = 0;
+        this.dropped = 0;
+        this.hasLazyValues = false;
+    }
+
+    /**
+     * @return the number of slots in use, from 0 to the capacity
+     */
+    public int size() {
+        return Math.min(size, keys.length);
+    }
+
+    /**
+     * @return the number of attributes that were dropped for lack of room
+     */
+    public int dropped() {
+        return dropped;
+    }
+
+    /**
+     * @return the key of the attribute at the given index, or null if the slot was never written
+     */
+    public String key(int index) {
+        return keys[index];
+    }
+
+    public Type type(int index) {
+        return TYPES[types[index]];
+    }
+
+    /**
+     * @return the value of an {@link Type#INT} or {@link Type#LONG} attribute
+     */
+    public long longValue(int index) {
+        return bits[index];
+    }
+
+    /**
+     * @return the value of a {@link Type#DOUBLE} attribute
+     */
+    public double doubleValue(int index) {
+        return Double.longBitsToDouble(bits[index]);
+    }
+
+    /**
+     * @return the value of a {@link Type#BOOLEAN} attribute
+     */
+    public boolean booleanValue(int index) {
+        return bits[index] != 0;
+    }
+
+    /**
+     * @return the value of a {@link Type#STRING} or {@link Type#OBJECT} attribute
+     */
+    public Object objectValue(int index) {
+        return objects[index];
+    }
+
+    /**
+     * @return the value of the attribute at the given index, boxed if it is primitive
+     */
+    public Object value(int index) {
+        switch (type(index)) {
+            case BOOLEAN:
+                return booleanValue(index);
+            case INT:
+                return (int) longValue(index);
+            case LONG:
+                return longValue(index);
+            case DOUBLE:
+                return doubleValue(index);
+            default:
+                return objectValue(index);
+        }
+    }
+
+    /**
+     * Puts the attributes in the range [start, start + count), boxed, into the given map, later ones replacing earlier
+     * ones with the same key.
+     */
+    public void copyTo(int start, int count, Map<String, Object> map) {
+        for (int i = start; i < start + count; i++) {
+            if (keys[i] != null) {
+                map.put(keys[i], value(i));
+            }
+        }
+    }
+
+    /**
+     * Puts all the attributes, boxed, into the given map, later ones replacing earlier ones with the same key.
+     */
+    public void copyTo(Map<String, Object> map) {
+        copyTo(0, size(), map);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link Reporter} handing spans off to a background thread, which exports them in batches through a
+ * {@link SpanExporter}.
+ *
+ * <p>Reporting a span only enqueues it on a bounded {@link RingBuffer}, without locks. The consumer thread exports a
+ * batch as soon as it holds {@code maxBatchSize} spans, or once its oldest span has waited for {@code maxDelay}. When
+ * the queue is full, the {@link OverflowPolicy} decides which span is dropped, if any; dropped spans are counted in
+ * {@link #droppedSpans()}.
+ *
+ * <p>{@link #close()} exports the spans still queued, then closes the exporter. Spans reported while closing, too
+ * late for the consumer thread, are dropped. If the exporter throws an {@link Error}, the consumer thread dies and the
+ * reporter stops as if closed: spans still queued or reported afterwards are dropped.
+ */
+public final class BatchingReporter implements Reporter {
+    public static final int DEFAULT_CAPACITY = 8192;
+    public static final int DEFAULT_MAX_BATCH_SIZE = 512;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 1000;
+
+    private static final long BLOCKED_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final SpanExporter exporter;
+    private final RingBuffer<SpanData> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final OverflowPolicy overflowPolicy;
+    private final Thread consumer;
+    private final LongAdder droppedSpans = new LongAdder();
+    private final LongAdder exportedSpans = new LongAdder();
+    private final LongAdder failedSpans = new LongAdder();
+    private volatile boolean consumerParked;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean stopped; // Once set, spans still queued are no longer consumed.
+
+    public BatchingReporter(SpanExporter exporter) {
+        this(exporter, DEFAULT_CAPACITY, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MILLIS, TimeUnit.MILLISECONDS,
+                OverflowPolicy.DROP_NEWEST);
+    }
+
+    /**
+     * @param capacity the maximum number of queued spans, rounded up to a power of two
+     * @param maxBatchSize the maximum number of spans per batch
+     * @param maxDelay the maximum time a span waits for its batch to fill up
+     */
+    public BatchingReporter(SpanExporter exporter, int capacity, int maxBatchSize, long maxDelay, TimeUnit unit,
+            OverflowPolicy overflowPolicy) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The maximum batch size must be positive: " + maxBatchSize);
+        }
+        if (maxDelay <= 0) {
+            throw new IllegalArgumentException("The maximum delay must be positive: " + maxDelay);
+        }
+        this.exporter = exporter;
+        this.queue = new RingBuffer<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.overflowPolicy = overflowPolicy;
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    consume();
+                } finally {
+                    stop();
+                }
+            }
+        }, "opentracing-batching-reporter");
+        this.consumer.setDaemon(true);
+        this.consumer.start();
+    }
+
+    @Override
+    public void report(SpanData span) {
+        if (closed.get() || stopped) {
+            drop(span);
+            return;
+        }
+        if (!queue.offer(span)) {
+            switch (overflowPolicy) {
+                case DROP_NEWEST:
+                    drop(span);
+                    return;
+                case DROP_OLDEST:
+                    do {
+                        SpanData oldest = queue.poll();
+                        if (oldest != null) {
+                            drop(oldest);
+                        }
+                    } while (!queue.offer(span));
+                    break;
+                case BLOCK:
+                    do {
+                        if (closed.get() || stopped) {
+                            drop(span);
+                            return;
+                        }
+                        LockSupport.unpark(consumer);
+                        LockSupport.parkNanos(this, BLOCKED_PARK_NANOS);
+                    } while (!queue.offer(span));
+                    break;
+                default:
+                    throw new AssertionError(overflowPolicy);
+            }
+        }
+        if (stopped) {
+            // Queued after the consumer thread and close() last looked at the queue.
+            dropQueued();
+            return;
+        }
+        // Wake the consumer early only when a batch is ready, so that reporting a span usually costs a single CAS.
+        if (consumerParked && queue.size() >= maxBatchSize) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    private void drop(SpanData span) {
+        droppedSpans.increment();
+        span.release();
+    }
+
+    /**
+     * Marks the consumer thread as gone, and drops the spans it left in the queue. Any span queued afterwards is
+     * dropped by the thread reporting it, which sees {@link #stopped} set.
+     */
+    private void stop() {
+        stopped = true;
+        dropQueued();
+    }
+
+    private void dropQueued() {
+        for (SpanData span = queue.poll(); span != null; span = queue.poll()) {
+            drop(span);
+        }
+    }
+
+    private void consume() {
+        SpanData[] batch = new SpanData[maxBatchSize];
+        int count = 0;
+        long emptySince = System.nanoTime();
+        long deadline = 0;
+        for (;;) {
+            SpanData span = queue.poll();
+            if (span != null) {
+                if (count == 0) {
+                    // The span was queued after the queue was last seen empty, so it has waited at most since then.
+                    deadline = emptySince + maxDelayNanos;
+                }
+                batch[count++] = span;
+                if (count == maxBatchSize) {
+                    export(batch, count);
+                    count = 0;
+                    emptySince = System.nanoTime();
+                }
+                continue;
+            }
+
+            long now = System.nanoTime();
+            if (count > 0 && (closed.get() || now - deadline >= 0)) {
+                export(batch, count);
+                count = 0;
+            }
+            if (count == 0) {
+                if (closed.get()) {
+                    return;
+                }
+                emptySince = now;
+            }
+            consumerParked = true;
+            if (queue.isEmpty() && !closed.get()) {
+                LockSupport.parkNanos(this, count > 0 ? deadline - now : maxDelayNanos);
+            }
+            consumerParked = false;
+        }
+    }
+
+    private void export(SpanData[] batch, int count) {
+        try {
+            exporter.export(batch, count);
+            exportedSpans.add(count);
+        } catch (RuntimeException e) {
+            failedSpans.add(count);
+        } catch (Error e) {
+            // Not recoverable: the consumer thread dies, and stops the reporter.
+            failedSpans.add(count);
+            throw e;
+        } finally {
+            for (int i = 0; i < count; i++) {
+                batch[i].release();
+                batch[i] = null;
+            }
+        }
+    }
+
+    /**
+     * @return the number of spans waiting to be exported
+     */
+    public int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the number of spans dropped because the queue was full, or because they were reported after
+     * {@link #close()} or after the exporter threw an {@link Error}
+     */
+    public long droppedSpans() {
+        return droppedSpans.sum();
+    }
+
+    /**
+     * @return the number of spans exported successfully
+     */
+    public long exportedSpans() {
+        return exportedSpans.sum();
+    }
+
+    /**
+     * @return the number of spans in batches whose export threw an exception
+     */
+    public long failedSpans() {
+        return failedSpans.sum();
+    }
+
+    /**
+     * Exports the queued spans and closes the exporter, waiting for the consumer thread to finish.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        LockSupport.unpark(consumer);
+        boolean interrupted = false;
+        while (consumer.isAlive()) {
+            try {
+                consumer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        exporter.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
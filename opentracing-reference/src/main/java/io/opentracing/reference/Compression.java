@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+/**
+ * The compression of the requests of an {@link OtlpExporter}, named after its HTTP {@code Content-Encoding}.
+ */
+public enum Compression {
+    NONE(null),
+    /**
+     * The zlib format, with a 2-byte header and an Adler-32 trailer.
+     */
+    DEFLATE("deflate"),
+    /**
+     * The gzip format, with a 10-byte header and a CRC-32 trailer.
+     */
+    GZIP("gzip");
+
+    private final String contentEncoding;
+
+    Compression(String contentEncoding) {
+        this.contentEncoding = contentEncoding;
+    }
+
+    /**
+     * @return the HTTP {@code Content-Encoding} of the compressed requests, or null if they are not compressed
+     */
+    public String contentEncoding() {
+        return contentEncoding;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.Deflater;
+
+/**
+ * A bounded, lock-free pool of {@link Deflater} instances with the same settings, whose native zlib state is costly to
+ * allocate, shared by the exporters of a process.
+ *
+ * <p>Released instances are reset; those that do not fit in the pool are ended, which frees their native memory.
+ */
+final class DeflaterPool {
+    private static final int SIZE = 8;
+    // One pool per compression level from -1 to 9, wrapped or not.
+    private static final DeflaterPool[] POOLS = new DeflaterPool[22];
+
+    private final AtomicReferenceArray<Deflater> slots = new AtomicReferenceArray<>(SIZE);
+    private final int level;
+    private final boolean nowrap;
+
+    private DeflaterPool(int level, boolean nowrap) {
+        this.level = level;
+        this.nowrap = nowrap;
+    }
+
+    /**
+     * @param nowrap whether to omit the zlib header and trailer, as gzip does
+     * @throws IllegalArgumentException if the compression level is not within -1..9
+     */
+    static synchronized DeflaterPool shared(int level, boolean nowrap) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level: " + level);
+        }
+        int index = (level + 1) * 2 + (nowrap ? 1 : 0);
+        if (POOLS[index] == null) {
+            POOLS[index] = new DeflaterPool(level, nowrap);
+        }
+        return POOLS[index];
+    }
+
+    Deflater acquire() {
+        for (int i = 0; i < SIZE; i++) {
+            Deflater deflater = slots.get(i);
+            if (deflater != null && slots.compareAndSet(i, deflater, null)) {
+                return deflater;
+            }
+        }
+        return new Deflater(level, nowrap);
+    }
+
+    void release(Deflater deflater) {
+        deflater.reset();
+        for (int i = 0; i < SIZE; i++) {
+            if (slots.get(i) == null && slots.compareAndSet(i, null, deflater)) {
+                return;
+            }
+        }
+        deflater.end();
+    }
+}
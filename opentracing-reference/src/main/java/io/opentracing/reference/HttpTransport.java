@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link Transport} posting requests to an OTLP/HTTP endpoint, such as {@code http://localhost:4318/v1/traces}, with
+ * {@link HttpURLConnection}, which keeps connections alive between requests.
+ */
+public final class HttpTransport implements Transport {
+    public static final int DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    private final URL url;
+    private final int timeoutMillis;
+    private final byte[] copyBuffer = new byte[8192];
+
+    public HttpTransport(URL url) {
+        this(url, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param timeoutMillis the timeout to connect, and to read the response
+     */
+    public HttpTransport(URL url, int timeoutMillis) {
+        this.url = url;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @throws IOException if the request failed, or its response status is not 2xx
+     */
+    @Override
+    public void send(ByteBuffer request, String contentEncoding) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(timeoutMillis);
+        connection.setReadTimeout(timeoutMillis);
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/x-protobuf");
+        if (contentEncoding != null) {
+            connection.setRequestProperty("Content-Encoding", contentEncoding);
+        }
+        connection.setDoOutput(true);
+        connection.setFixedLengthStreamingMode(request.remaining());
+        try (OutputStream out = connection.getOutputStream()) {
+            if (request.hasArray()) {
+                out.write(request.array(), request.arrayOffset() + request.position(), request.remaining());
+            } else {
+                ByteBuffer source = request.duplicate();
+                while (source.hasRemaining()) {
+                    int length = Math.min(copyBuffer.length, source.remaining());
+                    source.get(copyBuffer, 0, length);
+                    out.write(copyBuffer, 0, length);
+                }
+            }
+        }
+        int status = connection.getResponseCode();
+        // Reading the response to its end lets the connection be reused.
+        InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+        if (in != null) {
+            try {
+                while (in.read(copyBuffer) >= 0) {
+                    // Discard.
+                }
+            } finally {
+                in.close();
+            }
+        }
+        if (status < 200 || status >= 300) {
+            throw new IOException("The collector at " + url + " answered " + status);
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
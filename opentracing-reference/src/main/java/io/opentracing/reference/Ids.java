@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generation and lower-case hexadecimal encoding of 64-bit trace and span IDs.
+ */
+final class Ids {
+    static final int HEX_LENGTH = 16;
+
+    private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+
+    private Ids() {
+    }
+
+    /**
+     * @return a random ID, never 0, as 0 stands for "no ID"
+     */
+    static long next() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+
+    static String toHex(long id) {
+        char[] chars = new char[HEX_LENGTH];
+        writeHex(id, chars, 0);
+        return new String(chars);
+    }
+
+    static int writeHex(long id, char[] dest, int offset) {
+        if (offset < 0 || dest.length - offset < HEX_LENGTH) {
+            return -1;
+        }
+        for (int i = HEX_LENGTH - 1; i >= 0; i--) {
+            dest[offset + i] = DIGITS[(int) id & 0xf];
+            id >>>= 4;
+        }
+        return HEX_LENGTH;
+    }
+
+    static int writeBytes(long id, byte[] dest, int offset) {
+        if (offset < 0 || dest.length - offset < 8) {
+            return -1;
+        }
+        for (int i = 7; i >= 0; i--) {
+            dest[offset + i] = (byte) id;
+            id >>>= 8;
+        }
+        return 8;
+    }
+
+    /**
+     * Parses an ID of 1 to 16 hexadecimal digits, in either case.
+     *
+     * @throws NumberFormatException if the characters are not a valid ID
+     */
+    static long parseHex(CharSequence chars) {
+        int length = chars.length();
+        if (length == 0 || length > HEX_LENGTH) {
+            throw new NumberFormatException("Invalid ID: " + chars);
+        }
+        long id = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = Character.digit(chars.charAt(i), 16);
+            if (digit < 0) {
+                throw new NumberFormatException("Invalid ID: " + chars);
+            }
+            id = (id << 4) | digit;
+        }
+        return id;
+    }
+}
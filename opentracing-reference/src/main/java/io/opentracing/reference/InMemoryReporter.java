@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A {@link Reporter} keeping the reported spans in memory until {@link #clear()} is called, e.g. for tests.
+ */
+public final class InMemoryReporter implements Reporter {
+    private final ConcurrentLinkedQueue<SpanData> spans = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void report(SpanData span) {
+        spans.add(span);
+    }
+
+    /**
+     * @return a copy of the reported spans, in the order they finished. They remain valid until {@link #clear()}.
+     */
+    public List<SpanData> spans() {
+        return new ArrayList<>(spans);
+    }
+
+    /**
+     * Releases all reported spans.
+     */
+    public void clear() {
+        SpanData span;
+        while ((span = spans.poll()) != null) {
+            span.release();
+        }
+    }
+
+    @Override
+    public void close() {
+    }
+}
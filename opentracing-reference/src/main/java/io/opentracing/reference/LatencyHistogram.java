@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in microseconds, recorded without locks.
+ *
+ * <p>Buckets are log-linear, as in HdrHistogram: each power of two is split into 8 linear buckets, so that a bucket
+ * spans at most an eighth of its lower bound. Durations are distinguished up to 2^36 microseconds (about 19 hours);
+ * longer ones are counted in the last bucket. Each bucket is a {@link LongAdder}, which stripes its count across cells
+ * under contention, allocated when the bucket is first used.
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    public static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicReferenceArray<LongAdder> buckets = new AtomicReferenceArray<>(BUCKETS);
+
+    static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return micros < 0 ? 0 : (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * @return the smallest duration counted in the given bucket
+     */
+    public static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+    }
+
+    /**
+     * @return the largest duration counted in the given bucket
+     */
+    public static long upperBound(int bucket) {
+        return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1) - 1;
+    }
+
+    /**
+     * @param counts the counts of each bucket
+     * @param percentile the percentile, between 0 and 100
+     * @return the upper bound of the bucket holding the given percentile, or 0 if the counts are all 0
+     */
+    public static long valueAtPercentile(long[] counts, double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("The percentile must be within 0..100: " + percentile);
+        }
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(counts.length - 1);
+    }
+
+    /**
+     * Records a duration; negative durations are counted as 0.
+     */
+    public void record(long micros) {
+        int index = bucket(micros);
+        LongAdder bucket = buckets.get(index);
+        if (bucket == null) {
+            bucket = new LongAdder();
+            if (!buckets.compareAndSet(index, null, bucket)) {
+                bucket = buckets.get(index);
+            }
+        }
+        bucket.increment();
+    }
+
+    /**
+     * Returns the count of each bucket. Durations recorded concurrently may or may not be counted.
+     *
+     * @param reset whether to reset the counts; durations recorded concurrently are then counted in this snapshot or
+     *              the next one
+     */
+    public long[] counts(boolean reset) {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            LongAdder bucket = buckets.get(i);
+            if (bucket != null) {
+                counts[i] = reset ? bucket.sumThenReset() : bucket.sum();
+            }
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static io.opentracing.reference.Protobuf.FIXED64;
+import static io.opentracing.reference.Protobuf.LENGTH_DELIMITED;
+import static io.opentracing.reference.Protobuf.VARINT;
+import static io.opentracing.reference.Protobuf.fillLength;
+import static io.opentracing.reference.Protobuf.lengthDelimitedSize;
+import static io.opentracing.reference.Protobuf.reserveLength;
+import static io.opentracing.reference.Protobuf.tag;
+import static io.opentracing.reference.Protobuf.utf8Length;
+import static io.opentracing.reference.Protobuf.varintSize;
+import static io.opentracing.reference.Protobuf.writeBigEndian;
+import static io.opentracing.reference.Protobuf.writeFixed64;
+import static io.opentracing.reference.Protobuf.writeString;
+import static io.opentracing.reference.Protobuf.writeVarint;
+
+import io.opentracing.tag.Tags;
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes batches of spans as an OTLP {@code ExportTraceServiceRequest} in the Protocol Buffers wire format, as
+ * accepted by the {@code /v1/traces} endpoint of OpenTelemetry collectors with the {@code application/x-protobuf}
+ * content type.
+ *
+ * <p>Spans map to OTLP as follows:
+ * <ul>
+ *     <li>64-bit trace IDs are padded with 8 leading zero bytes.</li>
+ *     <li>Tags become attributes, with their type. Other objects than strings, numbers and booleans are converted
+ *     with {@link Object#toString()}. The {@link Tags#SPAN_KIND} tag also sets the kind of the span, and a true
+ *     {@link Tags#ERROR} tag sets its status to error.</li>
+ *     <li>Logs become events, named after their {@code event} field, or {@code log}, with their fields as
+ *     attributes.</li>
+ *     <li>References other than to the parent become links, with an {@code opentracing.ref_type} attribute.</li>
+ * </ul>
+ *
+ * <p>Field tags are precomputed, as are the resource and instrumentation scope, common to all the spans. Messages are
+ * written in a single pass, with their lengths reserved and filled afterwards, so that encoding does not allocate
+ * besides the conversion of objects to strings.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public final class OtlpEncoder {
+    public static final int DEFAULT_INITIAL_CAPACITY = 64 * 1024;
+    static final String SCOPE_NAME = "io.opentracing.reference";
+    static final String REFERENCE_TYPE_KEY = "opentracing.ref_type";
+
+    // ExportTraceServiceRequest
+    private static final int REQUEST_RESOURCE_SPANS = tag(1, LENGTH_DELIMITED);
+    // ResourceSpans
+    private static final int RESOURCE_SPANS_RESOURCE = tag(1, LENGTH_DELIMITED);
+    private static final int RESOURCE_SPANS_SCOPE_SPANS = tag(2, LENGTH_DELIMITED);
+    // Resource
+    private static final int RESOURCE_ATTRIBUTES = tag(1, LENGTH_DELIMITED);
+    // ScopeSpans
+    private static final int SCOPE_SPANS_SCOPE = tag(1, LENGTH_DELIMITED);
+    private static final int SCOPE_SPANS_SPANS = tag(2, LENGTH_DELIMITED);
+    // InstrumentationScope
+    private static final int SCOPE_NAME_FIELD = tag(1, LENGTH_DELIMITED);
+    // Span
+    private static final int SPAN_TRACE_ID = tag(1, LENGTH_DELIMITED);
+    private static final int SPAN_SPAN_ID = tag(2, LENGTH_DELIMITED);
+    private static final int SPAN_PARENT_SPAN_ID = tag(4, LENGTH_DELIMITED);
+    private static final int SPAN_NAME = tag(5, LENGTH_DELIMITED);
+    private static final int SPAN_KIND = tag(6, VARINT);
+    private static final int SPAN_START_TIME = tag(7, FIXED64);
+    private static final int SPAN_END_TIME = tag(8, FIXED64);
+    private static final int SPAN_ATTRIBUTES = tag(9, LENGTH_DELIMITED);
+    private static final int SPAN_DROPPED_ATTRIBUTES_COUNT = tag(10, VARINT);
+    private static final int SPAN_EVENTS = tag(11, LENGTH_DELIMITED);
+    private static final int SPAN_DROPPED_EVENTS_COUNT = tag(12, VARINT);
+    private static final int SPAN_LINKS = tag(13, LENGTH_DELIMITED);
+    private static final int SPAN_STATUS = tag(15, LENGTH_DELIMITED);
+    // Span.Event
+    private static final int EVENT_TIME = tag(1, FIXED64);
+    private static final int EVENT_NAME = tag(2, LENGTH_DELIMITED);
+    private static final int EVENT_ATTRIBUTES = tag(3, LENGTH_DELIMITED);
+    // Span.Link
+    private static final int LINK_TRACE_ID = tag(1, LENGTH_DELIMITED);
+    private static final int LINK_SPAN_ID = tag(2, LENGTH_DELIMITED);
+    private static final int LINK_ATTRIBUTES = tag(4, LENGTH_DELIMITED);
+    // Status
+    private static final int STATUS_CODE = tag(3, VARINT);
+    // KeyValue
+    private static final int KEY_VALUE_KEY = tag(1, LENGTH_DELIMITED);
+    private static final int KEY_VALUE_VALUE = tag(2, LENGTH_DELIMITED);
+    // AnyValue
+    private static final int ANY_VALUE_STRING = tag(1, LENGTH_DELIMITED);
+    private static final int ANY_VALUE_BOOL = tag(2, VARINT);
+    private static final int ANY_VALUE_INT = tag(3, VARINT);
+    private static final int ANY_VALUE_DOUBLE = tag(4, FIXED64);
+
+    static final int SPAN_KIND_UNSPECIFIED = 0;
+    static final int SPAN_KIND_SERVER = 2;
+    static final int SPAN_KIND_CLIENT = 3;
+    static final int SPAN_KIND_PRODUCER = 4;
+    static final int SPAN_KIND_CONSUMER = 5;
+    static final int STATUS_CODE_ERROR = 2;
+
+    private final byte[] resource;
+    private final byte[] scope;
+    private ByteBuffer buffer;
+
+    /**
+     * @param serviceName the {@code service.name} attribute of the resource
+     */
+    public OtlpEncoder(String serviceName) {
+        this(serviceName, DEFAULT_INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity the initial capacity of the buffer of {@link #encode(SpanData[], int)}, which grows as
+     *                        needed
+     */
+    public OtlpEncoder(String serviceName, int initialCapacity) {
+        if (initialCapacity <= 0) {
+            throw new IllegalArgumentException("The initial capacity must be positive: " + initialCapacity);
+        }
+        ByteBuffer resource = ByteBuffer.allocate(32 + 3 * serviceName.length());
+        writeVarint(resource, RESOURCE_SPANS_RESOURCE);
+        int resourceLength = reserveLength(resource);
+        writeVarint(resource, RESOURCE_ATTRIBUTES);
+        writeStringAttribute(resource, "service.name", serviceName);
+        fillLength(resource, resourceLength);
+        this.resource = toArray(resource);
+
+        ByteBuffer scope = ByteBuffer.allocate(32 + SCOPE_NAME.length());
+        writeVarint(scope, SCOPE_SPANS_SCOPE);
+        int scopeLength = reserveLength(scope);
+        writeString(scope, SCOPE_NAME_FIELD, SCOPE_NAME);
+        fillLength(scope, scopeLength);
+        this.scope = toArray(scope);
+
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] array = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(array);
+        return array;
+    }
+
+    /**
+     * Encodes the spans into a buffer owned by the encoder, grown as needed, and valid until the next call.
+     *
+     * @return the buffer, with the encoded request between its position and limit
+     */
+    public ByteBuffer encode(SpanData[] spans, int count) {
+        return encode(spans, 0, count);
+    }
+
+    /**
+     * Same as {@link #encode(SpanData[], int)}, for the {@code count} spans of the array from {@code offset}.
+     */
+    public ByteBuffer encode(SpanData[] spans, int offset, int count) {
+        for (;;) {
+            buffer.clear();
+            try {
+                write(spans, offset, count, buffer);
+                buffer.flip();
+                return buffer;
+            } catch (BufferOverflowException e) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            }
+        }
+    }
+
+    /**
+     * Encodes the spans into the given buffer, from its position.
+     *
+     * @throws BufferOverflowException if the buffer has no room left, in which case its content and position are
+     * undefined
+     */
+    public void encode(SpanData[] spans, int count, ByteBuffer dest) {
+        write(spans, 0, count, dest);
+    }
+
+    private void write(SpanData[] spans, int offset, int count, ByteBuffer dest) {
+        writeVarint(dest, REQUEST_RESOURCE_SPANS);
+        int resourceSpansLength = reserveLength(dest);
+        dest.put(resource);
+        writeVarint(dest, RESOURCE_SPANS_SCOPE_SPANS);
+        int scopeSpansLength = reserveLength(dest);
+        dest.put(scope);
+        for (int i = offset; i < offset + count; i++) {
+            writeVarint(dest, SCOPE_SPANS_SPANS);
+            int spanLength = reserveLength(dest);
+            writeSpan(dest, spans[i]);
+            fillLength(dest, spanLength);
+        }
+        fillLength(dest, scopeSpansLength);
+        fillLength(dest, resourceSpansLength);
+    }
+
+    private static void writeSpan(ByteBuffer dest, SpanData span) {
+        ReferenceSpanContext context = span.context();
+        writeTraceId(dest, SPAN_TRACE_ID, context.traceId());
+        writeSpanId(dest, SPAN_SPAN_ID, context.spanId());
+        if (span.parentSpanId() != 0) {
+            writeSpanId(dest, SPAN_PARENT_SPAN_ID, span.parentSpanId());
+        }
+        if (span.operationName() != null) {
+            writeString(dest, SPAN_NAME, span.operationName());
+        }
+
+        Attributes tags = span.tags();
+        int kind = SPAN_KIND_UNSPECIFIED;
+        boolean error = false;
+        for (int i = 0; i < tags.size(); i++) {
+            String key = tags.key(i);
+            if (Tags.SPAN_KIND.getKey().equals(key)) {
+                kind = spanKind(tags.objectValue(i));
+            } else if (Tags.ERROR.getKey().equals(key)) {
+                error = tags.type(i) == Attributes.Type.BOOLEAN && tags.booleanValue(i);
+            }
+        }
+        if (kind != SPAN_KIND_UNSPECIFIED) {
+            writeVarint(dest, SPAN_KIND);
+            writeVarint(dest, kind);
+        }
+        writeVarint(dest, SPAN_START_TIME);
+        writeFixed64(dest, span.startMicros() * 1000);
+        writeVarint(dest, SPAN_END_TIME);
+        writeFixed64(dest, span.finishMicros() * 1000);
+        writeAttributes(dest, SPAN_ATTRIBUTES, tags, 0, tags.size());
+        if (tags.dropped() > 0) {
+            writeVarint(dest, SPAN_DROPPED_ATTRIBUTES_COUNT);
+            writeVarint(dest, tags.dropped());
+        }
+
+        Attributes logFields = span.logFields();
+        for (int i = 0; i < span.logCount(); i++) {
+            writeVarint(dest, SPAN_EVENTS);
+            int eventLength = reserveLength(dest);
+            writeVarint(dest, EVENT_TIME);
+            writeFixed64(dest, span.logTimestampMicros(i) * 1000);
+            int start = span.logFieldStart(i);
+            int end = start + span.logFieldCount(i);
+            writeString(dest, EVENT_NAME, eventName(logFields, start, end));
+            writeAttributes(dest, EVENT_ATTRIBUTES, logFields, start, end);
+            fillLength(dest, eventLength);
+        }
+        if (span.droppedLogs() > 0) {
+            writeVarint(dest, SPAN_DROPPED_EVENTS_COUNT);
+            writeVarint(dest, span.droppedLogs());
+        }
+
+        boolean parentSkipped = false;
+        for (int i = 0; i < span.referenceCount(); i++) {
+            ReferenceSpanContext referenced = span.referenceContext(i);
+            if (!parentSkipped && referenced.spanId() == span.parentSpanId()) {
+                parentSkipped = true;
+                continue;
+            }
+            writeVarint(dest, SPAN_LINKS);
+            int linkLength = reserveLength(dest);
+            writeTraceId(dest, LINK_TRACE_ID, referenced.traceId());
+            writeSpanId(dest, LINK_SPAN_ID, referenced.spanId());
+            writeVarint(dest, LINK_ATTRIBUTES);
+            writeStringAttribute(dest, REFERENCE_TYPE_KEY, span.referenceType(i));
+            fillLength(dest, linkLength);
+        }
+
+        if (error) {
+            writeVarint(dest, SPAN_STATUS);
+            writeVarint(dest, 2);
+            writeVarint(dest, STATUS_CODE);
+            writeVarint(dest, STATUS_CODE_ERROR);
+        }
+    }
+
+    private static int spanKind(Object value) {
+        if (Tags.SPAN_KIND_SERVER.equals(value)) {
+            return SPAN_KIND_SERVER;
+        } else if (Tags.SPAN_KIND_CLIENT.equals(value)) {
+            return SPAN_KIND_CLIENT;
+        } else if (Tags.SPAN_KIND_PRODUCER.equals(value)) {
+            return SPAN_KIND_PRODUCER;
+        } else if (Tags.SPAN_KIND_CONSUMER.equals(value)) {
+            return SPAN_KIND_CONSUMER;
+        }
+        return SPAN_KIND_UNSPECIFIED;
+    }
+
+    private static String eventName(Attributes fields, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if ("event".equals(fields.key(i)) && fields.objectValue(i) instanceof String) {
+                return (String) fields.objectValue(i);
+            }
+        }
+        return "log";
+    }
+
+    private static void writeTraceId(ByteBuffer dest, int tag, long traceId) {
+        writeVarint(dest, tag);
+        writeVarint(dest, 16);
+        writeBigEndian(dest, 0);
+        writeBigEndian(dest, traceId);
+    }
+
+    private static void writeSpanId(ByteBuffer dest, int tag, long spanId) {
+        writeVarint(dest, tag);
+        writeVarint(dest, 8);
+        writeBigEndian(dest, spanId);
+    }
+
+    private static void writeAttributes(ByteBuffer dest, int tag, Attributes attributes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            String key = attributes.key(i);
+            if (key == null) {
+                continue;
+            }
+            writeVarint(dest, tag);
+            switch (attributes.type(i)) {
+                case BOOLEAN:
+                    writeBooleanAttribute(dest, key, attributes.booleanValue(i));
+                    break;
+                case INT:
+                case LONG:
+                    writeIntAttribute(dest, key, attributes.longValue(i));
+                    break;
+                case DOUBLE:
+                    writeDoubleAttribute(dest, key, attributes.doubleValue(i));
+                    break;
+                default:
+                    writeObjectAttribute(dest, key, attributes.objectValue(i));
+                    break;
+            }
+        }
+    }
+
+    private static void writeObjectAttribute(ByteBuffer dest, String key, Object value) {
+        if (value instanceof String) {
+            writeStringAttribute(dest, key, (String) value);
+        } else if (value instanceof Boolean) {
+            writeBooleanAttribute(dest, key, (Boolean) value);
+        } else if (value instanceof Double || value instanceof Float || value instanceof BigDecimal) {
+            writeDoubleAttribute(dest, key, ((Number) value).doubleValue());
+        } else if (value instanceof Number) {
+            writeIntAttribute(dest, key, ((Number) value).longValue());
+        } else if (value == null) {
+            writeKeyValueStart(dest, key, utf8Length(key), 0);
+        } else {
+            writeStringAttribute(dest, key, value.toString());
+        }
+    }
+
+    // The following write a KeyValue message, without its tag.
+
+    private static void writeStringAttribute(ByteBuffer dest, String key, String value) {
+        int valueLength = utf8Length(value);
+        writeKeyValueStart(dest, key, utf8Length(key), 1 + lengthDelimitedSize(valueLength));
+        writeString(dest, ANY_VALUE_STRING, value, valueLength);
+    }
+
+    private static void writeBooleanAttribute(ByteBuffer dest, String key, boolean value) {
+        writeKeyValueStart(dest, key, utf8Length(key), 2);
+        writeVarint(dest, ANY_VALUE_BOOL);
+        writeVarint(dest, value ? 1 : 0);
+    }
+
+    private static void writeIntAttribute(ByteBuffer dest, String key, long value) {
+        writeKeyValueStart(dest, key, utf8Length(key), 1 + varintSize(value));
+        writeVarint(dest, ANY_VALUE_INT);
+        writeVarint(dest, value);
+    }
+
+    private static void writeDoubleAttribute(ByteBuffer dest, String key, double value) {
+        writeKeyValueStart(dest, key, utf8Length(key), 9);
+        writeVarint(dest, ANY_VALUE_DOUBLE);
+        writeFixed64(dest, Double.doubleToRawLongBits(value));
+    }
+
+    /**
+     * Writes the length of a KeyValue, its key, and the start of its value, whose AnyValue has the given size.
+     */
+    private static void writeKeyValueStart(ByteBuffer dest, String key, int keyLength, int valueSize) {
+        writeVarint(dest, 1 + lengthDelimitedSize(keyLength) + 1 + lengthDelimitedSize(valueSize));
+        writeString(dest, KEY_VALUE_KEY, key, keyLength);
+        writeVarint(dest, KEY_VALUE_VALUE);
+        writeVarint(dest, valueSize);
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * A {@link SpanExporter} encoding batches of spans with an {@link OtlpEncoder}, compressing them, and sending them
+ * through a {@link Transport}.
+ *
+ * <p>Batches are split into requests whose compressed size approaches a target: the number of spans per request
+ * follows a moving average of the compressed size of a span. Larger requests compress better, whereas smaller ones
+ * bound the work lost when a request fails. Batches smaller than the target are sent as they are, so the batch size
+ * of the {@link BatchingReporter} should be large enough to reach it.
+ *
+ * <p>Compression takes {@link Deflater} instances from a pool shared by the exporters of the process, and writes into
+ * a buffer that is reused once it grew to fit the largest request, so that exporting does not allocate in steady
+ * state, besides what the transport allocates. The compression ratio and the CPU time spent compressing are reported.
+ *
+ * <p>Requests that fail are counted in {@link #failedSpans()}, and not retried.
+ */
+public final class OtlpExporter implements SpanExporter {
+    public static final int DEFAULT_TARGET_REQUEST_BYTES = 256 * 1024;
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int GZIP_TRAILER_SIZE = 8;
+    private static final double SMOOTHING = 0.2;
+
+    private final Transport transport;
+    private final OtlpEncoder encoder;
+    private final Compression compression;
+    private final DeflaterPool deflaters;
+    private final int targetRequestBytes;
+    private final CRC32 crc = new CRC32();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final boolean cpuTimeSupported = threads.isCurrentThreadCpuTimeSupported();
+    private byte[] compressed;
+    private ByteBuffer compressedView;
+    private double bytesPerSpan; // 0 until the first request is sent.
+
+    private final LongAdder sentRequests = new LongAdder();
+    private final LongAdder sentSpans = new LongAdder();
+    private final LongAdder failedRequests = new LongAdder();
+    private final LongAdder failedSpans = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressionNanos = new LongAdder();
+
+    /**
+     * Creates an exporter compressing requests with gzip.
+     *
+     * @param serviceName the {@code service.name} of the spans
+     */
+    public OtlpExporter(Transport transport, String serviceName) {
+        this(transport, serviceName, Compression.GZIP, Deflater.DEFAULT_COMPRESSION, DEFAULT_TARGET_REQUEST_BYTES);
+    }
+
+    /**
+     * @param level the compression level, from {@link Deflater#BEST_SPEED} to {@link Deflater#BEST_COMPRESSION}, or
+     *              {@link Deflater#DEFAULT_COMPRESSION}
+     * @param targetRequestBytes the size of the requests to aim for, once compressed
+     */
+    public OtlpExporter(Transport transport, String serviceName, Compression compression, int level,
+            int targetRequestBytes) {
+        if (targetRequestBytes <= 0) {
+            throw new IllegalArgumentException("The target request size must be positive: " + targetRequestBytes);
+        }
+        this.transport = transport;
+        this.encoder = new OtlpEncoder(serviceName);
+        this.compression = compression;
+        this.deflaters = compression == Compression.NONE ? null
+                : DeflaterPool.shared(level, compression == Compression.GZIP);
+        this.targetRequestBytes = targetRequestBytes;
+        this.compressed = new byte[OtlpEncoder.DEFAULT_INITIAL_CAPACITY];
+        this.compressedView = ByteBuffer.wrap(compressed);
+    }
+
+    @Override
+    public void export(SpanData[] spans, int count) {
+        for (int offset = 0; offset < count; ) {
+            int requestSpans = Math.min(count - offset, spansPerRequest());
+            ByteBuffer encoded = encoder.encode(spans, offset, requestSpans);
+            int encodedBytes = encoded.remaining();
+            ByteBuffer request = compression == Compression.NONE ? encoded : compress(encoded);
+            int requestBytes = request.remaining();
+            uncompressedBytes.add(encodedBytes);
+            compressedBytes.add(requestBytes);
+            double observed = (double) requestBytes / requestSpans;
+            bytesPerSpan = bytesPerSpan == 0 ? observed : bytesPerSpan + SMOOTHING * (observed - bytesPerSpan);
+
+            try {
+                transport.send(request, compression.contentEncoding());
+                sentRequests.increment();
+                sentSpans.add(requestSpans);
+            } catch (IOException e) {
+                failedRequests.increment();
+                failedSpans.add(requestSpans);
+            }
+            offset += requestSpans;
+        }
+    }
+
+    /**
+     * @return the number of spans to put in the next request, to approach the target size
+     */
+    public int spansPerRequest() {
+        double bytesPerSpan = this.bytesPerSpan;
+        return bytesPerSpan == 0 ? Integer.MAX_VALUE : (int) Math.max(1, Math.min(Integer.MAX_VALUE,
+                targetRequestBytes / bytesPerSpan));
+    }
+
+    private ByteBuffer compress(ByteBuffer encoded) {
+        long start = cpuTimeNanos();
+        byte[] input = encoded.array();
+        int offset = encoded.arrayOffset() + encoded.position();
+        int length = encoded.remaining();
+        int size = 0;
+        if (compression == Compression.GZIP) {
+            System.arraycopy(GZIP_HEADER, 0, compressed, 0, GZIP_HEADER.length);
+            size = GZIP_HEADER.length;
+            crc.reset();
+            crc.update(input, offset, length);
+        }
+
+        Deflater deflater = deflaters.acquire();
+        try {
+            deflater.setInput(input, offset, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (size == compressed.length) {
+                    grow();
+                }
+                size += deflater.deflate(compressed, size, compressed.length - size);
+            }
+        } finally {
+            deflaters.release(deflater);
+        }
+
+        if (compression == Compression.GZIP) {
+            if (compressed.length - size < GZIP_TRAILER_SIZE) {
+                grow();
+            }
+            size = writeIntLittleEndian(compressed, size, (int) crc.getValue());
+            size = writeIntLittleEndian(compressed, size, length);
+        }
+        compressionNanos.add(cpuTimeNanos() - start);
+        compressedView.clear();
+        compressedView.limit(size);
+        return compressedView;
+    }
+
+    private void grow() {
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+        compressedView = ByteBuffer.wrap(compressed);
+    }
+
+    private static int writeIntLittleEndian(byte[] dest, int offset, int value) {
+        for (int i = 0; i < 4; i++) {
+            dest[offset + i] = (byte) (value >>> 8 * i);
+        }
+        return offset + 4;
+    }
+
+    private long cpuTimeNanos() {
+        return cpuTimeSupported ? threads.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    /**
+     * @return the number of requests the collector accepted
+     */
+    public long sentRequests() {
+        return sentRequests.sum();
+    }
+
+    /**
+     * @return the number of spans in the requests the collector accepted
+     */
+    public long sentSpans() {
+        return sentSpans.sum();
+    }
+
+    /**
+     * @return the number of requests that failed
+     */
+    public long failedRequests() {
+        return failedRequests.sum();
+    }
+
+    /**
+     * @return the number of spans in the requests that failed
+     */
+    public long failedSpans() {
+        return failedSpans.sum();
+    }
+
+    /**
+     * @return the size of the requests before compression, whether they were sent or not
+     */
+    public long uncompressedBytes() {
+        return uncompressedBytes.sum();
+    }
+
+    /**
+     * @return the size of the requests after compression, whether they were sent or not
+     */
+    public long compressedBytes() {
+        return compressedBytes.sum();
+    }
+
+    /**
+     * @return the ratio of the uncompressed size of the requests to their compressed size, or 1 if there are none
+     */
+    public double compressionRatio() {
+        long compressedBytes = this.compressedBytes.sum();
+        return compressedBytes == 0 ? 1 : (double) uncompressedBytes.sum() / compressedBytes;
+    }
+
+    /**
+     * @return the CPU time spent compressing, or the elapsed time if the JVM does not measure the CPU time of threads;
+     * divide by {@link #sentRequests()} plus {@link #failedRequests()} for the time per request
+     */
+    public long compressionCpuNanos() {
+        return compressionNanos.sum();
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+/**
+ * What {@link BatchingReporter} does with a span reported while its queue is full.
+ */
+public enum OverflowPolicy {
+    /** Drop the span being reported. */
+    DROP_NEWEST,
+    /** Drop the oldest queued span to make room for the one being reported. */
+    DROP_OLDEST,
+    /**
+     * Make the thread finishing the span wait until there is room. Only suitable when spans are never finished by the
+     * exporter itself, and when stalling the application is preferable to losing spans.
+     */
+    BLOCK
+}
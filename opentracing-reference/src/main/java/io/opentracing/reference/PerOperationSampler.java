@@ -0,0 +1,133 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link Sampler} adapting a sampling probability to each operation, so that every operation is sampled at about
+ * the same target rate whatever its traffic: rare operations are not drowned out by frequent ones.
+ *
+ * <p>Every second, the probability of each operation is set to the target rate divided by the rate of traces it
+ * started during the last second. In addition, each operation is guaranteed a lower-bound rate, so that operations
+ * whose traffic is too low or too bursty for their probability to adapt are still sampled.
+ *
+ * <p>Up to {@code maxOperations} operations are tracked; traces of further operations are left to a fallback sampler.
+ */
+public final class PerOperationSampler implements Sampler {
+    private static final long ADAPTATION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final double targetTracesPerSecond;
+    private final double lowerBoundTracesPerSecond;
+    private final int maxOperations;
+    private final Sampler fallback;
+    private final long intervalNanos;
+    private final LongSupplier nanoClock;
+    private final ConcurrentMap<String, OperationSampler> operations = new ConcurrentHashMap<>();
+
+    /**
+     * @param targetTracesPerSecond the number of traces to sample per second, for each operation
+     * @param lowerBoundTracesPerSecond the number of traces sampled per second for each operation regardless of its
+     *                                  probability
+     * @param maxOperations the maximum number of operations tracked
+     * @param fallback the sampler for the operations beyond the maximum
+     */
+    public PerOperationSampler(double targetTracesPerSecond, double lowerBoundTracesPerSecond, int maxOperations,
+            Sampler fallback) {
+        this(targetTracesPerSecond, lowerBoundTracesPerSecond, maxOperations, fallback, ADAPTATION_INTERVAL_NANOS,
+                System::nanoTime);
+    }
+
+    PerOperationSampler(double targetTracesPerSecond, double lowerBoundTracesPerSecond, int maxOperations,
+            Sampler fallback, long intervalNanos, LongSupplier nanoClock) {
+        if (!(targetTracesPerSecond > 0)) {
+            throw new IllegalArgumentException("The target rate must be positive: " + targetTracesPerSecond);
+        }
+        if (!(lowerBoundTracesPerSecond >= 0)) {
+            throw new IllegalArgumentException("The lower-bound rate must not be negative: "
+                    + lowerBoundTracesPerSecond);
+        }
+        if (maxOperations < 0) {
+            throw new IllegalArgumentException("The maximum number of operations must not be negative: "
+                    + maxOperations);
+        }
+        if (fallback == null) {
+            throw new NullPointerException("fallback");
+        }
+        this.targetTracesPerSecond = targetTracesPerSecond;
+        this.lowerBoundTracesPerSecond = lowerBoundTracesPerSecond;
+        this.maxOperations = maxOperations;
+        this.fallback = fallback;
+        this.intervalNanos = intervalNanos;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public boolean sample(String operationName, long traceId) {
+        OperationSampler sampler = operations.get(operationName);
+        if (sampler == null) {
+            if (operations.size() >= maxOperations) {
+                return fallback.sample(operationName, traceId);
+            }
+            sampler = operations.computeIfAbsent(operationName, name -> new OperationSampler());
+        }
+        return sampler.sample(traceId);
+    }
+
+    /**
+     * @return the current sampling probability of the operation, or -1 if it is not tracked
+     */
+    public double probability(String operationName) {
+        OperationSampler sampler = operations.get(operationName);
+        return sampler == null ? -1 : sampler.probability;
+    }
+
+    @Override
+    public String toString() {
+        return "PerOperationSampler{targetTracesPerSecond=" + targetTracesPerSecond + ", lowerBoundTracesPerSecond="
+                + lowerBoundTracesPerSecond + ", operations=" + operations.size() + "}";
+    }
+
+    private final class OperationSampler {
+        private final RateLimitingSampler lowerBound = new RateLimitingSampler(lowerBoundTracesPerSecond, nanoClock);
+        private final LongAdder traces = new LongAdder();
+        private final AtomicLong intervalStart = new AtomicLong(nanoClock.getAsLong());
+        private volatile double probability = 1;
+        private volatile long threshold = ProbabilisticSampler.threshold(1);
+
+        boolean sample(long traceId) {
+            traces.increment();
+            long start = intervalStart.get();
+            long now = nanoClock.getAsLong();
+            // The thread winning the CAS adapts the probability; the others carry on with the current one.
+            if (now - start >= intervalNanos && intervalStart.compareAndSet(start, now)) {
+                adapt(traces.sumThenReset(), now - start);
+            }
+            return ProbabilisticSampler.sample(traceId, threshold) || lowerBound.tryAcquire();
+        }
+
+        private void adapt(long count, long elapsedNanos) {
+            double tracesPerSecond = count * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+            double newProbability = tracesPerSecond <= targetTracesPerSecond ? 1
+                    : targetTracesPerSecond / tracesPerSecond;
+            probability = newProbability;
+            threshold = ProbabilisticSampler.threshold(newProbability);
+        }
+    }
+}
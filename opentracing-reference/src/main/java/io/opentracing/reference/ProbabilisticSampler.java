@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+/**
+ * A {@link Sampler} sampling a fixed proportion of the traces.
+ *
+ * <p>The decision is derived from the trace ID, so that every process using the same probability makes the same
+ * decision for a trace, and costs no more than a comparison.
+ */
+public final class ProbabilisticSampler implements Sampler {
+    private final double probability;
+    private final long threshold;
+
+    /**
+     * @param probability the proportion of traces to sample, from 0 to 1
+     */
+    public ProbabilisticSampler(double probability) {
+        if (!(probability >= 0 && probability <= 1)) {
+            throw new IllegalArgumentException("The probability must be between 0 and 1: " + probability);
+        }
+        this.probability = probability;
+        this.threshold = threshold(probability);
+    }
+
+    /**
+     * @return the value below which {@link #sample(long, long)} samples trace IDs with the given probability
+     */
+    static long threshold(double probability) {
+        if (probability <= 0) {
+            return -1;
+        }
+        return probability >= 1 ? Long.MAX_VALUE : (long) (probability * Long.MAX_VALUE);
+    }
+
+    static boolean sample(long traceId, long threshold) {
+        return (traceId & Long.MAX_VALUE) <= threshold;
+    }
+
+    public double probability() {
+        return probability;
+    }
+
+    @Override
+    public boolean sample(String operationName, long traceId) {
+        return sample(traceId, threshold);
+    }
+
+    @Override
+    public String toString() {
+        return "ProbabilisticSampler{probability=" + probability + "}";
+    }
+}
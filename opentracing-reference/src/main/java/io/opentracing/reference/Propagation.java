@@ -0,0 +1,317 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.propagation.BinaryExtract;
+import io.opentracing.propagation.BinaryInject;
+import io.opentracing.propagation.BinaryStreamInject;
+import io.opentracing.propagation.CharSequenceMapExtract;
+import io.opentracing.propagation.CharSequenceMapInject;
+import io.opentracing.propagation.TextMapExtract;
+import io.opentracing.propagation.TextMapInject;
+import io.opentracing.propagation.TextMapLookup;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Encoding of {@link ReferenceSpanContext} into, and decoding from, the carriers of the built-in formats.
+ *
+ * <p>Text carriers hold the IDs in hexadecimal under {@link #TRACE_ID_KEY} and {@link #SPAN_ID_KEY}, the sampling
+ * decision as "1" or "0" under {@link #SAMPLED_KEY}, and each baggage item under {@link #BAGGAGE_PREFIX} followed by
+ * its key. Keys are matched case-insensitively on extraction, as HTTP header names are. The baggage keys are also
+ * listed, separated by commas, under {@link #BAGGAGE_KEYS_KEY}, so that baggage can be extracted from a
+ * {@link TextMapLookup} carrier by key; if a baggage key is empty or contains a comma, a lone comma is listed instead
+ * and the carrier is iterated over, as it is when no keys are listed, e.g. for carriers not injected by this tracer.
+ *
+ * <p>Binary carriers hold a version byte (0), the trace and span IDs as big-endian longs, a flags byte (bit 0 set if
+ * sampled, bit 1 set if the decision is deferred), the number of baggage items as an int, then for each item its key and value as an int length followed by
+ * the UTF-8 bytes.
+ */
+final class Propagation {
+    static final String TRACE_ID_KEY = "ot-tracer-traceid";
+    static final String SPAN_ID_KEY = "ot-tracer-spanid";
+    static final String SAMPLED_KEY = "ot-tracer-sampled";
+    static final String BAGGAGE_PREFIX = "ot-baggage-";
+    static final String BAGGAGE_KEYS_KEY = "ot-tracer-baggage";
+    private static final String UNLISTED_BAGGAGE_KEYS = ",";
+
+    private static final byte BINARY_VERSION = 0;
+    private static final int BINARY_HEADER_LENGTH = 1 + 8 + 8 + 1 + 4;
+    private static final byte SAMPLED_FLAG = 1;
+    private static final byte DEFERRED_FLAG = 2;
+
+    private Propagation() {
+    }
+
+    static void inject(ReferenceSpanContext context, Object carrier) {
+        if (carrier instanceof TextMapInject) {
+            TextMapInject textMap = (TextMapInject) carrier;
+            textMap.put(TRACE_ID_KEY, context.toTraceId());
+            textMap.put(SPAN_ID_KEY, context.toSpanId());
+            if (!context.isSamplingDeferred()) {
+                textMap.put(SAMPLED_KEY, context.isSampled() ? "1" : "0");
+            }
+            for (Map.Entry<String, String> item : context.baggage().entrySet()) {
+                textMap.put(BAGGAGE_PREFIX + item.getKey(), item.getValue());
+            }
+            if (!context.baggage().isEmpty()) {
+                textMap.put(BAGGAGE_KEYS_KEY, baggageKeys(context.baggage()));
+            }
+        } else if (carrier instanceof CharSequenceMapInject) {
+            CharSequenceMapInject map = (CharSequenceMapInject) carrier;
+            map.put(TRACE_ID_KEY, context.toTraceId());
+            map.put(SPAN_ID_KEY, context.toSpanId());
+            if (!context.isSamplingDeferred()) {
+                map.put(SAMPLED_KEY, context.isSampled() ? "1" : "0");
+            }
+            for (Map.Entry<String, String> item : context.baggage().entrySet()) {
+                map.put(BAGGAGE_PREFIX + item.getKey(), item.getValue());
+            }
+            if (!context.baggage().isEmpty()) {
+                map.put(BAGGAGE_KEYS_KEY, baggageKeys(context.baggage()));
+            }
+        } else if (carrier instanceof BinaryStreamInject) {
+            injectBinary(context, (BinaryStreamInject) carrier);
+        } else if (carrier instanceof BinaryInject) {
+            injectBinary(context, (BinaryInject) carrier);
+        } else {
+            throw new IllegalArgumentException("Unsupported carrier: " + carrier.getClass().getName());
+        }
+    }
+
+    /**
+     * @return the extracted context, or null if the carrier holds none
+     * @throws IllegalArgumentException if the carrier holds a malformed context
+     */
+    static ReferenceSpanContext extract(Object carrier) {
+        if (carrier instanceof TextMapLookup) {
+            return extract((TextMapLookup) carrier);
+        } else if (carrier instanceof TextMapExtract) {
+            return extractTextMap((TextMapExtract) carrier);
+        } else if (carrier instanceof CharSequenceMapExtract) {
+            return extract((CharSequenceMapExtract) carrier);
+        } else if (carrier instanceof BinaryExtract) {
+            return extract((BinaryExtract) carrier);
+        }
+        throw new IllegalArgumentException("Unsupported carrier: " + carrier.getClass().getName());
+    }
+
+    private static ReferenceSpanContext extract(TextMapLookup carrier) {
+        String traceId = carrier.get(TRACE_ID_KEY);
+        String spanId = carrier.get(SPAN_ID_KEY);
+        if (traceId == null || spanId == null) {
+            return null;
+        }
+        Map<String, String> baggage = Collections.emptyMap();
+        String baggageKeys = carrier.get(BAGGAGE_KEYS_KEY);
+        // Carriers injected elsewhere, or by hand, list no keys, and are iterated.
+        if (baggageKeys == null || UNLISTED_BAGGAGE_KEYS.equals(baggageKeys)) {
+            for (Map.Entry<String, String> entry : carrier) {
+                String key = entry.getKey();
+                if (key.regionMatches(true, 0, BAGGAGE_PREFIX, 0, BAGGAGE_PREFIX.length())) {
+                    baggage = put(baggage, key.substring(BAGGAGE_PREFIX.length()), entry.getValue());
+                }
+            }
+        } else {
+            int start = 0;
+            while (start <= baggageKeys.length()) {
+                int end = baggageKeys.indexOf(',', start);
+                if (end < 0) {
+                    end = baggageKeys.length();
+                }
+                String key = baggageKeys.substring(start, end);
+                String value = carrier.get(BAGGAGE_PREFIX + key);
+                if (value != null) {
+                    baggage = put(baggage, key, value);
+                }
+                start = end + 1;
+            }
+        }
+        return newContext(traceId, spanId, carrier.get(SAMPLED_KEY), baggage);
+    }
+
+    private static String baggageKeys(Map<String, String> baggage) {
+        StringBuilder keys = new StringBuilder();
+        for (String key : baggage.keySet()) {
+            if (key.isEmpty() || key.indexOf(',') >= 0) {
+                return UNLISTED_BAGGAGE_KEYS;
+            }
+            if (keys.length() > 0) {
+                keys.append(',');
+            }
+            keys.append(key);
+        }
+        return keys.toString();
+    }
+
+    private static ReferenceSpanContext extractTextMap(TextMapExtract carrier) {
+        String traceId = null;
+        String spanId = null;
+        String sampled = null;
+        Map<String, String> baggage = Collections.emptyMap();
+        for (Map.Entry<String, String> entry : carrier) {
+            String key = entry.getKey();
+            if (TRACE_ID_KEY.equalsIgnoreCase(key)) {
+                traceId = entry.getValue();
+            } else if (SPAN_ID_KEY.equalsIgnoreCase(key)) {
+                spanId = entry.getValue();
+            } else if (SAMPLED_KEY.equalsIgnoreCase(key)) {
+                sampled = entry.getValue();
+            } else if (key.regionMatches(true, 0, BAGGAGE_PREFIX, 0, BAGGAGE_PREFIX.length())) {
+                baggage = put(baggage, key.substring(BAGGAGE_PREFIX.length()), entry.getValue());
+            }
+        }
+        return traceId == null || spanId == null ? null : newContext(traceId, spanId, sampled, baggage);
+    }
+
+    private static ReferenceSpanContext extract(CharSequenceMapExtract carrier) {
+        CharSequence traceId = null;
+        CharSequence spanId = null;
+        CharSequence sampled = null;
+        Map<String, String> baggage = Collections.emptyMap();
+        for (Map.Entry<CharSequence, CharSequence> entry : carrier) {
+            CharSequence key = entry.getKey();
+            if (equalsIgnoreCase(key, TRACE_ID_KEY)) {
+                traceId = entry.getValue();
+            } else if (equalsIgnoreCase(key, SPAN_ID_KEY)) {
+                spanId = entry.getValue();
+            } else if (equalsIgnoreCase(key, SAMPLED_KEY)) {
+                sampled = entry.getValue();
+            } else if (startsWithIgnoreCase(key, BAGGAGE_PREFIX)) {
+                baggage = put(baggage, key.subSequence(BAGGAGE_PREFIX.length(), key.length()).toString(),
+                        entry.getValue().toString());
+            }
+        }
+        return traceId == null || spanId == null ? null : newContext(traceId, spanId, sampled, baggage);
+    }
+
+    private static ReferenceSpanContext newContext(CharSequence traceId, CharSequence spanId, CharSequence sampled,
+            Map<String, String> baggage) {
+        boolean isSampled = sampled != null && (equalsIgnoreCase(sampled, "1") || equalsIgnoreCase(sampled, "true"));
+        return ReferenceSpanContext.extracted(Ids.parseHex(traceId), Ids.parseHex(spanId), isSampled,
+                sampled == null, baggage);
+    }
+
+    private static Map<String, String> put(Map<String, String> baggage, String key, String value) {
+        if (baggage.isEmpty()) {
+            baggage = new HashMap<>();
+        }
+        baggage.put(key, value);
+        return baggage;
+    }
+
+    private static boolean equalsIgnoreCase(CharSequence chars, String string) {
+        return chars.length() == string.length() && startsWithIgnoreCase(chars, string);
+    }
+
+    private static boolean startsWithIgnoreCase(CharSequence chars, String prefix) {
+        if (chars.length() < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            // The keys are ASCII, so comparing lower cases is enough.
+            if (Character.toLowerCase(chars.charAt(i)) != Character.toLowerCase(prefix.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void injectBinary(ReferenceSpanContext context, BinaryInject carrier) {
+        Map<String, String> baggage = context.baggage();
+        byte[][] encoded = encode(baggage);
+        int length = BINARY_HEADER_LENGTH;
+        for (byte[] bytes : encoded) {
+            length += 4 + bytes.length;
+        }
+        ByteBuffer buffer = carrier.injectionBuffer(length);
+        putHeader(buffer, context, baggage.size());
+        for (byte[] bytes : encoded) {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    /**
+     * Writes the context piece by piece, without computing its size first.
+     */
+    private static void injectBinary(ReferenceSpanContext context, BinaryStreamInject carrier) {
+        Map<String, String> baggage = context.baggage();
+        putHeader(carrier.nextInjectionBuffer(BINARY_HEADER_LENGTH), context, baggage.size());
+        for (Map.Entry<String, String> item : baggage.entrySet()) {
+            byte[] key = item.getKey().getBytes(StandardCharsets.UTF_8);
+            byte[] value = item.getValue().getBytes(StandardCharsets.UTF_8);
+            carrier.nextInjectionBuffer(8 + key.length + value.length)
+                    .putInt(key.length).put(key)
+                    .putInt(value.length).put(value);
+        }
+    }
+
+    private static byte[][] encode(Map<String, String> baggage) {
+        byte[][] encoded = new byte[baggage.size() * 2][];
+        int i = 0;
+        for (Map.Entry<String, String> item : baggage.entrySet()) {
+            encoded[i++] = item.getKey().getBytes(StandardCharsets.UTF_8);
+            encoded[i++] = item.getValue().getBytes(StandardCharsets.UTF_8);
+        }
+        return encoded;
+    }
+
+    private static void putHeader(ByteBuffer buffer, ReferenceSpanContext context, int baggageCount) {
+        int flags = (context.isSampled() ? SAMPLED_FLAG : 0) | (context.isSamplingDeferred() ? DEFERRED_FLAG : 0);
+        buffer.put(BINARY_VERSION)
+                .putLong(context.traceId())
+                .putLong(context.spanId())
+                .put((byte) flags)
+                .putInt(baggageCount);
+    }
+
+    private static ReferenceSpanContext extract(BinaryExtract carrier) {
+        ByteBuffer buffer = carrier.extractionBuffer();
+        if (buffer == null || !buffer.hasRemaining()) {
+            return null;
+        }
+        try {
+            byte version = buffer.get();
+            if (version != BINARY_VERSION) {
+                throw new IllegalArgumentException("Unsupported binary span context version: " + version);
+            }
+            long traceId = buffer.getLong();
+            long spanId = buffer.getLong();
+            byte flags = buffer.get();
+            int baggageCount = buffer.getInt();
+            Map<String, String> baggage = Collections.emptyMap();
+            for (int i = 0; i < baggageCount; i++) {
+                baggage = put(baggage, getString(buffer), getString(buffer));
+            }
+            return ReferenceSpanContext.extracted(traceId, spanId, (flags & SAMPLED_FLAG) != 0,
+                    (flags & DEFERRED_FLAG) != 0, baggage);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated binary span context", e);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Corrupted binary span context");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Protocol Buffers wire format primitives, writing into a {@link ByteBuffer} without allocating.
+ *
+ * <p>All the methods throw {@link BufferOverflowException} when the buffer has no room left.
+ */
+final class Protobuf {
+    static final int VARINT = 0;
+    static final int FIXED64 = 1;
+    static final int LENGTH_DELIMITED = 2;
+    static final int FIXED32 = 5;
+
+    /**
+     * The size of a length reserved by {@link #reserveLength(ByteBuffer)}, allowing messages of up to 256 MiB.
+     */
+    static final int RESERVED_LENGTH_SIZE = 4;
+    static final int MAX_RESERVED_LENGTH = (1 << 7 * RESERVED_LENGTH_SIZE) - 1;
+
+    private Protobuf() {
+    }
+
+    static int tag(int fieldNumber, int wireType) {
+        return fieldNumber << 3 | wireType;
+    }
+
+    static int varintSize(long value) {
+        // 1 byte per 7 significant bits, and at least 1 byte.
+        return (63 - Long.numberOfLeadingZeros(value | 1)) / 7 + 1;
+    }
+
+    static void writeVarint(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) (value & 0x7F | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static void writeFixed64(ByteBuffer buffer, long value) {
+        buffer.putLong(buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Long.reverseBytes(value));
+    }
+
+    static void writeFixed32(ByteBuffer buffer, int value) {
+        buffer.putInt(buffer.order() == ByteOrder.LITTLE_ENDIAN ? value : Integer.reverseBytes(value));
+    }
+
+    /**
+     * Writes the 8 big-endian bytes of an ID, as in the {@code bytes} IDs of OTLP.
+     */
+    static void writeBigEndian(ByteBuffer buffer, long value) {
+        buffer.putLong(buffer.order() == ByteOrder.BIG_ENDIAN ? value : Long.reverseBytes(value));
+    }
+
+    /**
+     * @return the length of the UTF-8 encoding of the string, where unpaired surrogates are replaced by '?'
+     */
+    static int utf8Length(String s) {
+        int length = s.length();
+        int bytes = length;
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    bytes += 1;
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    // 4 bytes for the pair of chars.
+                    bytes += 2;
+                    i++;
+                } else if (!Character.isSurrogate(c)) {
+                    bytes += 2;
+                }
+            }
+        }
+        return bytes;
+    }
+
+    static void writeUtf8(ByteBuffer buffer, String s) {
+        int length = s.length();
+        int i = 0;
+        if (buffer.hasArray() && buffer.remaining() >= length) {
+            // Write the leading ASCII chars directly into the array, without a bounds check per byte.
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset() + buffer.position();
+            for (char c; i < length && (c = s.charAt(i)) < 0x80; i++) {
+                array[offset + i] = (byte) c;
+            }
+            buffer.position(buffer.position() + i);
+        }
+        for (; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | c >> 6));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                buffer.put((byte) (0xF0 | codePoint >> 18));
+                buffer.put((byte) (0x80 | codePoint >> 12 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | c >> 12));
+                buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+                buffer.put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    /**
+     * @return the size of a length-delimited field, without its tag, whose content has the given size
+     */
+    static int lengthDelimitedSize(int contentSize) {
+        return varintSize(contentSize) + contentSize;
+    }
+
+    static void writeString(ByteBuffer buffer, int tag, String value, int utf8Length) {
+        writeVarint(buffer, tag);
+        writeVarint(buffer, utf8Length);
+        writeUtf8(buffer, value);
+    }
+
+    static void writeString(ByteBuffer buffer, int tag, String value) {
+        writeString(buffer, tag, value, utf8Length(value));
+    }
+
+    /**
+     * Reserves room for the length of a message whose size is not known yet, to be filled by
+     * {@link #fillLength(ByteBuffer, int)} once the message is written, so that messages are written in a single pass.
+     * The length is written as a varint padded to {@value #RESERVED_LENGTH_SIZE} bytes, which parsers accept.
+     *
+     * @return the position of the reserved length
+     */
+    static int reserveLength(ByteBuffer buffer) {
+        int position = buffer.position();
+        if (buffer.remaining() < RESERVED_LENGTH_SIZE) {
+            throw new BufferOverflowException();
+        }
+        buffer.position(position + RESERVED_LENGTH_SIZE);
+        return position;
+    }
+
+    static void fillLength(ByteBuffer buffer, int lengthPosition) {
+        int length = buffer.position() - lengthPosition - RESERVED_LENGTH_SIZE;
+        if (length > MAX_RESERVED_LENGTH) {
+            throw new IllegalStateException("Message too large: " + length + " bytes");
+        }
+        for (int i = 0; i < RESERVED_LENGTH_SIZE - 1; i++) {
+            buffer.put(lengthPosition + i, (byte) (length & 0x7F | 0x80));
+            length >>>= 7;
+        }
+        buffer.put(lengthPosition + RESERVED_LENGTH_SIZE - 1, (byte) length);
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link Sampler} sampling at most a given number of traces per second, allowing bursts of up to one second worth
+ * of traces.
+ *
+ * <p>This is a token bucket held in a single {@link AtomicLong}: instead of a token count, it keeps the time at which
+ * the bucket would be full again (the "theoretical arrival time" of the generic cell rate algorithm). Taking a token
+ * pushes that time forward by one emission interval with a CAS, so concurrent callers never block each other and
+ * refilling needs no background task.
+ */
+public final class RateLimitingSampler implements Sampler {
+    private final double tracesPerSecond;
+    private final long intervalNanos;
+    private final long burstToleranceNanos;
+    private final LongSupplier nanoClock;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param tracesPerSecond the maximum average number of traces sampled per second; 0 samples none
+     */
+    public RateLimitingSampler(double tracesPerSecond) {
+        this(tracesPerSecond, System::nanoTime);
+    }
+
+    RateLimitingSampler(double tracesPerSecond, LongSupplier nanoClock) {
+        if (!(tracesPerSecond >= 0)) {
+            throw new IllegalArgumentException("The rate must not be negative: " + tracesPerSecond);
+        }
+        this.tracesPerSecond = tracesPerSecond;
+        this.intervalNanos = tracesPerSecond == 0 ? Long.MAX_VALUE
+                : Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / tracesPerSecond));
+        double burst = Math.max(1, tracesPerSecond);
+        this.burstToleranceNanos = tracesPerSecond == 0 ? 0 : (long) ((burst - 1) * intervalNanos);
+        this.nanoClock = nanoClock;
+        this.fullAt = new AtomicLong(nanoClock.getAsLong());
+    }
+
+    public double tracesPerSecond() {
+        return tracesPerSecond;
+    }
+
+    /**
+     * Takes a token if one is available.
+     */
+    boolean tryAcquire() {
+        if (intervalNanos == Long.MAX_VALUE) {
+            return false;
+        }
+        for (;;) {
+            long now = nanoClock.getAsLong();
+            long current = fullAt.get();
+            // A bucket that has been full since before now holds no more than a full bucket.
+            long start = current - now > 0 ? current : now;
+            if (start - now > burstToleranceNanos) {
+                return false;
+            }
+            if (fullAt.compareAndSet(current, start + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean sample(String operationName, long traceId) {
+        return tryAcquire();
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimitingSampler{tracesPerSecond=" + tracesPerSecond + "}";
+    }
+}
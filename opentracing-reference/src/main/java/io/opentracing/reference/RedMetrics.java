@@ -0,0 +1,225 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.tag.Tags;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link SpanProcessor} deriving RED metrics (rate, errors, duration) from finished spans, sampled or not.
+ *
+ * <p>Spans are grouped into series by operation name, {@link Tags#SPAN_KIND} and {@link Tags#COMPONENT}. Each series
+ * counts its spans, its spans whose {@link Tags#ERROR} tag is true, and their durations in a {@link LatencyHistogram}.
+ * Updates take no locks and, once the series exists, do not allocate.
+ *
+ * <p>Metrics are exported with {@link #snapshot()}, or {@link #snapshotAndReset()} to export deltas. To bound memory
+ * when operation names have a high cardinality, spans of new series are dropped once there are about
+ * {@code maxSeries} series.
+ */
+public final class RedMetrics implements SpanProcessor {
+    public static final int DEFAULT_MAX_SERIES = 1000;
+
+    private final ConcurrentHashMap<Key, Series> series = new ConcurrentHashMap<>();
+    private final ThreadLocal<Key> lookupKeys = ThreadLocal.withInitial(Key::new);
+    private final int maxSeries;
+    private final LongAdder droppedSpans = new LongAdder();
+
+    public RedMetrics() {
+        this(DEFAULT_MAX_SERIES);
+    }
+
+    public RedMetrics(int maxSeries) {
+        if (maxSeries <= 0) {
+            throw new IllegalArgumentException("The maximum number of series must be positive: " + maxSeries);
+        }
+        this.maxSeries = maxSeries;
+    }
+
+    @Override
+    public void onFinish(ReferenceSpan span, long durationMicros) {
+        Key lookupKey = lookupKeys.get().set(span.operationName(), span.spanKind(), span.component());
+        Series series = this.series.get(lookupKey);
+        if (series == null) {
+            if (this.series.size() >= maxSeries) {
+                droppedSpans.increment();
+                return;
+            }
+            series = this.series.computeIfAbsent(lookupKey.copy(), key -> new Series());
+        }
+        series.requests.increment();
+        if (span.isError()) {
+            series.errors.increment();
+        }
+        series.durations.record(durationMicros);
+    }
+
+    /**
+     * @return the number of spans not counted because their series would have exceeded the maximum
+     */
+    public long droppedSpans() {
+        return droppedSpans.sum();
+    }
+
+    /**
+     * @return the metrics of each series since they were last reset
+     */
+    public List<Snapshot> snapshot() {
+        return snapshot(false);
+    }
+
+    /**
+     * Returns the metrics of each series and resets them. Spans finishing concurrently are counted in this snapshot
+     * or the next one, although not necessarily in the same one for all the metrics of a series.
+     */
+    public List<Snapshot> snapshotAndReset() {
+        return snapshot(true);
+    }
+
+    private List<Snapshot> snapshot(boolean reset) {
+        List<Snapshot> snapshots = new ArrayList<>(series.size());
+        for (Map.Entry<Key, Series> entry : series.entrySet()) {
+            Key key = entry.getKey();
+            Series series = entry.getValue();
+            long requests = reset ? series.requests.sumThenReset() : series.requests.sum();
+            long errors = reset ? series.errors.sumThenReset() : series.errors.sum();
+            snapshots.add(new Snapshot(key.operationName, key.spanKind, key.component, requests, errors,
+                    series.durations.counts(reset)));
+        }
+        return snapshots;
+    }
+
+    private static final class Series {
+        final LongAdder requests = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LatencyHistogram durations = new LatencyHistogram();
+    }
+
+    /**
+     * A series key, also used mutably per thread to look series up without allocating.
+     */
+    private static final class Key {
+        String operationName;
+        String spanKind;
+        String component;
+        int hash;
+
+        Key set(String operationName, String spanKind, String component) {
+            this.operationName = operationName;
+            this.spanKind = spanKind;
+            this.component = component;
+            this.hash = (Objects.hashCode(operationName) * 31 + Objects.hashCode(spanKind)) * 31
+                    + Objects.hashCode(component);
+            return this;
+        }
+
+        Key copy() {
+            return new Key().set(operationName, spanKind, component);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && Objects.equals(operationName, other.operationName)
+                    && Objects.equals(spanKind, other.spanKind) && Objects.equals(component, other.component);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The metrics of a series.
+     */
+    public static final class Snapshot {
+        private final String operationName;
+        private final String spanKind;
+        private final String component;
+        private final long requests;
+        private final long errors;
+        private final long[] durationCounts;
+
+        Snapshot(String operationName, String spanKind, String component, long requests, long errors,
+                long[] durationCounts) {
+            this.operationName = operationName;
+            this.spanKind = spanKind;
+            this.component = component;
+            this.requests = requests;
+            this.errors = errors;
+            this.durationCounts = durationCounts;
+        }
+
+        public String operationName() {
+            return operationName;
+        }
+
+        /**
+         * @return the {@link Tags#SPAN_KIND} of the series, or null
+         */
+        public String spanKind() {
+            return spanKind;
+        }
+
+        /**
+         * @return the {@link Tags#COMPONENT} of the series, or null
+         */
+        public String component() {
+            return component;
+        }
+
+        /**
+         * @return the number of finished spans
+         */
+        public long requests() {
+            return requests;
+        }
+
+        /**
+         * @return the number of finished spans whose {@link Tags#ERROR} tag is true
+         */
+        public long errors() {
+            return errors;
+        }
+
+        /**
+         * @return the number of spans in each bucket of {@link LatencyHistogram}
+         */
+        public long[] durationCounts() {
+            return durationCounts.clone();
+        }
+
+        /**
+         * @see LatencyHistogram#valueAtPercentile(long[], double)
+         */
+        public long durationAtPercentile(double percentile) {
+            return LatencyHistogram.valueAtPercentile(durationCounts, percentile);
+        }
+
+        @Override
+        public String toString() {
+            return "Snapshot{operationName=" + operationName + ", spanKind=" + spanKind + ", component=" + component
+                    + ", requests=" + requests + ", errors=" + errors + ", p50=" + durationAtPercentile(50)
+                    + ", p99=" + durationAtPercentile(99) + "}";
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.Span;
+
+/**
+ * The {@link Span.LogBuilder} of {@link ReferenceSpan}, reused by each thread for all its logs.
+ */
+final class ReferenceLogBuilder implements Span.LogBuilder {
+    static final int MAX_FIELDS = 64;
+
+    private final Attributes fields = new Attributes(MAX_FIELDS);
+    private ReferenceSpan span;
+    private long timestampMicros;
+
+    ReferenceLogBuilder reset(ReferenceSpan span) {
+        this.span = span;
+        this.timestampMicros = 0;
+        fields.clear();
+        return this;
+    }
+
+    @Override
+    public ReferenceLogBuilder field(String key, String value) {
+        fields.add(key, value);
+        return this;
+    }
+
+    @Override
+    public ReferenceLogBuilder field(String key, boolean value) {
+        fields.add(key, value);
+        return this;
+    }
+
+    @Override
+    public ReferenceLogBuilder field(String key, int value) {
+        fields.add(key, value);
+        return this;
+    }
+
+    @Override
+    public ReferenceLogBuilder field(String key, long value) {
+        fields.add(key, value);
+        return this;
+    }
+
+    @Override
+    public ReferenceLogBuilder field(String key, double value) {
+        fields.add(key, value);
+        return this;
+    }
+
+    @Override
+    public ReferenceLogBuilder field(String key, Object value) {
+        fields.add(key, value);
+        return this;
+    }
+
+    @Override
+    public ReferenceLogBuilder withTimestamp(long timestampMicroseconds) {
+        this.timestampMicros = timestampMicroseconds;
+        return this;
+    }
+
+    @Override
+    public ReferenceSpan emit() {
+        ReferenceSpan span = this.span;
+        if (span == null) {
+            throw new IllegalStateException("The log has already been emitted");
+        }
+        this.span = null;
+        span.log(timestampMicros, fields);
+        fields.clear();
+        return span;
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.Span;
+import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.Tags;
+import io.opentracing.tag.ValueSupplier;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * The {@link Span} of {@link ReferenceTracer}.
+ *
+ * <p>A sampled span records into a pooled {@link SpanData} without taking locks: tags and logs are appended to
+ * fixed-capacity storage whose slots are reserved with a CAS, and finishing is decided by a CAS as well. When the span
+ * finishes, its data is handed to the {@link Reporter} and detached from the span, so that later calls have no effect.
+ * Calls racing with {@link #finish()} on another thread are waited for before the data is reported and recycled, see
+ * {@link SpanState}.
+ *
+ * <p>A span that is not sampled holds no data and records nothing, except for the tags read by the
+ * {@link SpanProcessor} of the tracer, if it has one.
+ *
+ * <p>The span is a handle on a {@link SpanState}, stamped with the generation of the state it was started with. Calls
+ * on a finished span other than {@link #context()} and {@link #getBaggageItem(String)} have no effect, and are counted
+ * by {@link ReferenceTracer#useAfterFinishErrors()}; {@link #logBuilder()} checks its span when the log is emitted.
+ * The context and baggage belong to the handle itself, and remain available once the span finished.
+ *
+ * <p>A tracer can also recycle the state of its spans: a finished span's state is then reused by a later span started
+ * on the thread that finished it. The finished span keeps its stamp, so that calls on it are still detected rather
+ * than applied to the new span, however long it is held, e.g. as the active span captured by another thread.
+ */
+public final class ReferenceSpan implements Span {
+    private static final AtomicReferenceFieldUpdater<ReferenceSpan, ReferenceSpanContext> CONTEXT =
+            AtomicReferenceFieldUpdater.newUpdater(ReferenceSpan.class, ReferenceSpanContext.class, "context");
+    private static final ThreadLocal<ReferenceLogBuilder> logBuilders = new ThreadLocal<ReferenceLogBuilder>() {
+        @Override
+        protected ReferenceLogBuilder initialValue() {
+            return new ReferenceLogBuilder();
+        }
+    };
+
+    static final int OTHER_TAG = 0;
+    static final int SPAN_KIND_TAG = 1;
+    static final int COMPONENT_TAG = 2;
+    static final int ERROR_TAG = 3;
+
+    private final SpanState state;
+    private final int generation;
+    private volatile ReferenceSpanContext context;
+
+    ReferenceSpan(SpanState state, int generation, ReferenceSpanContext context) {
+        this.state = state;
+        this.generation = generation;
+        this.context = context;
+    }
+
+    /**
+     * @return which of the tags read by span processors the key is, if any
+     */
+    static int processorTag(String key) {
+        if (Tags.SPAN_KIND.getKey().equals(key)) {
+            return SPAN_KIND_TAG;
+        } else if (Tags.COMPONENT.getKey().equals(key)) {
+            return COMPONENT_TAG;
+        } else if (Tags.ERROR.getKey().equals(key)) {
+            return ERROR_TAG;
+        }
+        return OTHER_TAG;
+    }
+
+    /**
+     * Sets a tag read by span processors, between {@link #beginWrite(boolean)} and {@link SpanState#endWrite()}.
+     */
+    private void setProcessorTag(String key, Object value) {
+        if (state.tracer.processor() == null) {
+            return;
+        }
+        switch (processorTag(key)) {
+            case SPAN_KIND_TAG:
+                state.spanKind = value instanceof String ? (String) value : null;
+                break;
+            case COMPONENT_TAG:
+                state.component = value instanceof String ? (String) value : null;
+                break;
+            case ERROR_TAG:
+                state.error = Boolean.TRUE.equals(value);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Counts a call made after the span finished.
+     */
+    private void checkCurrent() {
+        if (state.generation() != generation) {
+            state.tracer.useAfterFinish();
+        }
+    }
+
+    /**
+     * Begins a write to the state of this span, which {@link #finish()} waits for. Unless this returns false, the
+     * caller must call {@link SpanState#endWrite()} once done.
+     *
+     * @param unsampled whether the write applies to a span that is not sampled as well; if not, such a span only
+     *                  checks whether it finished, without taking part in the writes its finishing waits for
+     * @return false if there is nothing to write, in particular if the span finished, in which case the call is counted
+     */
+    private boolean beginWrite(boolean unsampled) {
+        if (!unsampled && !context.isSampled()) {
+            checkCurrent();
+            return false;
+        }
+        if (state.beginWrite(generation)) {
+            return true;
+        }
+        state.tracer.useAfterFinish();
+        return false;
+    }
+
+    /**
+     * @return the tags of this span between {@link #beginWrite(boolean)} and {@link SpanState#endWrite()}, or null if
+     * it is not sampled
+     */
+    private Attributes tags() {
+        SpanData data = state.data;
+        return data == null ? null : data.tagsForWriting();
+    }
+
+    // Once the span finished, the state read below is only its own until the state is reused; it is while the span
+    // processor is called.
+
+    public String operationName() {
+        return state.operationName;
+    }
+
+    public long startMicros() {
+        return state.startMicros;
+    }
+
+    /**
+     * @return the {@link Tags#SPAN_KIND} tag, or null; only maintained if the tracer has a {@link SpanProcessor}
+     */
+    public String spanKind() {
+        return state.spanKind;
+    }
+
+    /**
+     * @return the {@link Tags#COMPONENT} tag, or null; only maintained if the tracer has a {@link SpanProcessor}
+     */
+    public String component() {
+        return state.component;
+    }
+
+    /**
+     * @return whether the {@link Tags#ERROR} tag is true; only maintained if the tracer has a {@link SpanProcessor}
+     */
+    public boolean isError() {
+        return state.error;
+    }
+
+    @Override
+    public ReferenceSpanContext context() {
+        return context;
+    }
+
+    @Override
+    public boolean isRecording() {
+        return context.isSampled() && state.generation() == generation;
+    }
+
+    @Override
+    public ReferenceSpan setTag(String key, String value) {
+        if (beginWrite(state.tracer.processor() != null)) {
+            try {
+                setProcessorTag(key, value);
+                Attributes tags = tags();
+                if (tags != null) {
+                    tags.add(key, value);
+                }
+            } finally {
+                state.endWrite();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public ReferenceSpan setTag(String key, boolean value) {
+        if (beginWrite(state.tracer.processor() != null)) {
+            try {
+                setProcessorTag(key, value);
+                Attributes tags = tags();
+                if (tags != null) {
+                    tags.add(key, value);
+                }
+            } finally {
+                state.endWrite();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public ReferenceSpan setTag(String key, Number value) {
+        if (beginWrite(false)) {
+            try {
+                tags().add(key, (Object) value);
+            } finally {
+                state.endWrite();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public ReferenceSpan setTag(String key, int value) {
+        if (beginWrite(false)) {
+            try {
+                tags().add(key, value);
+            } finally {
+                state.endWrite();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public ReferenceSpan setTag(String key, long value) {
+        if (beginWrite(false)) {
+            try {
+                tags().add(key, value);
+            } finally {
+                state.endWrite();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public ReferenceSpan setTag(String key, double value) {
+        if (beginWrite(false)) {
+            try {
+                tags().add(key, value);
+            } finally {
+                state.endWrite();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public <T> ReferenceSpan setTag(Tag<T> tag, T value) {
+        tag.set(this, value);
+        return this;
+    }
+
+    @Override
+    public ReferenceSpan setTag(String key, ValueSupplier<?> supplier) {
+        if (beginWrite(false)) {
+            try {
+                tags().addLazy(key, supplier);
+            } finally {
+                state.endWrite();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public <T> ReferenceSpan setTag(Tag<T> tag, ValueSupplier<? extends T> supplier) {
+        return setTag(tag.getKey(), supplier);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public ReferenceSpan setTags(TagSet tags) {
+        boolean typed = false;
+        if (beginWrite(state.tracer.processor() != null)) {
+            try {
+                for (int i = 0; i < tags.size(); i++) {
+                    if (tags.getTag(i) == null) {
+                        setProcessorTag(tags.getKey(i), tags.getValue(i));
+                    } else {
+                        typed = true;
+                    }
+                }
+                Attributes attributes = tags();
+                if (attributes != null) {
+                    putAll(attributes, tags);
+                }
+            } finally {
+                state.endWrite();
+            }
+        } else {
+            for (int i = 0; i < tags.size() && !typed; i++) {
+                typed = tags.getTag(i) != null;
+            }
+        }
+        // Applied outside of the write, as a Tag may call back into the span.
+        if (typed) {
+            for (int i = 0; i < tags.size(); i++) {
+                Tag<?> tag = tags.getTag(i);
+                if (tag != null) {
+                    ((Tag<Object>) tag).set(this, tags.getValue(i));
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the entries of the given set that were added with a plain key, in one reservation. Entries added with a
+     * {@link Tag} are left to the caller, to be applied through their {@link Tag}.
+     */
+    static void putAll(Attributes attributes, TagSet tags) {
+        int count = 0;
+        for (int i = 0; i < tags.size(); i++) {
+            if (tags.getTag(i) == null) {
+                count++;
+            }
+        }
+        int start = count == 0 ? -1 : attributes.reserve(count);
+        if (start >= 0) {
+            for (int i = 0; i < tags.size(); i++) {
+                if (tags.getTag(i) == null) {
+                    attributes.set(start++, tags.getKey(i), tags.getValue(i));
+                }
+            }
+        }
+    }
+
+    @Override
+    public ReferenceSpan log(Map<String, ?> fields) {
+        return log(state.tracer.nowMicros(), fields);
+    }
+
+    @Override
+    public ReferenceSpan log(long timestampMicroseconds, Map<String, ?> fields) {
+        if (beginWrite(false)) {
+            try {
+                state.data.log(timestampMicroseconds, fields);
+            } finally {
+                state.endWrite();
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public ReferenceSpan log(String event) {
+        return log(state.tracer.nowMicros(), event);
+    }
+
+    @Override
+    public ReferenceSpan log(long timestampMicroseconds, String event) {
+        if (beginWrite(false)) {
+            try {
+                state.data.log(timestampMicroseconds, event);
+            } finally {
+                state.endWrite();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the builder of the calling thread, which is reused: a log must be emitted before the next one is started
+     * on the same thread.
+     */
+    @Override
+    public Span.LogBuilder logBuilder() {
+        return logBuilders.get().reset(this);
+    }
+
+    /**
+     * Records a log whose fields were collected by a {@link ReferenceLogBuilder}.
+     *
+     * @param timestampMicros the timestamp of the log, or 0 for the current time
+     */
+    void log(long timestampMicros, Attributes fields) {
+        if (!beginWrite(false)) {
+            return;
+        }
+        try {
+            SpanData data = state.data;
+            int count = fields.size();
+            int start = data.reserveLog(timestampMicros == 0 ? state.tracer.nowMicros() : timestampMicros, count);
+            if (start >= 0) {
+                Attributes logFields = data.logFieldsForWriting();
+                for (int i = 0; i < count; i++) {
+                    fields.copy(i, logFields, start + i);
+                }
+            }
+        } finally {
+            state.endWrite();
+        }
+    }
+
+    @Override
+    public ReferenceSpan setBaggageItem(String key, String value) {
+        checkCurrent();
+        ReferenceSpanContext current;
+        do {
+            current = context;
+        } while (!CONTEXT.compareAndSet(this, current, current.withBaggageItem(key, value)));
+        return this;
+    }
+
+    @Override
+    public String getBaggageItem(String key) {
+        return context.getBaggageItem(key);
+    }
+
+    @Override
+    public ReferenceSpan setOperationName(String operationName) {
+        if (beginWrite(true)) {
+            state.operationName = operationName;
+            state.endWrite();
+        }
+        return this;
+    }
+
+    @Override
+    public void finish() {
+        finish(state.tracer.nowMicros());
+    }
+
+    @Override
+    public void finish(long finishMicros) {
+        SpanState state = this.state;
+        if (!state.finish(generation)) {
+            state.tracer.useAfterFinish();
+            return;
+        }
+        SpanProcessor processor = state.tracer.processor();
+        if (processor != null) {
+            processor.onFinish(this, finishMicros - state.startMicros);
+        }
+        SpanData data = state.data;
+        if (data != null) {
+            state.data = null;
+            data.finish(state.operationName, context, finishMicros);
+            state.tracer.report(data);
+        }
+        state.tracer.recycle(state);
+    }
+
+    @Override
+    public String toString() {
+        return "ReferenceSpan{operationName=" + state.operationName + ", context=" + context + ", finished="
+                + (state.generation() != generation) + "}";
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.SpanContext;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An immutable {@link SpanContext} holding 64-bit trace and span IDs, the sampling decision and the baggage.
+ *
+ * <p>IDs are rendered as 16 lower-case hexadecimal digits; their strings are built at most once.
+ */
+public final class ReferenceSpanContext implements SpanContext {
+    private final long traceId;
+    private final long spanId;
+    private final boolean sampled;
+    private final boolean samplingDeferred;
+    private final boolean remote;
+    private final Map<String, String> baggage;
+    private String traceIdString;
+    private String spanIdString;
+
+    /**
+     * @param baggage the baggage items, which must not be modified afterwards
+     */
+    ReferenceSpanContext(long traceId, long spanId, boolean sampled, Map<String, String> baggage) {
+        this(traceId, spanId, sampled, false, false, baggage);
+    }
+
+    private ReferenceSpanContext(long traceId, long spanId, boolean sampled, boolean samplingDeferred, boolean remote,
+            Map<String, String> baggage) {
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.sampled = sampled && !samplingDeferred;
+        this.samplingDeferred = samplingDeferred;
+        this.remote = remote;
+        this.baggage = baggage;
+    }
+
+    /**
+     * Creates a context extracted from a carrier.
+     *
+     * @param samplingDeferred true if the carrier held no sampling decision, in which case the children of the context
+     *                         are sampled as if they started a trace
+     * @param baggage the baggage items, which must not be modified afterwards
+     */
+    static ReferenceSpanContext extracted(long traceId, long spanId, boolean sampled, boolean samplingDeferred,
+            Map<String, String> baggage) {
+        return new ReferenceSpanContext(traceId, spanId, sampled, samplingDeferred, true, baggage);
+    }
+
+    public long traceId() {
+        return traceId;
+    }
+
+    public long spanId() {
+        return spanId;
+    }
+
+    @Override
+    public String toTraceId() {
+        // Racy but benign: at worst, concurrent callers build equal strings.
+        String result = traceIdString;
+        if (result == null) {
+            traceIdString = result = Ids.toHex(traceId);
+        }
+        return result;
+    }
+
+    @Override
+    public int toTraceId(char[] dest, int offset) {
+        return Ids.writeHex(traceId, dest, offset);
+    }
+
+    @Override
+    public int toTraceIdBytes(byte[] dest, int offset) {
+        return Ids.writeBytes(traceId, dest, offset);
+    }
+
+    @Override
+    public String toSpanId() {
+        String result = spanIdString;
+        if (result == null) {
+            spanIdString = result = Ids.toHex(spanId);
+        }
+        return result;
+    }
+
+    @Override
+    public int toSpanId(char[] dest, int offset) {
+        return Ids.writeHex(spanId, dest, offset);
+    }
+
+    @Override
+    public int toSpanIdBytes(byte[] dest, int offset) {
+        return Ids.writeBytes(spanId, dest, offset);
+    }
+
+    /**
+     * @return whether the trace is sampled; false if the decision was deferred
+     */
+    @Override
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    boolean isSamplingDeferred() {
+        return samplingDeferred;
+    }
+
+    /**
+     * @return true if the context was extracted, i.e. it belongs to a span of another process
+     */
+    boolean isRemote() {
+        return remote;
+    }
+
+    public String getBaggageItem(String key) {
+        return baggage.get(key);
+    }
+
+    @Override
+    public Iterable<Map.Entry<String, String>> baggageItems() {
+        return Collections.unmodifiableMap(baggage).entrySet();
+    }
+
+    Map<String, String> baggage() {
+        return baggage;
+    }
+
+    /**
+     * @return a copy of this context with the given baggage item added, or removed if the value is null
+     */
+    ReferenceSpanContext withBaggageItem(String key, String value) {
+        Map<String, String> newBaggage = new HashMap<>(baggage);
+        if (value == null) {
+            newBaggage.remove(key);
+        } else {
+            newBaggage.put(key, value);
+        }
+        return new ReferenceSpanContext(traceId, spanId, sampled, samplingDeferred, remote, newBaggage);
+    }
+
+    @Override
+    public String toString() {
+        return "ReferenceSpanContext{traceId=" + toTraceId() + ", spanId=" + toSpanId() + ", sampled="
+                + (samplingDeferred ? "deferred" : sampled) + "}";
+    }
+}
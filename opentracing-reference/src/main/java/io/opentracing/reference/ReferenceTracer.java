@@ -0,0 +1,492 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.References;
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.Tags;
+import io.opentracing.tag.ValueSupplier;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link Tracer} meant as a reference for production implementations: spans record without locks into pooled,
+ * fixed-capacity storage, and are handed to a pluggable {@link Reporter} when they finish.
+ *
+ * <p>Whether a trace is sampled is decided by the {@link Sampler} when its root span starts, and inherited by the
+ * descendants of that span. A {@link Tags#SAMPLING_PRIORITY} tag given to a {@link SpanBuilder} overrides the
+ * decision for the new span and its descendants: a positive priority samples them, 0 does not. Spans that are not
+ * sampled take a fast path recording nothing. Span contexts, including the sampling decision, propagate through the
+ * carriers of all the built-in formats, as described by the module documentation.
+ *
+ * <p>A {@link SpanProcessor}, such as {@link RedMetrics}, can observe all the spans as they finish, sampled or not.
+ *
+ * <p>Besides their data, the state of spans can be recycled once they finished, through small per-thread pools; the
+ * spans handed out remain handles stamped with the generation of their state, see {@link ReferenceSpan}. Calls on
+ * finished spans are counted either way, by {@link #useAfterFinishErrors()}.
+ *
+ * <p>Timestamps are derived from {@link System#nanoTime()}, anchored to the wall clock when the tracer is created, so
+ * that durations are precise and unaffected by clock adjustments.
+ */
+public final class ReferenceTracer implements Tracer {
+    public static final int DEFAULT_MAX_TAGS = 64;
+    public static final int DEFAULT_MAX_LOGS = 32;
+    public static final int DEFAULT_POOL_SIZE = 256;
+    static final int LOG_FIELDS_PER_LOG = 4;
+
+    private final ScopeManager scopeManager;
+    private final Reporter reporter;
+    private final Sampler sampler;
+    private final int maxTags;
+    private final SpanDataPool pool;
+    private final SpanProcessor processor;
+    private final SpanPool spanPool;
+    private final ThreadLocal<Attributes> builderTags;
+    private final LongAdder useAfterFinishErrors = new LongAdder();
+    private final long anchorMicros;
+    private final long anchorNanos;
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    public ReferenceTracer(Reporter reporter) {
+        this(new ThreadLocalScopeManager(), reporter);
+    }
+
+    public ReferenceTracer(ScopeManager scopeManager, Reporter reporter) {
+        this(scopeManager, reporter, Sampler.ALWAYS);
+    }
+
+    public ReferenceTracer(ScopeManager scopeManager, Reporter reporter, Sampler sampler) {
+        this(scopeManager, reporter, sampler, DEFAULT_MAX_TAGS, DEFAULT_MAX_LOGS, DEFAULT_POOL_SIZE);
+    }
+
+    /**
+     * @param maxTags the number of tags a span can hold; further tags are dropped
+     * @param maxLogs the number of logs a span can hold, with room for an average of four fields each; further logs
+     *                or fields are dropped
+     * @param poolSize the number of span data instances kept for reuse, 0 to disable pooling
+     */
+    public ReferenceTracer(ScopeManager scopeManager, Reporter reporter, Sampler sampler, int maxTags, int maxLogs,
+            int poolSize) {
+        this(scopeManager, reporter, sampler, maxTags, maxLogs, poolSize, null);
+    }
+
+    /**
+     * @param processor the processor of finished spans, or null
+     */
+    public ReferenceTracer(ScopeManager scopeManager, Reporter reporter, Sampler sampler, int maxTags, int maxLogs,
+            int poolSize, SpanProcessor processor) {
+        this(scopeManager, reporter, sampler, maxTags, maxLogs, poolSize, processor, 0);
+    }
+
+    /**
+     * @param spansPerThread the number of states of finished spans each thread keeps for reuse, 0 not to recycle them
+     */
+    public ReferenceTracer(ScopeManager scopeManager, Reporter reporter, Sampler sampler, int maxTags, int maxLogs,
+            int poolSize, SpanProcessor processor, int spansPerThread) {
+        if (maxTags < 0 || maxLogs < 0 || poolSize < 0 || spansPerThread < 0) {
+            throw new IllegalArgumentException("Limits must not be negative");
+        }
+        this.scopeManager = scopeManager;
+        this.reporter = reporter;
+        this.sampler = sampler;
+        this.maxTags = maxTags;
+        this.pool = new SpanDataPool(poolSize, maxTags, maxLogs, maxLogs * LOG_FIELDS_PER_LOG);
+        this.processor = processor;
+        this.spanPool = spansPerThread == 0 ? null : new SpanPool(spansPerThread);
+        this.builderTags = new ThreadLocal<Attributes>() {
+            @Override
+            protected Attributes initialValue() {
+                return new Attributes(maxTags);
+            }
+        };
+        this.anchorMicros = System.currentTimeMillis() * 1000;
+        this.anchorNanos = System.nanoTime();
+    }
+
+    long nowMicros() {
+        return anchorMicros + (System.nanoTime() - anchorNanos) / 1000;
+    }
+
+    SpanDataPool pool() {
+        return pool;
+    }
+
+    SpanProcessor processor() {
+        return processor;
+    }
+
+    SpanPool spanPool() {
+        return spanPool;
+    }
+
+    void recycle(SpanState state) {
+        if (spanPool != null) {
+            spanPool.release(state);
+        }
+    }
+
+    void useAfterFinish() {
+        useAfterFinishErrors.increment();
+    }
+
+    /**
+     * Like the errors {@code MockSpan} generates, but counted rather than collected.
+     *
+     * @return the number of calls made on spans of this tracer after they finished, other than to read their context
+     * or baggage, which had no effect
+     */
+    public long useAfterFinishErrors() {
+        return useAfterFinishErrors.sum();
+    }
+
+    void report(SpanData data) {
+        if (closed.get()) {
+            data.release();
+        } else {
+            reporter.report(data);
+        }
+    }
+
+    @Override
+    public ScopeManager scopeManager() {
+        return scopeManager;
+    }
+
+    @Override
+    public SpanBuilder buildSpan(String operationName) {
+        return new SpanBuilder(operationName);
+    }
+
+    /**
+     * Injects a context of this tracer; contexts of other tracers are ignored.
+     *
+     * @throws IllegalArgumentException if the carrier is not supported
+     */
+    @Override
+    public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
+        if (spanContext instanceof ReferenceSpanContext) {
+            Propagation.inject((ReferenceSpanContext) spanContext, carrier);
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the carrier is not supported, or holds a malformed context
+     */
+    @Override
+    public <C> ReferenceSpanContext extract(Format<C> format, C carrier) {
+        return Propagation.extract(carrier);
+    }
+
+    @Override
+    public Span activeSpan() {
+        return scopeManager.activeSpan();
+    }
+
+    @Override
+    public Scope activateSpan(Span span) {
+        return scopeManager.activate(span);
+    }
+
+    /**
+     * Closes the reporter. Spans finishing afterwards are not reported.
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            reporter.close();
+        }
+    }
+
+    public final class SpanBuilder implements Tracer.SpanBuilder {
+        private final String operationName;
+        private long startMicros;
+        private boolean ignoringActiveSpan;
+        private ReferenceSpanContext parent;
+        private boolean parentIsChildOf;
+        private int samplingPriority = -1;
+        // Kept here rather than in the SpanData, which is only needed if the span is sampled.
+        private String[] referenceTypes;
+        private ReferenceSpanContext[] referenceContexts;
+        private int referenceCount;
+        // Kept until the span is known to be sampled, in a buffer the thread reuses for all its builders.
+        private Attributes tags;
+        private String spanKind;
+        private String component;
+        private boolean error;
+
+        SpanBuilder(String operationName) {
+            this.operationName = operationName;
+        }
+
+        /**
+         * @return the tags of the builder, in the buffer of the calling thread unless another builder of the thread
+         * holds it
+         */
+        private Attributes tags() {
+            if (tags == null) {
+                tags = builderTags.get();
+                if (tags == null) {
+                    tags = new Attributes(maxTags);
+                } else {
+                    builderTags.set(null);
+                }
+            }
+            return tags;
+        }
+
+        private void setProcessorTag(String key, Object value) {
+            if (processor == null) {
+                return;
+            }
+            switch (ReferenceSpan.processorTag(key)) {
+                case ReferenceSpan.SPAN_KIND_TAG:
+                    spanKind = value instanceof String ? (String) value : null;
+                    break;
+                case ReferenceSpan.COMPONENT_TAG:
+                    component = value instanceof String ? (String) value : null;
+                    break;
+                case ReferenceSpan.ERROR_TAG:
+                    error = Boolean.TRUE.equals(value);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void checkSamplingPriority(String key, long value) {
+            if (Tags.SAMPLING_PRIORITY.getKey().equals(key)) {
+                samplingPriority = (int) Math.max(0, Math.min(value, Integer.MAX_VALUE));
+            }
+        }
+
+        private void checkSamplingPriority(String key, Object value) {
+            if (value instanceof Number) {
+                checkSamplingPriority(key, ((Number) value).longValue());
+            }
+        }
+
+        @Override
+        public SpanBuilder asChildOf(SpanContext parent) {
+            return addReference(References.CHILD_OF, parent);
+        }
+
+        @Override
+        public SpanBuilder asChildOf(Span parent) {
+            if (parent == null) {
+                return this;
+            }
+            return addReference(References.CHILD_OF, parent.context());
+        }
+
+        /**
+         * Adds a reference to a context of this tracer; contexts of other tracers are ignored.
+         */
+        @Override
+        public SpanBuilder addReference(String referenceType, SpanContext referencedContext) {
+            if (!(referencedContext instanceof ReferenceSpanContext)) {
+                return this;
+            }
+            ReferenceSpanContext context = (ReferenceSpanContext) referencedContext;
+            if (referenceContexts == null) {
+                referenceTypes = new String[1];
+                referenceContexts = new ReferenceSpanContext[1];
+            } else if (referenceCount == referenceContexts.length) {
+                referenceTypes = Arrays.copyOf(referenceTypes, referenceCount * 2);
+                referenceContexts = Arrays.copyOf(referenceContexts, referenceCount * 2);
+            }
+            referenceTypes[referenceCount] = referenceType;
+            referenceContexts[referenceCount] = context;
+            referenceCount++;
+            // Prefer the first CHILD_OF reference as the parent, else the first reference.
+            boolean isChildOf = References.CHILD_OF.equals(referenceType);
+            if (parent == null || (isChildOf && !parentIsChildOf)) {
+                parent = context;
+                parentIsChildOf = isChildOf;
+            }
+            return this;
+        }
+
+        @Override
+        public SpanBuilder ignoreActiveSpan() {
+            ignoringActiveSpan = true;
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, String value) {
+            setProcessorTag(key, value);
+            tags().add(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, boolean value) {
+            setProcessorTag(key, value);
+            tags().add(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, Number value) {
+            checkSamplingPriority(key, value);
+            tags().add(key, (Object) value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, int value) {
+            checkSamplingPriority(key, value);
+            tags().add(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, long value) {
+            checkSamplingPriority(key, value);
+            tags().add(key, value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, double value) {
+            tags().add(key, value);
+            return this;
+        }
+
+        @Override
+        public <T> SpanBuilder withTag(Tag<T> tag, T value) {
+            checkSamplingPriority(tag.getKey(), value);
+            setProcessorTag(tag.getKey(), value);
+            tags().add(tag.getKey(), value);
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withTag(String key, ValueSupplier<?> supplier) {
+            tags().addLazy(key, supplier);
+            return this;
+        }
+
+        @Override
+        public <T> SpanBuilder withTag(Tag<T> tag, ValueSupplier<? extends T> supplier) {
+            return withTag(tag.getKey(), supplier);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public SpanBuilder withTags(TagSet tags) {
+            boolean typed = false;
+            for (int i = 0; i < tags.size(); i++) {
+                if (tags.getTag(i) == null) {
+                    checkSamplingPriority(tags.getKey(i), tags.getValue(i));
+                    setProcessorTag(tags.getKey(i), tags.getValue(i));
+                } else {
+                    typed = true;
+                }
+            }
+            ReferenceSpan.putAll(tags(), tags);
+            if (typed) {
+                for (int i = 0; i < tags.size(); i++) {
+                    Tag<?> tag = tags.getTag(i);
+                    if (tag != null) {
+                        withTag((Tag<Object>) tag, tags.getValue(i));
+                    }
+                }
+            }
+            return this;
+        }
+
+        @Override
+        public SpanBuilder withStartTimestamp(long microseconds) {
+            this.startMicros = microseconds;
+            return this;
+        }
+
+        @Override
+        public ReferenceSpan start() {
+            long startMicros = this.startMicros == 0 ? nowMicros() : this.startMicros;
+            if (parent == null && !ignoringActiveSpan) {
+                Span activeSpan = scopeManager.activeSpan();
+                if (activeSpan != null) {
+                    addReference(References.CHILD_OF, activeSpan.context());
+                }
+            }
+
+            long traceId = parent == null ? Ids.next() : parent.traceId();
+            boolean sampled;
+            if (samplingPriority >= 0) {
+                sampled = samplingPriority > 0;
+            } else if (parent == null || parent.isSamplingDeferred()) {
+                sampled = sampler.sample(operationName, traceId);
+            } else {
+                sampled = parent.isSampled();
+            }
+            ReferenceSpanContext context = new ReferenceSpanContext(traceId, Ids.next(), sampled,
+                    parent == null ? Collections.<String, String>emptyMap() : baggage());
+
+            // Only acquired once the span is known to be sampled.
+            SpanData data = null;
+            Attributes tags = this.tags;
+            this.tags = null;
+            if (context.isSampled()) {
+                data = pool.acquire();
+                if (tags != null) {
+                    // Rather than copied, the tags are handed over, and the empty ones of the data become the buffer.
+                    tags = data.swapTags(tags);
+                }
+                for (int i = 0; i < referenceCount; i++) {
+                    data.addReference(referenceTypes[i], referenceContexts[i]);
+                }
+                boolean localRoot = parent == null || parent.isRemote();
+                data.start(context, parent == null ? 0 : parent.spanId(), localRoot, startMicros);
+            }
+            if (tags != null) {
+                tags.clear();
+                builderTags.set(tags);
+            }
+            SpanState state = spanPool == null ? null : spanPool.acquire();
+            if (state == null) {
+                state = new SpanState(ReferenceTracer.this);
+            }
+            int generation = state.start(operationName, data, startMicros, spanKind, component, error);
+            return new ReferenceSpan(state, generation, context);
+        }
+
+        /**
+         * @return the baggage of all the references, shared with the parent if it is the only one
+         */
+        private Map<String, String> baggage() {
+            if (referenceCount == 1) {
+                return parent.baggage();
+            }
+            Map<String, String> baggage = new HashMap<>();
+            for (int i = 0; i < referenceCount; i++) {
+                baggage.putAll(referenceContexts[i].baggage());
+            }
+            return baggage;
+        }
+    }
+}
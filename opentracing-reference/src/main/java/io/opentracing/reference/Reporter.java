@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.io.Closeable;
+
+/**
+ * Receives the spans recorded by a {@link ReferenceTracer}, e.g. to export them.
+ */
+public interface Reporter extends Closeable {
+    /**
+     * Reports a finished, sampled span.
+     *
+     * <p>This is called on the thread finishing the span, so it must not block. The reporter owns the span data until it
+     * calls {@link SpanData#release()}, which it must do exactly once, after which the data must no longer be accessed.
+     */
+    void report(SpanData span);
+
+    /**
+     * Flushes and releases any resources. Called when the tracer is closed.
+     */
+    @Override
+    void close();
+}
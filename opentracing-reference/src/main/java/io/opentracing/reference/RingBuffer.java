@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue on a ring of slots, for many producers and a single consumer.
+ *
+ * <p>Each slot carries a sequence number telling whether it is free for the producer of a given position or holds the
+ * element for the consumer of that position, so that claiming a slot takes a single CAS and no producer ever waits for
+ * another. {@link #poll()} claims its slot with a CAS as well, which lets producers discard the oldest element when the
+ * queue is full (see {@link OverflowPolicy#DROP_OLDEST}).
+ *
+ * <p>Null elements are not allowed.
+ */
+public final class RingBuffer<E> {
+    private final Object[] elements;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * @param capacity the maximum number of elements, rounded up to a power of two
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30: " + capacity);
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * @return false if the queue is full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        for (;;) {
+            long position = tail.get();
+            int slot = (int) position & mask;
+            long available = sequences.get(slot) - position;
+            if (available == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[slot] = element;
+                    sequences.lazySet(slot, position + 1);
+                    return true;
+                }
+            } else if (available < 0) {
+                return false;
+            }
+            // Otherwise another producer claimed the position first; retry with the next one.
+        }
+    }
+
+    /**
+     * @return the oldest element, or null if the queue is empty
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        for (;;) {
+            long position = head.get();
+            int slot = (int) position & mask;
+            long ready = sequences.get(slot) - (position + 1);
+            if (ready == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    E element = (E) elements[slot];
+                    elements[slot] = null;
+                    sequences.lazySet(slot, position + elements.length);
+                    return element;
+                }
+            } else if (ready < 0) {
+                return null;
+            }
+        }
+    }
+
+    /**
+     * @return the number of elements, which may be momentarily inaccurate while other threads are using the queue
+     */
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, elements.length));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return elements.length;
+    }
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+/**
+ * Decides whether a trace is sampled, i.e. whether its spans are recorded.
+ *
+ * <p>{@link ReferenceTracer} consults its sampler when a root span starts, and when a span starts from an extracted
+ * context carrying no decision. The decision is then inherited by all the descendants of the span, including remote
+ * ones, as it propagates with the context.
+ *
+ * <p>Samplers are called on the threads starting spans, so they must be thread-safe and fast.
+ */
+public interface Sampler {
+    /**
+     * Samples every trace.
+     */
+    Sampler ALWAYS = (operationName, traceId) -> true;
+
+    /**
+     * Samples no trace.
+     */
+    Sampler NEVER = (operationName, traceId) -> false;
+
+    /**
+     * @param operationName the operation name of the span starting the trace
+     * @param traceId the ID of the trace, which samplers may use to make the same decision in every process
+     * @return whether the trace is sampled
+     */
+    boolean sample(String operationName, long traceId);
+}
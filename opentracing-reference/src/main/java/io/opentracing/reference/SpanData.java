@@ -0,0 +1,261 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * The recorded state of a sampled span: its identity, timing, references, tags and logs.
+ *
+ * <p>Instances are pooled by the {@link ReferenceTracer}. A finished span is handed to the {@link Reporter}, which
+ * owns it until it calls {@link #release()}; after that the instance is reused for another span and must no longer
+ * be accessed.
+ *
+ * <p>Logs are stored as records pointing into a shared range of {@link #logFields()}: the fields of log {@code i}
+ * are those from {@link #logFieldStart(int)} for {@link #logFieldCount(int)} slots.
+ */
+public final class SpanData {
+    private static final AtomicIntegerFieldUpdater<SpanData> LOG_COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(SpanData.class, "logCount");
+    private static final AtomicIntegerFieldUpdater<SpanData> DROPPED_LOGS =
+            AtomicIntegerFieldUpdater.newUpdater(SpanData.class, "droppedLogs");
+
+    private final SpanDataPool pool;
+    private Attributes tags;
+    private final Attributes logFields;
+    private final long[] logTimestamps;
+    private final int[] logFieldStarts;
+    private final int[] logFieldCounts;
+    private volatile int logCount;
+    private volatile int droppedLogs;
+
+    private String[] referenceTypes = new String[1];
+    private ReferenceSpanContext[] referenceContexts = new ReferenceSpanContext[1];
+    private int referenceCount;
+
+    private ReferenceSpanContext context;
+    private long parentSpanId;
+    private boolean localRoot;
+    private String operationName;
+    private long startMicros;
+    private long finishMicros;
+
+    SpanData(SpanDataPool pool, int maxTags, int maxLogs, int maxLogFields) {
+        this.pool = pool;
+        this.tags = new Attributes(maxTags);
+        this.logFields = new Attributes(maxLogFields);
+        this.logTimestamps = new long[maxLogs];
+        this.logFieldStarts = new int[maxLogs];
+        this.logFieldCounts = new int[maxLogs];
+    }
+
+    Attributes tagsForWriting() {
+        return tags;
+    }
+
+    /**
+     * Replaces the tags of this data, which must be empty, with tags of the same capacity recorded before the span
+     * started.
+     *
+     * @return the previous tags, for the caller to reuse
+     */
+    Attributes swapTags(Attributes tags) {
+        Attributes previous = this.tags;
+        this.tags = tags;
+        return previous;
+    }
+
+    void addReference(String referenceType, ReferenceSpanContext referencedContext) {
+        if (referenceCount == referenceContexts.length) {
+            referenceTypes = Arrays.copyOf(referenceTypes, referenceCount * 2);
+            referenceContexts = Arrays.copyOf(referenceContexts, referenceCount * 2);
+        }
+        referenceTypes[referenceCount] = referenceType;
+        referenceContexts[referenceCount] = referencedContext;
+        referenceCount++;
+    }
+
+    void start(ReferenceSpanContext context, long parentSpanId, boolean localRoot, long startMicros) {
+        this.context = context;
+        this.parentSpanId = parentSpanId;
+        this.localRoot = localRoot;
+        this.startMicros = startMicros;
+    }
+
+    /**
+     * Records the state the span had when it finished, and resolves its lazy tags.
+     */
+    void finish(String operationName, ReferenceSpanContext context, long finishMicros) {
+        this.operationName = operationName;
+        this.context = context;
+        this.finishMicros = finishMicros;
+        tags.resolveLazyValues();
+    }
+
+    /**
+     * Reserves a log record with room for the given number of fields.
+     *
+     * @return the index of the first field slot, or -1 if there is no room for the fields. A log whose fields do not fit
+     * is still recorded, without fields.
+     */
+    int reserveLog(long timestampMicros, int fieldCount) {
+        int record;
+        do {
+            record = logCount;
+            if (record == logTimestamps.length) {
+                DROPPED_LOGS.incrementAndGet(this);
+                return -1;
+            }
+        } while (!LOG_COUNT.compareAndSet(this, record, record + 1));
+
+        int start = logFields.reserve(fieldCount);
+        logTimestamps[record] = timestampMicros;
+        logFieldStarts[record] = Math.max(start, 0);
+        logFieldCounts[record] = start < 0 ? 0 : fieldCount;
+        return start;
+    }
+
+    Attributes logFieldsForWriting() {
+        return logFields;
+    }
+
+    void log(long timestampMicros, Map<String, ?> fields) {
+        int start = reserveLog(timestampMicros, fields.size());
+        if (start < 0) {
+            return;
+        }
+        int index = start;
+        int end = start + fields.size();
+        for (Map.Entry<String, ?> field : fields.entrySet()) {
+            // The map might have grown since it was sized; extra fields are dropped.
+            if (index == end) {
+                break;
+            }
+            logFields.set(index++, field.getKey(), field.getValue());
+        }
+    }
+
+    void log(long timestampMicros, String event) {
+        int start = reserveLog(timestampMicros, 1);
+        if (start >= 0) {
+            logFields.set(start, "event", event);
+        }
+    }
+
+    public ReferenceSpanContext context() {
+        return context;
+    }
+
+    /**
+     * @return the span ID of the parent, or 0 if this is a root span
+     */
+    public long parentSpanId() {
+        return parentSpanId;
+    }
+
+    /**
+     * @return true if the parent of the span, if any, belongs to another process, i.e. the span is the root of its trace
+     * within this process
+     */
+    public boolean isLocalRoot() {
+        return localRoot;
+    }
+
+    public String operationName() {
+        return operationName;
+    }
+
+    public long startMicros() {
+        return startMicros;
+    }
+
+    public long finishMicros() {
+        return finishMicros;
+    }
+
+    public int referenceCount() {
+        return referenceCount;
+    }
+
+    public String referenceType(int index) {
+        return referenceTypes[index];
+    }
+
+    public ReferenceSpanContext referenceContext(int index) {
+        return referenceContexts[index];
+    }
+
+    public Attributes tags() {
+        return tags;
+    }
+
+    public int logCount() {
+        return Math.min(logCount, logTimestamps.length);
+    }
+
+    /**
+     * @return the number of logs that were dropped for lack of room
+     */
+    public int droppedLogs() {
+        return droppedLogs;
+    }
+
+    public long logTimestampMicros(int index) {
+        return logTimestamps[index];
+    }
+
+    public int logFieldStart(int index) {
+        return logFieldStarts[index];
+    }
+
+    public int logFieldCount(int index) {
+        return logFieldCounts[index];
+    }
+
+    public Attributes logFields() {
+        return logFields;
+    }
+
+    /**
+     * Returns this instance to the tracer for reuse. It must not be accessed afterwards.
+     */
+    public void release() {
+        clear();
+        pool.release(this);
+    }
+
+    void clear() {
+        tags.clear();
+        logFields.clear();
+        logCount = 0;
+        droppedLogs = 0;
+        Arrays.fill(referenceTypes, 0, referenceCount, null);
+        Arrays.fill(referenceContexts, 0, referenceCount, null);
+        referenceCount = 0;
+        context = null;
+        parentSpanId = 0;
+        localRoot = false;
+        operationName = null;
+        startMicros = 0;
+        finishMicros = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "SpanData{operationName=" + operationName + ", context=" + context + ", parentSpanId="
+                + Ids.toHex(parentSpanId) + ", startMicros=" + startMicros + ", finishMicros=" + finishMicros + "}";
+    }
+}
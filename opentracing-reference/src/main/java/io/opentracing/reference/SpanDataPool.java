@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free pool of {@link SpanData} instances.
+ *
+ * <p>Free instances sit in an array of slots. Threads start probing at a slot derived from their ID, so that
+ * concurrent callers rarely contend for the same slot, and give up after a few probes: acquiring then allocates a new
+ * instance, and releasing leaves the instance to the garbage collector.
+ */
+final class SpanDataPool {
+    private static final int PROBES = 8;
+
+    private final AtomicReferenceArray<SpanData> slots;
+    private final int mask;
+    private final int maxTags;
+    private final int maxLogs;
+    private final int maxLogFields;
+
+    /**
+     * @param size the maximum number of free instances kept, rounded up to a power of two; 0 disables pooling
+     */
+    SpanDataPool(int size, int maxTags, int maxLogs, int maxLogFields) {
+        int capacity = size <= 1 ? Math.max(size, 0) : Integer.highestOneBit(size - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.maxTags = maxTags;
+        this.maxLogs = maxLogs;
+        this.maxLogFields = maxLogFields;
+    }
+
+    SpanData acquire() {
+        int probes = Math.min(PROBES, slots.length());
+        int start = firstSlot();
+        for (int i = 0; i < probes; i++) {
+            int slot = (start + i) & mask;
+            SpanData data = slots.get(slot);
+            if (data != null && slots.compareAndSet(slot, data, null)) {
+                return data;
+            }
+        }
+        return new SpanData(this, maxTags, maxLogs, maxLogFields);
+    }
+
+    /**
+     * @param data a cleared instance
+     */
+    void release(SpanData data) {
+        int probes = Math.min(PROBES, slots.length());
+        int start = firstSlot();
+        for (int i = 0; i < probes; i++) {
+            int slot = (start + i) & mask;
+            if (slots.get(slot) == null && slots.compareAndSet(slot, null, data)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of free instances, for tests and diagnostics
+     */
+    int available() {
+        int count = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int firstSlot() {
+        // Fibonacci hashing spreads consecutive thread IDs over the slots.
+        return (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 32) & mask;
+    }
+}
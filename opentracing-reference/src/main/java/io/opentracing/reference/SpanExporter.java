@@ -0,0 +1,35 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.io.Closeable;
+
+/**
+ * Exports batches of spans collected by a {@link BatchingReporter}, e.g. by sending them to a collector.
+ *
+ * <p>Exporters are called from a single thread, so they need not be thread-safe.
+ */
+public interface SpanExporter extends Closeable {
+    /**
+     * Exports the first {@code count} spans of the array. The spans, and the array, are only valid during the call:
+     * they are released once it returns.
+     */
+    void export(SpanData[] spans, int count);
+
+    /**
+     * Flushes and releases any resources. Called once the last batch has been exported.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+/**
+ * A per-thread pool of the {@link SpanState}s of finished spans, for tracers recycling their spans.
+ *
+ * <p>Each thread keeps the states of the spans it finished in a ring, and reuses the one finished the longest ago.
+ * States of spans finished while the ring of the thread is full are left to the garbage collector.
+ */
+final class SpanPool {
+    private final int capacity;
+    private final ThreadLocal<Ring> rings = new ThreadLocal<Ring>() {
+        @Override
+        protected Ring initialValue() {
+            return new Ring(capacity);
+        }
+    };
+
+    /**
+     * @param capacity the maximum number of states kept by each thread
+     */
+    SpanPool(int capacity) {
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return the state of the calling thread finished the longest ago, or null if there is none
+     */
+    SpanState acquire() {
+        Ring ring = rings.get();
+        if (ring.count == 0) {
+            return null;
+        }
+        SpanState state = ring.states[ring.head];
+        ring.states[ring.head] = null;
+        ring.head = ring.next(ring.head);
+        ring.count--;
+        return state;
+    }
+
+    /**
+     * @param state the state of a finished span, which the caller no longer uses
+     */
+    void release(SpanState state) {
+        Ring ring = rings.get();
+        if (ring.count < ring.states.length) {
+            int tail = ring.head + ring.count;
+            ring.states[tail < ring.states.length ? tail : tail - ring.states.length] = state;
+            ring.count++;
+        }
+    }
+
+    /**
+     * @return the number of states kept by the calling thread, for tests and diagnostics
+     */
+    int available() {
+        return rings.get().count;
+    }
+
+    private static final class Ring {
+        final SpanState[] states;
+        int head;
+        int count;
+
+        Ring(int capacity) {
+            this.states = new SpanState[capacity];
+        }
+
+        int next(int index) {
+            return index + 1 == states.length ? 0 : index + 1;
+        }
+    }
+}
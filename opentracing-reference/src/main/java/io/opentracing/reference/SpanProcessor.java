@@ -0,0 +1,30 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+/**
+ * Observes the spans of a {@link ReferenceTracer} as they finish, whether they are sampled or not.
+ *
+ * @see RedMetrics
+ */
+public interface SpanProcessor {
+    /**
+     * Called on the thread finishing the span, before the span is reported if it is sampled. Must be fast and must not
+     * block, as it delays the caller.
+     *
+     * @param span the finished span; of its tags, only those exposed by {@link ReferenceSpan} are available
+     * @param durationMicros the duration of the span
+     */
+    void onFinish(ReferenceSpan span, long durationMicros);
+}
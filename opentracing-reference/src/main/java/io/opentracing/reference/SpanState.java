@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * The mutable state behind a {@link ReferenceSpan}, which a tracer recycling its spans reuses for later spans.
+ *
+ * <p>Each span using the state is stamped with its generation: the generation is even while that span is in use, and
+ * odd once it finished. A span whose stamp no longer matches the generation is thus finished, whether or not the state
+ * was reused since.
+ *
+ * <p>Calls recording into the state hold it as writers, counted along with the generation so that a single CAS both
+ * checks the stamp of the caller and registers it. Finishing waits for the writers to complete before the data is
+ * reported and the state reused: a call racing with {@link #finish(int)} either lands in its own span before the span
+ * is reported, or is detected as made after finish.
+ */
+final class SpanState {
+    private static final AtomicLongFieldUpdater<SpanState> STATE =
+            AtomicLongFieldUpdater.newUpdater(SpanState.class, "state");
+    private static final long WRITER = 1;
+    private static final long GENERATION = 1L << 32;
+
+    final ReferenceTracer tracer;
+    private volatile long state = -GENERATION; // The generation in the upper half, the count of writers in the lower.
+    volatile String operationName;
+    long startMicros;
+    volatile SpanData data; // null if not sampled, or once finished.
+    // Only maintained if the tracer has a span processor.
+    volatile String spanKind;
+    volatile String component;
+    volatile boolean error;
+
+    SpanState(ReferenceTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Sets up this new or finished state for a new span.
+     *
+     * @return the generation the span is stamped with
+     */
+    int start(String operationName, SpanData data, long startMicros, String spanKind, String component,
+            boolean error) {
+        this.operationName = operationName;
+        this.data = data;
+        this.startMicros = startMicros;
+        this.spanKind = spanKind;
+        this.component = component;
+        this.error = error;
+        // Written last, so that the state is not seen in use before it is set up; there are no writers left.
+        int generation = generation() + 1;
+        this.state = (long) generation << 32;
+        return generation;
+    }
+
+    int generation() {
+        return (int) (state >>> 32);
+    }
+
+    /**
+     * Registers a writer, unless the span stamped with the given generation finished. A registered writer must call
+     * {@link #endWrite()} once done.
+     *
+     * @return whether the writer was registered
+     */
+    boolean beginWrite(int generation) {
+        for (;;) {
+            long current = state;
+            if ((int) (current >>> 32) != generation) {
+                return false;
+            }
+            if (STATE.compareAndSet(this, current, current + WRITER)) {
+                return true;
+            }
+        }
+    }
+
+    void endWrite() {
+        STATE.getAndAdd(this, -WRITER);
+    }
+
+    /**
+     * Finishes the span stamped with the given generation, then waits for its writers to complete.
+     *
+     * @return whether the span was finished by this call, rather than having finished already
+     */
+    boolean finish(int generation) {
+        long current;
+        do {
+            current = state;
+            if ((int) (current >>> 32) != generation) {
+                return false;
+            }
+        } while (!STATE.compareAndSet(this, current, current + GENERATION));
+        // Writers only hold the state for the few stores of a tag or log, so spin rather than park.
+        while ((int) state != 0) {
+            Thread.yield();
+        }
+        return true;
+    }
+}
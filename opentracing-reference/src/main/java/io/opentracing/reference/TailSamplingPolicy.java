@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.tag.Tags;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether {@link TailSamplingReporter} keeps a trace, once its spans have finished.
+ */
+public interface TailSamplingPolicy {
+    /**
+     * @param spans the spans of the trace that finished in this process, valid only during the call
+     * @param count the number of spans in the array
+     * @return whether to keep the trace
+     */
+    boolean keep(SpanData[] spans, int count);
+
+    /**
+     * @return a policy keeping the traces with a span lasting at least the given duration
+     */
+    static TailSamplingPolicy latencyAtLeast(long duration, TimeUnit unit) {
+        final long micros = unit.toMicros(duration);
+        return (spans, count) -> {
+            for (int i = 0; i < count; i++) {
+                if (spans[i].finishMicros() - spans[i].startMicros() >= micros) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * @return a policy keeping the traces with a span whose {@link Tags#ERROR} tag is true
+     */
+    static TailSamplingPolicy hasError() {
+        return (spans, count) -> {
+            for (int i = 0; i < count; i++) {
+                Attributes tags = spans[i].tags();
+                // The last occurrence of the tag wins.
+                for (int j = tags.size() - 1; j >= 0; j--) {
+                    if (Tags.ERROR.getKey().equals(tags.key(j))) {
+                        if (Boolean.TRUE.equals(tags.value(j))) {
+                            return true;
+                        }
+                        break;
+                    }
+                }
+            }
+            return false;
+        };
+    }
+
+    /**
+     * @return a policy keeping the traces with a span having one of the given operation names
+     */
+    static TailSamplingPolicy operationNames(String... operationNames) {
+        final Set<String> names = new HashSet<>(Arrays.asList(operationNames));
+        return (spans, count) -> {
+            for (int i = 0; i < count; i++) {
+                if (names.contains(spans[i].operationName())) {
+                    return true;
+                }
+            }
+            return false;
+        };
+    }
+}
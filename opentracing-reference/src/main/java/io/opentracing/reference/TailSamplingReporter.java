@@ -0,0 +1,388 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A {@link Reporter} buffering the finished spans of each trace until its local root span finishes, then forwarding or
+ * discarding the whole trace at once, depending on {@link TailSamplingPolicy policies}.
+ *
+ * <p>A trace is kept if any policy keeps it. Spans finishing after the decision follow it, for as long as the trace is
+ * remembered. A trace is decided on the spans buffered so far when it expires before its local root span finishes, or
+ * when it is evicted, oldest first, to stay within {@code maxTraces} traces and {@code maxSpans} buffered spans.
+ *
+ * <p>The bookkeeping lives in arrays of primitives allocated up front, so that the reporter holds no object per trace
+ * besides the buffered spans. Their memory is bounded by {@code maxSpans} and the tracer's tag and log limits.
+ *
+ * <p>The bookkeeping and the policies run under a lock, so policies should be cheap. Spans are reported downstream by
+ * the thread reporting the local root span, or the span causing an eviction, once it has released the lock: a
+ * downstream reporter that blocks, such as a {@link BatchingReporter} with {@link OverflowPolicy#BLOCK}, only holds
+ * up that thread.
+ */
+public final class TailSamplingReporter implements Reporter {
+    public static final int DEFAULT_MAX_TRACES = 100_000;
+    public static final int DEFAULT_MAX_SPANS = 1_000_000;
+    public static final long DEFAULT_TTL_MILLIS = 30_000;
+
+    private static final byte PENDING = 0;
+    private static final byte KEPT = 1;
+    private static final byte DROPPED = 2;
+    private static final int NONE = -1;
+
+    private final Reporter downstream;
+    private final TailSamplingPolicy[] policies;
+    private final int maxTraces;
+    private final long ttlNanos;
+    private final LongSupplier nanoClock;
+
+    // Traces by ID, in an open-addressing table with linear probing, where ID 0 marks an empty slot.
+    private final long[] traceIds;
+    private final long[] expirations;
+    private final byte[] states;
+    private final int[] firstSpans;
+    private final int[] lastSpans;
+    private final int[] spanCounts;
+    private final int mask;
+    private int traceCount;
+
+    // Trace IDs in insertion order, which is also expiration order.
+    private final long[] queuedTraceIds;
+    private int queueHead;
+
+    // Buffered spans, linked per trace, with the unused slots linked from freeSpan.
+    private final SpanData[] spans;
+    private final int[] nextSpans;
+    private int freeSpan;
+    private int bufferedSpans;
+    private final SpanData[] decided;
+    private final ThreadLocal<Forwarding> forwarding = ThreadLocal.withInitial(Forwarding::new);
+
+    private long keptTraces;
+    private long droppedTraces;
+    private long expiredTraces;
+    private boolean closed;
+
+    public TailSamplingReporter(Reporter downstream, TailSamplingPolicy... policies) {
+        this(downstream, DEFAULT_MAX_TRACES, DEFAULT_MAX_SPANS, DEFAULT_TTL_MILLIS, TimeUnit.MILLISECONDS, policies);
+    }
+
+    /**
+     * @param maxTraces the maximum number of traces remembered, decided or not
+     * @param maxSpans the maximum number of spans buffered, across traces
+     * @param ttl how long a trace is remembered after its first span finished
+     */
+    public TailSamplingReporter(Reporter downstream, int maxTraces, int maxSpans, long ttl, TimeUnit unit,
+            TailSamplingPolicy... policies) {
+        this(downstream, maxTraces, maxSpans, unit.toNanos(ttl), System::nanoTime, policies);
+    }
+
+    TailSamplingReporter(Reporter downstream, int maxTraces, int maxSpans, long ttlNanos, LongSupplier nanoClock,
+            TailSamplingPolicy... policies) {
+        if (maxTraces <= 0 || maxTraces > 1 << 29) {
+            throw new IllegalArgumentException("The maximum number of traces must be within 1..2^29: " + maxTraces);
+        }
+        if (maxSpans <= 0) {
+            throw new IllegalArgumentException("The maximum number of spans must be positive: " + maxSpans);
+        }
+        if (ttlNanos <= 0) {
+            throw new IllegalArgumentException("The time to live must be positive: " + ttlNanos);
+        }
+        this.downstream = downstream;
+        this.policies = policies.clone();
+        this.maxTraces = maxTraces;
+        this.ttlNanos = ttlNanos;
+        this.nanoClock = nanoClock;
+
+        // Keep the table at most half full, so that probe sequences stay short.
+        int tableSize = Integer.highestOneBit(maxTraces * 2 - 1) << 1;
+        this.traceIds = new long[tableSize];
+        this.expirations = new long[tableSize];
+        this.states = new byte[tableSize];
+        this.firstSpans = new int[tableSize];
+        this.lastSpans = new int[tableSize];
+        this.spanCounts = new int[tableSize];
+        this.mask = tableSize - 1;
+        this.queuedTraceIds = new long[maxTraces];
+
+        this.spans = new SpanData[maxSpans];
+        this.nextSpans = new int[maxSpans];
+        for (int i = 0; i < maxSpans; i++) {
+            nextSpans[i] = i + 1 < maxSpans ? i + 1 : NONE;
+        }
+        this.freeSpan = 0;
+        this.decided = new SpanData[maxSpans];
+    }
+
+    @Override
+    public void report(SpanData span) {
+        Forwarding forwarding = this.forwarding.get();
+        synchronized (this) {
+            buffer(span, forwarding);
+        }
+        forwarding.flush(downstream);
+    }
+
+    /**
+     * Buffers the span, or adds it to the spans to forward if its trace was kept, deciding the traces that are due.
+     */
+    private void buffer(SpanData span, Forwarding forwarding) {
+        long traceId = span.context().traceId();
+        if (closed || traceId == 0) {
+            // Without a usable trace ID, the span cannot be grouped with its trace.
+            forwarding.add(span);
+            return;
+        }
+        long now = nanoClock.getAsLong();
+        expire(now, forwarding);
+
+        int slot = find(traceId);
+        if (slot != NONE && states[slot] != PENDING) {
+            if (states[slot] == KEPT) {
+                forwarding.add(span);
+            } else {
+                span.release();
+            }
+            return;
+        }
+
+        // Make room first, as evicting the oldest trace may evict this one.
+        while (freeSpan == NONE || (slot == NONE && traceCount == maxTraces)) {
+            evictOldest(forwarding);
+            slot = find(traceId);
+        }
+        if (slot == NONE) {
+            slot = insert(traceId, now + ttlNanos);
+        }
+
+        int index = freeSpan;
+        freeSpan = nextSpans[index];
+        spans[index] = span;
+        nextSpans[index] = NONE;
+        if (firstSpans[slot] == NONE) {
+            firstSpans[slot] = index;
+        } else {
+            nextSpans[lastSpans[slot]] = index;
+        }
+        lastSpans[slot] = index;
+        spanCounts[slot]++;
+        bufferedSpans++;
+
+        if (span.isLocalRoot()) {
+            decide(slot, forwarding);
+        }
+    }
+
+    private void expire(long now, Forwarding forwarding) {
+        while (traceCount > 0) {
+            int slot = find(queuedTraceIds[queueHead]);
+            if (expirations[slot] - now > 0) {
+                return;
+            }
+            if (states[slot] == PENDING) {
+                expiredTraces++;
+                decide(slot, forwarding);
+            }
+            dequeue(slot);
+        }
+    }
+
+    private void evictOldest(Forwarding forwarding) {
+        int slot = find(queuedTraceIds[queueHead]);
+        if (states[slot] == PENDING) {
+            expiredTraces++;
+            decide(slot, forwarding);
+        }
+        dequeue(slot);
+    }
+
+    private void decide(int slot, Forwarding forwarding) {
+        int count = 0;
+        for (int index = firstSpans[slot]; index != NONE; ) {
+            decided[count++] = spans[index];
+            spans[index] = null;
+            int next = nextSpans[index];
+            nextSpans[index] = freeSpan;
+            freeSpan = index;
+            index = next;
+        }
+        firstSpans[slot] = NONE;
+        lastSpans[slot] = NONE;
+        spanCounts[slot] = 0;
+        bufferedSpans -= count;
+
+        boolean keep = false;
+        for (TailSamplingPolicy policy : policies) {
+            if (policy.keep(decided, count)) {
+                keep = true;
+                break;
+            }
+        }
+        states[slot] = keep ? KEPT : DROPPED;
+        if (keep) {
+            keptTraces++;
+        } else {
+            droppedTraces++;
+        }
+        for (int i = 0; i < count; i++) {
+            if (keep) {
+                forwarding.add(decided[i]);
+            } else {
+                decided[i].release();
+            }
+            decided[i] = null;
+        }
+    }
+
+    private static int hash(long traceId) {
+        long h = traceId * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private int find(long traceId) {
+        for (int slot = hash(traceId) & mask; traceIds[slot] != 0; slot = (slot + 1) & mask) {
+            if (traceIds[slot] == traceId) {
+                return slot;
+            }
+        }
+        return NONE;
+    }
+
+    private int insert(long traceId, long expiration) {
+        int slot = hash(traceId) & mask;
+        while (traceIds[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        traceIds[slot] = traceId;
+        expirations[slot] = expiration;
+        states[slot] = PENDING;
+        firstSpans[slot] = NONE;
+        lastSpans[slot] = NONE;
+        spanCounts[slot] = 0;
+        queuedTraceIds[(queueHead + traceCount) % maxTraces] = traceId;
+        traceCount++;
+        return slot;
+    }
+
+    /**
+     * Forgets the oldest trace, at the given slot.
+     */
+    private void dequeue(int slot) {
+        queueHead = (queueHead + 1) % maxTraces;
+        traceCount--;
+        // Backward-shift deletion: move later entries of the probe sequence up, so that lookups need no tombstones.
+        for (int hole = slot, next = slot;;) {
+            next = (next + 1) & mask;
+            if (traceIds[next] == 0) {
+                traceIds[hole] = 0;
+                return;
+            }
+            int home = hash(traceIds[next]) & mask;
+            boolean stays = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+            if (!stays) {
+                traceIds[hole] = traceIds[next];
+                expirations[hole] = expirations[next];
+                states[hole] = states[next];
+                firstSpans[hole] = firstSpans[next];
+                lastSpans[hole] = lastSpans[next];
+                spanCounts[hole] = spanCounts[next];
+                hole = next;
+            }
+        }
+    }
+
+    /**
+     * @return the number of traces remembered, decided or not
+     */
+    public synchronized int traceCount() {
+        return traceCount;
+    }
+
+    /**
+     * @return the number of spans waiting for their trace to be decided
+     */
+    public synchronized int bufferedSpans() {
+        return bufferedSpans;
+    }
+
+    /**
+     * @return the number of traces forwarded downstream
+     */
+    public synchronized long keptTraces() {
+        return keptTraces;
+    }
+
+    /**
+     * @return the number of traces discarded
+     */
+    public synchronized long droppedTraces() {
+        return droppedTraces;
+    }
+
+    /**
+     * @return the number of traces decided before their local root span finished, because they expired or were
+     * evicted
+     */
+    public synchronized long expiredTraces() {
+        return expiredTraces;
+    }
+
+    /**
+     * Decides the traces still buffered, then closes the downstream reporter. Spans reported afterwards are forwarded
+     * as they are.
+     */
+    @Override
+    public void close() {
+        Forwarding forwarding = this.forwarding.get();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            while (traceCount > 0) {
+                evictOldest(forwarding);
+            }
+            closed = true;
+        }
+        forwarding.flush(downstream);
+        downstream.close();
+    }
+
+    /**
+     * The spans a thread decided to forward while holding the lock, reported downstream once it is released.
+     */
+    private static final class Forwarding {
+        private SpanData[] spans = new SpanData[16];
+        private int count;
+
+        void add(SpanData span) {
+            if (count == spans.length) {
+                spans = Arrays.copyOf(spans, count * 2);
+            }
+            spans[count++] = span;
+        }
+
+        void flush(Reporter downstream) {
+            try {
+                for (int i = 0; i < count; i++) {
+                    downstream.report(spans[i]);
+                }
+            } finally {
+                Arrays.fill(spans, 0, count, null);
+                count = 0;
+            }
+        }
+    }
+}
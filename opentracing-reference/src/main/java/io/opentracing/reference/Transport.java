@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Sends the requests of an {@link OtlpExporter} to a collector.
+ *
+ * @see HttpTransport
+ */
+public interface Transport extends Closeable {
+    /**
+     * Sends a request, blocking until the collector accepted it.
+     *
+     * @param request the request, between the position and the limit of the buffer, which is only valid during the
+     *                call
+     * @param contentEncoding the compression of the request, as an HTTP {@code Content-Encoding}, or null
+     * @throws IOException if the request could not be sent, or was rejected
+     */
+    void send(ByteBuffer request, String contentEncoding) throws IOException;
+
+    @Override
+    void close();
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.Span;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of starting and finishing a span on four threads, when finished spans are handed to a
+ * {@link BatchingReporter} versus appended to a list under a lock, as {@code MockTracer} does.
+ *
+ * <p>Both pipelines export by discarding the spans.
+ *
+ * <p>
+ * Run with: {@code java -cp <test classpath> org.openjdk.jmh.Main BatchingReporterBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class BatchingReporterBenchmark {
+    private ReferenceTracer batchingTracer;
+    private ReferenceTracer synchronizedTracer;
+
+    @Setup
+    public void setup() {
+        batchingTracer = new ReferenceTracer(new BatchingReporter(new SpanExporter() {
+            @Override
+            public void export(SpanData[] spans, int count) {
+            }
+
+            @Override
+            public void close() {
+            }
+        }));
+        synchronizedTracer = new ReferenceTracer(new Reporter() {
+            private final List<SpanData> batch = new ArrayList<>();
+
+            @Override
+            public synchronized void report(SpanData span) {
+                batch.add(span);
+                if (batch.size() == BatchingReporter.DEFAULT_MAX_BATCH_SIZE) {
+                    for (SpanData data : batch) {
+                        data.release();
+                    }
+                    batch.clear();
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        batchingTracer.close();
+        synchronizedTracer.close();
+    }
+
+    @Benchmark
+    public Span batchingReporter() {
+        Span span = batchingTracer.buildSpan("benchmark").start();
+        span.finish();
+        return span;
+    }
+
+    @Benchmark
+    public Span synchronizedReporter() {
+        Span span = synchronizedTracer.buildSpan("benchmark").start();
+        span.finish();
+        return span;
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class BatchingReporterTest {
+    /**
+     * Records the operation names of each batch, optionally waiting for a latch before exporting.
+     */
+    static class RecordingExporter implements SpanExporter {
+        final List<List<String>> batches = Collections.synchronizedList(new ArrayList<List<String>>());
+        final CountDownLatch exporting = new CountDownLatch(1);
+        final CountDownLatch proceed;
+        volatile boolean closed;
+
+        RecordingExporter(CountDownLatch proceed) {
+            this.proceed = proceed;
+        }
+
+        @Override
+        public void export(SpanData[] spans, int count) {
+            exporting.countDown();
+            try {
+                proceed.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                names.add(spans[i].operationName());
+            }
+            batches.add(names);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private static void finishSpans(ReferenceTracer tracer, String... names) {
+        for (String name : names) {
+            tracer.buildSpan(name).start().finish();
+        }
+    }
+
+    @Test
+    public void testBatchesBySize() {
+        RecordingExporter exporter = new RecordingExporter(new CountDownLatch(0));
+        BatchingReporter reporter = new BatchingReporter(exporter, 16, 2, 1, TimeUnit.HOURS,
+                OverflowPolicy.DROP_NEWEST);
+        ReferenceTracer tracer = new ReferenceTracer(reporter);
+        finishSpans(tracer, "a", "b", "c", "d");
+        tracer.close();
+
+        assertEquals(Arrays.asList(Arrays.asList("a", "b"), Arrays.asList("c", "d")), exporter.batches);
+        assertEquals(4, reporter.exportedSpans());
+        assertEquals(0, reporter.droppedSpans());
+        assertTrue(exporter.closed);
+    }
+
+    @Test
+    public void testBatchesByTime() throws InterruptedException {
+        RecordingExporter exporter = new RecordingExporter(new CountDownLatch(0));
+        BatchingReporter reporter = new BatchingReporter(exporter, 16, 100, 20, TimeUnit.MILLISECONDS,
+                OverflowPolicy.DROP_NEWEST);
+        ReferenceTracer tracer = new ReferenceTracer(reporter);
+        finishSpans(tracer, "a");
+
+        assertTrue(exporter.exporting.await(5, TimeUnit.SECONDS));
+        tracer.close();
+        assertEquals(Collections.singletonList(Collections.singletonList("a")), exporter.batches);
+    }
+
+    @Test
+    public void testCloseExportsQueuedSpans() {
+        RecordingExporter exporter = new RecordingExporter(new CountDownLatch(0));
+        BatchingReporter reporter = new BatchingReporter(exporter, 16, 100, 1, TimeUnit.HOURS,
+                OverflowPolicy.DROP_NEWEST);
+        ReferenceTracer tracer = new ReferenceTracer(reporter);
+        finishSpans(tracer, "a", "b");
+        reporter.close();
+        reporter.close();
+        finishSpans(tracer, "late");
+
+        assertEquals(Collections.singletonList(Arrays.asList("a", "b")), exporter.batches);
+        assertEquals(1, reporter.droppedSpans());
+        assertEquals(0, reporter.queueDepth());
+    }
+
+    /**
+     * Fills the queue of a reporter whose exporter is stuck on a first span, then lets it proceed.
+     */
+    private static List<List<String>> overflow(OverflowPolicy policy, long expectedDropped)
+            throws InterruptedException {
+        CountDownLatch proceed = new CountDownLatch(1);
+        RecordingExporter exporter = new RecordingExporter(proceed);
+        BatchingReporter reporter = new BatchingReporter(exporter, 2, 1, 1, TimeUnit.HOURS, policy);
+        ReferenceTracer tracer = new ReferenceTracer(reporter);
+        finishSpans(tracer, "stuck");
+        assertTrue(exporter.exporting.await(5, TimeUnit.SECONDS));
+
+        finishSpans(tracer, "a", "b");
+        assertEquals(2, reporter.queueDepth());
+        if (policy == OverflowPolicy.BLOCK) {
+            final ReferenceTracer blockedTracer = tracer;
+            Thread blocked = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    finishSpans(blockedTracer, "c");
+                }
+            });
+            blocked.start();
+            Thread.sleep(50);
+            assertTrue(blocked.isAlive());
+            proceed.countDown();
+            blocked.join();
+        } else {
+            finishSpans(tracer, "c");
+            proceed.countDown();
+        }
+        tracer.close();
+
+        assertEquals(expectedDropped, reporter.droppedSpans());
+        return exporter.batches;
+    }
+
+    @Test
+    public void testDropNewest() throws InterruptedException {
+        List<List<String>> batches = overflow(OverflowPolicy.DROP_NEWEST, 1);
+        assertEquals(Arrays.asList(Arrays.asList("stuck"), Arrays.asList("a"), Arrays.asList("b")), batches);
+    }
+
+    @Test
+    public void testDropOldest() throws InterruptedException {
+        List<List<String>> batches = overflow(OverflowPolicy.DROP_OLDEST, 1);
+        assertEquals(Arrays.asList(Arrays.asList("stuck"), Arrays.asList("b"), Arrays.asList("c")), batches);
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        List<List<String>> batches = overflow(OverflowPolicy.BLOCK, 0);
+        assertEquals(Arrays.asList(Arrays.asList("stuck"), Arrays.asList("a"), Arrays.asList("b"),
+                Arrays.asList("c")), batches);
+    }
+
+    @Test
+    public void testFailedExport() {
+        SpanExporter exporter = new SpanExporter() {
+            @Override
+            public void export(SpanData[] spans, int count) {
+                throw new IllegalStateException("Collector unavailable");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        BatchingReporter reporter = new BatchingReporter(exporter, 16, 100, 1, TimeUnit.HOURS,
+                OverflowPolicy.DROP_NEWEST);
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 4, 4, 16);
+        finishSpans(tracer, "a", "b");
+        tracer.close();
+
+        assertEquals(2, reporter.failedSpans());
+        assertEquals(0, reporter.exportedSpans());
+        // The spans were released nevertheless.
+        assertEquals(2, tracer.pool().available());
+    }
+
+    @Test
+    public void testSpansReportedWhileClosingAreAccountedFor() throws InterruptedException {
+        final BatchingReporter reporter = new BatchingReporter(new RecordingExporter(new CountDownLatch(0)), 64, 8, 1,
+                TimeUnit.HOURS, OverflowPolicy.BLOCK);
+        final ReferenceTracer tracer = new ReferenceTracer(reporter);
+        final int threads = 4;
+        final int spansPerThread = 10000;
+        final CountDownLatch started = new CountDownLatch(threads);
+        List<Thread> reporting = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(() -> {
+                started.countDown();
+                for (int j = 0; j < spansPerThread; j++) {
+                    tracer.buildSpan("span").start().finish();
+                }
+            });
+            thread.start();
+            reporting.add(thread);
+        }
+        started.await();
+        reporter.close();
+        for (Thread thread : reporting) {
+            thread.join();
+        }
+
+        // Every span was either exported before the consumer stopped, or dropped; none is left behind.
+        assertEquals(0, reporter.queueDepth());
+        assertEquals(threads * spansPerThread, reporter.exportedSpans() + reporter.droppedSpans());
+    }
+
+    @Test
+    public void testErrorFromExporterStopsReporter() throws InterruptedException {
+        final CountDownLatch failing = new CountDownLatch(1);
+        SpanExporter exporter = new SpanExporter() {
+            @Override
+            public void export(SpanData[] spans, int count) {
+                failing.countDown();
+                throw new OutOfMemoryError("Simulated");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        final BatchingReporter reporter = new BatchingReporter(exporter, 2, 1, 1, TimeUnit.HOURS,
+                OverflowPolicy.BLOCK);
+        final ReferenceTracer tracer = new ReferenceTracer(reporter);
+        finishSpans(tracer, "fatal");
+        assertTrue(failing.await(5, TimeUnit.SECONDS));
+
+        // With the consumer thread gone, blocking producers must not wait for room forever.
+        Thread blocked = new Thread(() -> finishSpans(tracer, "a", "b", "c", "d"));
+        blocked.start();
+        blocked.join(TimeUnit.SECONDS.toMillis(10));
+        assertFalse(blocked.isAlive());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (reporter.droppedSpans() < 4 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        tracer.close();
+
+        assertEquals(1, reporter.failedSpans());
+        assertEquals(4, reporter.droppedSpans());
+        assertEquals(0, reporter.queueDepth());
+    }
+}
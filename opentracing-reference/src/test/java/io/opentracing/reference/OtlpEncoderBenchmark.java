@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.Span;
+import io.opentracing.tag.Tags;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of {@link OtlpEncoder} on batches of HTTP client spans with a few tags and a log.
+ *
+ * <p>The {@code bytes} counter gives the encoded bytes per second. For allocations per span, run with
+ * {@code -prof gc} and divide {@code gc.alloc.rate.norm} by the batch size.
+ *
+ * <p>
+ * Run with: {@code java -cp <test classpath> org.openjdk.jmh.Main OtlpEncoderBenchmark -prof gc}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class OtlpEncoderBenchmark {
+    private static final int BATCH_SIZE = 512;
+
+    private SpanData[] batch;
+    private OtlpEncoder encoder;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public long bytes;
+    }
+
+    @Setup
+    public void setup() {
+        InMemoryReporter reporter = new InMemoryReporter();
+        ReferenceTracer tracer = new ReferenceTracer(reporter);
+        Span parent = tracer.buildSpan("parent").start();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            Span span = tracer.buildSpan("GET /api/orders/{id}")
+                    .asChildOf(parent)
+                    .withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+                    .withTag(Tags.COMPONENT, "http-client")
+                    .start();
+            span.setTag(Tags.HTTP_METHOD, "GET");
+            span.setTag(Tags.HTTP_URL, "https://orders.example.com/api/orders/" + i);
+            span.setTag(Tags.HTTP_STATUS, 200);
+            span.setTag(Tags.PEER_PORT, 443);
+            span.log("response received");
+            span.finish();
+        }
+        batch = reporter.spans().toArray(new SpanData[0]);
+        encoder = new OtlpEncoder("benchmark");
+    }
+
+    @Benchmark
+    public ByteBuffer encode(Counters counters) {
+        ByteBuffer encoded = encoder.encode(batch, BATCH_SIZE);
+        counters.bytes += encoded.remaining();
+        return encoded;
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.opentracing.References;
+import io.opentracing.Span;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class OtlpEncoderTest {
+    private final InMemoryReporter reporter = new InMemoryReporter();
+    private final ReferenceTracer tracer = new ReferenceTracer(reporter);
+
+    /**
+     * A decoded message: the values of each field number, as Longs for numeric fields and byte arrays for
+     * length-delimited ones.
+     */
+    static final class Message {
+        final Map<Integer, List<Object>> fields = new HashMap<>();
+
+        static Message parse(byte[] bytes) {
+            return parse(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN));
+        }
+
+        static Message parse(ByteBuffer buffer) {
+            Message message = new Message();
+            while (buffer.hasRemaining()) {
+                int tag = (int) readVarint(buffer);
+                Object value;
+                switch (tag & 7) {
+                    case 0:
+                        value = readVarint(buffer);
+                        break;
+                    case 1:
+                        value = buffer.getLong();
+                        break;
+                    case 2:
+                        byte[] bytes = new byte[(int) readVarint(buffer)];
+                        buffer.get(bytes);
+                        value = bytes;
+                        break;
+                    case 5:
+                        value = (long) buffer.getInt();
+                        break;
+                    default:
+                        throw new AssertionError("Unexpected wire type in tag " + tag);
+                }
+                message.fields.computeIfAbsent(tag >>> 3, k -> new ArrayList<>()).add(value);
+            }
+            return message;
+        }
+
+        private static long readVarint(ByteBuffer buffer) {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        List<Object> all(int field) {
+            return fields.containsKey(field) ? fields.get(field) : Collections.emptyList();
+        }
+
+        Long number(int field) {
+            List<Object> values = all(field);
+            return values.isEmpty() ? null : (Long) values.get(values.size() - 1);
+        }
+
+        byte[] bytes(int field) {
+            List<Object> values = all(field);
+            return values.isEmpty() ? null : (byte[]) values.get(values.size() - 1);
+        }
+
+        String string(int field) {
+            byte[] bytes = bytes(field);
+            return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        Message message(int field) {
+            byte[] bytes = bytes(field);
+            return bytes == null ? null : parse(bytes);
+        }
+
+        List<Message> messages(int field) {
+            List<Message> messages = new ArrayList<>();
+            for (Object value : all(field)) {
+                messages.add(parse((byte[]) value));
+            }
+            return messages;
+        }
+
+        /**
+         * @return the AnyValues of the KeyValues in the given field, by key
+         */
+        Map<String, Message> attributes(int field) {
+            Map<String, Message> attributes = new HashMap<>();
+            for (Message keyValue : messages(field)) {
+                attributes.put(keyValue.string(1), keyValue.message(2));
+            }
+            return attributes;
+        }
+    }
+
+    private static List<Message> spans(ByteBuffer encoded) {
+        Message request = Message.parse(encoded.duplicate().order(ByteOrder.LITTLE_ENDIAN));
+        Message resourceSpans = request.message(1);
+        Message scopeSpans = resourceSpans.message(2);
+        return scopeSpans.messages(2);
+    }
+
+    private static byte[] id(long high, long low) {
+        ByteBuffer buffer = ByteBuffer.allocate(high == -1 ? 8 : 16);
+        if (high != -1) {
+            buffer.putLong(high);
+        }
+        return buffer.putLong(low).array();
+    }
+
+    @Test
+    public void testResourceAndScope() {
+        tracer.buildSpan("op").start().finish();
+        OtlpEncoder encoder = new OtlpEncoder("my-service");
+        ByteBuffer encoded = encoder.encode(reporter.spans().toArray(new SpanData[0]), 1);
+
+        Message resourceSpans = Message.parse(encoded.order(ByteOrder.LITTLE_ENDIAN)).message(1);
+        Map<String, Message> resource = resourceSpans.message(1).attributes(1);
+        assertEquals("my-service", resource.get("service.name").string(1));
+        Message scope = resourceSpans.message(2).message(1);
+        assertEquals(OtlpEncoder.SCOPE_NAME, scope.string(1));
+    }
+
+    @Test
+    public void testSpan() {
+        ReferenceSpan parent = tracer.buildSpan("parent").start();
+        ReferenceSpan other = tracer.buildSpan("other").start();
+        ReferenceSpan span = tracer.buildSpan("op")
+                .asChildOf(parent)
+                .addReference(References.FOLLOWS_FROM, other.context())
+                .withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+                .withStartTimestamp(1_000_000)
+                .start();
+        span.setTag("string", "caf\u00e9 \u20ac \ud83d\ude00");
+        span.setTag("boolean", true);
+        span.setTag("int", -7);
+        span.setTag("long", 1L << 40);
+        span.setTag("double", 2.5);
+        span.setTag("number", (Number) 3.5f);
+        span.setTag("object", (Number) null);
+        span.setTag(Tags.ERROR, true);
+        span.log(1_000_100, "started");
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("event", "retry");
+        fields.put("attempt", 2);
+        span.log(1_000_200, fields);
+        span.finish(1_000_500);
+
+        OtlpEncoder encoder = new OtlpEncoder("service");
+        List<Message> spans = spans(encoder.encode(new SpanData[] {reporter.spans().get(0)}, 1));
+        assertEquals(1, spans.size());
+        Message encoded = spans.get(0);
+
+        assertArrayEquals(id(0, span.context().traceId()), encoded.bytes(1));
+        assertArrayEquals(id(-1, span.context().spanId()), encoded.bytes(2));
+        assertArrayEquals(id(-1, parent.context().spanId()), encoded.bytes(4));
+        assertEquals("op", encoded.string(5));
+        assertEquals(OtlpEncoder.SPAN_KIND_CLIENT, (long) encoded.number(6));
+        assertEquals(1_000_000_000L, (long) encoded.number(7));
+        assertEquals(1_000_500_000L, (long) encoded.number(8));
+
+        Map<String, Message> attributes = encoded.attributes(9);
+        assertEquals(Tags.SPAN_KIND_CLIENT, attributes.get(Tags.SPAN_KIND.getKey()).string(1));
+        assertEquals("caf\u00e9 \u20ac \ud83d\ude00", attributes.get("string").string(1));
+        assertEquals(1L, (long) attributes.get("boolean").number(2));
+        assertEquals(-7L, (long) attributes.get("int").number(3));
+        assertEquals(1L << 40, (long) attributes.get("long").number(3));
+        assertEquals(2.5, Double.longBitsToDouble(attributes.get("double").number(4)), 0);
+        assertEquals(3.5, Double.longBitsToDouble(attributes.get("number").number(4)), 0);
+        assertTrue(attributes.get("object").fields.isEmpty());
+        assertNull(encoded.number(10));
+
+        List<Message> events = encoded.messages(11);
+        assertEquals(2, events.size());
+        assertEquals(1_000_100_000L, (long) events.get(0).number(1));
+        assertEquals("started", events.get(0).string(2));
+        assertEquals("retry", events.get(1).string(2));
+        assertEquals(2L, (long) events.get(1).attributes(3).get("attempt").number(3));
+
+        List<Message> links = encoded.messages(13);
+        assertEquals(1, links.size());
+        assertArrayEquals(id(0, other.context().traceId()), links.get(0).bytes(1));
+        assertArrayEquals(id(-1, other.context().spanId()), links.get(0).bytes(2));
+        assertEquals(References.FOLLOWS_FROM,
+                links.get(0).attributes(4).get(OtlpEncoder.REFERENCE_TYPE_KEY).string(1));
+
+        assertEquals(OtlpEncoder.STATUS_CODE_ERROR, (long) encoded.message(15).number(3));
+    }
+
+    @Test
+    public void testRootSpanWithoutError() {
+        tracer.buildSpan("root").withTag(Tags.ERROR, false).start().finish();
+        Message encoded = spans(new OtlpEncoder("service").encode(reporter.spans().toArray(new SpanData[0]), 1)).get(0);
+        assertNull(encoded.bytes(4));
+        assertNull(encoded.number(6));
+        assertNull(encoded.message(15));
+        assertTrue(encoded.all(13).isEmpty());
+    }
+
+    @Test
+    public void testDroppedCounts() {
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 1, 1, 0);
+        Span span = tracer.buildSpan("op").start();
+        span.setTag("a", 1);
+        span.setTag("b", 2);
+        span.log("first");
+        span.log("second");
+        span.finish();
+        Message encoded = spans(new OtlpEncoder("service").encode(reporter.spans().toArray(new SpanData[0]), 1)).get(0);
+        assertEquals(1, encoded.messages(9).size());
+        assertEquals(1L, (long) encoded.number(10));
+        assertEquals(1, encoded.messages(11).size());
+        assertEquals(1L, (long) encoded.number(12));
+    }
+
+    @Test
+    public void testBufferGrows() {
+        for (int i = 0; i < 100; i++) {
+            tracer.buildSpan("op" + i).withTag("index", i).start().finish();
+        }
+        SpanData[] batch = reporter.spans().toArray(new SpanData[0]);
+        OtlpEncoder encoder = new OtlpEncoder("service", 16);
+        List<Message> spans = spans(encoder.encode(batch, batch.length));
+        assertEquals(100, spans.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("op" + i, spans.get(i).string(5));
+        }
+        // The grown buffer is reused.
+        assertEquals(100, spans(encoder.encode(batch, batch.length)).size());
+        assertEquals(0, spans(encoder.encode(batch, 0)).size());
+    }
+
+    @Test
+    public void testBufferOverflow() {
+        tracer.buildSpan("op").start().finish();
+        SpanData[] batch = reporter.spans().toArray(new SpanData[0]);
+        OtlpEncoder encoder = new OtlpEncoder("service");
+        ByteBuffer dest = ByteBuffer.allocate(32);
+        try {
+            encoder.encode(batch, 1, dest);
+            assertFalse("Expected an overflow", true);
+        } catch (BufferOverflowException expected) {
+        }
+        dest = ByteBuffer.allocateDirect(4096);
+        encoder.encode(batch, 1, dest);
+        dest.flip();
+        assertEquals("op", spans(dest).get(0).string(5));
+    }
+
+    @Test
+    public void testUtf8() {
+        String[] strings = {"", "ascii", "\u00e9\u07ff", "\u0800\uffff", "\ud83d\ude00", "lone \ud83d surrogate",
+            "\ude00 reversed \ud83d"};
+        for (String s : strings) {
+            byte[] expected = s.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected.length, Protobuf.utf8Length(s));
+            ByteBuffer buffer = ByteBuffer.allocate(expected.length);
+            Protobuf.writeUtf8(buffer, s);
+            assertArrayEquals(expected, buffer.array());
+        }
+    }
+
+    @Test
+    public void testVarints() {
+        long[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, Long.MAX_VALUE, -1, Long.MIN_VALUE};
+        for (long value : values) {
+            ByteBuffer buffer = ByteBuffer.allocate(10);
+            Protobuf.writeVarint(buffer, value);
+            assertEquals(buffer.position(), Protobuf.varintSize(value));
+            buffer.flip();
+            assertEquals(value, (long) Message.parse(concat(new byte[] {8}, buffer)).number(1));
+        }
+    }
+
+    private static byte[] concat(byte[] prefix, ByteBuffer buffer) {
+        byte[] bytes = new byte[prefix.length + buffer.remaining()];
+        System.arraycopy(prefix, 0, bytes, 0, prefix.length);
+        buffer.get(bytes, prefix.length, buffer.remaining());
+        return bytes;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+import org.junit.Test;
+
+public class OtlpExporterTest {
+    private final InMemoryReporter reporter = new InMemoryReporter();
+    private final ReferenceTracer tracer = new ReferenceTracer(reporter);
+
+    private static final class RecordingTransport implements Transport {
+        final List<byte[]> requests = new ArrayList<>();
+        final List<String> contentEncodings = new ArrayList<>();
+        boolean failing;
+        boolean closed;
+
+        @Override
+        public void send(ByteBuffer request, String contentEncoding) throws IOException {
+            if (failing) {
+                throw new IOException("unavailable");
+            }
+            byte[] bytes = new byte[request.remaining()];
+            request.duplicate().get(bytes);
+            requests.add(bytes);
+            contentEncodings.add(contentEncoding);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    private SpanData[] spans(int count) {
+        for (int i = 0; i < count; i++) {
+            tracer.buildSpan("operation").withTag("http.url", "http://localhost/items/" + i).start().finish();
+        }
+        return reporter.spans().toArray(new SpanData[0]);
+    }
+
+    private static byte[] encode(SpanData[] spans) {
+        ByteBuffer encoded = new OtlpEncoder("test").encode(spans, spans.length);
+        byte[] bytes = new byte[encoded.remaining()];
+        encoded.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        for (int read; (read = in.read(buffer)) >= 0; ) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testGzip() throws IOException {
+        RecordingTransport transport = new RecordingTransport();
+        OtlpExporter exporter = new OtlpExporter(transport, "test");
+        SpanData[] spans = spans(100);
+        exporter.export(spans, spans.length);
+
+        assertEquals(1, transport.requests.size());
+        assertEquals("gzip", transport.contentEncodings.get(0));
+        byte[] request = transport.requests.get(0);
+        assertArrayEquals(encode(spans), readFully(new GZIPInputStream(new ByteArrayInputStream(request))));
+        assertEquals(1, exporter.sentRequests());
+        assertEquals(100, exporter.sentSpans());
+        assertEquals(request.length, exporter.compressedBytes());
+        assertEquals(encode(spans).length, exporter.uncompressedBytes());
+        assertTrue(exporter.compressionRatio() > 2);
+        assertTrue(exporter.compressionCpuNanos() >= 0);
+    }
+
+    @Test
+    public void testDeflate() throws IOException {
+        RecordingTransport transport = new RecordingTransport();
+        OtlpExporter exporter = new OtlpExporter(transport, "test", Compression.DEFLATE, Deflater.BEST_SPEED,
+                OtlpExporter.DEFAULT_TARGET_REQUEST_BYTES);
+        SpanData[] spans = spans(10);
+        exporter.export(spans, spans.length);
+        exporter.export(spans, spans.length);
+
+        assertEquals(2, transport.requests.size());
+        assertEquals("deflate", transport.contentEncodings.get(1));
+        // The pooled deflater is reset between requests.
+        for (byte[] request : transport.requests) {
+            assertArrayEquals(encode(spans), readFully(new InflaterInputStream(new ByteArrayInputStream(request))));
+        }
+    }
+
+    @Test
+    public void testNone() {
+        RecordingTransport transport = new RecordingTransport();
+        OtlpExporter exporter = new OtlpExporter(transport, "test", Compression.NONE, Deflater.DEFAULT_COMPRESSION,
+                OtlpExporter.DEFAULT_TARGET_REQUEST_BYTES);
+        SpanData[] spans = spans(3);
+        exporter.export(spans, spans.length);
+
+        assertNull(transport.contentEncodings.get(0));
+        assertArrayEquals(encode(spans), transport.requests.get(0));
+        assertEquals(1, exporter.compressionRatio(), 0);
+    }
+
+    @Test
+    public void testSplitsBatchesToTargetSize() throws IOException {
+        RecordingTransport transport = new RecordingTransport();
+        OtlpExporter exporter = new OtlpExporter(transport, "test", Compression.GZIP, Deflater.DEFAULT_COMPRESSION,
+                1024);
+        assertEquals(Integer.MAX_VALUE, exporter.spansPerRequest());
+        SpanData[] spans = spans(1000);
+        exporter.export(spans, spans.length);
+        assertEquals(1, transport.requests.size());
+        int spansPerRequest = exporter.spansPerRequest();
+        assertTrue(spansPerRequest < 1000);
+
+        exporter.export(spans, spans.length);
+        assertTrue(transport.requests.size() >= 1 + 1000 / spansPerRequest);
+        assertEquals(2000, exporter.sentSpans());
+        for (byte[] request : transport.requests.subList(1, transport.requests.size())) {
+            assertTrue(request.length < 2048);
+            assertTrue(readFully(new GZIPInputStream(new ByteArrayInputStream(request))).length > 0);
+        }
+    }
+
+    @Test
+    public void testCountsFailedRequests() {
+        RecordingTransport transport = new RecordingTransport();
+        transport.failing = true;
+        OtlpExporter exporter = new OtlpExporter(transport, "test");
+        SpanData[] spans = spans(5);
+        exporter.export(spans, spans.length);
+        assertEquals(1, exporter.failedRequests());
+        assertEquals(5, exporter.failedSpans());
+        assertEquals(0, exporter.sentSpans());
+
+        exporter.close();
+        assertTrue(transport.closed);
+    }
+
+    @Test
+    public void testDeflaterPool() {
+        DeflaterPool pool = DeflaterPool.shared(Deflater.BEST_SPEED, true);
+        Deflater deflater = pool.acquire();
+        pool.release(deflater);
+        assertTrue(deflater == pool.acquire());
+        pool.release(deflater);
+    }
+}
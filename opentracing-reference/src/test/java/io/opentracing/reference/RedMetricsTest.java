@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.opentracing.Span;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class RedMetricsTest {
+    private final InMemoryReporter reporter = new InMemoryReporter();
+
+    private static RedMetrics.Snapshot series(List<RedMetrics.Snapshot> snapshots, String operationName) {
+        for (RedMetrics.Snapshot snapshot : snapshots) {
+            if (operationName.equals(snapshot.operationName())) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void testBuckets() {
+        for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            long lowerBound = LatencyHistogram.lowerBound(i);
+            assertEquals(i, LatencyHistogram.bucket(lowerBound));
+            if (i < LatencyHistogram.BUCKETS - 1) {
+                assertEquals(i, LatencyHistogram.bucket(LatencyHistogram.upperBound(i)));
+                assertEquals(LatencyHistogram.upperBound(i) + 1, LatencyHistogram.lowerBound(i + 1));
+                // A bucket spans at most an eighth of its lower bound.
+                assertTrue(LatencyHistogram.upperBound(i) - lowerBound <= Math.max(0, lowerBound / 8));
+            }
+        }
+        assertEquals(0, LatencyHistogram.bucket(-5));
+        assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, LatencyHistogram.valueAtPercentile(histogram.counts(false), 50));
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        long[] counts = histogram.counts(false);
+        long p50 = LatencyHistogram.valueAtPercentile(counts, 50);
+        long p99 = LatencyHistogram.valueAtPercentile(counts, 99);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 9 / 8);
+        assertTrue(p99 >= 990_000 && p99 <= 990_000 * 9 / 8);
+        long p0 = LatencyHistogram.valueAtPercentile(counts, 0);
+        assertTrue(p0 >= 1000 && p0 <= 1000 * 9 / 8);
+
+        histogram.counts(true);
+        assertEquals(0, LatencyHistogram.valueAtPercentile(histogram.counts(false), 100));
+    }
+
+    @Test
+    public void testCountsSampledAndUnsampledSpans() {
+        RedMetrics metrics = new RedMetrics();
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.NEVER, 8, 4, 16,
+                metrics);
+
+        Span span = tracer.buildSpan("get")
+                .withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_SERVER)
+                .withTag(Tags.COMPONENT.getKey(), "http")
+                .withStartTimestamp(1000)
+                .start();
+        span.finish(1300);
+        span = tracer.buildSpan("get")
+                .withTags(TagSet.EMPTY.with(Tags.SPAN_KIND, Tags.SPAN_KIND_SERVER).with(Tags.COMPONENT, "http"))
+                .withTag(Tags.SAMPLING_PRIORITY, 1)
+                .withStartTimestamp(1000)
+                .start();
+        span.setTag(Tags.ERROR, true);
+        span.finish(1100);
+        // Finishing twice does not count twice.
+        span.finish(1200);
+
+        List<RedMetrics.Snapshot> snapshots = metrics.snapshot();
+        assertEquals(1, snapshots.size());
+        RedMetrics.Snapshot get = snapshots.get(0);
+        assertEquals("get", get.operationName());
+        assertEquals(Tags.SPAN_KIND_SERVER, get.spanKind());
+        assertEquals("http", get.component());
+        assertEquals(2, get.requests());
+        assertEquals(1, get.errors());
+        assertTrue(get.durationAtPercentile(50) >= 100 && get.durationAtPercentile(50) < 120);
+        assertTrue(get.durationAtPercentile(100) >= 300 && get.durationAtPercentile(100) < 340);
+        // Only the span sampled through its priority was reported.
+        assertEquals(1, reporter.spans().size());
+    }
+
+    @Test
+    public void testSeriesKeys() {
+        RedMetrics metrics = new RedMetrics();
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 8, 4, 16,
+                metrics);
+
+        tracer.buildSpan("op").start().finish();
+        tracer.buildSpan("op").withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT).start().finish();
+        Span span = tracer.buildSpan("op").start();
+        span.setTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT);
+        span.finish();
+        span = tracer.buildSpan("other").start();
+        span.setOperationName("renamed");
+        span.setTag(Tags.ERROR, true);
+        span.setTag(Tags.ERROR, false);
+        span.finish();
+
+        List<RedMetrics.Snapshot> snapshots = metrics.snapshot();
+        assertEquals(3, snapshots.size());
+        int clientRequests = 0;
+        for (RedMetrics.Snapshot snapshot : snapshots) {
+            if (Tags.SPAN_KIND_CLIENT.equals(snapshot.spanKind())) {
+                clientRequests += snapshot.requests();
+            }
+        }
+        assertEquals(2, clientRequests);
+        assertNull(series(snapshots, "other"));
+        assertEquals(0, series(snapshots, "renamed").errors());
+    }
+
+    @Test
+    public void testSnapshotAndReset() {
+        RedMetrics metrics = new RedMetrics();
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 8, 4, 16,
+                metrics);
+
+        tracer.buildSpan("op").start().finish();
+        assertEquals(1, metrics.snapshotAndReset().get(0).requests());
+        RedMetrics.Snapshot snapshot = metrics.snapshotAndReset().get(0);
+        assertEquals(0, snapshot.requests());
+        assertEquals(0, snapshot.durationAtPercentile(99));
+        tracer.buildSpan("op").start().finish();
+        assertEquals(1, metrics.snapshot().get(0).requests());
+    }
+
+    @Test
+    public void testMaxSeries() {
+        RedMetrics metrics = new RedMetrics(2);
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 8, 4, 16,
+                metrics);
+
+        for (int i = 0; i < 5; i++) {
+            tracer.buildSpan("op" + i).start().finish();
+        }
+        tracer.buildSpan("op0").start().finish();
+        assertEquals(2, metrics.snapshot().size());
+        assertEquals(3, metrics.droppedSpans());
+        assertEquals(2, series(metrics.snapshot(), "op0").requests());
+    }
+
+    @Test
+    public void testConcurrentUpdates() throws InterruptedException {
+        final RedMetrics metrics = new RedMetrics();
+        final ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.NEVER, 8,
+                4, 16, metrics);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for (int i = 0; i < 10000; i++) {
+                    Span span = tracer.buildSpan(i % 2 == 0 ? "even" : "odd").start();
+                    span.setTag(Tags.ERROR, i % 10 == 0);
+                    span.finish();
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        List<RedMetrics.Snapshot> snapshots = metrics.snapshot();
+        assertEquals(20000, series(snapshots, "even").requests());
+        assertEquals(4000, series(snapshots, "even").errors());
+        assertEquals(20000, series(snapshots, "odd").requests());
+        assertEquals(0, series(snapshots, "odd").errors());
+        long total = 0;
+        for (long count : series(snapshots, "odd").durationCounts()) {
+            total += count;
+        }
+        assertEquals(20000, total);
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static io.opentracing.reference.ReferenceTracerTest.logFields;
+import static io.opentracing.reference.ReferenceTracerTest.tags;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.tag.StringTag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.Tags;
+import io.opentracing.tag.ValueSupplier;
+import io.opentracing.util.ThreadLocalScopeManager;
+import io.opentracing.util.TracedRunnable;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+public class ReferenceSpanTest {
+    private final InMemoryReporter reporter = new InMemoryReporter();
+    private final ReferenceTracer tracer = new ReferenceTracer(reporter);
+
+    @Test
+    public void testTagTypes() {
+        ReferenceSpan span = tracer.buildSpan("foo").withTag("builder", 1L).start();
+        span.setTag("string", "s")
+                .setTag("boolean", true)
+                .setTag("int", 1)
+                .setTag("long", 2L)
+                .setTag("double", 3.5)
+                .setTag("float", (Number) 4.5f)
+                .setTag(Tags.ERROR, true);
+        span.finish();
+
+        Attributes tags = reporter.spans().get(0).tags();
+        assertEquals(8, tags.size());
+        assertEquals(Attributes.Type.LONG, tags.type(0));
+        assertEquals(Attributes.Type.STRING, tags.type(1));
+        assertEquals(Attributes.Type.BOOLEAN, tags.type(2));
+        assertTrue(tags.booleanValue(2));
+        assertEquals(Attributes.Type.INT, tags.type(3));
+        assertEquals(1, tags.longValue(3));
+        assertEquals(Attributes.Type.LONG, tags.type(4));
+        assertEquals(Attributes.Type.DOUBLE, tags.type(5));
+        assertEquals(3.5, tags.doubleValue(5), 0);
+        assertEquals(Attributes.Type.OBJECT, tags.type(6));
+        assertEquals(4.5f, tags.objectValue(6));
+        assertEquals(Tags.ERROR.getKey(), tags.key(7));
+        assertEquals(true, tags.value(7));
+    }
+
+    @Test
+    public void testLastTagWins() {
+        tracer.buildSpan("foo").withTag("key", "first").start().setTag("key", 2).finish();
+
+        assertEquals(2, tags(reporter.spans().get(0)).get("key"));
+    }
+
+    @Test
+    public void testSetTags() {
+        TagSet tagSet = TagSet.EMPTY.with("component", "test").with(Tags.HTTP_STATUS, 200);
+        tracer.buildSpan("foo").withTags(tagSet).start().setTags(tagSet.with("extra", true)).finish();
+
+        Attributes tags = reporter.spans().get(0).tags();
+        assertEquals(5, tags.size());
+        assertEquals(Tags.HTTP_STATUS.getKey(), tags.key(1));
+        assertEquals(Attributes.Type.INT, tags.type(1));
+        assertEquals(200, tags.longValue(1));
+        assertEquals("extra", tags.key(3));
+    }
+
+    @Test
+    public void testSetTagsAppliesTypedTags() {
+        StringTag upperCase = new StringTag("upper") {
+            @Override
+            public void set(Span span, String tagValue) {
+                span.setTag(key, tagValue.toUpperCase());
+            }
+        };
+        tracer.buildSpan("foo").start().setTags(TagSet.EMPTY.with(upperCase, "value").with("raw", "value")).finish();
+
+        Attributes tags = reporter.spans().get(0).tags();
+        assertEquals(2, tags.size());
+        assertEquals("raw", tags.key(0));
+        assertEquals("upper", tags.key(1));
+        assertEquals("VALUE", tags.value(1));
+    }
+
+    @Test
+    public void testLazyTags() {
+        final AtomicInteger calls = new AtomicInteger();
+        ValueSupplier<String> supplier = new ValueSupplier<String>() {
+            @Override
+            public String get() {
+                calls.incrementAndGet();
+                return "computed";
+            }
+        };
+        ReferenceSpan span = tracer.buildSpan("foo").withTag("builder", supplier).start();
+        span.setTag(Tags.COMPONENT, supplier);
+        assertEquals(0, calls.get());
+        span.finish();
+
+        assertEquals(2, calls.get());
+        Attributes tags = reporter.spans().get(0).tags();
+        assertEquals(Attributes.Type.STRING, tags.type(0));
+        assertEquals("computed", tags.objectValue(0));
+        assertEquals("computed", tags(reporter.spans().get(0)).get(Tags.COMPONENT.getKey()));
+    }
+
+    @Test
+    public void testTagsAfterFinishAreIgnored() {
+        ReferenceSpan span = tracer.buildSpan("foo").start();
+        span.finish();
+        span.setTag("late", "value").log("late");
+        span.setOperationName("renamed");
+        span.finish();
+
+        assertEquals(1, reporter.spans().size());
+        assertFalse(span.isRecording());
+        SpanData data = reporter.spans().get(0);
+        assertEquals("foo", data.operationName());
+        assertEquals(0, data.tags().size());
+        assertEquals(0, data.logCount());
+    }
+
+    @Test
+    public void testUseAfterFinishIsCounted() {
+        ReferenceSpan span = tracer.buildSpan("foo").start();
+        Span.LogBuilder builder = span.logBuilder().field("event", "late");
+        span.finish();
+        span.setTag("late", "value").log("late").setOperationName("renamed").setBaggageItem("late", "item");
+        builder.emit();
+        span.finish();
+        assertEquals(6, tracer.useAfterFinishErrors());
+        assertEquals(0, reporter.spans().get(0).logCount());
+
+        // Spans which are not sampled ignore calls without counting them until they finish.
+        ReferenceTracer neverTracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.NEVER);
+        ReferenceSpan unsampled = neverTracer.buildSpan("foo").start();
+        unsampled.setTag("key", "value").log("event");
+        unsampled.finish();
+        assertEquals(0, neverTracer.useAfterFinishErrors());
+        unsampled.setTag("key", "value");
+        assertEquals(1, neverTracer.useAfterFinishErrors());
+    }
+
+    @Test
+    public void testRecycledSpans() {
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 8, 4, 16,
+                null, 2);
+        ReferenceSpan first = tracer.buildSpan("first").start();
+        ReferenceSpan second = tracer.buildSpan("second").start();
+        Span.LogBuilder staleBuilder = first.logBuilder().field("event", "stale");
+        first.finish();
+        second.finish();
+        assertEquals(2, tracer.spanPool().available());
+
+        // The third span reuses the state of the first, which is still detected as finished.
+        ReferenceSpan third = tracer.buildSpan("third").withTag("key", "value").start();
+        assertEquals(1, tracer.spanPool().available());
+        assertNotSame(first, third);
+        assertTrue(third.isRecording());
+        assertFalse(first.isRecording());
+        first.setTag("late", "value").log("late").setOperationName("renamed");
+        assertEquals(3, tracer.useAfterFinishErrors());
+        first.finish();
+        assertEquals(4, tracer.useAfterFinishErrors());
+        staleBuilder.emit();
+        assertEquals(5, tracer.useAfterFinishErrors());
+        assertEquals(reporter.spans().get(0).context().spanId(), first.context().spanId());
+
+        third.log("event");
+        third.finish();
+        SpanData data = reporter.spans().get(2);
+        assertEquals("third", data.operationName());
+        assertEquals(third.context().spanId(), data.context().spanId());
+        assertEquals(Collections.singletonMap("key", "value"), tags(data));
+        assertEquals(1, data.logCount());
+        assertEquals("event", logFields(data, 0).get("event"));
+        assertEquals(2, tracer.spanPool().available());
+    }
+
+    @Test
+    public void testActiveSpansOutliveTheirRecycledState() {
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 8, 4, 16,
+                null, 2);
+        ReferenceSpan active = tracer.buildSpan("active").start();
+        long spanId = active.context().spanId();
+        Scope scope = tracer.activateSpan(active);
+        active.finish();
+        assertEquals(1, tracer.spanPool().available());
+
+        ReferenceSpan other = tracer.buildSpan("other").ignoreActiveSpan().start();
+        assertEquals(0, tracer.spanPool().available());
+        assertSame(active, tracer.activeSpan());
+        assertEquals(spanId, active.context().spanId());
+        active.setTag("late", "value");
+        assertEquals(1, tracer.useAfterFinishErrors());
+        other.finish();
+        assertEquals(0, reporter.spans().get(1).tags().size());
+        scope.close();
+
+        // A span captured as the active one, to be activated again on another thread, keeps its context as well.
+        ReferenceSpan submitted = tracer.buildSpan("submitted").start();
+        final AtomicReference<Span> runActive = new AtomicReference<>();
+        Runnable runnable;
+        try (Scope submitScope = tracer.activateSpan(submitted)) {
+            runnable = new TracedRunnable(() -> runActive.set(tracer.activeSpan()), tracer.scopeManager(),
+                    tracer.activeSpan());
+        }
+        submitted.finish();
+        for (int i = 0; i < 3; i++) {
+            tracer.buildSpan("later").start().finish();
+        }
+        runnable.run();
+        assertSame(submitted, runActive.get());
+        assertEquals("submitted", reporter.spans().get(2).operationName());
+        assertEquals(reporter.spans().get(2).context().spanId(), submitted.context().spanId());
+        assertFalse(submitted.isRecording());
+        assertEquals(1, tracer.useAfterFinishErrors());
+    }
+
+    @Test
+    public void testOperationNameAndBaggageAtFinish() {
+        ReferenceSpan span = tracer.buildSpan("foo").start();
+        span.setOperationName("bar");
+        span.setBaggageItem("bag", "item");
+        span.setBaggageItem("removed", "item").setBaggageItem("removed", null);
+        assertEquals("item", span.getBaggageItem("bag"));
+        assertNull(span.getBaggageItem("removed"));
+        span.finish();
+
+        SpanData data = reporter.spans().get(0);
+        assertEquals("bar", data.operationName());
+        assertEquals("item", data.context().getBaggageItem("bag"));
+    }
+
+    @Test
+    public void testLimits() {
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 2, 2, 0);
+        ReferenceSpan span = tracer.buildSpan("foo").withTag("a", 1).start();
+        span.setTag("b", 2).setTag("c", 3).setTags(TagSet.EMPTY.with("d", 4).with("e", 5));
+        span.log("first");
+        span.log(Collections.singletonMap("too", "many fields"));
+        span.log("dropped");
+        span.finish();
+
+        SpanData data = reporter.spans().get(0);
+        assertEquals(2, data.tags().size());
+        assertEquals(3, data.tags().dropped());
+        assertEquals(2, data.logCount());
+        assertEquals(1, data.droppedLogs());
+        assertEquals("first", logFields(data, 0).get("event"));
+    }
+
+    @Test
+    public void testLogFieldsOverflow() {
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 2, 1, 0);
+        ReferenceSpan span = tracer.buildSpan("foo").start();
+        span.logBuilder().field("a", 1).field("b", 2).field("c", 3).field("d", 4).field("e", 5).emit();
+        span.finish();
+
+        // A log whose fields do not fit is kept without its fields.
+        SpanData data = reporter.spans().get(0);
+        assertEquals(1, data.logCount());
+        assertEquals(0, data.logFieldCount(0));
+        assertEquals(5, data.logFields().dropped());
+    }
+
+    @Test
+    public void testLogBuilder() {
+        ReferenceSpan span = tracer.buildSpan("foo").start();
+        Span result = span.logBuilder()
+                .field("event", "error")
+                .field("flag", true)
+                .field("int", 1)
+                .field("long", 2L)
+                .field("double", 3.5)
+                .field("error.object", (Object) "boom")
+                .withTimestamp(1000)
+                .emit();
+        assertSame(span, result);
+        span.logBuilder().field("event", "now").emit();
+        span.finish();
+
+        SpanData data = reporter.spans().get(0);
+        assertEquals(2, data.logCount());
+        assertEquals(1000, data.logTimestampMicros(0));
+        Map<String, Object> fields = logFields(data, 0);
+        assertEquals(6, fields.size());
+        assertEquals(true, fields.get("flag"));
+        assertEquals(1, fields.get("int"));
+        assertEquals(2L, fields.get("long"));
+        assertEquals(3.5, fields.get("double"));
+        assertEquals("boom", fields.get("error.object"));
+        assertTrue(data.logTimestampMicros(1) > 1000);
+        assertEquals("now", logFields(data, 1).get("event"));
+    }
+
+    @Test
+    public void testLogBuilderIsReusedPerThread() {
+        ReferenceSpan first = tracer.buildSpan("first").start();
+        ReferenceSpan second = tracer.buildSpan("second").start();
+        Span.LogBuilder builder = first.logBuilder();
+        builder.field("event", "one").emit();
+
+        assertSame(builder, second.logBuilder());
+        try {
+            builder.emit();
+            builder.emit();
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void testIdAccessors() {
+        ReferenceSpanContext context = tracer.buildSpan("foo").start().context();
+
+        char[] chars = new char[20];
+        assertEquals(16, context.toTraceId(chars, 2));
+        assertEquals(context.toTraceId(), new String(chars, 2, 16));
+        assertSame(context.toTraceId(), context.toTraceId());
+        assertEquals(-1, context.toSpanId(chars, 5));
+        assertEquals(16, context.toSpanId(chars, 4));
+        assertEquals(context.toSpanId(), new String(chars, 4, 16));
+
+        byte[] bytes = new byte[8];
+        assertEquals(8, context.toSpanIdBytes(bytes, 0));
+        assertEquals(context.spanId(), ByteBuffer.wrap(bytes).getLong());
+        assertEquals(-1, context.toTraceIdBytes(bytes, 1));
+        assertEquals(8, context.toTraceIdBytes(bytes, 0));
+        assertArrayEquals(ByteBuffer.allocate(8).putLong(context.traceId()).array(), bytes);
+    }
+
+    @Test
+    public void testConcurrentTags() throws InterruptedException {
+        final int threads = 4;
+        final int tagsPerThread = 10;
+        final ReferenceSpan span = tracer.buildSpan("foo").start();
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final int thread = i;
+            workers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    for (int j = 0; j < tagsPerThread; j++) {
+                        span.setTag("tag-" + thread + "-" + j, j);
+                        span.logBuilder().field("thread", thread).emit();
+                    }
+                }
+            });
+            workers[i].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        span.finish();
+
+        SpanData data = reporter.spans().get(0);
+        assertEquals(threads * tagsPerThread, tags(data).size());
+        assertEquals(ReferenceTracer.DEFAULT_MAX_LOGS, data.logCount());
+        assertEquals(threads * tagsPerThread - ReferenceTracer.DEFAULT_MAX_LOGS, data.droppedLogs());
+    }
+
+    @Test
+    public void testWritesRacingFinishAreRecordedOrCounted() throws InterruptedException {
+        final int spans = 2000;
+        final AtomicInteger recorded = new AtomicInteger();
+        final AtomicInteger misplaced = new AtomicInteger();
+        // A single pooled SpanData and span state, reused by every span as soon as the previous one is reported.
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), new Reporter() {
+            @Override
+            public void report(SpanData span) {
+                Attributes tags = span.tags();
+                recorded.addAndGet(tags.size() + tags.dropped());
+                for (int i = 0; i < tags.size(); i++) {
+                    if (!span.operationName().equals(tags.objectValue(i))) {
+                        misplaced.incrementAndGet();
+                    }
+                }
+                span.release();
+            }
+
+            @Override
+            public void close() {
+            }
+        }, Sampler.ALWAYS, 4, 1, 1, null, 1);
+        final AtomicReference<ReferenceSpan> current = new AtomicReference<>();
+        final AtomicInteger writes = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ReferenceSpan span;
+                while ((span = current.get()) != null) {
+                    span.setTag("owner", "span-" + span.context().spanId());
+                    writes.incrementAndGet();
+                }
+                done.incrementAndGet();
+            }
+        });
+        current.set(tracer.buildSpan("span-0").start());
+        writer.start();
+        for (int i = 0; i < spans; i++) {
+            ReferenceSpan span = current.get();
+            span.setOperationName("span-" + span.context().spanId());
+            Thread.yield();
+            span.finish();
+            current.set(i + 1 < spans ? tracer.buildSpan("span-" + (i + 1)).start() : null);
+        }
+        writer.join();
+
+        assertEquals(1, done.get());
+        assertEquals(0, misplaced.get());
+        assertEquals(writes.get(), recorded.get() + tracer.useAfterFinishErrors());
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Cost of recording a typical HTTP client span, with six tags and a log, on a {@link ReferenceTracer} versus a
+ * {@link MockTracer}, on one thread and on four threads sharing the tracer.
+ *
+ * <p>The reference tracer reports to a reporter releasing each span immediately, and the mock tracer is reset after
+ * each span, so that neither accumulates spans.
+ *
+ * <p>
+ * Run with: {@code java -cp <test classpath> org.openjdk.jmh.Main ReferenceTracerBenchmark}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class ReferenceTracerBenchmark {
+    private final ReferenceTracer referenceTracer = new ReferenceTracer(new ThreadLocalScopeManager(), new Reporter() {
+        @Override
+        public void report(SpanData span) {
+            span.release();
+        }
+
+        @Override
+        public void close() {
+        }
+    });
+    private final MockTracer mockTracer = new MockTracer();
+
+    private static Span record(Tracer tracer) {
+        Span span = tracer.buildSpan("GET")
+                .withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_CLIENT)
+                .withTag(Tags.COMPONENT, "benchmark")
+                .start();
+        span.setTag(Tags.HTTP_URL, "http://localhost:8080/")
+                .setTag(Tags.HTTP_METHOD, "GET")
+                .setTag(Tags.PEER_HOSTNAME, "localhost")
+                .setTag(Tags.HTTP_STATUS.getKey(), 200);
+        span.log("response");
+        span.finish();
+        return span;
+    }
+
+    @Benchmark
+    public Span referenceTracer() {
+        return record(referenceTracer);
+    }
+
+    @Benchmark
+    public Span mockTracer() {
+        Span span = record(mockTracer);
+        mockTracer.reset();
+        return span;
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Span referenceTracerContended() {
+        return record(referenceTracer);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public Span mockTracerContended() {
+        Span span = record(mockTracer);
+        mockTracer.reset();
+        return span;
+    }
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.opentracing.References;
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.noop.NoopSpan;
+import io.opentracing.propagation.BinaryAdapters;
+import io.opentracing.propagation.ChainedBinaryInjectAdapter;
+import io.opentracing.propagation.CharSequenceMapExtractAdapter;
+import io.opentracing.propagation.CharSequenceMapInjectAdapter;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.HttpHeadersAdapter;
+import io.opentracing.propagation.TextMapAdapter;
+import io.opentracing.propagation.TextMapExtract;
+import io.opentracing.propagation.TextMapExtractAdapter;
+import io.opentracing.propagation.TextMapInjectAdapter;
+import io.opentracing.propagation.TextMapLookup;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class ReferenceTracerTest {
+    private final InMemoryReporter reporter = new InMemoryReporter();
+    private final ReferenceTracer tracer = new ReferenceTracer(reporter);
+
+    static Map<String, Object> tags(SpanData span) {
+        Map<String, Object> tags = new HashMap<>();
+        span.tags().copyTo(tags);
+        return tags;
+    }
+
+    static Map<String, Object> logFields(SpanData span, int log) {
+        Map<String, Object> fields = new HashMap<>();
+        span.logFields().copyTo(span.logFieldStart(log), span.logFieldCount(log), fields);
+        return fields;
+    }
+
+    @Test
+    public void testRootSpan() {
+        {
+            Span span = tracer.buildSpan("tester").withStartTimestamp(1000).start();
+            span.setTag("string", "foo");
+            span.setTag("int", 7);
+            span.log("foo");
+            Map<String, Object> fields = new HashMap<>();
+            fields.put("f1", 4);
+            fields.put("f2", "two");
+            span.log(1002, fields);
+            span.log(1003, "event name");
+            span.finish(2000);
+        }
+        List<SpanData> finishedSpans = reporter.spans();
+
+        assertEquals(1, finishedSpans.size());
+        SpanData finishedSpan = finishedSpans.get(0);
+        assertEquals("tester", finishedSpan.operationName());
+        assertEquals(0, finishedSpan.parentSpanId());
+        assertNotEquals(0, finishedSpan.context().traceId());
+        assertNotEquals(0, finishedSpan.context().spanId());
+        assertEquals(1000, finishedSpan.startMicros());
+        assertEquals(2000, finishedSpan.finishMicros());
+        Map<String, Object> tags = tags(finishedSpan);
+        assertEquals(2, tags.size());
+        assertEquals(7, tags.get("int"));
+        assertEquals("foo", tags.get("string"));
+        assertEquals(3, finishedSpan.logCount());
+        assertEquals("foo", logFields(finishedSpan, 0).get("event"));
+        assertEquals(1002, finishedSpan.logTimestampMicros(1));
+        assertEquals(4, logFields(finishedSpan, 1).get("f1"));
+        assertEquals("two", logFields(finishedSpan, 1).get("f2"));
+        assertEquals(1003, finishedSpan.logTimestampMicros(2));
+        assertEquals("event name", logFields(finishedSpan, 2).get("event"));
+    }
+
+    @Test
+    public void testChildSpan() {
+        {
+            Span parent = tracer.buildSpan("parent").withStartTimestamp(1000).start();
+            Span child = tracer.buildSpan("child").withStartTimestamp(1100).asChildOf(parent).start();
+            child.finish(1900);
+            parent.finish(2000);
+        }
+        List<SpanData> finishedSpans = reporter.spans();
+
+        assertEquals(2, finishedSpans.size());
+        SpanData child = finishedSpans.get(0);
+        SpanData parent = finishedSpans.get(1);
+        assertEquals("child", child.operationName());
+        assertEquals("parent", parent.operationName());
+        assertEquals(parent.context().spanId(), child.parentSpanId());
+        assertEquals(parent.context().traceId(), child.context().traceId());
+        assertEquals(1, child.referenceCount());
+        assertEquals(References.CHILD_OF, child.referenceType(0));
+    }
+
+    @Test
+    public void testFollowFromReference() {
+        ReferenceSpan precedent = tracer.buildSpan("precedent").start();
+        Span followingSpan = tracer.buildSpan("follows")
+                .addReference(References.FOLLOWS_FROM, precedent.context())
+                .start();
+        followingSpan.finish();
+        precedent.finish();
+
+        SpanData following = reporter.spans().get(0);
+        assertEquals(1, following.referenceCount());
+        assertEquals(References.FOLLOWS_FROM, following.referenceType(0));
+        assertEquals(precedent.context().spanId(), following.parentSpanId());
+    }
+
+    @Test
+    public void testChildOfPreferredOverFollowsFrom() {
+        Span precedent = tracer.buildSpan("precedent").start();
+        Span parent = tracer.buildSpan("parent").start();
+        parent.setBaggageItem("parent", "p");
+        precedent.setBaggageItem("precedent", "q");
+        Span span = tracer.buildSpan("span")
+                .addReference(References.FOLLOWS_FROM, precedent.context())
+                .asChildOf(parent)
+                .start();
+
+        assertEquals(parent.context().toTraceId(), span.context().toTraceId());
+        assertEquals("p", span.getBaggageItem("parent"));
+        assertEquals("q", span.getBaggageItem("precedent"));
+        span.finish();
+        assertEquals(((ReferenceSpanContext) parent.context()).spanId(), reporter.spans().get(0).parentSpanId());
+    }
+
+    @Test
+    public void testForeignContextIgnored() {
+        Span span = tracer.buildSpan("foo").asChildOf(NoopSpan.INSTANCE.context()).start();
+        span.finish();
+
+        assertEquals(0, reporter.spans().get(0).parentSpanId());
+        assertEquals(0, reporter.spans().get(0).referenceCount());
+    }
+
+    @Test
+    public void testStartTimestamp() throws InterruptedException {
+        long startMicros;
+        {
+            ReferenceTracer.SpanBuilder fooSpan = tracer.buildSpan("foo");
+            Thread.sleep(2);
+            startMicros = System.currentTimeMillis() * 1000;
+            fooSpan.start().finish();
+        }
+        SpanData span = reporter.spans().get(0);
+        // The tracer clock is anchored to the wall clock once, so allow a little skew.
+        assertTrue(startMicros - 1000 <= span.startMicros());
+        assertTrue(span.startMicros() <= span.finishMicros());
+        assertTrue(System.currentTimeMillis() * 1000 + 1000 >= span.finishMicros());
+    }
+
+    @Test
+    public void testActiveSpan() {
+        assertNull(tracer.activeSpan());
+
+        Span span = tracer.buildSpan("foo").start();
+        try (Scope scope = tracer.activateSpan(span)) {
+            assertSame(span, tracer.activeSpan());
+            tracer.buildSpan("child").start().finish();
+            tracer.buildSpan("ignoring").ignoreActiveSpan().start().finish();
+        }
+        assertNull(tracer.activeSpan());
+
+        List<SpanData> finishedSpans = reporter.spans();
+        assertEquals(2, finishedSpans.size());
+        assertEquals(((ReferenceSpanContext) span.context()).spanId(), finishedSpans.get(0).parentSpanId());
+        assertEquals(0, finishedSpans.get(1).parentSpanId());
+    }
+
+    @Test
+    public void testTextMapPropagatorTextMap() {
+        HashMap<String, String> injectMap = new HashMap<>();
+        injectMap.put("foobag", "donttouch");
+        {
+            Span parentSpan = tracer.buildSpan("foo").start();
+            parentSpan.setBaggageItem("foobag", "fooitem");
+            parentSpan.finish();
+
+            tracer.inject(parentSpan.context(), Format.Builtin.TEXT_MAP_INJECT, new TextMapInjectAdapter(injectMap));
+
+            SpanContext extract = tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, new TextMapExtractAdapter(injectMap));
+
+            Span childSpan = tracer.buildSpan("bar").asChildOf(extract).start();
+            childSpan.setBaggageItem("barbag", "baritem");
+            childSpan.finish();
+        }
+        List<SpanData> finishedSpans = reporter.spans();
+
+        assertEquals(2, finishedSpans.size());
+        assertEquals(finishedSpans.get(0).context().traceId(), finishedSpans.get(1).context().traceId());
+        assertEquals(finishedSpans.get(0).context().spanId(), finishedSpans.get(1).parentSpanId());
+        assertEquals("fooitem", finishedSpans.get(0).context().getBaggageItem("foobag"));
+        assertNull(finishedSpans.get(0).context().getBaggageItem("barbag"));
+        assertEquals("fooitem", finishedSpans.get(1).context().getBaggageItem("foobag"));
+        assertEquals("baritem", finishedSpans.get(1).context().getBaggageItem("barbag"));
+        assertEquals("donttouch", injectMap.get("foobag"));
+    }
+
+    @Test
+    public void testTextMapPropagatorCaseInsensitiveHttpHeaders() {
+        Span parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("bag", "item");
+
+        Map<String, String> headers = new HashMap<>();
+        tracer.inject(parentSpan.context(), Format.Builtin.HTTP_HEADERS, new TextMapAdapter(headers));
+        Map<String, String> upperCaseHeaders = new HashMap<>();
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            upperCaseHeaders.put(entry.getKey().replace("ot-", "OT-").replace("traceid", "TraceId"),
+                    entry.getValue());
+        }
+
+        // Both the keyed lookup and the iteration over carriers without lookup.
+        ReferenceSpanContext lookedUp = tracer.extract(Format.Builtin.HTTP_HEADERS,
+                new HttpHeadersAdapter(upperCaseHeaders));
+        final Map<String, String> iterable = upperCaseHeaders;
+        ReferenceSpanContext iterated = tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, new TextMapExtract() {
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                return iterable.entrySet().iterator();
+            }
+        });
+
+        for (ReferenceSpanContext extract : new ReferenceSpanContext[] {lookedUp, iterated}) {
+            assertEquals(parentSpan.context().toTraceId(), extract.toTraceId());
+            assertEquals(parentSpan.context().toSpanId(), extract.toSpanId());
+            assertTrue(extract.isSampled());
+            assertEquals("item", extract.getBaggageItem("bag"));
+        }
+    }
+
+    @Test
+    public void testTextMapPropagatorLookupWithoutContext() {
+        TextMapLookup carrier = new TextMapLookup() {
+            @Override
+            public String get(String key) {
+                return null;
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                throw new AssertionError("Keys should be looked up, not iterated over");
+            }
+        };
+
+        assertNull(tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, carrier));
+        assertNull(tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, new TextMapExtractAdapter(
+                new HashMap<String, String>())));
+    }
+
+    @Test
+    public void testTextMapPropagatorLookupBaggage() {
+        Span parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("bag", "item").setBaggageItem("other", "value");
+        final Map<String, String> headers = new HashMap<>();
+        tracer.inject(parentSpan.context(), Format.Builtin.TEXT_MAP_INJECT, new TextMapAdapter(headers));
+        TextMapLookup carrier = new TextMapLookup() {
+            @Override
+            public String get(String key) {
+                return headers.get(key);
+            }
+
+            @Override
+            public Iterator<Map.Entry<String, String>> iterator() {
+                throw new AssertionError("Keys should be looked up, not iterated over");
+            }
+        };
+
+        ReferenceSpanContext extract = tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, carrier);
+        assertEquals("item", extract.getBaggageItem("bag"));
+        assertEquals("value", extract.getBaggageItem("other"));
+
+        // Keys that cannot be listed make the extraction iterate over the carrier.
+        parentSpan.setBaggageItem("a,b", "c");
+        headers.clear();
+        tracer.inject(parentSpan.context(), Format.Builtin.TEXT_MAP_INJECT, new TextMapAdapter(headers));
+        extract = tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, new TextMapExtractAdapter(headers));
+        assertEquals("item", extract.getBaggageItem("bag"));
+        assertEquals("c", extract.getBaggageItem("a,b"));
+    }
+
+    @Test
+    public void testTextMapLookupBaggageWithoutKeyList() {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("ot-tracer-traceid", "1");
+        headers.put("ot-tracer-spanid", "2");
+        headers.put("ot-baggage-bag", "item");
+        ReferenceSpanContext extract = tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, new TextMapAdapter(headers));
+        assertEquals(2, extract.spanId());
+        assertEquals("item", extract.getBaggageItem("bag"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTextMapPropagatorMalformedId() {
+        Map<String, String> map = new HashMap<>();
+        map.put("ot-tracer-traceid", "not hex");
+        map.put("ot-tracer-spanid", "1");
+        tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, new TextMapExtractAdapter(map));
+    }
+
+    @Test
+    public void testTextMapPropagatorCharSequenceMap() {
+        Span parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("bag", "item");
+
+        Map<CharSequence, CharSequence> injectMap = new HashMap<>();
+        tracer.inject(parentSpan.context(), Format.Builtin.CHAR_SEQUENCE_MAP_INJECT,
+                new CharSequenceMapInjectAdapter(injectMap));
+
+        Map<StringBuilder, StringBuilder> headers = new HashMap<>();
+        for (Map.Entry<CharSequence, CharSequence> entry : injectMap.entrySet()) {
+            headers.put(new StringBuilder(entry.getKey()), new StringBuilder(entry.getValue()));
+        }
+        headers.put(new StringBuilder("unrelated"), new StringBuilder("header"));
+        ReferenceSpanContext extract = tracer.extract(Format.Builtin.CHAR_SEQUENCE_MAP_EXTRACT,
+                new CharSequenceMapExtractAdapter(headers));
+
+        assertEquals(parentSpan.context().toTraceId(), extract.toTraceId());
+        assertEquals(parentSpan.context().toSpanId(), extract.toSpanId());
+        assertEquals("item", extract.getBaggageItem("bag"));
+    }
+
+    @Test
+    public void testBinaryPropagator() {
+        Span parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("foobag", "fooitem");
+
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        tracer.inject(parentSpan.context(), Format.Builtin.BINARY_INJECT, BinaryAdapters.injectionCarrier(buffer));
+        buffer.rewind();
+        ReferenceSpanContext extract = tracer.extract(Format.Builtin.BINARY_EXTRACT,
+                BinaryAdapters.extractionCarrier(buffer));
+
+        assertEquals(parentSpan.context().toTraceId(), extract.toTraceId());
+        assertEquals(parentSpan.context().toSpanId(), extract.toSpanId());
+        assertTrue(extract.isSampled());
+        assertEquals("fooitem", extract.getBaggageItem("foobag"));
+    }
+
+    @Test
+    public void testBinaryPropagatorChainedInject() {
+        Span parentSpan = tracer.buildSpan("foo").start();
+        parentSpan.setBaggageItem("foobag", "fooitem");
+
+        ChainedBinaryInjectAdapter binary = new ChainedBinaryInjectAdapter(24, false);
+        tracer.inject(parentSpan.context(), Format.Builtin.BINARY_INJECT, binary);
+        assertTrue(binary.buffers().length > 1);
+
+        ByteBuffer buffer = ByteBuffer.allocate(binary.length());
+        for (ByteBuffer chunk : binary.buffers()) {
+            buffer.put(chunk);
+        }
+        buffer.flip();
+        ReferenceSpanContext extract = tracer.extract(Format.Builtin.BINARY_EXTRACT,
+                BinaryAdapters.extractionCarrier(buffer));
+
+        assertEquals(parentSpan.context().toTraceId(), extract.toTraceId());
+        assertEquals(parentSpan.context().toSpanId(), extract.toSpanId());
+        assertEquals("fooitem", extract.getBaggageItem("foobag"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBinaryPropagatorExtractError() {
+        tracer.extract(Format.Builtin.BINARY_EXTRACT, BinaryAdapters.extractionCarrier(ByteBuffer.allocate(4)));
+    }
+
+    @Test
+    public void testUnsampledParent() {
+        Map<String, String> map = new HashMap<>();
+        map.put("ot-tracer-traceid", "abc");
+        map.put("ot-tracer-spanid", "def");
+        map.put("ot-tracer-sampled", "0");
+        ReferenceSpanContext parent = tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, new TextMapExtractAdapter(map));
+        assertFalse(parent.isSampled());
+        assertEquals(0xabc, parent.traceId());
+
+        Span span = tracer.buildSpan("foo").asChildOf(parent).withTag("tag", "value").start();
+        assertFalse(span.isRecording());
+        assertFalse(span.context().isSampled());
+        assertEquals("0000000000000abc", span.context().toTraceId());
+        span.finish();
+
+        assertTrue(reporter.spans().isEmpty());
+
+        // Unsampled contexts propagate as such.
+        Map<String, String> injectMap = new HashMap<>();
+        tracer.inject(span.context(), Format.Builtin.TEXT_MAP_INJECT, new TextMapInjectAdapter(injectMap));
+        assertEquals("0", injectMap.get("ot-tracer-sampled"));
+    }
+
+    @Test
+    public void testClose() {
+        final boolean[] closed = new boolean[1];
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), new Reporter() {
+            @Override
+            public void report(SpanData span) {
+                throw new AssertionError("Spans finishing after close should not be reported");
+            }
+
+            @Override
+            public void close() {
+                assertFalse(closed[0]);
+                closed[0] = true;
+            }
+        });
+        Span span = tracer.buildSpan("foo").start();
+        tracer.close();
+        tracer.close();
+        span.finish();
+
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    public void testSpanDataIsReused() {
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 4, 4, 16);
+        tracer.buildSpan("first").withTag("tag", "value").start().finish();
+        SpanData first = reporter.spans().get(0);
+        reporter.clear();
+        assertEquals(1, tracer.pool().available());
+
+        tracer.buildSpan("second").start().finish();
+        SpanData second = reporter.spans().get(0);
+        assertSame(first, second);
+        assertEquals("second", second.operationName());
+        assertEquals(0, second.tags().size());
+        assertEquals(0, tracer.pool().available());
+    }
+
+    @Test
+    public void testSampler() {
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.NEVER);
+        ReferenceSpan root = tracer.buildSpan("root").withTag("tag", "value").start();
+        assertFalse(root.isRecording());
+        assertFalse(root.context().isSampled());
+        ReferenceSpan child = tracer.buildSpan("child").asChildOf(root).start();
+        assertFalse(child.isRecording());
+
+        // A sampling priority overrides the decision.
+        ReferenceSpan prioritized = tracer.buildSpan("prioritized")
+                .withTag("tag", "value")
+                .withTag(Tags.SAMPLING_PRIORITY, 1)
+                .start();
+        assertTrue(prioritized.isRecording());
+        child.finish();
+        root.finish();
+        prioritized.finish();
+
+        assertEquals(1, reporter.spans().size());
+        assertEquals("prioritized", reporter.spans().get(0).operationName());
+        assertEquals("value", tags(reporter.spans().get(0)).get("tag"));
+
+        ReferenceSpan dropped = this.tracer.buildSpan("dropped")
+                .withTag(Tags.SAMPLING_PRIORITY.getKey(), 0)
+                .start();
+        assertFalse(dropped.isRecording());
+    }
+
+    @Test
+    public void testUnsampledChildAcquiresNoSpanData() {
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.NEVER);
+        ReferenceSpan root = tracer.buildSpan("root").start();
+        ReferenceSpan other = tracer.buildSpan("other").start();
+        SpanDataPool pool = tracer.pool();
+        pool.release(pool.acquire());
+        assertEquals(1, pool.available());
+
+        ReferenceTracer.SpanBuilder builder = tracer.buildSpan("child")
+                .asChildOf(root)
+                .addReference(References.FOLLOWS_FROM, other.context())
+                .withTag("tag", "value");
+        assertEquals(1, pool.available());
+        ReferenceSpan child = builder.start();
+        assertFalse(child.isRecording());
+        assertEquals(1, pool.available());
+
+        // Nor does a tagged root span before the sampler has decided against it.
+        ReferenceTracer.SpanBuilder rootBuilder = tracer.buildSpan("root").withTag("tag", "value");
+        assertEquals(1, pool.available());
+        assertFalse(rootBuilder.start().isRecording());
+        assertEquals(1, pool.available());
+    }
+
+    @Test
+    public void testInterleavedBuildersKeepTheirTags() {
+        ReferenceTracer.SpanBuilder first = tracer.buildSpan("first").withTag("first", 1);
+        ReferenceTracer.SpanBuilder second = tracer.buildSpan("second").withTag("second", 2);
+        first.withTag("first", "again").start().finish();
+        second.start().finish();
+        tracer.buildSpan("third").withTag("third", true).start().finish();
+
+        assertEquals(3, reporter.spans().size());
+        assertEquals(Collections.singletonMap("first", "again"), tags(reporter.spans().get(0)));
+        assertEquals(2L, ((Number) tags(reporter.spans().get(1)).get("second")).longValue());
+        assertEquals(1, tags(reporter.spans().get(1)).size());
+        assertEquals(Collections.singletonMap("third", true), tags(reporter.spans().get(2)));
+    }
+
+    @Test
+    public void testSamplingPriorityKeepsEarlierTags() {
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.NEVER);
+        ReferenceSpan root = tracer.buildSpan("root").start();
+        ReferenceSpan child = tracer.buildSpan("child")
+                .asChildOf(root)
+                .withTag("before", "value")
+                .withTag("replaced", 1)
+                .withTag(Tags.SAMPLING_PRIORITY, 1)
+                .withTag("replaced", 2)
+                .start();
+        child.finish();
+        root.finish();
+
+        assertEquals(1, reporter.spans().size());
+        Map<String, Object> tags = tags(reporter.spans().get(0));
+        assertEquals("value", tags.get("before"));
+        assertEquals(2L, ((Number) tags.get("replaced")).longValue());
+        assertEquals(1, ((Number) tags.get(Tags.SAMPLING_PRIORITY.getKey())).intValue());
+    }
+
+    @Test
+    public void testSamplerIsConsultedOncePerTrace() {
+        final List<String> operations = new ArrayList<>();
+        ReferenceTracer tracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, new Sampler() {
+            @Override
+            public boolean sample(String operationName, long traceId) {
+                operations.add(operationName);
+                return true;
+            }
+        });
+        ReferenceSpan root = tracer.buildSpan("root").start();
+        tracer.buildSpan("child").asChildOf(root).start().finish();
+        root.finish();
+
+        assertEquals(Collections.singletonList("root"), operations);
+    }
+
+    @Test
+    public void testDeferredSampling() {
+        Map<String, String> map = new HashMap<>();
+        map.put("ot-tracer-traceid", "abc");
+        map.put("ot-tracer-spanid", "def");
+        ReferenceSpanContext parent = tracer.extract(Format.Builtin.TEXT_MAP_EXTRACT, new TextMapExtractAdapter(map));
+        assertFalse(parent.isSampled());
+
+        // The context is propagated further without a decision.
+        Map<String, String> injectMap = new HashMap<>();
+        tracer.inject(parent, Format.Builtin.TEXT_MAP_INJECT, new TextMapInjectAdapter(injectMap));
+        assertFalse(injectMap.containsKey("ot-tracer-sampled"));
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        tracer.inject(parent, Format.Builtin.BINARY_INJECT, BinaryAdapters.injectionCarrier(buffer));
+        buffer.rewind();
+        ReferenceSpanContext binary = tracer.extract(Format.Builtin.BINARY_EXTRACT,
+                BinaryAdapters.extractionCarrier(buffer));
+        assertFalse(binary.isSampled());
+
+        // Its children are sampled by the sampler.
+        ReferenceSpan sampled = tracer.buildSpan("sampled").asChildOf(parent).withTag("tag", "value").start();
+        assertTrue(sampled.isRecording());
+        assertTrue(sampled.context().isSampled());
+        ReferenceTracer neverTracer = new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.NEVER);
+        assertFalse(neverTracer.buildSpan("unsampled").asChildOf(binary).start().isRecording());
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class RingBufferTest {
+    @Test
+    public void testFifo() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        assertTrue(buffer.isEmpty());
+        assertNull(buffer.poll());
+
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(buffer.offer(i));
+            }
+            assertFalse(buffer.offer(4));
+            assertEquals(4, buffer.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Integer.valueOf(i), buffer.poll());
+            }
+            assertNull(buffer.poll());
+        }
+    }
+
+    @Test
+    public void testCapacityIsRoundedUp() {
+        assertEquals(1, new RingBuffer<Object>(1).capacity());
+        assertEquals(8, new RingBuffer<Object>(5).capacity());
+        assertEquals(8, new RingBuffer<Object>(8).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidCapacity() {
+        new RingBuffer<Object>(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullElement() {
+        new RingBuffer<Object>(1).offer(null);
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        final int producers = 4;
+        final int perProducer = 10000;
+        final RingBuffer<Integer> buffer = new RingBuffer<>(64);
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producer = p;
+            threads[p] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        while (!buffer.offer(producer * perProducer + i)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            });
+            threads[p].start();
+        }
+        start.countDown();
+
+        Set<Integer> received = new HashSet<>();
+        int[] lastPerProducer = {-1, -1, -1, -1};
+        while (received.size() < producers * perProducer) {
+            Integer element = buffer.poll();
+            if (element != null) {
+                assertTrue(received.add(element));
+                // Elements of one producer come out in order.
+                int producer = element / perProducer;
+                assertTrue(element % perProducer > lastPerProducer[producer]);
+                lastPerProducer[producer] = element % perProducer;
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(buffer.isEmpty());
+    }
+}
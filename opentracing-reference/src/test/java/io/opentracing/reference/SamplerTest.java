@@ -0,0 +1,163 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class SamplerTest {
+    private final AtomicLong nanos = new AtomicLong(-5);
+
+    private void advance(long millis) {
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void testProbabilisticSampler() {
+        Random random = new Random(42);
+        ProbabilisticSampler never = new ProbabilisticSampler(0);
+        ProbabilisticSampler always = new ProbabilisticSampler(1);
+        ProbabilisticSampler half = new ProbabilisticSampler(0.5);
+        int sampled = 0;
+        for (int i = 0; i < 10000; i++) {
+            long traceId = random.nextLong();
+            assertFalse(never.sample("op", traceId));
+            assertTrue(always.sample("op", traceId));
+            if (half.sample("op", traceId)) {
+                sampled++;
+                // The decision only depends on the trace ID.
+                assertTrue(half.sample("other", traceId));
+            }
+        }
+        assertTrue(sampled > 4500 && sampled < 5500);
+        assertFalse(never.sample("op", Long.MIN_VALUE));
+        assertTrue(always.sample("op", Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidProbability() {
+        new ProbabilisticSampler(1.5);
+    }
+
+    @Test
+    public void testRateLimitingSampler() {
+        RateLimitingSampler sampler = new RateLimitingSampler(2, nanos::get);
+        // A full bucket allows a burst of one second worth of traces.
+        assertTrue(sampler.sample("op", 1));
+        assertTrue(sampler.sample("op", 1));
+        assertFalse(sampler.sample("op", 1));
+
+        advance(500);
+        assertTrue(sampler.sample("op", 1));
+        assertFalse(sampler.sample("op", 1));
+
+        // The bucket does not hold more than a burst, however long it stays unused.
+        advance(10000);
+        assertTrue(sampler.sample("op", 1));
+        assertTrue(sampler.sample("op", 1));
+        assertFalse(sampler.sample("op", 1));
+    }
+
+    @Test
+    public void testRateLimitingSamplerBelowOnePerSecond() {
+        RateLimitingSampler sampler = new RateLimitingSampler(0.5, nanos::get);
+        assertTrue(sampler.sample("op", 1));
+        advance(1000);
+        assertFalse(sampler.sample("op", 1));
+        advance(1000);
+        assertTrue(sampler.sample("op", 1));
+
+        assertFalse(new RateLimitingSampler(0).sample("op", 1));
+    }
+
+    @Test
+    public void testPerOperationSampler() {
+        PerOperationSampler sampler = new PerOperationSampler(10, 0, 2, Sampler.NEVER,
+                TimeUnit.SECONDS.toNanos(1), nanos::get);
+        Random random = new Random(42);
+
+        // Until the first adaptation, every trace is sampled.
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(sampler.sample("frequent", random.nextLong()));
+        }
+        assertTrue(sampler.sample("rare", random.nextLong()));
+        assertEquals(1, sampler.probability("frequent"), 0);
+
+        advance(1000);
+        sampler.sample("frequent", random.nextLong());
+        sampler.sample("rare", random.nextLong());
+        // 1001 traces in a second for a target of 10 per second.
+        assertEquals(10 / 1001.0, sampler.probability("frequent"), 1e-9);
+        assertEquals(1, sampler.probability("rare"), 0);
+
+        int sampled = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (sampler.sample("frequent", random.nextLong())) {
+                sampled++;
+            }
+        }
+        assertTrue(sampled > 50 && sampled < 150);
+
+        // Operations beyond the maximum are left to the fallback.
+        assertFalse(sampler.sample("third", random.nextLong()));
+        assertEquals(-1, sampler.probability("third"), 0);
+    }
+
+    @Test
+    public void testInvalidPerOperationSampler() {
+        assertInvalid(() -> new PerOperationSampler(0, 1, 10, Sampler.NEVER));
+        assertInvalid(() -> new PerOperationSampler(1, Double.NaN, 10, Sampler.NEVER));
+        assertInvalid(() -> new PerOperationSampler(1, -1, 10, Sampler.NEVER));
+        assertInvalid(() -> new PerOperationSampler(1, 1, -1, Sampler.NEVER));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testPerOperationSamplerWithoutFallback() {
+        new PerOperationSampler(1, 1, 10, null);
+    }
+
+    @Test
+    public void testPerOperationSamplerLowerBound() {
+        PerOperationSampler sampler = new PerOperationSampler(1, 1, 10, Sampler.NEVER,
+                TimeUnit.SECONDS.toNanos(1), nanos::get);
+        for (int i = 0; i < 1000; i++) {
+            sampler.sample("op", i);
+        }
+        advance(1000);
+        sampler.sample("op", 1);
+        assertEquals(0.001, sampler.probability("op"), 1e-4);
+
+        // Trace IDs that the probability rejects are still sampled by the lower bound, once per second.
+        long rejected = Long.MAX_VALUE;
+        assertTrue(sampler.sample("op", rejected));
+        assertFalse(sampler.sample("op", rejected));
+        advance(1000);
+        assertTrue(sampler.sample("op", rejected));
+    }
+
+    private static void assertInvalid(Runnable construction) {
+        try {
+            construction.run();
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
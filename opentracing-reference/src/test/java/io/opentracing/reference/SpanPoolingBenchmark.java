@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import io.opentracing.tag.Tags;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Allocation and cost of recording a span with a child, with and without recycling the state of finished spans, on
+ * four threads.
+ *
+ * <p>Span data are pooled in both modes. Run with the GC profiler to compare the allocation rates, and the time spent
+ * collecting the young generation:
+ *
+ * <p>
+ * Run with: {@code java -cp <test classpath> org.openjdk.jmh.Main SpanPoolingBenchmark -prof gc}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xmn64m"})
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+public class SpanPoolingBenchmark {
+    @Param({"0", "16"})
+    public int spansPerThread;
+
+    private ReferenceTracer tracer;
+
+    @Setup
+    public void setup() {
+        tracer = new ReferenceTracer(new ThreadLocalScopeManager(), new Reporter() {
+            @Override
+            public void report(SpanData span) {
+                span.release();
+            }
+
+            @Override
+            public void close() {
+            }
+        }, Sampler.ALWAYS, ReferenceTracer.DEFAULT_MAX_TAGS, ReferenceTracer.DEFAULT_MAX_LOGS,
+                ReferenceTracer.DEFAULT_POOL_SIZE, null, spansPerThread);
+    }
+
+    @Benchmark
+    public long parentAndChild() {
+        ReferenceSpan parent = tracer.buildSpan("GET")
+                .withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_SERVER)
+                .withTag(Tags.COMPONENT, "benchmark")
+                .start();
+        ReferenceSpan child = tracer.buildSpan("SELECT").asChildOf(parent).start();
+        child.setTag(Tags.DB_TYPE, "sql").setTag(Tags.DB_STATEMENT, "SELECT 1");
+        child.finish();
+        parent.setTag(Tags.HTTP_STATUS.getKey(), 200);
+        parent.log("response");
+        long spanId = parent.context().spanId();
+        parent.finish();
+        return spanId;
+    }
+}
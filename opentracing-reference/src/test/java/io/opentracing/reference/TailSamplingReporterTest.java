@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.reference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapAdapter;
+import io.opentracing.tag.Tags;
+import io.opentracing.util.ThreadLocalScopeManager;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class TailSamplingReporterTest {
+    private final AtomicLong nanos = new AtomicLong();
+    private final InMemoryReporter downstream = new InMemoryReporter();
+
+    private TailSamplingReporter reporter(int maxTraces, int maxSpans, TailSamplingPolicy... policies) {
+        return new TailSamplingReporter(downstream, maxTraces, maxSpans, TimeUnit.SECONDS.toNanos(10), nanos::get,
+                policies);
+    }
+
+    private static ReferenceTracer tracer(TailSamplingReporter reporter) {
+        return new ReferenceTracer(new ThreadLocalScopeManager(), reporter, Sampler.ALWAYS, 8, 4, 0);
+    }
+
+    @Test
+    public void testKeepsWholeTraceWithError() {
+        TailSamplingReporter reporter = reporter(16, 64, TailSamplingPolicy.hasError());
+        ReferenceTracer tracer = tracer(reporter);
+
+        Span root = tracer.buildSpan("root").start();
+        Span child = tracer.buildSpan("child").asChildOf(root).start();
+        child.setTag(Tags.ERROR, true);
+        child.finish();
+        assertEquals(1, reporter.bufferedSpans());
+        assertEquals(0, downstream.spans().size());
+
+        root.finish();
+        List<SpanData> spans = downstream.spans();
+        assertEquals(2, spans.size());
+        assertEquals("child", spans.get(0).operationName());
+        assertEquals("root", spans.get(1).operationName());
+        assertEquals(0, reporter.bufferedSpans());
+        assertEquals(1, reporter.keptTraces());
+
+        // A span finishing after its local root follows the decision.
+        Span late = tracer.buildSpan("late").asChildOf(root).start();
+        late.finish();
+        assertEquals(3, downstream.spans().size());
+    }
+
+    @Test
+    public void testDropsWholeTrace() {
+        TailSamplingReporter reporter = reporter(16, 64, TailSamplingPolicy.hasError(),
+                TailSamplingPolicy.operationNames("checkout"));
+        ReferenceTracer tracer = tracer(reporter);
+
+        Span root = tracer.buildSpan("root").start();
+        Span child = tracer.buildSpan("child").asChildOf(root).start();
+        child.setTag(Tags.ERROR, true);
+        // The last value of the tag wins.
+        child.setTag(Tags.ERROR, false);
+        child.finish();
+        root.finish();
+        tracer.buildSpan("late").asChildOf(root).start().finish();
+
+        assertEquals(0, downstream.spans().size());
+        assertEquals(1, reporter.droppedTraces());
+        assertEquals(0, reporter.bufferedSpans());
+
+        Span checkout = tracer.buildSpan("checkout").start();
+        checkout.finish();
+        assertEquals(1, downstream.spans().size());
+    }
+
+    @Test
+    public void testLatencyPolicy() {
+        TailSamplingReporter reporter = reporter(16, 64, TailSamplingPolicy.latencyAtLeast(100, TimeUnit.MILLISECONDS));
+        ReferenceTracer tracer = tracer(reporter);
+
+        Span fast = tracer.buildSpan("fast").withStartTimestamp(1_000_000).start();
+        fast.finish(1_050_000);
+        assertEquals(0, downstream.spans().size());
+
+        Span slow = tracer.buildSpan("slow").withStartTimestamp(1_000_000).start();
+        tracer.buildSpan("child").asChildOf(slow).withStartTimestamp(1_000_000).start().finish(1_200_000);
+        slow.finish(1_010_000);
+        assertEquals(2, downstream.spans().size());
+    }
+
+    @Test
+    public void testRemoteParentStartsLocalRoot() {
+        TailSamplingReporter reporter = reporter(16, 64, TailSamplingPolicy.operationNames("server"));
+        ReferenceTracer tracer = tracer(reporter);
+
+        Map<String, String> headers = new HashMap<>();
+        Span client = tracer.buildSpan("client").start();
+        tracer.inject(client.context(), Format.Builtin.HTTP_HEADERS, new TextMapAdapter(headers));
+        SpanContext remote = tracer.extract(Format.Builtin.HTTP_HEADERS, new TextMapAdapter(headers));
+
+        Span server = tracer.buildSpan("server").asChildOf(remote).start();
+        server.finish();
+        assertEquals(1, downstream.spans().size());
+        assertTrue(downstream.spans().get(0).isLocalRoot());
+
+        client.finish();
+        assertEquals(2, downstream.spans().size());
+    }
+
+    @Test
+    public void testExpiredTraceIsDecidedOnPartialSpans() {
+        TailSamplingReporter reporter = reporter(16, 64, TailSamplingPolicy.hasError());
+        ReferenceTracer tracer = tracer(reporter);
+
+        Span root = tracer.buildSpan("root").start();
+        tracer.buildSpan("child").asChildOf(root).withTag(Tags.ERROR, true).start().finish();
+        assertEquals(1, reporter.traceCount());
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(11));
+        tracer.buildSpan("other").start().finish();
+        assertEquals(1, reporter.expiredTraces());
+        assertEquals(1, downstream.spans().size());
+        assertEquals("child", downstream.spans().get(0).operationName());
+
+        // The decision was forgotten along with the trace, so the root is decided again, on its own.
+        root.finish();
+        assertEquals(1, downstream.spans().size());
+        assertEquals(2, reporter.droppedTraces());
+        assertEquals(2, reporter.traceCount());
+    }
+
+    @Test
+    public void testEvictsOldestTrace() {
+        TailSamplingReporter reporter = reporter(2, 3, TailSamplingPolicy.operationNames("child"));
+        ReferenceTracer tracer = tracer(reporter);
+
+        Span first = tracer.buildSpan("first").start();
+        tracer.buildSpan("child").asChildOf(first).start().finish();
+        tracer.buildSpan("child").asChildOf(first).start().finish();
+        Span second = tracer.buildSpan("second").start();
+        tracer.buildSpan("grandchild").asChildOf(second).start().finish();
+        assertEquals(3, reporter.bufferedSpans());
+
+        // No span slot is left, so the oldest trace is decided early.
+        tracer.buildSpan("grandchild").asChildOf(second).start().finish();
+        assertEquals(1, reporter.expiredTraces());
+        assertEquals(2, downstream.spans().size());
+        assertEquals(2, reporter.bufferedSpans());
+
+        // No trace slot is left either.
+        tracer.buildSpan("third").start().finish();
+        assertEquals(2, reporter.traceCount());
+        Span fourth = tracer.buildSpan("fourth").start();
+        tracer.buildSpan("grandchild").asChildOf(fourth).start().finish();
+        assertEquals(2, reporter.traceCount());
+        assertEquals(2, reporter.expiredTraces());
+        assertEquals(2, reporter.droppedTraces());
+        assertEquals(1, reporter.bufferedSpans());
+        assertEquals(2, downstream.spans().size());
+    }
+
+    @Test
+    public void testManyTraces() {
+        TailSamplingReporter reporter = reporter(1000, 4000, TailSamplingPolicy.operationNames("keep"));
+        ReferenceTracer tracer = tracer(reporter);
+
+        Span[] roots = new Span[2000];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = tracer.buildSpan(i % 2 == 0 ? "keep" : "drop").start();
+            tracer.buildSpan("child").asChildOf(roots[i]).start().finish();
+            if (i >= 500) {
+                roots[i - 500].finish();
+            }
+        }
+        for (int i = roots.length - 500; i < roots.length; i++) {
+            roots[i].finish();
+        }
+        assertEquals(1000, reporter.traceCount());
+        assertEquals(0, reporter.bufferedSpans());
+        assertEquals(1000, reporter.keptTraces());
+        assertEquals(1000, reporter.droppedTraces());
+        assertEquals(2000, downstream.spans().size());
+    }
+
+    @Test
+    public void testCloseDecidesBufferedTraces() {
+        TailSamplingReporter reporter = reporter(16, 64, TailSamplingPolicy.operationNames("child"));
+        ReferenceTracer tracer = tracer(reporter);
+
+        Span root = tracer.buildSpan("root").start();
+        tracer.buildSpan("child").asChildOf(root).start().finish();
+        tracer.close();
+        assertEquals(0, reporter.traceCount());
+        assertEquals(1, downstream.spans().size());
+    }
+
+    @Test
+    public void testBlockingDownstreamDoesNotHoldUpOtherThreads() throws Exception {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        Reporter blocking = new Reporter() {
+            @Override
+            public void report(SpanData span) {
+                if ("blocked".equals(span.operationName())) {
+                    blocked.countDown();
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                downstream.report(span);
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        TailSamplingReporter reporter = new TailSamplingReporter(blocking, 16, 64, TimeUnit.SECONDS.toNanos(10),
+                nanos::get, TailSamplingPolicy.operationNames("blocked", "other"));
+        final ReferenceTracer tracer = tracer(reporter);
+
+        Thread thread = new Thread(() -> tracer.buildSpan("blocked").start().finish());
+        thread.start();
+        assertTrue(blocked.await(10, TimeUnit.SECONDS));
+        // The reporter's lock is free while the downstream reporter blocks the other thread.
+        tracer.buildSpan("other").start().finish();
+        assertEquals(1, downstream.spans().size());
+        assertEquals(2, reporter.keptTraces());
+
+        unblock.countDown();
+        thread.join(10_000);
+        assertEquals(2, downstream.spans().size());
+    }
+}
@@ -28,8 +28,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
-import io.opentracing.testbed.AutoFinishScope;
-import io.opentracing.testbed.AutoFinishScopeManager;
+import io.opentracing.util.AutoFinishScope;
+import io.opentracing.util.AutoFinishScopeManager;
 
 import static io.opentracing.testbed.TestUtils.finishedSpansSize;
 import static org.awaitility.Awaitility.await;
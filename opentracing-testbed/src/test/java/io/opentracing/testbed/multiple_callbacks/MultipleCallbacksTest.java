@@ -18,7 +18,7 @@ import io.opentracing.Span;
 import io.opentracing.mock.MockSpan;
 import io.opentracing.mock.MockTracer;
 import io.opentracing.mock.MockTracer.Propagator;
-import io.opentracing.testbed.AutoFinishScopeManager;
+import io.opentracing.util.AutoFinishScopeManager;
 import org.junit.Test;
 
 import java.util.List;
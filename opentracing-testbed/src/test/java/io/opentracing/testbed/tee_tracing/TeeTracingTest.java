@@ -0,0 +1,185 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.testbed.tee_tracing;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.mock.MockSpan;
+import io.opentracing.mock.MockTracer;
+import io.opentracing.mock.MockTracer.Propagator;
+import io.opentracing.propagation.Format;
+import io.opentracing.propagation.TextMapAdapter;
+import io.opentracing.tag.Tags;
+import io.opentracing.tag.ValueSupplier;
+import io.opentracing.util.TeeTracer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Test;
+
+public class TeeTracingTest {
+    private final MockTracer primary = new MockTracer(Propagator.TEXT_MAP);
+    private final MockTracer secondary = new MockTracer(Propagator.TEXT_MAP);
+    private TeeTracer tracer;
+
+    @After
+    public void tearDown() {
+        tracer.close();
+    }
+
+    @Test
+    public void testSecondaryRecordsTheSameSpans() throws Exception {
+        tracer = new TeeTracer(primary, secondary);
+        final AtomicInteger lazyCalls = new AtomicInteger();
+        Span parent = tracer.buildSpan("parent").withTag(Tags.SPAN_KIND, Tags.SPAN_KIND_SERVER).start();
+        try (Scope scope = tracer.activateSpan(parent)) {
+            parent.setBaggageItem("tenant", "acme");
+            Span child = tracer.buildSpan("child").start();
+            child.setTag("int", 1)
+                    .setTag("lazy", new ValueSupplier<String>() {
+                        @Override
+                        public String get() {
+                            lazyCalls.incrementAndGet();
+                            return "computed";
+                        }
+                    })
+                    .log("event");
+            child.logBuilder().field("event", "fields").field("count", 2L).emit();
+            child.setOperationName("renamed");
+            child.finish();
+        } finally {
+            parent.setTag(Tags.ERROR, true);
+            parent.finish();
+        }
+        assertTrue(tracer.flush(10, TimeUnit.SECONDS));
+
+        for (MockTracer mockTracer : new MockTracer[] {primary, secondary}) {
+            List<MockSpan> spans = mockTracer.finishedSpans();
+            assertEquals(2, spans.size());
+            MockSpan child = spans.get(0);
+            MockSpan parentSpan = spans.get(1);
+            assertEquals("renamed", child.operationName());
+            assertEquals(parentSpan.context().spanId(), child.parentId());
+            assertEquals(parentSpan.context().traceId(), child.context().traceId());
+            assertEquals("acme", child.getBaggageItem("tenant"));
+            assertEquals(1, child.tags().get("int"));
+            assertEquals("computed", child.tags().get("lazy"));
+            assertEquals(2, child.logEntries().size());
+            assertEquals("event", child.logEntries().get(0).fields().get("event"));
+            assertEquals(2L, child.logEntries().get(1).fields().get("count"));
+            assertTrue(child.finishMicros() >= child.startMicros());
+            assertEquals(Tags.SPAN_KIND_SERVER, parentSpan.tags().get(Tags.SPAN_KIND.getKey()));
+            assertEquals(true, parentSpan.tags().get(Tags.ERROR.getKey()));
+        }
+        // The lazy value is computed once, for both tracers.
+        assertEquals(1, lazyCalls.get());
+        assertEquals(0, tracer.pendingSpans());
+        assertNull(tracer.activeSpan());
+    }
+
+    @Test
+    public void testOnlyThePrimaryContextIsPropagated() throws Exception {
+        tracer = new TeeTracer(primary, secondary);
+        Span client = tracer.buildSpan("client").start();
+        Map<String, String> headers = new HashMap<>();
+        tracer.inject(client.context(), Format.Builtin.HTTP_HEADERS, new TextMapAdapter(headers));
+        client.finish();
+        Map<String, String> primaryHeaders = new HashMap<>();
+        primary.inject(primary.finishedSpans().get(0).context(), Format.Builtin.HTTP_HEADERS,
+                new TextMapAdapter(primaryHeaders));
+        assertEquals(primaryHeaders, headers);
+
+        SpanContext extracted = tracer.extract(Format.Builtin.HTTP_HEADERS, new TextMapAdapter(headers));
+        assertEquals(client.context().toSpanId(), extracted.toSpanId());
+        tracer.buildSpan("server").asChildOf(extracted).start().finish();
+        assertTrue(tracer.flush(10, TimeUnit.SECONDS));
+
+        MockSpan primaryClient = primary.finishedSpans().get(0);
+        MockSpan primaryServer = primary.finishedSpans().get(1);
+        assertEquals(primaryClient.context().spanId(), primaryServer.parentId());
+        // The secondary tracer sees the server span start a new trace.
+        MockSpan secondaryClient = secondary.finishedSpans().get(0);
+        MockSpan secondaryServer = secondary.finishedSpans().get(1);
+        assertEquals(0, secondaryServer.parentId());
+        assertNotEquals(secondaryClient.context().traceId(), secondaryServer.context().traceId());
+    }
+
+    @Test
+    public void testDropsSpansWhenTooManyArePending() throws Exception {
+        tracer = new TeeTracer(1, primary, secondary);
+        Span first = tracer.buildSpan("first").start();
+        Span second = tracer.buildSpan("second").start();
+        assertEquals(1, tracer.pendingSpans());
+        assertEquals(1, tracer.droppedSpans());
+        second.finish();
+        first.finish();
+        assertTrue(tracer.flush(10, TimeUnit.SECONDS));
+
+        assertEquals(2, primary.finishedSpans().size());
+        assertEquals(1, secondary.finishedSpans().size());
+        assertEquals("first", secondary.finishedSpans().get(0).operationName());
+        tracer.buildSpan("third").start().finish();
+        assertTrue(tracer.flush(10, TimeUnit.SECONDS));
+        assertEquals(2, secondary.finishedSpans().size());
+    }
+
+    @Test
+    public void testUnfinishedSpansExpire() throws Exception {
+        tracer = new TeeTracer(1, 50, TimeUnit.MILLISECONDS, primary, secondary);
+        Span abandoned = tracer.buildSpan("abandoned").start();
+        assertEquals(1, tracer.pendingSpans());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (tracer.pendingSpans() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, tracer.pendingSpans());
+        assertEquals(1, tracer.expiredSpans());
+
+        // The expired span released its slot, and its finish is no longer replayed.
+        tracer.buildSpan("next").start().finish();
+        abandoned.finish();
+        assertTrue(tracer.flush(10, TimeUnit.SECONDS));
+        assertEquals(0, tracer.droppedSpans());
+        assertEquals(0, tracer.pendingSpans());
+        assertEquals(2, primary.finishedSpans().size());
+        assertEquals(1, secondary.finishedSpans().size());
+        assertEquals("next", secondary.finishedSpans().get(0).operationName());
+    }
+
+    @Test
+    public void testSecondaryErrorsAreCounted() throws Exception {
+        MockTracer failing = new MockTracer() {
+            @Override
+            public SpanBuilder buildSpan(String operationName) {
+                throw new IllegalStateException("unavailable");
+            }
+        };
+        tracer = new TeeTracer(primary, failing, secondary);
+        tracer.buildSpan("span").start().finish();
+        assertTrue(tracer.flush(10, TimeUnit.SECONDS));
+
+        assertEquals(1, tracer.secondaryErrors());
+        assertEquals(1, primary.finishedSpans().size());
+        assertEquals(1, secondary.finishedSpans().size());
+    }
+}
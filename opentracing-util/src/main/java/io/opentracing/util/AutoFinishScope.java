@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * {@link AutoFinishScope} is a {@link Scope} implementation that uses ref-counting
+ * to automatically finish the wrapped {@link Span} once the last {@link AutoFinishScope}
+ * or {@link Continuation} referencing it has been released.
+ *
+ * <p>
+ * Every {@link AutoFinishScope} holds exactly one reference, released by the first call to {@link #close()};
+ * further calls are ignored. A {@link Continuation} holds one reference as well, which is either handed over to
+ * the {@link AutoFinishScope} returned by {@link Continuation#activate()}, or released by
+ * {@link Continuation#cancel()}. Reference counting is lock-free, so the {@link Span} finishes exactly when the
+ * last reference is released, regardless of the thread releasing it.
+ *
+ * @see AutoFinishScopeManager
+ */
+public class AutoFinishScope implements Scope {
+    private static final AtomicIntegerFieldUpdater<AutoFinishScope> CLOSED =
+            AtomicIntegerFieldUpdater.newUpdater(AutoFinishScope.class, "closed");
+    private static final AtomicIntegerFieldUpdater<Continuation> RELEASED =
+            AtomicIntegerFieldUpdater.newUpdater(Continuation.class, "released");
+
+    final AutoFinishScopeManager manager;
+    final AtomicInteger refCount;
+    private final Span wrapped;
+    private final AutoFinishScope toRestore;
+    private volatile int closed;
+
+    AutoFinishScope(AutoFinishScopeManager manager, AtomicInteger refCount, Span wrapped) {
+        this.manager = manager;
+        this.refCount = refCount;
+        this.wrapped = wrapped;
+        this.toRestore = manager.tlsScope.get();
+        manager.tlsScope.set(this);
+    }
+
+    /**
+     * A {@link Continuation} keeps the {@link Span} of the {@link AutoFinishScope} it was captured from
+     * unfinished until it is either activated (on any thread) or cancelled.
+     *
+     * <p>
+     * A {@link Continuation} can be activated or cancelled only once.
+     */
+    public class Continuation {
+        private final Throwable captureSite;
+        volatile int released;
+
+        Continuation() {
+            retain();
+            this.captureSite = manager.trackContinuations ? new Throwable("Continuation captured here") : null;
+            if (captureSite != null) {
+                manager.pendingContinuations.add(this);
+            }
+        }
+
+        /**
+         * Make the captured {@link Span} active for the current thread, transferring the reference held by this
+         * {@link Continuation} to the returned {@link AutoFinishScope}.
+         *
+         * @return a new {@link AutoFinishScope} which must be closed.
+         * @throws IllegalStateException if this {@link Continuation} was already activated or cancelled.
+         */
+        public AutoFinishScope activate() {
+            release("Continuation already activated or cancelled");
+            return new AutoFinishScope(manager, refCount, wrapped);
+        }
+
+        /**
+         * Release the reference held by this {@link Continuation} without activating it, finishing the
+         * {@link Span} if this was the last reference. Calling this method on an already activated or cancelled
+         * {@link Continuation} has no effect.
+         */
+        public void cancel() {
+            if (RELEASED.compareAndSet(this, 0, 1)) {
+                untrack();
+                AutoFinishScope.this.release();
+            }
+        }
+
+        /**
+         * @return the stack trace of the point where this {@link Continuation} was captured, or null if
+         * continuation tracking is not enabled in the {@link AutoFinishScopeManager}.
+         *
+         * @see AutoFinishScopeManager#AutoFinishScopeManager(boolean)
+         */
+        public Throwable captureSite() {
+            return captureSite;
+        }
+
+        public Span span() {
+            return wrapped;
+        }
+
+        private void release(String message) {
+            if (!RELEASED.compareAndSet(this, 0, 1)) {
+                throw new IllegalStateException(message);
+            }
+            untrack();
+        }
+
+        private void untrack() {
+            if (captureSite != null) {
+                manager.pendingContinuations.remove(this);
+            }
+        }
+    }
+
+    /**
+     * Capture a {@link Continuation} that keeps the wrapped {@link Span} unfinished until it is
+     * activated or cancelled.
+     *
+     * @throws IllegalStateException if the wrapped {@link Span} has already been finished by this scope.
+     */
+    public Continuation capture() {
+        return new Continuation();
+    }
+
+    @Override
+    public void close() {
+        if (!CLOSED.compareAndSet(this, 0, 1)) {
+            // Double close; the reference held by this scope has already been released.
+            return;
+        }
+
+        if (manager.tlsScope.get() == this) {
+            manager.tlsScope.set(toRestore);
+        }
+
+        release();
+    }
+
+    public Span span() {
+        return wrapped;
+    }
+
+    private void retain() {
+        for (;;) {
+            int count = refCount.get();
+            if (count == 0) {
+                throw new IllegalStateException("Cannot capture a Continuation, the Span has already been finished");
+            }
+            if (refCount.compareAndSet(count, count + 1)) {
+                return;
+            }
+        }
+    }
+
+    private void release() {
+        if (refCount.decrementAndGet() == 0) {
+            wrapped.finish();
+        }
+    }
+}
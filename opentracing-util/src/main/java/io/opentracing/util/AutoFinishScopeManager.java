@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A {@link ScopeManager} implementation that uses ref-counting to automatically finish {@link Span}s.
+ *
+ * <p>
+ * The {@link Span} passed to {@link #activate(Span)} is finished once the returned {@link AutoFinishScope}
+ * and every {@link AutoFinishScope.Continuation} captured from it (as well as the scopes those continuations
+ * activate) have been released. This is useful for fan-out requests, where the parent {@link Span} must be
+ * finished after the last asynchronous subtask completes.
+ *
+ * <p>
+ * A {@link AutoFinishScope.Continuation} that is never activated nor cancelled keeps its {@link Span} from
+ * being finished. To diagnose such leaks, continuation tracking can be enabled, which records the capture site
+ * of every pending {@link AutoFinishScope.Continuation}:
+ * <pre><code>
+ *     AutoFinishScopeManager scopeManager = new AutoFinishScopeManager(true);
+ *     ...
+ *     for (AutoFinishScope.Continuation cont : scopeManager.pendingContinuations()) {
+ *         logger.warn("Leaked continuation for " + cont.span(), cont.captureSite());
+ *     }
+ * </code></pre>
+ *
+ * @see AutoFinishScope
+ */
+public class AutoFinishScopeManager implements ScopeManager {
+    final ThreadLocal<AutoFinishScope> tlsScope = new ThreadLocal<AutoFinishScope>();
+    final boolean trackContinuations;
+    final Set<AutoFinishScope.Continuation> pendingContinuations;
+
+    public AutoFinishScopeManager() {
+        this(false);
+    }
+
+    /**
+     * @param trackContinuations whether the capture site of each {@link AutoFinishScope.Continuation} should be
+     *                           recorded until it is activated or cancelled. This has a cost per capture, and is
+     *                           meant for diagnostics.
+     *
+     * @see #pendingContinuations()
+     */
+    public AutoFinishScopeManager(boolean trackContinuations) {
+        this.trackContinuations = trackContinuations;
+        this.pendingContinuations = trackContinuations
+                ? Collections.newSetFromMap(new ConcurrentHashMap<AutoFinishScope.Continuation, Boolean>())
+                : Collections.<AutoFinishScope.Continuation>emptySet();
+    }
+
+    @Override
+    public AutoFinishScope activate(Span span) {
+        return new AutoFinishScope(this, new AtomicInteger(1), span);
+    }
+
+    @Override
+    public Span activeSpan() {
+        AutoFinishScope scope = tlsScope.get();
+        return scope == null ? null : scope.span();
+    }
+
+    public AutoFinishScope active() {
+        return tlsScope.get();
+    }
+
+    /**
+     * Capture a {@link AutoFinishScope.Continuation} from the active {@link AutoFinishScope}.
+     *
+     * @return the new {@link AutoFinishScope.Continuation}, or null if no {@link AutoFinishScope} is active.
+     */
+    public AutoFinishScope.Continuation captureScope() {
+        AutoFinishScope scope = tlsScope.get();
+        return scope == null ? null : scope.capture();
+    }
+
+    /**
+     * @return a snapshot of the {@link AutoFinishScope.Continuation}s that have been captured but neither
+     * activated nor cancelled yet. Always empty if continuation tracking is disabled.
+     *
+     * @see AutoFinishScope.Continuation#captureSite()
+     */
+    public Collection<AutoFinishScope.Continuation> pendingContinuations() {
+        return new ArrayList<AutoFinishScope.Continuation>(pendingContinuations);
+    }
+}
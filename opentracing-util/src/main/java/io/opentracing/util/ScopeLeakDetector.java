@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.Span;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opt-in detector of leaked {@link ThreadLocalScope}s, i.e. scopes that are never closed and keep their
+ * {@link Span}s (and the whole chain of previously active scopes) reachable from a thread-local.
+ *
+ * <p>
+ * Similar to Netty's {@code ResourceLeakDetector}, the allocation site of an activation is recorded for a sampled
+ * fraction of the activations (or for all of them in {@link Mode#PARANOID} mode), so reports can point to
+ * the code that activated the leaked scope. Leaks are reported when:
+ * <ul>
+ * <li>the chain of active scopes of a thread grows beyond a depth threshold, and
+ * <li>scopes are still active when a pooled thread finishes a task; see {@link ThreadLocalScopeManager#checkLeaks()}.
+ * </ul>
+ *
+ * <p>
+ * Usage:
+ * <pre><code>
+ *     ScopeManager scopeManager = new ThreadLocalScopeManager(new ScopeLeakDetector(ScopeLeakDetector.Mode.SAMPLED));
+ * </code></pre>
+ *
+ * <p>
+ * A {@link ThreadLocalScopeManager} created without a detector, or with a {@link Mode#DISABLED} one, does not
+ * perform any leak detection work upon activation.
+ *
+ * @see ThreadLocalScopeManager#ThreadLocalScopeManager(ScopeLeakDetector)
+ */
+public class ScopeLeakDetector {
+    public static final int DEFAULT_SAMPLING_INTERVAL = 128;
+    public static final int DEFAULT_MAX_DEPTH = 64;
+
+    /**
+     * Leak detection modes.
+     */
+    public enum Mode {
+        /** No leak detection. */
+        DISABLED,
+        /** Leak detection with the allocation site recorded for one out of every sampling interval activations. */
+        SAMPLED,
+        /** Leak detection with the allocation site recorded for every activation. High overhead. */
+        PARANOID
+    }
+
+    /**
+     * Receives the leaks found by a {@link ScopeLeakDetector}.
+     */
+    public interface Reporter {
+        /**
+         * @param message a description of the leak
+         * @param span the {@link Span} of the leaked scope
+         * @param allocationSite where the leaked scope was activated, or null if that activation was not sampled
+         */
+        void reportLeak(String message, Span span, Throwable allocationSite);
+    }
+
+    /**
+     * A {@link Reporter} that logs leaks through {@code java.util.logging}.
+     */
+    public static final Reporter LOGGING_REPORTER = new Reporter() {
+        private final Logger logger = Logger.getLogger(ScopeLeakDetector.class.getName());
+
+        @Override
+        public void reportLeak(String message, Span span, Throwable allocationSite) {
+            logger.log(Level.WARNING, message + " (span: " + span + ")", allocationSite);
+        }
+    };
+
+    private final Mode mode;
+    private final int samplingInterval;
+    private final int maxDepth;
+    private final Reporter reporter;
+
+    // Racy on purpose: sampling does not need to be exact, and a shared atomic would contend.
+    private int samplingCounter;
+
+    public ScopeLeakDetector(Mode mode) {
+        this(mode, DEFAULT_SAMPLING_INTERVAL, DEFAULT_MAX_DEPTH, LOGGING_REPORTER);
+    }
+
+    /**
+     * @param mode the leak detection mode
+     * @param samplingInterval in {@link Mode#SAMPLED} mode, record the allocation site of one out of every
+     *                         samplingInterval activations
+     * @param maxDepth the number of scopes that may be active at the same time on a thread before a leak is
+     *                 reported
+     * @param reporter where leaks are reported to
+     */
+    public ScopeLeakDetector(Mode mode, int samplingInterval, int maxDepth, Reporter reporter) {
+        if (mode == null || reporter == null) {
+            throw new NullPointerException();
+        }
+        if (samplingInterval < 1) {
+            throw new IllegalArgumentException("samplingInterval needs to be larger than 0");
+        }
+        if (maxDepth < 1) {
+            throw new IllegalArgumentException("maxDepth needs to be larger than 0");
+        }
+        this.mode = mode;
+        this.samplingInterval = samplingInterval;
+        this.maxDepth = maxDepth;
+        this.reporter = reporter;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    /**
+     * Called upon every activation of a {@link ThreadLocalScope} when leak detection is enabled.
+     *
+     * @return the recorded allocation site, or null if this activation was not sampled
+     */
+    Throwable onActivate(ThreadLocalScope scope) {
+        Throwable allocationSite = sample() ? new Throwable("Scope activated here") : null;
+        if (scope.depth == maxDepth + 1) {
+            // Report only upon crossing the threshold, not for every activation beyond it.
+            reporter.reportLeak("Scope stack of thread " + Thread.currentThread().getName()
+                    + " exceeded a depth of " + maxDepth, scope.span(), oldestAllocationSite(scope, allocationSite));
+        }
+        return allocationSite;
+    }
+
+    /**
+     * Called for every {@link ThreadLocalScope} still active when a thread is checked for leaks.
+     */
+    void onLeak(ThreadLocalScope scope) {
+        reporter.reportLeak("Scope still active on thread " + Thread.currentThread().getName(),
+                scope.span(), scope.allocationSite);
+    }
+
+    private boolean sample() {
+        if (mode == Mode.PARANOID) {
+            return true;
+        }
+        int count = samplingCounter + 1;
+        if (count >= samplingInterval) {
+            samplingCounter = 0;
+            return true;
+        }
+        samplingCounter = count;
+        return false;
+    }
+
+    private static Throwable oldestAllocationSite(ThreadLocalScope scope, Throwable allocationSite) {
+        // The scope being activated is not fully initialized yet, hence its allocation site is passed explicitly.
+        Throwable oldest = allocationSite;
+        for (ThreadLocalScope current = scope.toRestore; current != null; current = current.toRestore) {
+            if (current.allocationSite != null) {
+                oldest = current.allocationSite;
+            }
+        }
+        return oldest;
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.ValueSupplier;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * The calls made on a span builder or a span of a {@link TeeTracer}, recorded on the calling thread to be replayed on
+ * the secondary tracers. Not thread-safe.
+ */
+final class TeeRecording {
+    private static final byte TAG = 0;
+    private static final byte TYPED_TAG = 1;
+    private static final byte TAGS = 2;
+    private static final byte LOG_FIELDS = 3;
+    private static final byte LOG_EVENT = 4;
+    private static final byte OPERATION_NAME = 5;
+    private static final byte REFERENCE = 6;
+
+    private byte[] kinds = new byte[4];
+    private Object[] arguments = new Object[8];
+    private int count;
+
+    private void add(byte kind, Object first, Object second) {
+        if (count == kinds.length) {
+            kinds = Arrays.copyOf(kinds, count * 2);
+            arguments = Arrays.copyOf(arguments, count * 4);
+        }
+        kinds[count] = kind;
+        arguments[2 * count] = first;
+        arguments[2 * count + 1] = second;
+        count++;
+    }
+
+    /**
+     * @param value a String, Boolean, Number or {@link ValueSupplier}
+     */
+    void tag(String key, Object value) {
+        add(TAG, key, value);
+    }
+
+    /**
+     * @param value a value of the tag, or a {@link ValueSupplier} of it, which is replayed under the key of the tag
+     */
+    void tag(Tag<?> tag, Object value) {
+        add(TYPED_TAG, tag, value);
+    }
+
+    void tags(TagSet tags) {
+        add(TAGS, tags, null);
+    }
+
+    void log(long timestampMicros, Map<String, ?> fields) {
+        add(LOG_FIELDS, timestampMicros, fields);
+    }
+
+    void log(long timestampMicros, String event) {
+        add(LOG_EVENT, timestampMicros, event);
+    }
+
+    void operationName(String operationName) {
+        add(OPERATION_NAME, operationName, null);
+    }
+
+    /**
+     * @param span the referenced span of the tee tracer
+     */
+    void reference(String referenceType, TeeSpan span) {
+        add(REFERENCE, referenceType, span);
+    }
+
+    /**
+     * Replays the calls made on a span builder on the builder of the secondary tracer of the given index.
+     */
+    void replay(Tracer.SpanBuilder builder, int secondary) {
+        for (int i = 0; i < count; i++) {
+            Object first = arguments[2 * i];
+            Object second = arguments[2 * i + 1];
+            switch (kinds[i]) {
+                case TAG:
+                    withTag(builder, (String) first, second);
+                    break;
+                case TYPED_TAG:
+                    withTypedTag(builder, (Tag<?>) first, second);
+                    break;
+                case TAGS:
+                    builder.withTags((TagSet) first);
+                    break;
+                case REFERENCE:
+                    Span referenced = ((TeeSpan) second).secondarySpan(secondary);
+                    if (referenced != null) {
+                        builder.addReference((String) first, referenced.context());
+                    }
+                    break;
+                default:
+                    throw new AssertionError(kinds[i]);
+            }
+        }
+    }
+
+    /**
+     * Replays the calls made on a span on a span of a secondary tracer.
+     */
+    @SuppressWarnings("unchecked")
+    void replay(Span span) {
+        for (int i = 0; i < count; i++) {
+            Object first = arguments[2 * i];
+            Object second = arguments[2 * i + 1];
+            switch (kinds[i]) {
+                case TAG:
+                    setTag(span, (String) first, second);
+                    break;
+                case TYPED_TAG:
+                    setTypedTag(span, (Tag<?>) first, second);
+                    break;
+                case TAGS:
+                    span.setTags((TagSet) first);
+                    break;
+                case LOG_FIELDS:
+                    span.log((Long) first, (Map<String, ?>) second);
+                    break;
+                case LOG_EVENT:
+                    span.log((Long) first, (String) second);
+                    break;
+                case OPERATION_NAME:
+                    span.setOperationName((String) first);
+                    break;
+                default:
+                    throw new AssertionError(kinds[i]);
+            }
+        }
+    }
+
+    private static void withTag(Tracer.SpanBuilder builder, String key, Object value) {
+        if (value instanceof String) {
+            builder.withTag(key, (String) value);
+        } else if (value instanceof Boolean) {
+            builder.withTag(key, ((Boolean) value).booleanValue());
+        } else if (value instanceof Integer) {
+            builder.withTag(key, ((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            builder.withTag(key, ((Long) value).longValue());
+        } else if (value instanceof Double) {
+            builder.withTag(key, ((Double) value).doubleValue());
+        } else if (value instanceof Number) {
+            builder.withTag(key, (Number) value);
+        } else if (value instanceof ValueSupplier) {
+            builder.withTag(key, (ValueSupplier<?>) value);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void withTypedTag(Tracer.SpanBuilder builder, Tag tag, Object value) {
+        if (value instanceof ValueSupplier) {
+            builder.withTag(tag.getKey(), (ValueSupplier<?>) value);
+        } else {
+            builder.withTag(tag, value);
+        }
+    }
+
+    private static void setTag(Span span, String key, Object value) {
+        if (value instanceof String) {
+            span.setTag(key, (String) value);
+        } else if (value instanceof Boolean) {
+            span.setTag(key, ((Boolean) value).booleanValue());
+        } else if (value instanceof Integer) {
+            span.setTag(key, ((Integer) value).intValue());
+        } else if (value instanceof Long) {
+            span.setTag(key, ((Long) value).longValue());
+        } else if (value instanceof Double) {
+            span.setTag(key, ((Double) value).doubleValue());
+        } else if (value instanceof Number) {
+            span.setTag(key, (Number) value);
+        } else if (value instanceof ValueSupplier) {
+            span.setTag(key, (ValueSupplier<?>) value);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static void setTypedTag(Span span, Tag tag, Object value) {
+        if (value instanceof ValueSupplier) {
+            span.setTag(tag.getKey(), (ValueSupplier<?>) value);
+        } else {
+            span.setTag(tag, value);
+        }
+    }
+
+    /**
+     * A {@link ValueSupplier} shared by the primary and the secondary spans, so that the value is computed once for
+     * all of them.
+     */
+    static final class SharedValueSupplier<T> implements ValueSupplier<T> {
+        private ValueSupplier<? extends T> supplier;
+        private T value;
+
+        SharedValueSupplier(ValueSupplier<? extends T> supplier) {
+            this.supplier = supplier;
+        }
+
+        @Override
+        public synchronized T get() {
+            if (supplier != null) {
+                value = supplier.get();
+                supplier = null;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,494 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.ValueSupplier;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The {@link Span} of a {@link TeeTracer}: calls are applied to the primary span at once, and recorded to be replayed
+ * on the secondary spans by the replay thread once the span finishes.
+ */
+final class TeeSpan implements Span {
+    private final TeeTracer tracer;
+    private final Span primary;
+    private final boolean shadowed;
+    private volatile TeeSpanContext context;
+
+    // Guarded by this, until the span finishes; the replay thread reads them afterwards.
+    private TeeRecording calls;
+    private boolean finished;
+    private long finishMicros;
+
+    // Only accessed by the replay thread.
+    private final String startOperationName;
+    private final long startMicros;
+    private TeeRecording startCalls;
+    private Span[] secondarySpans;
+    private long startReplayedNanos;
+
+    /**
+     * @param startCalls the calls made on the span builder
+     * @param shadowed whether the span is replayed on the secondary tracers
+     */
+    TeeSpan(TeeTracer tracer, Span primary, String operationName, long startMicros, TeeRecording startCalls,
+            boolean shadowed) {
+        this.tracer = tracer;
+        this.primary = primary;
+        this.shadowed = shadowed;
+        this.context = new TeeSpanContext(primary.context(), this);
+        this.startOperationName = operationName;
+        this.startMicros = startMicros;
+        this.startCalls = startCalls;
+    }
+
+    Span primary() {
+        return primary;
+    }
+
+    /**
+     * Replays the start of the span on the secondary tracers, or the calls made on it and its finish if it was
+     * started already. Only called by the replay thread.
+     *
+     * @return true if the span finished
+     */
+    boolean replay(Tracer[] secondaries) {
+        if (secondarySpans == null) {
+            secondarySpans = new Span[secondaries.length];
+            for (int i = 0; i < secondaries.length; i++) {
+                try {
+                    Tracer.SpanBuilder builder = secondaries[i].buildSpan(startOperationName)
+                            .ignoreActiveSpan()
+                            .withStartTimestamp(startMicros);
+                    startCalls.replay(builder, i);
+                    secondarySpans[i] = builder.start();
+                } catch (RuntimeException e) {
+                    tracer.secondaryError();
+                }
+            }
+            startCalls = null;
+            startReplayedNanos = System.nanoTime();
+            return false;
+        }
+
+        for (Span span : secondarySpans) {
+            if (span == null) {
+                continue;
+            }
+            try {
+                if (calls != null) {
+                    calls.replay(span);
+                }
+                span.finish(finishMicros);
+            } catch (RuntimeException e) {
+                tracer.secondaryError();
+            }
+        }
+        calls = null;
+        return true;
+    }
+
+    /**
+     * Only called by the replay thread, once the start of the span was replayed.
+     *
+     * @return the {@link System#nanoTime()} at which the start of the span was replayed
+     */
+    long startReplayedNanos() {
+        return startReplayedNanos;
+    }
+
+    synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Stops recording the calls made on the span, as if it finished, without replaying its finish: its secondary spans
+     * are left unfinished, as its primary span is.
+     *
+     * @return true if the span had not finished yet
+     */
+    synchronized boolean expire() {
+        if (finished) {
+            return false;
+        }
+        finished = true;
+        calls = null;
+        return true;
+    }
+
+    /**
+     * Only called by the replay thread.
+     */
+    void replayBaggageItem(String key, String value) {
+        for (Span span : secondarySpans) {
+            if (span == null) {
+                continue;
+            }
+            try {
+                span.setBaggageItem(key, value);
+            } catch (RuntimeException e) {
+                tracer.secondaryError();
+            }
+        }
+    }
+
+    /**
+     * Only called by the replay thread.
+     *
+     * @return the span of the secondary tracer of the given index, or null if there is none
+     */
+    Span secondarySpan(int secondary) {
+        return secondarySpans == null ? null : secondarySpans[secondary];
+    }
+
+    /**
+     * @return the recording of the calls, or null if they are no longer recorded; to be called holding the lock
+     */
+    private TeeRecording recording() {
+        if (finished) {
+            return null;
+        }
+        if (calls == null) {
+            calls = new TeeRecording();
+        }
+        return calls;
+    }
+
+    private synchronized void recordTag(String key, Object value) {
+        TeeRecording calls = recording();
+        if (calls != null) {
+            calls.tag(key, value);
+        }
+    }
+
+    private synchronized void recordTag(Tag<?> tag, Object value) {
+        TeeRecording calls = recording();
+        if (calls != null) {
+            calls.tag(tag, value);
+        }
+    }
+
+    private synchronized void recordLog(long timestampMicros, Map<String, ?> fields) {
+        TeeRecording calls = recording();
+        if (calls != null) {
+            calls.log(timestampMicros, fields);
+        }
+    }
+
+    @Override
+    public SpanContext context() {
+        SpanContext primaryContext = primary.context();
+        TeeSpanContext context = this.context;
+        // The primary context changes with the baggage.
+        if (context.primary() != primaryContext) {
+            this.context = context = new TeeSpanContext(primaryContext, this);
+        }
+        return context;
+    }
+
+    /**
+     * @return true if the primary span is recording, or if the span is replayed on the secondary tracers, whose
+     * sampling decisions are not known yet
+     */
+    @Override
+    public boolean isRecording() {
+        return shadowed || primary.isRecording();
+    }
+
+    @Override
+    public TeeSpan setTag(String key, String value) {
+        primary.setTag(key, value);
+        if (shadowed) {
+            recordTag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpan setTag(String key, boolean value) {
+        primary.setTag(key, value);
+        if (shadowed) {
+            recordTag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpan setTag(String key, Number value) {
+        primary.setTag(key, value);
+        if (shadowed) {
+            recordTag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpan setTag(String key, int value) {
+        primary.setTag(key, value);
+        if (shadowed) {
+            recordTag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpan setTag(String key, long value) {
+        primary.setTag(key, value);
+        if (shadowed) {
+            recordTag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpan setTag(String key, double value) {
+        primary.setTag(key, value);
+        if (shadowed) {
+            recordTag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public <T> TeeSpan setTag(Tag<T> tag, T value) {
+        primary.setTag(tag, value);
+        if (shadowed) {
+            recordTag(tag, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpan setTag(String key, ValueSupplier<?> supplier) {
+        if (!shadowed) {
+            primary.setTag(key, supplier);
+            return this;
+        }
+        ValueSupplier<Object> shared = new TeeRecording.SharedValueSupplier<Object>(supplier);
+        primary.setTag(key, shared);
+        recordTag(key, shared);
+        return this;
+    }
+
+    @Override
+    public <T> TeeSpan setTag(Tag<T> tag, ValueSupplier<? extends T> supplier) {
+        if (!shadowed) {
+            primary.setTag(tag, supplier);
+            return this;
+        }
+        ValueSupplier<T> shared = new TeeRecording.SharedValueSupplier<T>(supplier);
+        primary.setTag(tag, shared);
+        recordTag(tag, shared);
+        return this;
+    }
+
+    @Override
+    public TeeSpan setTags(TagSet tags) {
+        primary.setTags(tags);
+        if (shadowed) {
+            synchronized (this) {
+                TeeRecording calls = recording();
+                if (calls != null) {
+                    calls.tags(tags);
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpan log(Map<String, ?> fields) {
+        primary.log(fields);
+        if (shadowed) {
+            recordLog(tracer.nowMicros(), new LinkedHashMap<String, Object>(fields));
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpan log(long timestampMicroseconds, Map<String, ?> fields) {
+        primary.log(timestampMicroseconds, fields);
+        if (shadowed) {
+            recordLog(timestampMicroseconds, new LinkedHashMap<String, Object>(fields));
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpan log(String event) {
+        return log(tracer.nowMicros(), event);
+    }
+
+    @Override
+    public TeeSpan log(long timestampMicroseconds, String event) {
+        primary.log(timestampMicroseconds, event);
+        if (shadowed) {
+            synchronized (this) {
+                TeeRecording calls = recording();
+                if (calls != null) {
+                    calls.log(timestampMicroseconds, event);
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public Span.LogBuilder logBuilder() {
+        return new TeeLogBuilder(primary.logBuilder());
+    }
+
+    @Override
+    public TeeSpan setBaggageItem(String key, String value) {
+        primary.setBaggageItem(key, value);
+        if (shadowed) {
+            // Replayed at once, rather than when the span finishes, for the children started meanwhile.
+            synchronized (this) {
+                if (!finished) {
+                    tracer.enqueueBaggageItem(this, key, value);
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public String getBaggageItem(String key) {
+        return primary.getBaggageItem(key);
+    }
+
+    @Override
+    public TeeSpan setOperationName(String operationName) {
+        primary.setOperationName(operationName);
+        if (shadowed) {
+            synchronized (this) {
+                TeeRecording calls = recording();
+                if (calls != null) {
+                    calls.operationName(operationName);
+                }
+            }
+        }
+        return this;
+    }
+
+    @Override
+    public void finish() {
+        primary.finish();
+        finished(tracer.nowMicros());
+    }
+
+    @Override
+    public void finish(long finishMicros) {
+        primary.finish(finishMicros);
+        finished(finishMicros);
+    }
+
+    private void finished(long finishMicros) {
+        if (!shadowed) {
+            return;
+        }
+        synchronized (this) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            this.finishMicros = finishMicros;
+        }
+        tracer.enqueue(this);
+    }
+
+    @Override
+    public String toString() {
+        return "TeeSpan{primary=" + primary + "}";
+    }
+
+    /**
+     * Builds a log on the primary span, collecting its fields for the secondary spans.
+     */
+    private final class TeeLogBuilder implements Span.LogBuilder {
+        private final Span.LogBuilder primary;
+        private final Map<String, Object> fields; // null if the span is not replayed.
+        private long timestampMicros;
+
+        TeeLogBuilder(Span.LogBuilder primary) {
+            this.primary = primary;
+            this.fields = shadowed ? new LinkedHashMap<String, Object>() : null;
+        }
+
+        private TeeLogBuilder collect(String key, Object value) {
+            if (fields != null) {
+                fields.put(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public TeeLogBuilder field(String key, String value) {
+            primary.field(key, value);
+            return collect(key, value);
+        }
+
+        @Override
+        public TeeLogBuilder field(String key, boolean value) {
+            primary.field(key, value);
+            return collect(key, value);
+        }
+
+        @Override
+        public TeeLogBuilder field(String key, int value) {
+            primary.field(key, value);
+            return collect(key, value);
+        }
+
+        @Override
+        public TeeLogBuilder field(String key, long value) {
+            primary.field(key, value);
+            return collect(key, value);
+        }
+
+        @Override
+        public TeeLogBuilder field(String key, double value) {
+            primary.field(key, value);
+            return collect(key, value);
+        }
+
+        @Override
+        public TeeLogBuilder field(String key, Object value) {
+            primary.field(key, value);
+            return collect(key, value);
+        }
+
+        @Override
+        public TeeLogBuilder withTimestamp(long timestampMicroseconds) {
+            primary.withTimestamp(timestampMicroseconds);
+            this.timestampMicros = timestampMicroseconds;
+            return this;
+        }
+
+        @Override
+        public TeeSpan emit() {
+            primary.emit();
+            if (fields != null) {
+                recordLog(timestampMicros == 0 ? tracer.nowMicros() : timestampMicros, fields);
+            }
+            return TeeSpan.this;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.References;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.tag.Tag;
+import io.opentracing.tag.TagSet;
+import io.opentracing.tag.ValueSupplier;
+
+/**
+ * The {@link Tracer.SpanBuilder} of a {@link TeeTracer}, applying calls to a builder of the primary tracer, and
+ * recording them for the secondary tracers.
+ *
+ * <p>The primary builder always ignores the active span, which is a {@link TeeSpan} it does not know about: the active
+ * span is resolved by this builder instead, and referenced through its primary context.
+ */
+final class TeeSpanBuilder implements Tracer.SpanBuilder {
+    private final TeeTracer tracer;
+    private final String operationName;
+    private final Tracer.SpanBuilder primary;
+    private final TeeRecording calls; // null if the span is not replayed.
+    private boolean hasReference;
+    private boolean ignoringActiveSpan;
+    private long startMicros;
+
+    TeeSpanBuilder(TeeTracer tracer, String operationName, Tracer.SpanBuilder primary, boolean recording) {
+        this.tracer = tracer;
+        this.operationName = operationName;
+        this.primary = primary.ignoreActiveSpan();
+        this.calls = recording ? new TeeRecording() : null;
+    }
+
+    @Override
+    public TeeSpanBuilder asChildOf(SpanContext parent) {
+        return addReference(References.CHILD_OF, parent);
+    }
+
+    @Override
+    public TeeSpanBuilder asChildOf(Span parent) {
+        if (parent == null) {
+            return this;
+        }
+        return addReference(References.CHILD_OF, parent.context());
+    }
+
+    /**
+     * Contexts of other tracers are passed to the primary builder as they are, and not replayed.
+     */
+    @Override
+    public TeeSpanBuilder addReference(String referenceType, SpanContext referencedContext) {
+        if (referencedContext == null) {
+            return this;
+        }
+        hasReference = true;
+        if (!(referencedContext instanceof TeeSpanContext)) {
+            primary.addReference(referenceType, referencedContext);
+            return this;
+        }
+        TeeSpanContext context = (TeeSpanContext) referencedContext;
+        primary.addReference(referenceType, context.primary());
+        if (calls != null && context.span() != null) {
+            calls.reference(referenceType, context.span());
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder ignoreActiveSpan() {
+        ignoringActiveSpan = true;
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder withTag(String key, String value) {
+        primary.withTag(key, value);
+        if (calls != null) {
+            calls.tag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder withTag(String key, boolean value) {
+        primary.withTag(key, value);
+        if (calls != null) {
+            calls.tag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder withTag(String key, Number value) {
+        primary.withTag(key, value);
+        if (calls != null) {
+            calls.tag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder withTag(String key, int value) {
+        primary.withTag(key, value);
+        if (calls != null) {
+            calls.tag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder withTag(String key, long value) {
+        primary.withTag(key, value);
+        if (calls != null) {
+            calls.tag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder withTag(String key, double value) {
+        primary.withTag(key, value);
+        if (calls != null) {
+            calls.tag(key, value);
+        }
+        return this;
+    }
+
+    @Override
+    public <T> TeeSpanBuilder withTag(Tag<T> tag, T value) {
+        primary.withTag(tag, value);
+        if (calls != null) {
+            calls.tag(tag, value);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder withTag(String key, ValueSupplier<?> supplier) {
+        if (calls == null) {
+            primary.withTag(key, supplier);
+            return this;
+        }
+        ValueSupplier<Object> shared = new TeeRecording.SharedValueSupplier<Object>(supplier);
+        primary.withTag(key, shared);
+        calls.tag(key, shared);
+        return this;
+    }
+
+    @Override
+    public <T> TeeSpanBuilder withTag(Tag<T> tag, ValueSupplier<? extends T> supplier) {
+        if (calls == null) {
+            primary.withTag(tag, supplier);
+            return this;
+        }
+        ValueSupplier<T> shared = new TeeRecording.SharedValueSupplier<T>(supplier);
+        primary.withTag(tag, shared);
+        calls.tag(tag, shared);
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder withTags(TagSet tags) {
+        primary.withTags(tags);
+        if (calls != null) {
+            calls.tags(tags);
+        }
+        return this;
+    }
+
+    @Override
+    public TeeSpanBuilder withStartTimestamp(long microseconds) {
+        primary.withStartTimestamp(microseconds);
+        this.startMicros = microseconds;
+        return this;
+    }
+
+    @Override
+    public Span start() {
+        if (!hasReference && !ignoringActiveSpan) {
+            Span activeSpan = tracer.activeSpan();
+            if (activeSpan != null) {
+                addReference(References.CHILD_OF, activeSpan.context());
+            }
+        }
+        Span span = primary.start();
+        return tracer.started(span, operationName, startMicros == 0 ? tracer.nowMicros() : startMicros, calls);
+    }
+}
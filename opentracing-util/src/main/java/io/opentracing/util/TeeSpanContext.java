@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.SpanContext;
+import java.util.Map;
+
+/**
+ * The {@link SpanContext} of a {@link TeeTracer}: the context of the primary span, and the span of the tee tracer it
+ * belongs to, through which the replay thread finds the contexts of the secondary spans.
+ */
+final class TeeSpanContext implements SpanContext {
+    private final SpanContext primary;
+    private final TeeSpan span;
+
+    /**
+     * @param span the span of the context, or null if it was extracted
+     */
+    TeeSpanContext(SpanContext primary, TeeSpan span) {
+        this.primary = primary;
+        this.span = span;
+    }
+
+    SpanContext primary() {
+        return primary;
+    }
+
+    /**
+     * @return the span of the context, or null if it was extracted
+     */
+    TeeSpan span() {
+        return span;
+    }
+
+    @Override
+    public String toTraceId() {
+        return primary.toTraceId();
+    }
+
+    @Override
+    public int toTraceId(char[] dest, int offset) {
+        return primary.toTraceId(dest, offset);
+    }
+
+    @Override
+    public int toTraceIdBytes(byte[] dest, int offset) {
+        return primary.toTraceIdBytes(dest, offset);
+    }
+
+    @Override
+    public String toSpanId() {
+        return primary.toSpanId();
+    }
+
+    @Override
+    public int toSpanId(char[] dest, int offset) {
+        return primary.toSpanId(dest, offset);
+    }
+
+    @Override
+    public int toSpanIdBytes(byte[] dest, int offset) {
+        return primary.toSpanIdBytes(dest, offset);
+    }
+
+    @Override
+    public boolean isSampled() {
+        return primary.isSampled();
+    }
+
+    @Override
+    public Iterable<Map.Entry<String, String>> baggageItems() {
+        return primary.baggageItems();
+    }
+
+    @Override
+    public String toString() {
+        return "TeeSpanContext{primary=" + primary + "}";
+    }
+}
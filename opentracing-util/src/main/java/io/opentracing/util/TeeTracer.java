@@ -0,0 +1,381 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+import io.opentracing.SpanContext;
+import io.opentracing.Tracer;
+import io.opentracing.propagation.Format;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link Tracer} recording every span with a primary tracer and any number of secondary tracers, e.g. to send the
+ * same spans to two backends during a migration, or to shadow a production tracer with a new one.
+ *
+ * <p>Calls are applied to the primary tracer on the calling thread, as usual. For the secondary tracers, they are only
+ * recorded: a background thread replays the start of each span, then the calls made on it once it finishes, so that
+ * the secondary tracers add little latency to the calling thread. Spans started while {@code maxPendingSpans} spans
+ * wait to be replayed, or after {@link #close()}, are only recorded by the primary tracer, and counted in
+ * {@link #droppedSpans()}. Exceptions thrown by the secondary tracers are counted in {@link #secondaryErrors()}.
+ *
+ * <p>A span holds its pending slot until it finishes. So that spans never finished do not keep slots forever, spans
+ * still unfinished {@code spanTimeout} after their start was replayed expire: their calls are no longer recorded,
+ * their secondary spans are left unfinished, and they are counted in {@link #expiredSpans()}.
+ *
+ * <p>Span contexts combine the context of the primary span with the spans of the secondary tracers, so that the
+ * children of a span are its children for all the tracers. Only the primary context is propagated: {@link #inject}
+ * writes the format of the primary tracer alone, and {@link #extract} reads it back, so that the children of an
+ * extracted context start new traces for the secondary tracers. Contexts of other tracers are passed to the primary
+ * tracer as they are.
+ *
+ * <p>Spans are activated with the {@link ScopeManager} of the primary tracer, which then holds spans of this tracer:
+ * once this tracer is in use, spans should no longer be started with the primary tracer directly. Secondary spans are
+ * recorded with explicit timestamps, read from a clock anchored to the wall clock when this tracer is created.
+ */
+public final class TeeTracer implements Tracer {
+    public static final int DEFAULT_MAX_PENDING_SPANS = 10000;
+    public static final long DEFAULT_SPAN_TIMEOUT_MINUTES = 5;
+    private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int EVENTS_PER_EXPIRY = 1024;
+
+    private final Tracer primary;
+    private final Tracer[] secondaries;
+    private final int maxPendingSpans;
+    private final long spanTimeoutNanos;
+    private final ConcurrentLinkedQueue<Object> events = new ConcurrentLinkedQueue<Object>();
+    private final AtomicInteger pendingSpans = new AtomicInteger();
+    private final AtomicLong enqueuedEvents = new AtomicLong();
+    private volatile long replayedEvents;
+    private final AtomicLong droppedSpans = new AtomicLong();
+    private final AtomicLong secondaryErrors = new AtomicLong();
+    private volatile long expiredSpans;
+    // Only accessed by the replay thread: the spans whose start was replayed, in that order, until they finish.
+    private final ArrayDeque<TeeSpan> started = new ArrayDeque<TeeSpan>();
+    private final Thread replayer;
+    private volatile boolean replayerParked;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final long anchorMicros;
+    private final long anchorNanos;
+
+    public TeeTracer(Tracer primary, Tracer... secondaries) {
+        this(DEFAULT_MAX_PENDING_SPANS, primary, secondaries);
+    }
+
+    /**
+     * @param maxPendingSpans the maximum number of spans started and not yet replayed entirely, beyond which new spans
+     *                        are not replayed
+     */
+    public TeeTracer(int maxPendingSpans, Tracer primary, Tracer... secondaries) {
+        this(maxPendingSpans, DEFAULT_SPAN_TIMEOUT_MINUTES, TimeUnit.MINUTES, primary, secondaries);
+    }
+
+    /**
+     * @param maxPendingSpans the maximum number of spans started and not yet replayed entirely, beyond which new spans
+     *                        are not replayed
+     * @param spanTimeout     the time after which spans not finished yet expire, releasing their pending slot
+     */
+    public TeeTracer(int maxPendingSpans, long spanTimeout, TimeUnit unit, Tracer primary, Tracer... secondaries) {
+        if (primary == null) {
+            throw new NullPointerException();
+        }
+        if (maxPendingSpans <= 0) {
+            throw new IllegalArgumentException("The maximum number of pending spans must be positive: "
+                    + maxPendingSpans);
+        }
+        if (spanTimeout <= 0) {
+            throw new IllegalArgumentException("The span timeout must be positive: " + spanTimeout);
+        }
+        this.primary = primary;
+        this.secondaries = secondaries.clone();
+        this.maxPendingSpans = maxPendingSpans;
+        this.spanTimeoutNanos = unit.toNanos(spanTimeout);
+        this.anchorMicros = System.currentTimeMillis() * 1000;
+        this.anchorNanos = System.nanoTime();
+        this.replayer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        }, "opentracing-tee-tracer");
+        this.replayer.setDaemon(true);
+        this.replayer.start();
+    }
+
+    long nowMicros() {
+        return anchorMicros + (System.nanoTime() - anchorNanos) / 1000;
+    }
+
+    /**
+     * @param calls the calls made on the span builder, or null if the span is not replayed
+     */
+    Span started(Span primarySpan, String operationName, long startMicros, TeeRecording calls) {
+        boolean shadowed = calls != null && admit();
+        TeeSpan span = new TeeSpan(this, primarySpan, operationName, startMicros, calls, shadowed);
+        if (shadowed) {
+            enqueue(span);
+        }
+        return span;
+    }
+
+    private boolean admit() {
+        int pending;
+        do {
+            pending = pendingSpans.get();
+            if (pending >= maxPendingSpans || closed.get()) {
+                droppedSpans.incrementAndGet();
+                return false;
+            }
+        } while (!pendingSpans.compareAndSet(pending, pending + 1));
+        return true;
+    }
+
+    /**
+     * Queues a span to replay its start, or its finish.
+     */
+    void enqueue(TeeSpan span) {
+        offer(span);
+    }
+
+    void enqueueBaggageItem(TeeSpan span, String key, String value) {
+        offer(new BaggageItem(span, key, value));
+    }
+
+    private void offer(Object event) {
+        events.offer(event);
+        enqueuedEvents.incrementAndGet();
+        // Leave the replay thread parked until it has enough to do, so that calling threads rarely wake it.
+        if (replayerParked && pendingSpans.get() >= maxPendingSpans / 2) {
+            LockSupport.unpark(replayer);
+        }
+    }
+
+    void secondaryError() {
+        secondaryErrors.incrementAndGet();
+    }
+
+    private void replay() {
+        for (;;) {
+            boolean closing = closed.get();
+            Object event = events.poll();
+            if (event != null) {
+                if (event instanceof TeeSpan) {
+                    TeeSpan span = (TeeSpan) event;
+                    if (span.replay(secondaries)) {
+                        pendingSpans.decrementAndGet();
+                    } else {
+                        started.offer(span);
+                    }
+                } else {
+                    BaggageItem item = (BaggageItem) event;
+                    item.span.replayBaggageItem(item.key, item.value);
+                }
+                if (++replayedEvents % EVENTS_PER_EXPIRY == 0) {
+                    expireSpans();
+                }
+                continue;
+            }
+            if (closing) {
+                break;
+            }
+            expireSpans();
+            replayerParked = true;
+            if (events.isEmpty() && !closed.get()) {
+                LockSupport.parkNanos(this, MAX_PARK_NANOS);
+            }
+            replayerParked = false;
+        }
+        for (Tracer secondary : secondaries) {
+            try {
+                secondary.close();
+            } catch (RuntimeException e) {
+                secondaryError();
+            }
+        }
+    }
+
+    /**
+     * Releases the pending slots of the spans unfinished {@code spanTimeout} after their start was replayed. Only
+     * called by the replay thread.
+     */
+    private void expireSpans() {
+        if (started.size() > 2 * maxPendingSpans) {
+            // Spans finished behind a long unfinished one are dropped at once, so that they are not retained.
+            for (int i = started.size(); i > 0; i--) {
+                TeeSpan span = started.poll();
+                if (!span.isFinished()) {
+                    started.offer(span);
+                }
+            }
+        }
+        long now = System.nanoTime();
+        for (TeeSpan span = started.peek(); span != null; span = started.peek()) {
+            if (!span.isFinished()) {
+                if (now - span.startReplayedNanos() < spanTimeoutNanos) {
+                    break;
+                }
+                if (span.expire()) {
+                    pendingSpans.decrementAndGet();
+                    expiredSpans++;
+                }
+            }
+            started.poll();
+        }
+    }
+
+    @Override
+    public ScopeManager scopeManager() {
+        return primary.scopeManager();
+    }
+
+    @Override
+    public Span activeSpan() {
+        return primary.scopeManager().activeSpan();
+    }
+
+    @Override
+    public Scope activateSpan(Span span) {
+        return primary.scopeManager().activate(span);
+    }
+
+    @Override
+    public SpanBuilder buildSpan(String operationName) {
+        return new TeeSpanBuilder(this, operationName, primary.buildSpan(operationName),
+                secondaries.length > 0 && !closed.get());
+    }
+
+    /**
+     * Injects the primary context only.
+     */
+    @Override
+    public <C> void inject(SpanContext spanContext, Format<C> format, C carrier) {
+        if (spanContext instanceof TeeSpanContext) {
+            spanContext = ((TeeSpanContext) spanContext).primary();
+        }
+        primary.inject(spanContext, format, carrier);
+    }
+
+    /**
+     * Extracts a primary context, without secondary spans.
+     */
+    @Override
+    public <C> SpanContext extract(Format<C> format, C carrier) {
+        SpanContext context = primary.extract(format, carrier);
+        return context == null ? null : new TeeSpanContext(context, null);
+    }
+
+    /**
+     * Waits until the calls made so far were replayed on the secondary tracers, as far as the spans they were made on
+     * have finished.
+     *
+     * @return whether the calls were replayed within the timeout
+     */
+    public boolean flush(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = enqueuedEvents.get();
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        LockSupport.unpark(replayer);
+        while (replayedEvents < target) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0 || !replayer.isAlive()) {
+                return false;
+            }
+            LockSupport.unpark(replayer);
+            LockSupport.parkNanos(this, Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of spans started and not yet replayed entirely on the secondary tracers, nor expired
+     */
+    public int pendingSpans() {
+        return pendingSpans.get();
+    }
+
+    /**
+     * @return the number of spans only recorded by the primary tracer, as too many spans were pending, or as they
+     * were started after {@link #close()}
+     */
+    public long droppedSpans() {
+        return droppedSpans.get();
+    }
+
+    /**
+     * @return the number of spans that did not finish within the span timeout, and were not replayed entirely
+     */
+    public long expiredSpans() {
+        return expiredSpans;
+    }
+
+    /**
+     * @return the number of exceptions thrown by the secondary tracers while replaying calls
+     */
+    public long secondaryErrors() {
+        return secondaryErrors.get();
+    }
+
+    /**
+     * Closes the primary tracer, replays the calls queued so far, and closes the secondary tracers, waiting for the
+     * replay thread to finish. Spans finishing afterwards are only recorded by the primary tracer.
+     */
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            primary.close();
+        } finally {
+            LockSupport.unpark(replayer);
+            boolean interrupted = false;
+            while (replayer.isAlive()) {
+                try {
+                    replayer.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TeeTracer{primary=" + primary + ", secondaries=" + secondaries.length + "}";
+    }
+
+    private static final class BaggageItem {
+        final TeeSpan span;
+        final String key;
+        final String value;
+
+        BaggageItem(TeeSpan span, String key, String value) {
+            this.span = span;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
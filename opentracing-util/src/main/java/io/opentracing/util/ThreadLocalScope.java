@@ -23,15 +23,20 @@ import io.opentracing.Span;
  *
  * @see ScopeManager
  */
-public class ThreadLocalScope implements Scope {
-    private final ThreadLocalScopeManager scopeManager;
+public class ThreadLocalScope implements Scope, ThreadLocalScopeManager.Snapshot {
+    final ThreadLocalScopeManager scopeManager;
     private final Span wrapped;
-    private final ThreadLocalScope toRestore;
+    final ThreadLocalScope toRestore;
+    final int depth;
+    final Throwable allocationSite;
 
     ThreadLocalScope(ThreadLocalScopeManager scopeManager, Span wrapped) {
         this.scopeManager = scopeManager;
         this.wrapped = wrapped;
         this.toRestore = scopeManager.tlsScope.get();
+        this.depth = toRestore == null ? 1 : toRestore.depth + 1;
+        ScopeLeakDetector leakDetector = scopeManager.leakDetector;
+        this.allocationSite = leakDetector == null ? null : leakDetector.onActivate(this);
         scopeManager.tlsScope.set(this);
     }
 
@@ -20,10 +20,53 @@ import io.opentracing.Span;
 /**
  * A simple {@link ScopeManager} implementation built on top of Java's thread-local storage primitive.
  *
+ * <p>
+ * Scopes that are never closed stay reachable from the thread-local storage. A {@link ScopeLeakDetector} can be
+ * passed to report them.
+ *
+ * <p>
+ * Besides activating {@link Span}s, whatever is active on a thread can be captured with {@link #snapshot()} and
+ * restored later, possibly on another thread, with {@link #restore(Snapshot)}:
+ * <pre><code>
+ *     final ThreadLocalScopeManager.Snapshot snapshot = scopeManager.snapshot();
+ *     executor.execute(new Runnable() {
+ *         public void run() {
+ *             ThreadLocalScopeManager.Snapshot previous = scopeManager.restore(snapshot);
+ *             try {
+ *                 ...
+ *             } finally {
+ *                 scopeManager.restore(previous);
+ *             }
+ *         }
+ *     });
+ * </code></pre>
+ *
  * @see ThreadLocalScope
+ * @see ScopeLeakDetector
  */
 public class ThreadLocalScopeManager implements ScopeManager {
+    private static final Snapshot EMPTY_SNAPSHOT = new Snapshot() {
+        @Override
+        public String toString() {
+            return "EmptySnapshot";
+        }
+    };
+
     final ThreadLocal<ThreadLocalScope> tlsScope = new ThreadLocal<ThreadLocalScope>();
+    final ScopeLeakDetector leakDetector;
+
+    public ThreadLocalScopeManager() {
+        this(null);
+    }
+
+    /**
+     * @param leakDetector the {@link ScopeLeakDetector} used to report leaked scopes, or null to disable
+     *                     leak detection
+     */
+    public ThreadLocalScopeManager(ScopeLeakDetector leakDetector) {
+        this.leakDetector = leakDetector == null || leakDetector.mode() == ScopeLeakDetector.Mode.DISABLED
+                ? null : leakDetector;
+    }
 
     @Override
     public Scope activate(Span span) {
@@ -35,4 +78,84 @@ public class ThreadLocalScopeManager implements ScopeManager {
         ThreadLocalScope scope = tlsScope.get();
         return scope == null ? null : scope.span();
     }
+
+    /**
+     * Capture the scopes active on the current thread.
+     *
+     * <p>
+     * The returned {@link Snapshot} is immutable and can be restored any number of times, on any thread.
+     * Capturing does not allocate.
+     *
+     * @return a {@link Snapshot} of the scopes active on the current thread, never null
+     *
+     * @see #restore(Snapshot)
+     */
+    public Snapshot snapshot() {
+        ThreadLocalScope scope = tlsScope.get();
+        return scope == null ? EMPTY_SNAPSHOT : scope;
+    }
+
+    /**
+     * Make the scopes captured in a {@link Snapshot} the active ones for the current thread, replacing the
+     * current ones with a single thread-local write. The active state of the thread can be reverted by
+     * restoring the returned {@link Snapshot}.
+     *
+     * <p>
+     * The restored scopes must not be closed on this thread; restore the previous {@link Snapshot} instead.
+     *
+     * @param snapshot a {@link Snapshot} obtained from {@link #snapshot()} on this {@link ThreadLocalScopeManager}
+     * @return a {@link Snapshot} of the scopes that were active before the call
+     * @throws IllegalArgumentException if the {@link Snapshot} was not captured by this
+     *                                  {@link ThreadLocalScopeManager}
+     */
+    public Snapshot restore(Snapshot snapshot) {
+        ThreadLocalScope scope;
+        if (snapshot == EMPTY_SNAPSHOT) {
+            scope = null;
+        } else if (snapshot instanceof ThreadLocalScope && ((ThreadLocalScope) snapshot).scopeManager == this) {
+            scope = (ThreadLocalScope) snapshot;
+        } else {
+            throw new IllegalArgumentException("Snapshot was not captured by this ScopeManager: " + snapshot);
+        }
+
+        ThreadLocalScope previous = tlsScope.get();
+        tlsScope.set(scope);
+        return previous == null ? EMPTY_SNAPSHOT : previous;
+    }
+
+    /**
+     * Check the current thread for scopes that are still active, reporting them to the {@link ScopeLeakDetector}
+     * (if any) and deactivating them, so that the thread does not retain their {@link Span}s anymore.
+     *
+     * <p>
+     * This is meant to be called when a pooled thread has finished a task and no scope is expected to be active,
+     * e.g. from {@code ThreadPoolExecutor.afterExecute()}.
+     *
+     * @return the number of scopes that were still active
+     */
+    public int checkLeaks() {
+        ThreadLocalScope scope = tlsScope.get();
+        if (scope == null) {
+            return 0;
+        }
+
+        int leaked = 0;
+        for (ThreadLocalScope current = scope; current != null; current = current.toRestore) {
+            if (leakDetector != null) {
+                leakDetector.onLeak(current);
+            }
+            leaked++;
+        }
+        tlsScope.remove();
+        return leaked;
+    }
+
+    /**
+     * An opaque and immutable token representing the scopes active on a thread at a given time.
+     *
+     * @see #snapshot()
+     * @see #restore(Snapshot)
+     */
+    public interface Snapshot {
+    }
 }
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.log.Fields;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An {@link Executor} decorator propagating the {@link Span} active at submission time to the executed tasks.
+ * Tasks submitted while no {@link Span} is active are passed through unwrapped.
+ *
+ * <p>
+ * Optionally, the time each task waited in the queue and the time it ran are recorded (using
+ * {@link System#nanoTime()}) as a {@link #TASK_EVENT} log record of the propagated {@link Span}, with the
+ * {@link #QUEUE_WAIT_FIELD} and {@link #RUN_TIME_FIELD} fields. The record is emitted by each task when it
+ * completes, while the {@link Span} is still active, so tasks sharing a {@link Span} each get their own record.
+ *
+ * @see TracedExecutorService
+ * @see TracedRunnable
+ */
+public class TracedExecutor implements Executor {
+    /**
+     * Value of the {@link Fields#EVENT} field of the log record emitted for each task.
+     */
+    public static final String TASK_EVENT = "executor.task";
+
+    /**
+     * Time the task waited between its submission and the start of its execution, in nanoseconds.
+     */
+    public static final String QUEUE_WAIT_FIELD = "executor.queue_wait_nanos";
+
+    /**
+     * Time the task ran, in nanoseconds.
+     */
+    public static final String RUN_TIME_FIELD = "executor.run_nanos";
+
+    private final Executor delegate;
+    protected final Tracer tracer;
+    protected final boolean recordTiming;
+
+    public TracedExecutor(Executor delegate, Tracer tracer) {
+        this(delegate, tracer, false);
+    }
+
+    /**
+     * @param delegate the {@link Executor} running the tasks
+     * @param tracer the {@link Tracer} whose active {@link Span} is propagated
+     * @param recordTiming whether queue wait and run times are logged on the propagated {@link Span}
+     */
+    public TracedExecutor(Executor delegate, Tracer tracer, boolean recordTiming) {
+        if (delegate == null || tracer == null) {
+            throw new NullPointerException();
+        }
+        this.delegate = delegate;
+        this.tracer = tracer;
+        this.recordTiming = recordTiming;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        delegate.execute(wrap(command));
+    }
+
+    protected Runnable wrap(Runnable runnable) {
+        Span span = tracer.activeSpan();
+        return span == null ? runnable : new TracedRunnable(runnable, tracer.scopeManager(), span, recordTiming);
+    }
+
+    static void recordTiming(Span span, long enqueueNanos, long startNanos) {
+        // Fire-and-forget submitters often finish their span before the task completes.
+        if (!span.isRecording()) {
+            return;
+        }
+        long endNanos = System.nanoTime();
+        span.logBuilder()
+                .field(Fields.EVENT, TASK_EVENT)
+                .field(QUEUE_WAIT_FIELD, startNanos - enqueueNanos)
+                .field(RUN_TIME_FIELD, endNanos - startNanos)
+                .emit();
+    }
+}
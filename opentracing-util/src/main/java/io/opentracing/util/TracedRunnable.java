@@ -0,0 +1,67 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import io.opentracing.Scope;
+import io.opentracing.ScopeManager;
+import io.opentracing.Span;
+
+/**
+ * A {@link Runnable} wrapper that makes a {@link Span} active while the wrapped {@link Runnable} runs,
+ * optionally recording how long the task waited to be run and how long it ran.
+ *
+ * @see TracedExecutor
+ */
+public class TracedRunnable implements Runnable {
+    private final Runnable delegate;
+    private final ScopeManager scopeManager;
+    private final Span span;
+    private final boolean recordTiming;
+    private final long enqueueNanos;
+
+    public TracedRunnable(Runnable delegate, ScopeManager scopeManager, Span span) {
+        this(delegate, scopeManager, span, false);
+    }
+
+    /**
+     * @param delegate the {@link Runnable} to run
+     * @param scopeManager the {@link ScopeManager} used to activate the {@link Span}
+     * @param span the {@link Span} to make active while running
+     * @param recordTiming whether to record the queue wait time (measured from this call) and the run time
+     *                     of the task in a log record of the {@link Span}
+     *
+     * @see TracedExecutor#TASK_EVENT
+     */
+    public TracedRunnable(Runnable delegate, ScopeManager scopeManager, Span span, boolean recordTiming) {
+        this.delegate = delegate;
+        this.scopeManager = scopeManager;
+        this.span = span;
+        this.recordTiming = recordTiming;
+        this.enqueueNanos = recordTiming ? System.nanoTime() : 0L;
+    }
+
+    @Override
+    public void run() {
+        long startNanos = recordTiming ? System.nanoTime() : 0L;
+        Scope scope = scopeManager.activate(span);
+        try {
+            delegate.run();
+        } finally {
+            if (recordTiming) {
+                TracedExecutor.recordTiming(span, enqueueNanos, startNanos);
+            }
+            scope.close();
+        }
+    }
+}
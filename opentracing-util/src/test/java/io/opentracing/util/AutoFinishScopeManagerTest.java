@@ -0,0 +1,203 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+public class AutoFinishScopeManagerTest {
+    private AutoFinishScopeManager scopeManager;
+
+    @Before
+    public void before() throws Exception {
+        scopeManager = new AutoFinishScopeManager();
+    }
+
+    @Test
+    public void missingActiveSpan() throws Exception {
+        assertNull(scopeManager.activeSpan());
+        assertNull(scopeManager.active());
+        assertNull(scopeManager.captureScope());
+    }
+
+    @Test
+    public void finishOnClose() throws Exception {
+        Span span = mock(Span.class);
+
+        Scope scope = scopeManager.activate(span);
+        assertSame(span, scopeManager.activeSpan());
+        scope.close();
+
+        verify(span, times(1)).finish();
+        assertNull(scopeManager.activeSpan());
+    }
+
+    @Test
+    public void doubleCloseFinishesOnce() throws Exception {
+        Span span = mock(Span.class);
+
+        AutoFinishScope scope = scopeManager.activate(span);
+        AutoFinishScope.Continuation continuation = scope.capture();
+        scope.close();
+        scope.close();
+
+        verify(span, never()).finish();
+
+        continuation.activate().close();
+        verify(span, times(1)).finish();
+    }
+
+    @Test
+    public void continuationActivatesOnce() throws Exception {
+        Span span = mock(Span.class);
+
+        AutoFinishScope scope = scopeManager.activate(span);
+        AutoFinishScope.Continuation continuation = scope.capture();
+        scope.close();
+
+        AutoFinishScope activated = continuation.activate();
+        try {
+            continuation.activate();
+            fail();
+        } catch (IllegalStateException ex) {
+        }
+        continuation.cancel();
+        verify(span, never()).finish();
+
+        activated.close();
+        verify(span, times(1)).finish();
+    }
+
+    @Test
+    public void cancelReleasesContinuation() throws Exception {
+        Span span = mock(Span.class);
+
+        AutoFinishScope scope = scopeManager.activate(span);
+        AutoFinishScope.Continuation continuation = scope.capture();
+        scope.close();
+
+        continuation.cancel();
+        continuation.cancel();
+        verify(span, times(1)).finish();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void captureAfterFinish() throws Exception {
+        AutoFinishScope scope = scopeManager.activate(mock(Span.class));
+        scope.close();
+        scope.capture();
+    }
+
+    @Test
+    public void finishAfterLastContinuation() throws Exception {
+        final int tasks = 64;
+        Span span = mock(Span.class);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        final CountDownLatch start = new CountDownLatch(1);
+
+        AutoFinishScope scope = scopeManager.activate(span);
+        try {
+            for (int i = 0; i < tasks; i++) {
+                final AutoFinishScope.Continuation continuation = scopeManager.captureScope();
+                executor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        Scope activated = continuation.activate();
+                        activated.close();
+                    }
+                });
+            }
+        } finally {
+            scope.close();
+        }
+
+        verify(span, never()).finish();
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        verify(span, times(1)).finish();
+    }
+
+    @Test
+    public void outOfOrderCloseReleasesReference() throws Exception {
+        Span span = mock(Span.class);
+
+        AutoFinishScope scope = scopeManager.activate(span);
+        Scope other = scopeManager.activate(mock(Span.class));
+        scope.close();
+
+        verify(span, times(1)).finish();
+        other.close();
+    }
+
+    @Test
+    public void pendingContinuations() throws Exception {
+        scopeManager = new AutoFinishScopeManager(true);
+        Span span = mock(Span.class);
+
+        AutoFinishScope scope = scopeManager.activate(span);
+        AutoFinishScope.Continuation leaked = scope.capture();
+        AutoFinishScope.Continuation activated = scope.capture();
+        scope.close();
+        activated.activate().close();
+
+        List<AutoFinishScope.Continuation> pending =
+                new ArrayList<AutoFinishScope.Continuation>(scopeManager.pendingContinuations());
+        assertEquals(1, pending.size());
+        assertSame(leaked, pending.get(0));
+        assertNotNull(leaked.captureSite());
+        verify(span, never()).finish();
+
+        leaked.cancel();
+        assertTrue(scopeManager.pendingContinuations().isEmpty());
+        verify(span, times(1)).finish();
+    }
+
+    @Test
+    public void trackingDisabledByDefault() throws Exception {
+        AutoFinishScope scope = scopeManager.activate(mock(Span.class));
+        AutoFinishScope.Continuation continuation = scope.capture();
+
+        assertNull(continuation.captureSite());
+        assertTrue(scopeManager.pendingContinuations().isEmpty());
+
+        continuation.cancel();
+        scope.close();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+
+import io.opentracing.Scope;
+import io.opentracing.Span;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class ScopeLeakDetectorTest {
+    private final List<Span> leakedSpans = new ArrayList<Span>();
+    private final List<Throwable> allocationSites = new ArrayList<Throwable>();
+
+    private final ScopeLeakDetector.Reporter reporter = new ScopeLeakDetector.Reporter() {
+        @Override
+        public void reportLeak(String message, Span span, Throwable allocationSite) {
+            leakedSpans.add(span);
+            allocationSites.add(allocationSite);
+        }
+    };
+
+    @Test
+    public void reportActiveScopesOnCheck() throws Exception {
+        ThreadLocalScopeManager scopeManager = new ThreadLocalScopeManager(
+                new ScopeLeakDetector(ScopeLeakDetector.Mode.PARANOID, 1, 10, reporter));
+        Span closedSpan = mock(Span.class);
+        Span leakedSpan = mock(Span.class);
+
+        scopeManager.activate(closedSpan).close();
+        scopeManager.activate(leakedSpan);
+
+        assertEquals(1, scopeManager.checkLeaks());
+        assertEquals(1, leakedSpans.size());
+        assertSame(leakedSpan, leakedSpans.get(0));
+        assertNotNull(allocationSites.get(0));
+
+        // The leaked scope is not retained by the thread anymore.
+        assertNull(scopeManager.activeSpan());
+        assertEquals(0, scopeManager.checkLeaks());
+    }
+
+    @Test
+    public void reportMaxDepthExceeded() throws Exception {
+        ThreadLocalScopeManager scopeManager = new ThreadLocalScopeManager(
+                new ScopeLeakDetector(ScopeLeakDetector.Mode.PARANOID, 1, 3, reporter));
+        Span bottomSpan = mock(Span.class);
+
+        Scope bottom = scopeManager.activate(bottomSpan);
+        Throwable bottomSite = ((ThreadLocalScope) bottom).allocationSite;
+        for (int i = 0; i < 5; i++) {
+            scopeManager.activate(mock(Span.class));
+        }
+
+        // Reported once, pointing to the oldest allocation site.
+        assertEquals(1, leakedSpans.size());
+        assertSame(bottomSite, allocationSites.get(0));
+
+        assertEquals(6, scopeManager.checkLeaks());
+    }
+
+    @Test
+    public void sampledAllocationSites() throws Exception {
+        ThreadLocalScopeManager scopeManager = new ThreadLocalScopeManager(
+                new ScopeLeakDetector(ScopeLeakDetector.Mode.SAMPLED, 4, 100, reporter));
+
+        int sampled = 0;
+        for (int i = 0; i < 16; i++) {
+            ThreadLocalScope scope = (ThreadLocalScope) scopeManager.activate(mock(Span.class));
+            if (scope.allocationSite != null) {
+                sampled++;
+            }
+            scope.close();
+        }
+        assertEquals(4, sampled);
+    }
+
+    @Test
+    public void disabledDetection() throws Exception {
+        ThreadLocalScopeManager scopeManager = new ThreadLocalScopeManager(
+                new ScopeLeakDetector(ScopeLeakDetector.Mode.DISABLED, 1, 1, reporter));
+
+        ThreadLocalScope scope = (ThreadLocalScope) scopeManager.activate(mock(Span.class));
+        scopeManager.activate(mock(Span.class));
+        assertNull(scope.allocationSite);
+
+        assertEquals(2, scopeManager.checkLeaks());
+        assertEquals(0, leakedSpans.size());
+    }
+}
@@ -15,6 +15,7 @@ package io.opentracing.util;
 
 import io.opentracing.Scope;
 import io.opentracing.Span;
+import java.util.concurrent.atomic.AtomicReference;
 import org.junit.Before;
 import org.junit.Test;
 
@@ -58,4 +59,78 @@ public class ThreadLocalScopeManagerTest {
         Span missingSpan = source.activeSpan();
         assertNull(missingSpan);
     }
+
+    @Test
+    public void snapshotRestoreOnOtherThread() throws Exception {
+        final Span span = mock(Span.class);
+        final AtomicReference<Span> restoredSpan = new AtomicReference<Span>();
+        final AtomicReference<Span> revertedSpan = new AtomicReference<Span>();
+
+        Scope scope = source.activate(span);
+        final ThreadLocalScopeManager.Snapshot snapshot = source.snapshot();
+        scope.close();
+
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ThreadLocalScopeManager.Snapshot previous = source.restore(snapshot);
+                try {
+                    restoredSpan.set(source.activeSpan());
+                } finally {
+                    source.restore(previous);
+                }
+                revertedSpan.set(source.activeSpan());
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertEquals(span, restoredSpan.get());
+        assertNull(revertedSpan.get());
+        assertNull(source.activeSpan());
+    }
+
+    @Test
+    public void restoreEmptySnapshot() throws Exception {
+        ThreadLocalScopeManager.Snapshot empty = source.snapshot();
+        Span span = mock(Span.class);
+
+        Scope scope = source.activate(span);
+        try {
+            ThreadLocalScopeManager.Snapshot previous = source.restore(empty);
+            assertNull(source.activeSpan());
+
+            source.restore(previous);
+            assertEquals(span, source.activeSpan());
+        } finally {
+            scope.close();
+        }
+        assertNull(source.activeSpan());
+    }
+
+    @Test
+    public void snapshotIsReusable() throws Exception {
+        Span span = mock(Span.class);
+        Scope scope = source.activate(span);
+        ThreadLocalScopeManager.Snapshot snapshot = source.snapshot();
+        scope.close();
+
+        for (int i = 0; i < 3; i++) {
+            ThreadLocalScopeManager.Snapshot previous = source.restore(snapshot);
+            assertEquals(span, source.activeSpan());
+            source.restore(previous);
+            assertNull(source.activeSpan());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void restoreForeignSnapshot() throws Exception {
+        ThreadLocalScopeManager other = new ThreadLocalScopeManager();
+        Scope scope = other.activate(mock(Span.class));
+        try {
+            source.restore(other.snapshot());
+        } finally {
+            scope.close();
+        }
+    }
 }
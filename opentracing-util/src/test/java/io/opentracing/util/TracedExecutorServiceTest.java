@@ -0,0 +1,198 @@
+/*
+ * Copyright 2016-2020 The OpenTracing Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package io.opentracing.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.opentracing.Span;
+import io.opentracing.Tracer;
+import io.opentracing.log.Fields;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TracedExecutorServiceTest {
+    private ThreadLocalScopeManager scopeManager;
+    private Tracer tracer;
+    private Span span;
+    private TracedExecutorService executor;
+
+    @Before
+    public void before() throws Exception {
+        scopeManager = new ThreadLocalScopeManager();
+        tracer = mock(Tracer.class);
+        span = mock(Span.class);
+        when(tracer.scopeManager()).thenReturn(scopeManager);
+    }
+
+    @After
+    public void after() throws Exception {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void propagateActiveSpan() throws Exception {
+        when(tracer.activeSpan()).thenReturn(span);
+        executor = new TracedExecutorService(Executors.newFixedThreadPool(2), tracer);
+
+        assertEquals(span, executor.submit(activeSpanCallable()).get());
+        for (Future<Span> future : executor.invokeAll(Arrays.asList(activeSpanCallable(), activeSpanCallable()))) {
+            assertEquals(span, future.get());
+        }
+    }
+
+    @Test
+    public void noActiveSpan() throws Exception {
+        executor = new TracedExecutorService(Executors.newFixedThreadPool(2), tracer, true);
+
+        assertNull(executor.submit(activeSpanCallable()).get());
+    }
+
+    @Test
+    public void recordTiming() throws Exception {
+        RecordingLogBuilder logBuilder = new RecordingLogBuilder(span);
+        when(span.logBuilder()).thenReturn(logBuilder);
+        when(span.isRecording()).thenReturn(true);
+        when(tracer.activeSpan()).thenReturn(span);
+        executor = new TracedExecutorService(Executors.newSingleThreadExecutor(), tracer, true);
+
+        final CountDownLatch blocker = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    blocker.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        Future<?> queued = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                sleep(20);
+            }
+        });
+        sleep(50);
+        blocker.countDown();
+        queued.get();
+
+        List<Map<String, Object>> records = logBuilder.records;
+        assertEquals(2, records.size());
+        for (Map<String, Object> record : records) {
+            assertEquals(TracedExecutor.TASK_EVENT, record.get(Fields.EVENT));
+        }
+        // The first task blocked the second one in the queue.
+        assertTrue((Long) records.get(1).get(TracedExecutor.QUEUE_WAIT_FIELD) >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue((Long) records.get(0).get(TracedExecutor.RUN_TIME_FIELD) >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertTrue((Long) records.get(1).get(TracedExecutor.RUN_TIME_FIELD) >= TimeUnit.MILLISECONDS.toNanos(20));
+    }
+
+    @Test
+    public void noTimingOnFinishedSpan() throws Exception {
+        RecordingLogBuilder logBuilder = new RecordingLogBuilder(span);
+        when(span.logBuilder()).thenReturn(logBuilder);
+        when(span.isRecording()).thenReturn(false);
+        when(tracer.activeSpan()).thenReturn(span);
+        executor = new TracedExecutorService(Executors.newSingleThreadExecutor(), tracer, true);
+
+        assertEquals(span, executor.submit(activeSpanCallable()).get());
+        assertTrue(logBuilder.records.isEmpty());
+    }
+
+    private Callable<Span> activeSpanCallable() {
+        return new Callable<Span>() {
+            @Override
+            public Span call() {
+                return scopeManager.activeSpan();
+            }
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RecordingLogBuilder implements Span.LogBuilder {
+        final List<Map<String, Object>> records = new CopyOnWriteArrayList<Map<String, Object>>();
+        private final Span span;
+        private Map<String, Object> fields = new HashMap<String, Object>();
+
+        RecordingLogBuilder(Span span) {
+            this.span = span;
+        }
+
+        @Override
+        public Span.LogBuilder field(String key, String value) {
+            return field(key, (Object) value);
+        }
+
+        @Override
+        public Span.LogBuilder field(String key, boolean value) {
+            return field(key, (Object) value);
+        }
+
+        @Override
+        public Span.LogBuilder field(String key, int value) {
+            return field(key, (Object) value);
+        }
+
+        @Override
+        public Span.LogBuilder field(String key, long value) {
+            return field(key, (Object) value);
+        }
+
+        @Override
+        public Span.LogBuilder field(String key, double value) {
+            return field(key, (Object) value);
+        }
+
+        @Override
+        public Span.LogBuilder field(String key, Object value) {
+            fields.put(key, value);
+            return this;
+        }
+
+        @Override
+        public Span.LogBuilder withTimestamp(long timestampMicroseconds) {
+            return this;
+        }
+
+        @Override
+        public Span emit() {
+            records.add(fields);
+            fields = new HashMap<String, Object>();
+            return span;
+        }
+    }
+}